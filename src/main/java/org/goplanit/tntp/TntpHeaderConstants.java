@@ -11,6 +11,8 @@ public class TntpHeaderConstants {
   public static final String NUMBER_OF_ZONES_INDICATOR = "<NUMBER OF ZONES>";
   public static final String NUMBER_OF_NODES_INDICATOR = "<NUMBER OF NODES>";
   public static final String NUMBER_OF_LINKS_INDICATOR = "<NUMBER OF LINKS>";
+  public static final String FIRST_THRU_NODE_INDICATOR = "<FIRST THRU NODE>";
+  public static final String TOTAL_OD_FLOW_INDICATOR = "<TOTAL OD FLOW>";
   public static final String END_OF_METADATA_INDICATOR = "<END OF METADATA>";
   
   /**
@@ -1,6 +1,5 @@
 package org.goplanit.tntp;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -20,7 +19,6 @@ import org.goplanit.output.enums.PathOutputIdentificationType;
 import org.goplanit.output.property.OutputPropertyType;
 import org.goplanit.sdinteraction.smoothing.MSASmoothing;
 import org.goplanit.tntp.enums.LengthUnits;
-import org.goplanit.tntp.enums.NetworkFileColumnType;
 import org.goplanit.tntp.enums.SpeedUnits;
 import org.goplanit.tntp.enums.TimeUnits;
 import org.goplanit.tntp.output.formatter.CSVOutputFormatter;
@@ -206,23 +204,10 @@ public class TntpMain {
     final boolean isOdOutputActive = (odOutputFilename != null);
     final boolean isOdPathOutputActive = (odPathOutputFilename != null);
 
-    //TODO - The following arrangement of columns is correct for Chicago Sketch and Philadelphia.  For some other cities the arrangement is different.
-    final Map<NetworkFileColumnType, Integer> networkFileColumns = new HashMap<NetworkFileColumnType, Integer>();
-    networkFileColumns.put(NetworkFileColumnType.UPSTREAM_NODE_ID, 0);
-    networkFileColumns.put(NetworkFileColumnType.DOWNSTREAM_NODE_ID, 1);
-    networkFileColumns.put(NetworkFileColumnType.CAPACITY_PER_LANE, 2);
-    networkFileColumns.put(NetworkFileColumnType.LENGTH, 3);
-    networkFileColumns.put(NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME, 4);
-    networkFileColumns.put(NetworkFileColumnType.B, 5);
-    networkFileColumns.put(NetworkFileColumnType.POWER, 6);
-    networkFileColumns.put(NetworkFileColumnType.MAXIMUM_SPEED, 7);
-    networkFileColumns.put(NetworkFileColumnType.TOLL, 8);
-    networkFileColumns.put(NetworkFileColumnType.LINK_TYPE, 9);
-
+    /* network file columns are detected from the header of the network file */
     final LengthUnits lengthUnits = LengthUnits.MILES; // Both Chicago-Sketch and Philadelphia use miles
 
     final TntpProject project = new TntpProject(networkFileLocation, demandFileLocation, nodeCoordinateFileLocation);
-    project.getNetworkReaderSettings().setNetworkFileColumns(networkFileColumns);
     project.getNetworkReaderSettings().setSpeedUnits(SpeedUnits.MILES_H);
     project.getNetworkReaderSettings().setCapacityPeriod(1, TimeUnits.HOURS);   // Chicago-Sketch only - for Philadelphia use days
     project.getNetworkReaderSettings().setDefaultMaximumSpeed(defaultMaximumSpeed);
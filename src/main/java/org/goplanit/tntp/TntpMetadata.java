@@ -0,0 +1,344 @@
+package org.goplanit.tntp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.goplanit.tntp.utils.TntpByteTokenizer;
+import org.goplanit.tntp.utils.TntpInputSource;
+import org.goplanit.utils.exceptions.PlanItException;
+
+/**
+ * Metadata in the header of a TNTP file, i.e., the {@code <TAG> value} lines preceding {@code <END OF METADATA>}. All tags are retained in
+ * file order, the ones used by the readers are available via dedicated getters. The metadata of a file can be read without reading the
+ * remainder of the file and is cached per file (until the file changes, for the most recently used files only), so readers sharing a file
+ * only read its header once. Instances are immutable since cached instances are shared, metadata is collected line by line via a
+ * {@link Builder}.
+ *
+ * @author markr
+ *
+ */
+public class TntpMetadata {
+
+  /** bytes read per chunk when reading the metadata of a source */
+  private static final int CHUNK_SIZE = 1 << 12;
+
+  /** maximum number of bytes read when looking for the end of the metadata, TNTP headers are only a few lines */
+  private static final int MAX_METADATA_BYTES = 1 << 20;
+
+  /** maximum number of files of which the metadata is cached, the least recently used is evicted beyond that */
+  public static final int MAX_CACHED_FILES = 16;
+
+  /** cached metadata by file in access order, with the size and modification time of the file it was read from */
+  private static final Map<Path, CachedMetadata> CACHE = Collections.synchronizedMap(
+      new LinkedHashMap<>(MAX_CACHED_FILES + 1, 1.0f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, CachedMetadata> eldest) {
+          return size() > MAX_CACHED_FILES;
+        }
+      });
+
+  /** values by tag, including angle brackets, in file order */
+  private final Map<String, String> entries;
+
+  /** true when end of metadata has been reached */
+  private final boolean complete;
+
+  /**
+   * Collects the lines of the metadata of a file
+   */
+  public static class Builder {
+
+    /** values by tag, including angle brackets, in file order */
+    private final Map<String, String> entries = new LinkedHashMap<>();
+
+    /** true when end of metadata has been reached */
+    private boolean complete = false;
+
+    /**
+     * Add a line of the metadata. Empty lines are ignored, lines without a tag are stored under an empty tag
+     *
+     * @param line to add, trimmed
+     * @return false when the line marks the end of the metadata, true otherwise
+     */
+    public boolean addEntry(final String line) {
+      if (line.equals(TntpHeaderConstants.END_OF_METADATA_INDICATOR)) {
+        complete = true;
+        return false;
+      }
+      if (!line.isEmpty()) {
+        final int tagEnd = line.charAt(0) == '<' ? line.indexOf('>') + 1 : 0;
+        entries.put(line.substring(0, tagEnd), line.substring(tagEnd).trim());
+      }
+      return true;
+    }
+
+    /**
+     * Create the metadata of the lines added so far
+     *
+     * @return created metadata
+     */
+    public TntpMetadata build() {
+      return new TntpMetadata(entries, complete);
+    }
+  }
+
+  /**
+   * Metadata of a file in the cache
+   */
+  private static class CachedMetadata {
+
+    /** size of the file */
+    final long fileSize;
+
+    /** modification time of the file in milliseconds */
+    final long lastModified;
+
+    /** the metadata */
+    final TntpMetadata metadata;
+
+    /**
+     * Constructor
+     *
+     * @param fileSize of the file
+     * @param lastModified of the file
+     * @param metadata of the file
+     */
+    CachedMetadata(long fileSize, long lastModified, final TntpMetadata metadata) {
+      this.fileSize = fileSize;
+      this.lastModified = lastModified;
+      this.metadata = metadata;
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param entries values by tag in file order, copied
+   * @param complete true when end of metadata has been reached
+   */
+  private TntpMetadata(final Map<String, String> entries, boolean complete) {
+    this.entries = new LinkedHashMap<>(entries);
+    this.complete = complete;
+  }
+
+  /**
+   * Parse the metadata at the start of a tokenized file
+   *
+   * @param tokenizer positioned at the start of the file, positioned after the end of metadata line upon return
+   * @return parsed metadata
+   */
+  public static TntpMetadata parse(final TntpByteTokenizer tokenizer) {
+    final Builder metadata = new Builder();
+    while (tokenizer.hasRemaining()) {
+      if (!metadata.addEntry(tokenizer.nextLine())) {
+        break;
+      }
+    }
+    return metadata.build();
+  }
+
+  /**
+   * Read the metadata of a source, only reading (chunks of) bytes until the end of metadata line is found
+   *
+   * @param source to read from, for stream based sources this consumes the source
+   * @return read metadata
+   * @throws PlanItException thrown if error
+   */
+  public static TntpMetadata read(final TntpInputSource source) throws PlanItException {
+    final Builder metadata = new Builder();
+    try (InputStream stream = source.openStream()) {
+      byte[] pending = new byte[CHUNK_SIZE];
+      int numPending = 0;
+      int numRead = 0;
+      int lineStart = 0;
+      int chunkSize;
+      while (numRead < MAX_METADATA_BYTES && (chunkSize = stream.read(pending, numPending, pending.length - numPending)) > 0) {
+        numRead += chunkSize;
+        final int end = numPending + chunkSize;
+        for (int position = numPending; position < end; ++position) {
+          if (pending[position] == '\n') {
+            if (!metadata.addEntry(new String(pending, lineStart, position - lineStart, StandardCharsets.UTF_8).trim())) {
+              return metadata.build();
+            }
+            lineStart = position + 1;
+          }
+        }
+        /* retain the incomplete line */
+        numPending = end - lineStart;
+        System.arraycopy(pending, lineStart, pending, 0, numPending);
+        lineStart = 0;
+        if (numPending == pending.length) {
+          pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+      }
+      if (numPending > 0) {
+        metadata.addEntry(new String(pending, 0, numPending, StandardCharsets.UTF_8).trim());
+      }
+    } catch (final IOException e) {
+      throw new PlanItException(String.format("Unable to read TNTP metadata of %s", source), e);
+    }
+    return metadata.build();
+  }
+
+  /**
+   * Obtain the metadata of a source, from the cache when available for file based sources that have not changed since, otherwise it is
+   * read, see {@link #read(TntpInputSource)}, and cached
+   *
+   * @param source to obtain metadata for
+   * @return metadata
+   * @throws PlanItException thrown if error
+   */
+  public static TntpMetadata of(final TntpInputSource source) throws PlanItException {
+    final Path file = source.getFile();
+    if (file == null) {
+      return read(source);
+    }
+    try {
+      final CachedMetadata cached = CACHE.get(file);
+      if (cached != null && cached.fileSize == Files.size(file) && cached.lastModified == Files.getLastModifiedTime(file).toMillis()) {
+        return cached.metadata;
+      }
+    } catch (final IOException e) {
+      throw new PlanItException(String.format("Unable to access TNTP file %s", source), e);
+    }
+    final TntpMetadata metadata = read(source);
+    cache(source, metadata);
+    return metadata;
+  }
+
+  /**
+   * Cache the metadata of a file based source, e.g., after it has been parsed as part of reading the whole file, so it is not read again by
+   * {@link #of(TntpInputSource)}. Incomplete metadata and metadata of stream based sources is not cached
+   *
+   * @param source the metadata belongs to
+   * @param metadata to cache
+   */
+  public static void cache(final TntpInputSource source, final TntpMetadata metadata) {
+    final Path file = source.getFile();
+    if (file == null || !metadata.isComplete()) {
+      return;
+    }
+    try {
+      CACHE.put(file, new CachedMetadata(Files.size(file), Files.getLastModifiedTime(file).toMillis(), metadata));
+    } catch (final IOException e) {
+      CACHE.remove(file);
+    }
+  }
+
+  /**
+   * Value of a tag
+   *
+   * @param tag including angle brackets, e.g., {@link TntpHeaderConstants#NUMBER_OF_ZONES_INDICATOR}
+   * @return value, null when absent
+   */
+  public String get(final String tag) {
+    return entries.get(tag);
+  }
+
+  /**
+   * Integer value of a tag
+   *
+   * @param tag including angle brackets
+   * @param defaultValue to use when absent
+   * @return value
+   * @throws NumberFormatException thrown when value is not an integer
+   */
+  public int getInt(final String tag, int defaultValue) {
+    final String value = entries.get(tag);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  /**
+   * Decimal value of a tag
+   *
+   * @param tag including angle brackets
+   * @param defaultValue to use when absent
+   * @return value
+   * @throws NumberFormatException thrown when value is not a number
+   */
+  public double getDouble(final String tag, double defaultValue) {
+    final String value = entries.get(tag);
+    return value == null ? defaultValue : Double.parseDouble(value);
+  }
+
+  /**
+   * Number of zones
+   *
+   * @return number of zones, 0 when absent
+   */
+  public int getNumberOfZones() {
+    return getInt(TntpHeaderConstants.NUMBER_OF_ZONES_INDICATOR, 0);
+  }
+
+  /**
+   * Number of nodes
+   *
+   * @return number of nodes, 0 when absent
+   */
+  public int getNumberOfNodes() {
+    return getInt(TntpHeaderConstants.NUMBER_OF_NODES_INDICATOR, 0);
+  }
+
+  /**
+   * Number of links
+   *
+   * @return number of links, 0 when absent
+   */
+  public int getNumberOfLinks() {
+    return getInt(TntpHeaderConstants.NUMBER_OF_LINKS_INDICATOR, 0);
+  }
+
+  /**
+   * First node that allows through traffic, nodes with a lower id are zones that do not
+   *
+   * @return first thru node, 1 when absent
+   */
+  public int getFirstThruNode() {
+    return getInt(TntpHeaderConstants.FIRST_THRU_NODE_INDICATOR, 1);
+  }
+
+  /**
+   * Total OD flow, i.e., the sum of all trips in a trips file
+   *
+   * @return total OD flow, NaN when absent
+   */
+  public double getTotalOdFlow() {
+    return getDouble(TntpHeaderConstants.TOTAL_OD_FLOW_INDICATOR, Double.NaN);
+  }
+
+  /**
+   * All entries
+   *
+   * @return unmodifiable values by tag in file order
+   */
+  public Map<String, String> getEntries() {
+    return Collections.unmodifiableMap(entries);
+  }
+
+  /**
+   * Verify if the end of metadata has been reached
+   *
+   * @return true when complete
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return entries.toString();
+  }
+
+}
@@ -0,0 +1,97 @@
+package org.goplanit.tntp.converter.demands;
+
+import org.goplanit.tntp.enums.TimeUnits;
+import org.goplanit.tntp.utils.TntpInputSource;
+import org.goplanit.utils.misc.Pair;
+
+/**
+ * A TNTP trips file to read as part of the demands, with the user class and time period its OD demands are registered for. Demand files
+ * with the same user class name share a traveller type and user class, demand files with the same start time and duration share a time
+ * period
+ *
+ * @author markr
+ *
+ */
+public class TntpDemandFile {
+
+  /** source of the trips file */
+  private final TntpInputSource demandSource;
+
+  /** name of the user class (and traveller type) */
+  private final String userClassName;
+
+  /** pcu of the trips in this file, null to use the pcu of the mode */
+  private Double pcu;
+
+  /** start time of the time period of this file, null to use the start time of the demands reader settings */
+  private Pair<Double, TimeUnits> startTimeSinceMidNight;
+
+  /** duration of the time period of this file, null to use the duration of the demands reader settings */
+  private Pair<Double, TimeUnits> timePeriodDuration;
+
+  /**
+   * Constructor
+   *
+   * @param demandSource source of the trips file
+   * @param userClassName name of the user class (and traveller type)
+   */
+  public TntpDemandFile(final TntpInputSource demandSource, final String userClassName) {
+    this.demandSource = demandSource;
+    this.userClassName = userClassName;
+  }
+
+  public TntpInputSource getDemandSource() {
+    return demandSource;
+  }
+
+  public String getUserClassName() {
+    return userClassName;
+  }
+
+  public Double getPcu() {
+    return pcu;
+  }
+
+  /**
+   * Passenger car units per trip in this file, e.g., for truck trips, the OD demands (pcu/h) of all user classes are based on it
+   *
+   * @param pcu to use, null (default) to use the pcu of the mode
+   * @return this demand file
+   */
+  public TntpDemandFile setPcu(final Double pcu) {
+    this.pcu = pcu;
+    return this;
+  }
+
+  public Pair<Double, TimeUnits> getStartTimeSinceMidNight() {
+    return startTimeSinceMidNight;
+  }
+
+  public Pair<Double, TimeUnits> getTimePeriodDuration() {
+    return timePeriodDuration;
+  }
+
+  /**
+   * Time period of the trips in this file, e.g., one hour of an hourly profile
+   *
+   * @param startTime since midnight
+   * @param startTimeUnit of the start time
+   * @param duration of the time period
+   * @param durationUnit of the duration
+   * @return this demand file
+   */
+  public TntpDemandFile setTimePeriod(final Number startTime, final TimeUnits startTimeUnit, final Number duration, final TimeUnits durationUnit) {
+    this.startTimeSinceMidNight = Pair.of(startTime.doubleValue(), startTimeUnit);
+    this.timePeriodDuration = Pair.of(duration.doubleValue(), durationUnit);
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("%s (%s)", demandSource, userClassName);
+  }
+
+}
@@ -0,0 +1,108 @@
+package org.goplanit.tntp.converter.demands;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Set;
+
+import org.goplanit.tntp.utils.TntpBinaryFiles;
+
+/**
+ * Binary image of the parsed OD demands (pcu/h) of a TNTP trips file, stored as the non-zero cells in CSR layout in double or single
+ * precision. Reading maps the file and backs a {@link TntpSparseOdDemands} directly by the mapping, so no text is parsed and the cells
+ * are not copied onto the heap. Images are identified by a key derived from the content of the trips file and the settings that affect
+ * the parsed values.
+ *
+ * @author markr
+ *
+ */
+class TntpDemandsCache {
+
+  /** identifies a demands cache file */
+  private static final int MAGIC = 0x54444D43; // "TDMC"
+
+  /** format version, bump when layout changes so stale cache files are ignored */
+  private static final int VERSION = 1;
+
+  /** file extension of demand cache files */
+  static final String FILE_EXTENSION = ".tntpdemands";
+
+  /** total trips in pcu/h */
+  final double totalTripsPcuH;
+
+  /** the non-zero cells in pcu/h */
+  final TntpSparseOdDemands odDemands;
+
+  /**
+   * Constructor
+   *
+   * @param totalTripsPcuH total trips
+   * @param odDemands non-zero cells
+   */
+  TntpDemandsCache(double totalTripsPcuH, final TntpSparseOdDemands odDemands) {
+    this.totalTripsPcuH = totalTripsPcuH;
+    this.odDemands = odDemands;
+  }
+
+  /**
+   * Create the key identifying the cache file of the given inputs, a SHA-256 hash over the content of the trips file, the time period
+   * settings, the pcu of the mode (all affect the pcu/h values), the precision and the origin subset (which determines the parsed rows)
+   *
+   * @param tripsFile to use
+   * @param startTimeHours start of the time period since midnight in hours
+   * @param durationHours duration of the time period in hours
+   * @param pcu of the mode
+   * @param singlePrecision when true values are stored in single precision
+   * @param originSubset parsed origins, null when all origins are parsed
+   * @return key as hexadecimal string
+   * @throws IOException thrown if file cannot be read
+   */
+  static String createKey(final Path tripsFile, double startTimeHours, double durationHours, double pcu, boolean singlePrecision,
+      final Set<Long> originSubset) throws IOException {
+    final MessageDigest digest = TntpBinaryFiles.createDigest();
+    digest.update(ByteBuffer.allocate(Integer.BYTES + 3 * Double.BYTES + 1)
+        .putInt(VERSION).putDouble(startTimeHours).putDouble(durationHours).putDouble(pcu).put((byte) (singlePrecision ? 1 : 0)).array());
+    if (originSubset == null) {
+      digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(-1).array());
+    } else {
+      final long[] sortedOrigins = originSubset.stream().mapToLong(Long::longValue).sorted().toArray();
+      final ByteBuffer origins = ByteBuffer.allocate(Integer.BYTES + sortedOrigins.length * Long.BYTES).putInt(sortedOrigins.length);
+      for (final long origin : sortedOrigins) {
+        origins.putLong(origin);
+      }
+      digest.update(origins.array());
+    }
+    TntpBinaryFiles.update(digest, tripsFile);
+    return TntpBinaryFiles.toKey(digest);
+  }
+
+  /**
+   * Write cache to file. Written to a temporary file first which is moved in place afterwards, so concurrent readers never observe a
+   * partial file
+   *
+   * @param cacheFile to write to
+   * @param singlePrecision when true values are stored in single precision
+   * @throws IOException thrown if error
+   */
+  void write(final Path cacheFile, boolean singlePrecision) throws IOException {
+    TntpBinaryFiles.writeAtomically(cacheFile, FILE_EXTENSION, MAGIC, VERSION, out -> {
+      out.writeDouble(totalTripsPcuH);
+      odDemands.writeTo(out, singlePrecision);
+    });
+  }
+
+  /**
+   * Read a cache file by memory mapping it, the OD demands remain backed by the mapping
+   *
+   * @param cacheFile to read
+   * @return cache
+   * @throws IOException thrown when file cannot be read or is not a valid demands cache of the current version
+   */
+  static TntpDemandsCache read(final Path cacheFile) throws IOException {
+    final ByteBuffer buffer = TntpBinaryFiles.map(cacheFile, MAGIC, VERSION, "TNTP demands cache");
+    final double totalTripsPcuH = buffer.getDouble();
+    return new TntpDemandsCache(totalTripsPcuH, TntpSparseOdDemands.readFrom(buffer));
+  }
+
+}
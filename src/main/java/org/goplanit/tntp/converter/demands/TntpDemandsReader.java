@@ -1,18 +1,38 @@
 package org.goplanit.tntp.converter.demands;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import org.goplanit.converter.BaseReaderImpl;
 import org.goplanit.converter.demands.DemandsReader;
 import org.goplanit.demands.Demands;
 import org.goplanit.network.MacroscopicNetwork;
 import org.goplanit.od.demand.OdDemandMatrix;
+import org.goplanit.od.demand.OdDemands;
 import org.goplanit.tntp.TntpHeaderConstants;
+import org.goplanit.tntp.TntpMetadata;
+import org.goplanit.tntp.converter.zoning.TntpZoneAggregation;
 import org.goplanit.tntp.converter.zoning.TntpZoningReader;
+import org.goplanit.tntp.enums.OdDemandRepresentation;
+import org.goplanit.tntp.enums.ParsingMode;
+import org.goplanit.tntp.utils.TntpByteTokenizer;
+import org.goplanit.tntp.utils.TntpDenseIdIndex;
+import org.goplanit.tntp.utils.TntpInputSource;
 import org.goplanit.userclass.TravellerType;
 import org.goplanit.userclass.UserClass;
 import org.goplanit.utils.exceptions.PlanItException;
@@ -34,6 +54,12 @@ public class TntpDemandsReader extends BaseReaderImpl<Demands> implements Demand
   /** logger to use */
   private static final Logger LOGGER = Logger.getLogger(TntpDemandsReader.class.getCanonicalName());
   
+  /** prefix of an origin line in the demand file */
+  static final String ORIGIN_PREFIX = "Origin";
+  
+  /** relative deviation of the parsed trips from the total OD flow in the metadata above which a warning is logged */
+  private static final double TOTAL_OD_FLOW_TOLERANCE = 1e-4;
+  
   /**
    * settings to use
    */
@@ -50,6 +76,96 @@ public class TntpDemandsReader extends BaseReaderImpl<Demands> implements Demand
   
   /** the demands to populate */
   private Demands demandsToPopulate;               
+  
+  /** reference zones indexed by their TNTP id */
+  private TntpDenseIdIndex<Zone> zonesByTntpId;
+  
+  /** aggregation of the TNTP zones into the super zones of the reference zoning, null when not aggregated */
+  private TntpZoneAggregation zoneAggregation;
+  
+  /** reference (super) zones indexed by their super zone id, null when not aggregated */
+  private TntpDenseIdIndex<Zone> zonesBySuperZoneId;
+  
+  /** parsed OD demands (pcu/h) per time period when kept in sparse representation */
+  private final Map<TimePeriod, TntpSparseOdDemands> sparseOdDemands = new HashMap<>();
+
+  /** parsed OD demands (pcu/h) per time period and user class when multiple user classes are read for a time period */
+  private final Map<TimePeriod, Map<UserClass, TntpSparseOdDemands>> userClassOdDemands = new HashMap<>();
+  
+  /** number of demand files read */
+  private int numberOfDemandFiles;
+
+  /** mode the demands were populated for, null before reading */
+  private Mode demandsMode;
+
+  /** (first) time period the demands were populated for, null before reading */
+  private TimePeriod demandsTimePeriod;
+
+  /** pcu of the trips of the (single) demand file the demands were populated from, used to convert a delta consistently */
+  private double demandsPcu;
+
+  /** when false the OD demands are always registered on the PLANit demands, when true they may be retained in sparse representation */
+  private boolean retainSparseOdDemands;
+
+  /** total trips in pcu/h of the populated demands */
+  private double totalTripsPcuH;
+
+  /** trips in pcu/h dropped by the configured OD demand reduction */
+  private double droppedTripsPcuH;
+  
+  /** trips of the demand file parsed ahead of the demands, e.g., on a background thread, null when not prefetched */
+  private Future<TntpPrefetchedTrips> prefetchedTrips;
+    
+  /**
+   * A demand file to parse, with the user class and time period its OD demands are registered for, and the parse result
+   */
+  private static class DemandFileJob {
+    
+    /** the demand file */
+    final TntpDemandFile demandFile;
+    
+    /** user class of the demand file */
+    final UserClass userClass;
+    
+    /** time period of the demand file */
+    final TimePeriod timePeriod;
+    
+    /** pcu of the trips in the demand file */
+    final double pcu;
+    
+    /** parsed non-zero cells, null when populated directly into a dense matrix */
+    TntpSparseOdDemands parsedOdDemands;
+    
+    /** dense matrix populated directly, null otherwise */
+    OdDemandMatrix odDemandMatrix;
+    
+    /** total trips in pcu/h */
+    double totalTripsPcuH;
+    
+    /** total trips in pcu/h as parsed, i.e., before any OD demand reduction */
+    double parsedTripsPcuH;
+    
+    /** trips in pcu/h dropped by the OD demand reduction */
+    double droppedTripsPcuH;
+    
+    /** metadata of the demand file, null when not parsed (cached) */
+    TntpMetadata metadata;
+
+    /**
+     * Constructor
+     *
+     * @param demandFile to parse
+     * @param userClass to use
+     * @param timePeriod to use
+     * @param pcu of the trips
+     */
+    DemandFileJob(final TntpDemandFile demandFile, final UserClass userClass, final TimePeriod timePeriod, double pcu) {
+      this.demandFile = demandFile;
+      this.userClass = userClass;
+      this.timePeriod = timePeriod;
+      this.pcu = pcu;
+    }
+  }
     
   /** Validate settings and log found issue
    * 
@@ -75,50 +191,88 @@ public class TntpDemandsReader extends BaseReaderImpl<Demands> implements Demand
     return true;
   }
 
-  /** Create TNTP default (single) time period
+  /** Create TNTP time period, a TNTP trips file has a single time period, the first is the default time period
    * 
+   * @param timePeriodIndex index of the time period (starting at 1) in order of the demand files
+   * @param startAtMidNightSeconds start of the time period
+   * @param timePeriodDurationSeconds duration of the time period
    * @return created time period
    */
-  private TimePeriod creatAndRegistereDefaultTimePeriod() {
-    // TNTP only has one time period, define it here
-    long timePeriodDurationSeconds = Math.round(settings.getTimePeriodDuration() * settings.getTimePeriodDurationUnit().getMultiplier() * 3600);
-    long startAtMidNightSeconds = Math.round(settings.getStartTimeSinceMidNight() * settings.getStartTimeSinceMidNightUnit().getMultiplier() * 3600);
-    var timePeriod = demandsToPopulate.timePeriods.getFactory().registerNew("TNTP-period", startAtMidNightSeconds, timePeriodDurationSeconds);
+  private TimePeriod creatAndRegisterTimePeriod(int timePeriodIndex, long startAtMidNightSeconds, long timePeriodDurationSeconds) {
+    final String description = timePeriodIndex == 1 ? "TNTP-period" : "TNTP-period-" + timePeriodIndex;
+    var timePeriod = demandsToPopulate.timePeriods.getFactory().registerNew(description, startAtMidNightSeconds, timePeriodDurationSeconds);
     
     /* XML id */
     timePeriod.setXmlId(timePeriod.getDescription());
     /* external id */
-    timePeriod.setExternalId("1"); //TODO wrong because no external id is available, but tests use it --> refactor    
+    timePeriod.setExternalId(String.valueOf(timePeriodIndex)); //TODO wrong because no external id is available, but tests use it --> refactor    
     registerBySourceId(TimePeriod.class, timePeriod);
     
     return timePeriod;
   }
 
-  /** Create TNTP default (single) user class
+  /** Create TNTP user class, the default user class when no demand files are added
    * 
+   * @param userClassName name of the user class
    * @param travellerType to use for user class
    * @return created user class
    */  
-  private UserClass creatAndRegistereDefaultUserClass(TravellerType travellerType) {
+  private UserClass creatAndRegisterUserClass(final String userClassName, TravellerType travellerType) {
     if(referenceNetwork.getModes().size()>1) {
       throw new PlanItRunTimeException("TNTP demands only support single mode, found more than one on reference network");
     }
     var mode = referenceNetwork.getModes().getFirst();
-    var userClass = demandsToPopulate.userClasses.getFactory().registerNew("TNTP - user class", mode, travellerType);
+    var userClass = demandsToPopulate.userClasses.getFactory().registerNew(userClassName, mode, travellerType);
     userClass .setXmlId(String.valueOf(userClass .getId()));
     return userClass; 
   }
 
-  /** Create TNTP default (single) traveller type
+  /** Create TNTP traveller type for a user class, the default traveller type for the default user class
    * 
+   * @param userClassName name of the user class
    * @return created traveller
    */
-  private TravellerType creatAndRegisterDefaultTravellerType() {
-    var travellerType =  demandsToPopulate.travelerTypes.getFactory().registerNew("TNTP-traveller type");
+  private TravellerType creatAndRegisterTravellerType(final String userClassName) {
+    final String travellerTypeName = 
+        userClassName.equals(TntpDemandsReaderSettings.DEFAULT_USER_CLASS_NAME) ? "TNTP-traveller type" : userClassName;
+    var travellerType =  demandsToPopulate.travelerTypes.getFactory().registerNew(travellerTypeName);
     travellerType.setXmlId(String.valueOf(travellerType.getId()));
     return travellerType;
   }
 
+  /**
+   * Create a job per demand file, registering a time period per distinct start time and duration, and a traveller type and user class per
+   * distinct user class name, in order of the demand files
+   *
+   * @param mode to use
+   * @return demand file jobs in order of the demand files
+   */
+  private List<DemandFileJob> createDemandFileJobs(final Mode mode) {
+    final Map<List<Long>, TimePeriod> timePeriodsByStartAndDuration = new HashMap<>();
+    final Map<String, UserClass> userClassesByName = new HashMap<>();
+    final List<DemandFileJob> demandFileJobs = new ArrayList<>();
+    for (final TntpDemandFile demandFile : settings.getDemandFiles()) {
+      /* time period */
+      final long startAtMidNightSeconds = Math.round(settings.getStartTimeSinceMidNightHours(demandFile) * 3600);
+      final long timePeriodDurationSeconds = Math.round(settings.getTimePeriodDurationHours(demandFile) * 3600);
+      final TimePeriod timePeriod = timePeriodsByStartAndDuration.computeIfAbsent(List.of(startAtMidNightSeconds, timePeriodDurationSeconds), 
+          key -> creatAndRegisterTimePeriod(timePeriodsByStartAndDuration.size() + 1, startAtMidNightSeconds, timePeriodDurationSeconds));
+      
+      final UserClass userClass = userClassesByName.computeIfAbsent(demandFile.getUserClassName(), userClassName -> {
+        /* traveller type */
+        var travellerType = creatAndRegisterTravellerType(userClassName);
+        LOGGER.info("TNTP traveller type: "+ travellerType);
+        
+        /* user class */
+        var newUserClass = creatAndRegisterUserClass(userClassName, travellerType);
+        LOGGER.info("TNTP user class: "+ newUserClass);
+        return newUserClass;
+      });
+      demandFileJobs.add(new DemandFileJob(demandFile, userClass, timePeriod, demandFile.getPcu() != null ? demandFile.getPcu() : mode.getPcu()));
+    }
+    return demandFileJobs;
+  }
+
   /**
    * initialise the source id trackers and populate them for the network and or zoning references, 
    * so we can lay indices on the source id as well for quick lookups
@@ -129,8 +283,21 @@ public class TntpDemandsReader extends BaseReaderImpl<Demands> implements Demand
   private void initialiseParentSourceIdTrackers(MacroscopicNetwork network, Zoning zoning) {    
     initialiseSourceIdMap(Mode.class, Mode::getXmlId, network.getModes());
     
-    initialiseSourceIdMap(Zone.class, Zone::getExternalId);
-    getSourceIdContainer(Zone.class).addAll(zoning.getOdZones());
+    if(referenceZoningReader != null && referenceZoningReader.getZonesByTntpId() != null) {
+      zonesByTntpId = referenceZoningReader.getZonesByTntpId();
+      zoneAggregation = referenceZoningReader.getZoneAggregation();
+    }else {
+      zonesByTntpId = TntpDenseIdIndex.create(zoning.getOdZones(), Zone::getExternalId, zoning.getOdZones().size());
+      zoneAggregation = null;
+    }
+    zonesBySuperZoneId = null;
+    if (zoneAggregation != null) {
+      /* the external id of a super zone is the id in the mapping file, so index via a member zone instead */
+      zonesBySuperZoneId = new TntpDenseIdIndex<>(zoneAggregation.getNumberOfSuperZones());
+      for (int superZoneId = 1; superZoneId <= zoneAggregation.getNumberOfSuperZones(); ++superZoneId) {
+        zonesBySuperZoneId.register(superZoneId, zonesByTntpId.get(zoneAggregation.getMemberZoneIds(superZoneId)[0]));
+      }
+    }
   } 
   
   /**
@@ -142,29 +309,688 @@ public class TntpDemandsReader extends BaseReaderImpl<Demands> implements Demand
   }  
     
   /**
-   * Update the OD demand matrix with demands from a specified origin zone
+   * Collect reference zone by its TNTP id
+   * 
+   * @param zoneTntpId TNTP id of the zone
+   * @return zone
+   */
+  private Zone getZoneByTntpId(final long zoneTntpId) {
+    final Zone zone = zonesByTntpId.get(zoneTntpId);
+    if(zone == null) {
+      throw new PlanItRunTimeException("TNTP zone %d referenced in demand file not available in reference zoning", zoneTntpId);
+    }
+    return zone;
+  }
+    
+  /**
+   * Update the OD demands with demands from a specified origin zone
    *
    * @param demandToDestination Map of demands (value) from the current origin to specified
    *          destination zones (key)
-   * @param originZone the origin zone for all the demand values
-   * @param odDemandMatrix the ODDemandMatrix object to be updated
-   * @param mode to use
+   * @param originTntpId the TNTP id of the origin zone for all the demand values
+   * @param odDemands the OD demands to be updated
+   * @param pcu of the demand
    * @param timePeriod to use
    * @return trips for this origin in PcuH
    */
-  private double updateOdDemandMatrix(final Map<String, Double> demandToDestination, final Zone originZone, final OdDemandMatrix odDemandMatrix, Mode mode, final TimePeriod timePeriod ) {
+  private double updateOdDemandMatrix(final Map<String, Double> demandToDestination, final long originTntpId, final TntpOdCellConsumer odDemands, final double pcu, final TimePeriod timePeriod ) {
     
     double originProductionVehH = 0;
     for (final String destinationZoneSourceId : demandToDestination.keySet()) {
-      final Zone destinationZone = getBySourceId(Zone.class, destinationZoneSourceId);
+      final long destinationTntpId = Long.parseLong(destinationZoneSourceId);
+      getZoneByTntpId(destinationTntpId);
       Double destinationDemandVeh = demandToDestination.get(destinationZoneSourceId);
-      double destinationDemandVehH = destinationDemandVeh>0 ? (destinationDemandVeh*mode.getPcu())/timePeriod.getDurationHours() : 0; 
-      odDemandMatrix.setValue(originZone, destinationZone, destinationDemandVehH);
+      double destinationDemandVehH = destinationDemandVeh>0 ? (destinationDemandVeh*pcu)/timePeriod.getDurationHours() : 0; 
+      odDemands.accept(originTntpId, destinationTntpId, destinationDemandVehH);
       originProductionVehH += destinationDemandVehH; 
     }
     return originProductionVehH;
   }  
 
+  /**
+   * Verify the metadata of the demand file, i.e., the number of zones matches the reference zoning (prior to any zone aggregation)
+   *
+   * @param metadata to verify
+   * @return verified metadata
+   */
+  private TntpMetadata verifyMetadata(final TntpMetadata metadata) {
+    final String numberOfZonesEntry = metadata.get(TntpHeaderConstants.NUMBER_OF_ZONES_INDICATOR);
+    if (numberOfZonesEntry != null) {
+      final int numberOfZones = zoneAggregation != null ? zoneAggregation.getNumberOfZones() : referenceZoning.getOdZones().size();
+      if (numberOfZones != Integer.parseInt(numberOfZonesEntry)) {
+        throw new PlanItRunTimeException("Network file contained %d but demand file indicates %s zones", numberOfZones, numberOfZonesEntry);
+      }
+    }
+    return metadata;
+  }
+
+  /**
+   * Parse the demand file line by line using a Scanner, collecting the destinations per origin before updating the OD demands
+   *
+   * @param demandFileJob to parse, its metadata is set upon return
+   * @param odDemands to populate
+   * @return total trips in PcuH
+   * @throws Exception thrown if error
+   */
+  private double parseOdDemandsWithScanner(final DemandFileJob demandFileJob, final TntpOdCellConsumer odDemands) throws Exception {
+    final double pcu = demandFileJob.pcu;
+    final TimePeriod timePeriod = demandFileJob.timePeriod;
+    final TntpMetadata.Builder metadata = new TntpMetadata.Builder();
+    double totalTripsPcuH = 0;
+    try (Scanner scanner = new Scanner(demandFileJob.demandFile.getDemandSource().openStream())) {
+      boolean readingMetadata = true;
+      long originTntpId = -1;
+      Map<String, Double> demandToDestination = null;
+      /* reused for all origins, presized for one destination per zone so it never rehashes */
+      final Map<String, Double> originDemandToDestination = new HashMap<>((int) (zonesByTntpId.getMaxId() / 0.75f) + 1);
+      while (scanner.hasNextLine()) {
+        final String line = scanner.nextLine().trim();
+        final char firstChar = (line.isEmpty()) ? 'x' : line.charAt(0);
+        if (readingMetadata) {
+          readingMetadata = metadata.addEntry(line);
+          if (!readingMetadata) {
+            demandFileJob.metadata = verifyMetadata(metadata.build());
+          }
+        } else {
+          if ((!line.isEmpty()) && (firstChar != '~')) {
+            if (line.startsWith(ORIGIN_PREFIX)) {
+              if (demandToDestination != null) {
+                totalTripsPcuH += updateOdDemandMatrix(demandToDestination, originTntpId, odDemands, pcu, timePeriod);
+              }
+              final String[] cols = line.split("\\s+");
+              originTntpId = Long.parseLong(cols[1]);
+              getZoneByTntpId(originTntpId);
+              demandToDestination = originDemandToDestination;
+              demandToDestination.clear();
+            } else {
+              final String lineWithNoSpaces = line.replaceAll("\\s", "");
+              final String[] destDemand = lineWithNoSpaces.split("[:;]");
+              for (int i = 0; i < destDemand.length; i += 2) {
+                demandToDestination.put(destDemand[i], Double.parseDouble(destDemand[i + 1]));
+              }
+            }
+          }
+        }
+      }
+      totalTripsPcuH += updateOdDemandMatrix(demandToDestination, originTntpId, odDemands, pcu, timePeriod);
+    }
+    return totalTripsPcuH;
+  }
+
+  /**
+   * Read and verify the metadata of the demand file, tokenizer is positioned after the end of metadata line upon return
+   *
+   * @param tokenizer positioned at the start of the demand file
+   * @return metadata
+   */
+  private TntpMetadata readMappedMetadata(final TntpByteTokenizer tokenizer) {
+    return verifyMetadata(TntpMetadata.parse(tokenizer));
+  }
+
+  /**
+   * Parse the origin blocks covered by the tokenizer in place. Each {@code destination : value;} pair is written directly into the OD
+   * demands for the current origin, without intermediate Strings, maps or String based zone lookups
+   *
+   * @param tokenizer positioned at the start of an origin block (or blank lines preceding it)
+   * @param odDemands to populate
+   * @param pcu of the mode
+   * @param durationHours of the time period
+   * @return total trips in PcuH
+   * @throws PlanItException thrown if error
+   */
+  private double parseMappedOriginBlocks(final TntpByteTokenizer tokenizer, final TntpOdCellConsumer odDemands, final double pcu,
+      final double durationHours) throws PlanItException {
+    double totalTripsPcuH = 0;
+    long originTntpId = -1;
+    try {
+      while (tokenizer.hasRemaining()) {
+        if (!tokenizer.skipDelimiters() || tokenizer.peek() == '~') {
+          tokenizer.skipLine();
+          continue;
+        }
+        if (tokenizer.startsWith(ORIGIN_PREFIX)) {
+          tokenizer.skipToken();
+          tokenizer.skipDelimiters();
+          originTntpId = tokenizer.nextLong();
+          getZoneByTntpId(originTntpId);
+          tokenizer.skipLine();
+          continue;
+        }
+        if (originTntpId < 0) {
+          throw new PlanItException("Destination demand found before first origin in TNTP demand file");
+        }
+        /* destination : value ; pairs */
+        do {
+          final long destinationTntpId = tokenizer.nextLong();
+          getZoneByTntpId(destinationTntpId);
+          tokenizer.skipDelimiters();
+          final double destinationDemandVeh = tokenizer.nextDouble();
+          final double destinationDemandPcuH = destinationDemandVeh > 0 ? (destinationDemandVeh * pcu) / durationHours : 0;
+          odDemands.accept(originTntpId, destinationTntpId, destinationDemandPcuH);
+          totalTripsPcuH += destinationDemandPcuH;
+        } while (tokenizer.skipDelimiters());
+        tokenizer.skipLine();
+      }
+    } catch (final NumberFormatException e) {
+      throw new PlanItException(String.format("Invalid value in TNTP demand file for origin %d", originTntpId), e);
+    }
+    return totalTripsPcuH;
+  }
+
+  /**
+   * Parse the demand file by tokenizing its bytes in place, see {@link #parseMappedOriginBlocks(TntpByteTokenizer, TntpOdCellConsumer, double, double)}.
+   * Yields the same result as {@link #parseOdDemandsWithScanner(DemandFileJob, TntpOdCellConsumer)}
+   *
+   * @param tokenizer positioned at the start of the demand file
+   * @param demandFileJob to parse, its metadata is set upon return
+   * @param odDemands to populate
+   * @return total trips in PcuH
+   * @throws PlanItException thrown if error
+   */
+  private double parseMappedOdDemands(final TntpByteTokenizer tokenizer, final DemandFileJob demandFileJob, final TntpOdCellConsumer odDemands) 
+      throws PlanItException {
+    demandFileJob.metadata = readMappedMetadata(tokenizer);
+    return parseMappedOriginBlocks(tokenizer, odDemands, demandFileJob.pcu, demandFileJob.timePeriod.getDurationHours());
+  }
+
+  /**
+   * Obtain the origin index of the demand file. When enabled, the sidecar index is used if it is up to date with the demand file,
+   * otherwise the index is built by scanning the origin lines and (when enabled) persisted as sidecar for subsequent reads
+   *
+   * @param demandSource of the tokenizer
+   * @param tokenizer positioned after the metadata
+   * @return origin index
+   */
+  private TntpOriginIndex obtainOriginIndex(final TntpInputSource demandSource, final TntpByteTokenizer tokenizer) {
+    final Path demandFile = settings.isOriginIndexEnabled() ? demandSource.getFile() : null;
+    if (demandFile == null) {
+      return TntpOriginIndex.build(tokenizer, zonesByTntpId.getMaxId());
+    }
+
+    final Path indexFile = TntpOriginIndex.getSidecarFile(demandFile);
+    long fileSize = -1;
+    long lastModified = -1;
+    try {
+      fileSize = Files.size(demandFile);
+      lastModified = Files.getLastModifiedTime(demandFile).toMillis();
+      if (Files.exists(indexFile)) {
+        final TntpOriginIndex originIndex = TntpOriginIndex.read(indexFile, fileSize, lastModified);
+        LOGGER.fine(String.format("Using TNTP origin index %s", indexFile));
+        return originIndex;
+      }
+    } catch (final Exception e) {
+      LOGGER.info(String.format("Rebuilding TNTP origin index %s: %s", indexFile, e.getMessage()));
+    }
+
+    final TntpOriginIndex originIndex = TntpOriginIndex.build(tokenizer, zonesByTntpId.getMaxId());
+    try {
+      originIndex.write(indexFile, fileSize, lastModified);
+      LOGGER.info(String.format("Written TNTP origin index %s", indexFile));
+    } catch (final Exception e) {
+      LOGGER.warning(String.format("Unable to write TNTP origin index %s: %s", indexFile, e.getMessage()));
+    }
+    return originIndex;
+  }
+
+  /**
+   * Parse the demand file by origin block, optionally restricted to the configured origin subset. First the origin blocks are taken from the
+   * origin index, second the selected blocks are parsed, concurrently on the common fork join pool if requested. Each block populates its own
+   * (disjoint) row of the OD demands, so no synchronisation is required, the per origin totals are reduced afterwards. When an origin has more
+   * than one block the rows are not disjoint and the blocks are parsed sequentially instead. Without origin subset it yields the same demands
+   * as the sequential parsing modes
+   *
+   * @param demandFileJob to parse, its metadata is set upon return
+   * @param odDemands to populate, rows must support concurrent population when parallel
+   * @param parallel when true parse the blocks in parallel
+   * @return total trips in PcuH
+   * @throws Exception thrown if error
+   */
+  private double parseIndexedOdDemands(final DemandFileJob demandFileJob, final TntpOdCellConsumer odDemands, boolean parallel) throws Exception {
+    final TntpInputSource demandSource = demandFileJob.demandFile.getDemandSource();
+    final double pcu = demandFileJob.pcu;
+    final ByteBuffer buffer = demandSource.readFully();
+    final TntpByteTokenizer tokenizer = new TntpByteTokenizer(buffer);
+    demandFileJob.metadata = readMappedMetadata(tokenizer);
+    final int originBlocksStart = tokenizer.getPosition();
+
+    /* phase one: locate origin blocks */
+    final long startTime = System.currentTimeMillis();
+    final TntpOriginIndex originIndex = obtainOriginIndex(demandSource, tokenizer);
+    if (originIndex.getBlockStart(0) > originBlocksStart) {
+      /* content between metadata and first origin, parse sequentially so it is validated identically to the other modes */
+      parseMappedOriginBlocks(new TntpByteTokenizer(buffer, originBlocksStart, originIndex.getBlockStart(0)), odDemands, 0, 1);
+    }
+    IntStream blocks = IntStream.range(0, originIndex.size());
+    final Set<Long> originSubset = settings.getOriginSubset();
+    if (originSubset != null) {
+      blocks = blocks.filter(block -> originSubset.contains(originIndex.getOriginId(block)));
+    }
+    final int[] selectedBlocks = blocks.toArray();
+    if (originSubset != null) {
+      LOGGER.info(String.format("Parsing %d of %d TNTP origins in origin subset", selectedBlocks.length, originIndex.size()));
+    }
+
+    /* phase two: parse origin blocks, each into its own row */
+    final boolean parallelBlocks = parallel && !originIndex.hasDuplicateOrigins();
+    if (parallel && !parallelBlocks) {
+      LOGGER.warning(String.format("TNTP demand file %s has more than one block for an origin, parsing origin blocks sequentially", 
+          demandFileJob.demandFile));
+    }
+    final double durationHours = demandFileJob.timePeriod.getDurationHours();
+    final double[] totalTripsPcuHPerOrigin = new double[selectedBlocks.length];
+    final IntStream selection = IntStream.range(0, selectedBlocks.length);
+    (parallelBlocks ? selection.parallel() : selection).forEach( selectionIndex -> {
+      final int block = selectedBlocks[selectionIndex];
+      try {
+        totalTripsPcuHPerOrigin[selectionIndex] = parseMappedOriginBlocks(
+            new TntpByteTokenizer(buffer, originIndex.getBlockStart(block), originIndex.getBlockEnd(block)), odDemands, pcu, durationHours);
+      } catch (PlanItException e) {
+        throw new PlanItRunTimeException(String.format("Error parsing TNTP origin block %d", block), e);
+      }
+    });
+    LOGGER.fine(String.format("Parsed %d TNTP origin blocks%s in %d ms", 
+        totalTripsPcuHPerOrigin.length, parallelBlocks ? " in parallel" : "", System.currentTimeMillis() - startTime));
+
+    /* reduce in file order */
+    double totalTripsPcuH = 0;
+    for (final double originTripsPcuH : totalTripsPcuHPerOrigin) {
+      totalTripsPcuH += originTripsPcuH;
+    }
+    return totalTripsPcuH;
+  }
+
+  /**
+   * Collect the prefetched trips, waiting for the prefetch to complete if needed. Prefetched trips are only used once
+   *
+   * @return prefetched trips, null when not available or the prefetch failed
+   */
+  private TntpPrefetchedTrips collectPrefetchedTrips() {
+    if (prefetchedTrips == null) {
+      return null;
+    }
+    try {
+      return prefetchedTrips.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PlanItRunTimeException("Interrupted while waiting for prefetched TNTP trips", e);
+    } catch (final ExecutionException e) {
+      LOGGER.warning(String.format("Prefetching TNTP trips failed, parsing demand file instead: %s", e.getCause().getMessage()));
+      return null;
+    } finally {
+      prefetchedTrips = null;
+    }
+  }
+
+  /**
+   * Bind prefetched trips to the reference zones, converting them to pcu/h in the same way as parsing the demand file would, restricted
+   * to the configured origin subset (if any)
+   *
+   * @param trips prefetched trips of the demand file
+   * @param demandFileJob to bind for, its metadata is set upon return
+   * @param odDemands to populate
+   * @return total trips in PcuH
+   */
+  private double bindPrefetchedTrips(final TntpPrefetchedTrips trips, final DemandFileJob demandFileJob, final TntpOdCellConsumer odDemands) {
+    final long startTime = System.currentTimeMillis();
+    if (trips.getOutOfRangeZoneId() >= 0) {
+      getZoneByTntpId(trips.getOutOfRangeZoneId());
+    }
+    demandFileJob.metadata = verifyMetadata(trips.getMetadata());
+    
+    final double pcu = demandFileJob.pcu;
+    final double durationHours = demandFileJob.timePeriod.getDurationHours();
+    final Set<Long> originSubset = settings.getOriginSubset();
+    final double[] totalTripsPcuH = {0};
+    for (long originTntpId = 1; originTntpId <= trips.getTrips().getMaxZoneId(); ++originTntpId) {
+      if (trips.getTrips().getNumberOfNonZeros(originTntpId) == 0 || (originSubset != null && !originSubset.contains(originTntpId))) {
+        continue;
+      }
+      getZoneByTntpId(originTntpId);
+      trips.getTrips().forEachNonZero(originTntpId, (origin, destinationTntpId, destinationDemandVeh) -> {
+        getZoneByTntpId(destinationTntpId);
+        final double destinationDemandPcuH = destinationDemandVeh > 0 ? (destinationDemandVeh * pcu) / durationHours : 0;
+        odDemands.accept(origin, destinationTntpId, destinationDemandPcuH);
+        totalTripsPcuH[0] += destinationDemandPcuH;
+      });
+    }
+    LOGGER.fine(String.format("Bound %d prefetched TNTP trips in %d ms", 
+        trips.getTrips().getNumberOfNonZeros(), System.currentTimeMillis() - startTime));
+    return totalTripsPcuH[0];
+  }
+
+  /**
+   * Parse the demand file with the configured parsing mode. Origin indexed parsing (byte level) is used when the origin index or an
+   * origin subset is configured. Prefetched trips are bound instead when available
+   *
+   * @param demandFileJob to parse, its metadata is set upon return
+   * @param odDemands to populate
+   * @return total trips in PcuH
+   * @throws Exception thrown if error
+   */
+  private double parseOdDemands(final DemandFileJob demandFileJob, final TntpOdCellConsumer odDemands) throws Exception {
+    final TntpPrefetchedTrips trips = collectPrefetchedTrips();
+    if (trips != null) {
+      return bindPrefetchedTrips(trips, demandFileJob, odDemands);
+    }
+    final boolean parallel = settings.getParsingMode() == ParsingMode.PARALLEL;
+    if (parallel || settings.isOriginIndexEnabled() || settings.getOriginSubset() != null) {
+      return parseIndexedOdDemands(demandFileJob, odDemands, parallel);
+    } else if (settings.getParsingMode() == ParsingMode.SCANNER) {
+      return parseOdDemandsWithScanner(demandFileJob, odDemands);
+    }
+    return parseMappedOdDemands(new TntpByteTokenizer(demandFileJob.demandFile.getDemandSource().readFully()), demandFileJob, odDemands);
+  }
+
+  /**
+   * Register the non-zero cells in the configured representation. Dense (or automatic above the sparse density threshold) converts them
+   * to an OD matrix registered on the demands, otherwise the sparse OD demands are retained. Sparse OD demands are only retained when
+   * read via {@link #readSparseOdDemands()}, when the PLANit demands are populated automatic always registers an OD matrix
+   *
+   * @param parsedOdDemands the non-zero cells, by super zone id when zones are aggregated
+   * @param mode to use
+   * @param timePeriod to use
+   */
+  private void registerParsedOdDemands(final TntpSparseOdDemands parsedOdDemands, final Mode mode, final TimePeriod timePeriod) {
+    boolean dense = settings.getOdDemandRepresentation() == OdDemandRepresentation.DENSE;
+    if (!dense) {
+      final double density = parsedOdDemands.getDensity(referenceZoning.getOdZones().size());
+      LOGGER.info(String.format("TNTP OD demands have %d non-zero cells, density %.4f", parsedOdDemands.getNumberOfNonZeros(), density));
+      if (settings.getOdDemandRepresentation() == OdDemandRepresentation.AUTOMATIC && density >= settings.getSparseDensityThreshold()) {
+        LOGGER.info(String.format("TNTP OD demand density above sparse threshold %.4f, using dense OD matrix", settings.getSparseDensityThreshold()));
+        dense = true;
+      } else if (!retainSparseOdDemands) {
+        LOGGER.info("TNTP OD demands populate PLANit demands, using dense OD matrix");
+        dense = true;
+      }
+    }
+
+    if (dense) {
+      final OdDemandMatrix odDemandMatrix = new OdDemandMatrix(referenceZoning.getOdZones());
+      final TntpDenseIdIndex<Zone> zonesById = zoneAggregation != null ? zonesBySuperZoneId : zonesByTntpId;
+      parsedOdDemands.forEachNonZero( (originId, destinationId, value) -> 
+          odDemandMatrix.setValue(zonesById.get(originId), zonesById.get(destinationId), value));
+      demandsToPopulate.registerOdDemandPcuHour(timePeriod, mode, odDemandMatrix);
+      return;
+    }
+
+    LOGGER.info("TNTP OD demands kept in sparse representation, available via the demands reader instead of the PLANit demands");
+    this.sparseOdDemands.put(timePeriod, parsedOdDemands);
+  }
+
+  /**
+   * Reduce the parsed OD demands by the configured minimum number of trips per OD cell and origin sampling, reporting the dropped volume
+   *
+   * @param parsedOdDemands the non-zero cells
+   * @param demandFileJob the cells belong to, totals are updated
+   * @return reduced OD demands
+   */
+  private TntpSparseOdDemands reduceOdDemands(final TntpSparseOdDemands parsedOdDemands, final DemandFileJob demandFileJob) {
+    final TntpOdDemandsReducer reducer = new TntpOdDemandsReducer(settings.getMinimumOdTrips(), settings.getOriginSamplingFraction(),
+        settings.getOriginSamplingSeed(), settings.isRedistributeDroppedTrips());
+    final TntpSparseOdDemands reducedOdDemands = reducer.reduce(parsedOdDemands, demandFileJob.timePeriod.getDurationHours() / demandFileJob.pcu);
+    demandFileJob.droppedTripsPcuH = reducer.getDroppedTripsPcuH();
+    demandFileJob.totalTripsPcuH += reducer.getRedistributedTripsPcuH() - reducer.getDroppedTripsPcuH();
+    LOGGER.info(String.format("TNTP OD demand reduction of %s dropped %d of %d non-zero cells (%d origins), %.2f (Pcu/h) of which %.2f (Pcu/h) redistributed",
+        demandFileJob.demandFile, reducer.getNumberOfDroppedCells(), parsedOdDemands.getNumberOfNonZeros(), reducer.getNumberOfDroppedOrigins(), 
+        reducer.getDroppedTripsPcuH(), reducer.getRedistributedTripsPcuH()));
+    return reducedOdDemands;
+  }
+
+  /**
+   * Sum the parsed OD demands over the super zones of the zone aggregation
+   *
+   * @param parsedOdDemands the non-zero cells by TNTP zone id
+   * @return the non-zero cells by super zone id
+   */
+  private TntpSparseOdDemands aggregateOdDemands(final TntpSparseOdDemands parsedOdDemands) {
+    final int numberOfSuperZones = zoneAggregation.getNumberOfSuperZones();
+    final TntpSparseOdDemands.Builder aggregatedOdDemands = new TntpSparseOdDemands.Builder(numberOfSuperZones);
+    final double[] superZoneRow = new double[numberOfSuperZones + 1];
+    /* super destinations with a non-zero cell in the current row, so only those are emitted and reset */
+    final boolean[] touched = new boolean[numberOfSuperZones + 1];
+    final int[] touchedSuperDestinationIds = new int[numberOfSuperZones];
+    final int[] numberOfTouched = new int[1];
+    for (int superOriginId = 1; superOriginId <= numberOfSuperZones; ++superOriginId) {
+      for (final int originTntpId : zoneAggregation.getMemberZoneIds(superOriginId)) {
+        parsedOdDemands.forEachNonZero(originTntpId, (originId, destinationTntpId, value) -> {
+          final int superDestinationId = zoneAggregation.getSuperZoneId(destinationTntpId);
+          if (!touched[superDestinationId]) {
+            touched[superDestinationId] = true;
+            touchedSuperDestinationIds[numberOfTouched[0]++] = superDestinationId;
+          }
+          superZoneRow[superDestinationId] += value;
+        });
+      }
+      Arrays.sort(touchedSuperDestinationIds, 0, numberOfTouched[0]);
+      for (int index = 0; index < numberOfTouched[0]; ++index) {
+        final int superDestinationId = touchedSuperDestinationIds[index];
+        aggregatedOdDemands.add(superOriginId, superDestinationId, superZoneRow[superDestinationId]);
+        superZoneRow[superDestinationId] = 0;
+        touched[superDestinationId] = false;
+      }
+      numberOfTouched[0] = 0;
+    }
+    final TntpSparseOdDemands superZoneOdDemands = aggregatedOdDemands.build();
+    LOGGER.info(String.format("TNTP OD demands aggregated from %d to %d zones, %d to %d non-zero cells", zoneAggregation.getNumberOfZones(), 
+        zoneAggregation.getNumberOfSuperZones(), parsedOdDemands.getNumberOfNonZeros(), superZoneOdDemands.getNumberOfNonZeros()));
+    return superZoneOdDemands;
+  }
+
+  /**
+   * Determine the cache file for the current demand file and settings in the configured demand cache directory. Only file based inputs
+   * can be fingerprinted, stream based inputs disable the cache
+   *
+   * @param demandFileJob to locate cache file for
+   * @return cache file, null when it cannot be determined (logged)
+   */
+  private Path locateCacheFile(final DemandFileJob demandFileJob) {
+    final Path demandFile = demandFileJob.demandFile.getDemandSource().getFile();
+    if (demandFile == null) {
+      LOGGER.warning("TNTP demand cache requires a file based demand input, parsing demand file instead");
+      return null;
+    }
+    try {
+      final Path cacheDirectory = Files.createDirectories(Path.of(settings.getDemandCacheDirectory()));
+      final String key = TntpDemandsCache.createKey(demandFile,
+          settings.getStartTimeSinceMidNightHours(demandFileJob.demandFile), settings.getTimePeriodDurationHours(demandFileJob.demandFile),
+          demandFileJob.pcu, settings.isDemandCacheSinglePrecision(), settings.getOriginSubset());
+      return cacheDirectory.resolve("tntp-demands-" + key + TntpDemandsCache.FILE_EXTENSION);
+    } catch (final Exception e) {
+      LOGGER.warning(String.format("Unable to use TNTP demand cache, parsing demand file instead: %s", e.getMessage()));
+      return null;
+    }
+  }
+
+  /**
+   * Read cache file if it exists
+   *
+   * @param cacheFile to read
+   * @return cache, null when not available or invalid (logged)
+   */
+  private static TntpDemandsCache readCache(final Path cacheFile) {
+    if (cacheFile == null || !Files.exists(cacheFile)) {
+      return null;
+    }
+    try {
+      final long startTime = System.currentTimeMillis();
+      final TntpDemandsCache cache = TntpDemandsCache.read(cacheFile);
+      LOGGER.info(String.format("Loaded TNTP demand cache %s in %d ms", cacheFile, System.currentTimeMillis() - startTime));
+      return cache;
+    } catch (final Exception e) {
+      LOGGER.warning(String.format("Ignoring invalid TNTP demand cache %s: %s", cacheFile, e.getMessage()));
+      return null;
+    }
+  }
+
+  /**
+   * Write cache file, failure is logged but does not affect the parsed demands
+   *
+   * @param cacheFile to write to
+   * @param cache to write
+   */
+  private void writeCache(final Path cacheFile, final TntpDemandsCache cache) {
+    try {
+      cache.write(cacheFile, settings.isDemandCacheSinglePrecision());
+      LOGGER.info(String.format("Written TNTP demand cache %s", cacheFile));
+    } catch (final Exception e) {
+      LOGGER.warning(String.format("Unable to write TNTP demand cache %s: %s", cacheFile, e.getMessage()));
+    }
+  }
+
+  /**
+   * Parse a demand file, from its cache when available. The OD demands are populated directly into a dense matrix when requested,
+   * nothing has to be done with the non-zero cells first and the cells are parsed on a single thread (the OD matrix is not thread safe),
+   * otherwise the non-zero cells are collected (and cached, reduced and aggregated)
+   *
+   * @param demandFileJob to parse
+   * @param directDense when true a dense matrix may be populated directly
+   * @throws Exception thrown if error
+   */
+  private void parseDemandFile(final DemandFileJob demandFileJob, boolean directDense) throws Exception {
+    final Path cacheFile = settings.getDemandCacheDirectory() == null ? null : locateCacheFile(demandFileJob);
+    final TntpDemandsCache cache = readCache(cacheFile);
+    TntpSparseOdDemands parsedOdDemands = null;
+    if (cache != null) {
+      demandFileJob.totalTripsPcuH = cache.totalTripsPcuH;
+      parsedOdDemands = cache.odDemands;
+    } else if (directDense && settings.getOdDemandRepresentation() == OdDemandRepresentation.DENSE && cacheFile == null 
+        && !settings.isOdDemandReductionEnabled() && zoneAggregation == null && settings.getParsingMode() != ParsingMode.PARALLEL) {
+      /* dense matrix populated directly */
+      final OdDemandMatrix odDemandMatrix = new OdDemandMatrix(referenceZoning.getOdZones());
+      demandFileJob.totalTripsPcuH = parseOdDemands(demandFileJob, (originTntpId, destinationTntpId, value) -> 
+          odDemandMatrix.setValue(zonesByTntpId.get(originTntpId), zonesByTntpId.get(destinationTntpId), value));
+      demandFileJob.odDemandMatrix = odDemandMatrix;
+    } else {
+      /* collect non-zero cells first (rows may be added concurrently), decide on representation afterwards */
+      final TntpSparseOdDemands.Builder sparseOdDemandsBuilder = new TntpSparseOdDemands.Builder(zonesByTntpId.getMaxId());
+      demandFileJob.totalTripsPcuH = parseOdDemands(demandFileJob, sparseOdDemandsBuilder::add);
+      parsedOdDemands = sparseOdDemandsBuilder.build();
+      if (cacheFile != null) {
+        writeCache(cacheFile, new TntpDemandsCache(demandFileJob.totalTripsPcuH, parsedOdDemands));
+      }
+    }
+    demandFileJob.parsedTripsPcuH = demandFileJob.totalTripsPcuH;
+    
+    if (parsedOdDemands != null) {
+      if (settings.isOdDemandReductionEnabled()) {
+        /* reduce after caching, so the cache remains valid for any reduction */
+        parsedOdDemands = reduceOdDemands(parsedOdDemands, demandFileJob);
+      }
+      if (zoneAggregation != null) {
+        parsedOdDemands = aggregateOdDemands(parsedOdDemands);
+      }
+      demandFileJob.parsedOdDemands = parsedOdDemands;
+    }
+    LOGGER.info(String.format("TNTP total OD Demand %s: %.2f (Pcu/h), %.2f (veh/h), %.2f (veh)", demandFileJob.demandFile,
+        demandFileJob.totalTripsPcuH, demandFileJob.totalTripsPcuH/demandFileJob.pcu, 
+        (demandFileJob.totalTripsPcuH*demandFileJob.timePeriod.getDurationHours())/demandFileJob.pcu));
+    if (demandFileJob.metadata != null) {
+      TntpMetadata.cache(demandFileJob.demandFile.getDemandSource(), demandFileJob.metadata);
+      verifyTotalOdFlow(demandFileJob);
+    }
+  }
+
+  /**
+   * Verify the parsed trips of a demand file against the total OD flow in its metadata (if any), a deviation is logged but otherwise
+   * ignored. The trips as parsed are verified, so any OD demand reduction applied afterwards does not count as a deviation. Not verified
+   * when only an origin subset is parsed
+   *
+   * @param demandFileJob parsed demand file
+   */
+  private void verifyTotalOdFlow(final DemandFileJob demandFileJob) {
+    final double totalOdFlow = demandFileJob.metadata.getTotalOdFlow();
+    if (Double.isNaN(totalOdFlow) || settings.getOriginSubset() != null) {
+      return;
+    }
+    final double parsedTrips = (demandFileJob.parsedTripsPcuH * demandFileJob.timePeriod.getDurationHours()) / demandFileJob.pcu;
+    if (Math.abs(parsedTrips - totalOdFlow) > TOTAL_OD_FLOW_TOLERANCE * Math.max(1, Math.abs(totalOdFlow))) {
+      LOGGER.warning(String.format("TNTP demand file %s indicates a total OD flow of %.2f, but %.2f trips were parsed", 
+          demandFileJob.demandFile, totalOdFlow, parsedTrips));
+    }
+  }
+
+  /**
+   * Register the parsed OD demands of the demand files of a time period. PLANit demands hold a single OD demand matrix per time period
+   * and mode, so the OD demands (pcu/h) of multiple demand files are summed, the OD demands per user class are retained by this reader
+   *
+   * @param demandFileJobs parsed demand files of the time period
+   * @param mode to use
+   * @param timePeriod to use
+   */
+  private void registerDemandFileJobs(final List<DemandFileJob> demandFileJobs, final Mode mode, final TimePeriod timePeriod) {
+    if (demandFileJobs.size() == 1 && demandFileJobs.get(0).odDemandMatrix != null) {
+      demandsToPopulate.registerOdDemandPcuHour(timePeriod, mode, demandFileJobs.get(0).odDemandMatrix);
+    } else {
+      final List<TntpSparseOdDemands> parsedOdDemands = new ArrayList<>(demandFileJobs.size());
+      demandFileJobs.forEach( demandFileJob -> parsedOdDemands.add(demandFileJob.parsedOdDemands));
+      registerParsedOdDemands(parsedOdDemands.size() == 1 ? parsedOdDemands.get(0) : TntpSparseOdDemands.sum(parsedOdDemands), mode, timePeriod);
+    }
+    
+    for (final DemandFileJob demandFileJob : demandFileJobs) {
+      totalTripsPcuH += demandFileJob.totalTripsPcuH;
+      droppedTripsPcuH += demandFileJob.droppedTripsPcuH;
+      if (demandFileJobs.size() > 1) {
+        userClassOdDemands.computeIfAbsent(timePeriod, tp -> new HashMap<>()).merge(
+            demandFileJob.userClass, demandFileJob.parsedOdDemands, (first, second) -> TntpSparseOdDemands.sum(List.of(first, second)));
+      }
+    }
+  }
+
+  /**
+   * Overwrite the rows of the delta origins in the populated dense OD demands
+   *
+   * @param odDemands populated OD demands to update
+   * @param deltaOdDemands the non-zero cells of the delta
+   * @param deltaOrigins TNTP ids of the origins in the delta
+   * @return change in total trips in PcuH
+   */
+  private double applyDeltaToOdDemands(final OdDemands odDemands, final TntpSparseOdDemands deltaOdDemands, final long[] deltaOrigins) {
+    double deltaTripsPcuH = 0;
+    for (final long originTntpId : deltaOrigins) {
+      final Zone origin = zonesByTntpId.get(originTntpId);
+      for (int destinationTntpId = 0; destinationTntpId <= zonesByTntpId.getMaxId(); ++destinationTntpId) {
+        final Zone destination = zonesByTntpId.get(destinationTntpId);
+        if (destination == null) {
+          continue;
+        }
+        final Double currentValue = odDemands.getValue(origin, destination);
+        final double value = deltaOdDemands.getValue(originTntpId, destinationTntpId);
+        deltaTripsPcuH += value - (currentValue == null ? 0 : currentValue);
+        odDemands.setValue(origin, destination, value);
+      }
+    }
+    return deltaTripsPcuH;
+  }
+
+  /**
+   * Create sparse OD demands where the rows of the delta origins are replaced by those of the delta
+   *
+   * @param sparseOdDemands populated sparse OD demands, replaced upon return
+   * @param deltaOdDemands the non-zero cells of the delta
+   * @param deltaOrigins TNTP ids of the origins in the delta
+   * @return change in total trips in PcuH
+   */
+  private double applyDeltaToSparseOdDemands(final TntpSparseOdDemands sparseOdDemands, final TntpSparseOdDemands deltaOdDemands, 
+      final long[] deltaOrigins) {
+    final Set<Long> replacedOrigins = new HashSet<>();
+    double deltaTripsPcuH = 0;
+    for (final long originTntpId : deltaOrigins) {
+      if (replacedOrigins.add(originTntpId)) {
+        final double[] rowTrips = new double[2];
+        sparseOdDemands.forEachNonZero(originTntpId, (origin, destination, value) -> rowTrips[0] += value);
+        deltaOdDemands.forEachNonZero(originTntpId, (origin, destination, value) -> rowTrips[1] += value);
+        deltaTripsPcuH += rowTrips[1] - rowTrips[0];
+      }
+    }
+
+    final TntpSparseOdDemands.Builder updatedOdDemands = new TntpSparseOdDemands.Builder(zonesByTntpId.getMaxId());
+    for (int originTntpId = 0; originTntpId <= sparseOdDemands.getMaxZoneId(); ++originTntpId) {
+      (replacedOrigins.contains((long) originTntpId) ? deltaOdDemands : sparseOdDemands).forEachNonZero(originTntpId, updatedOdDemands::add);
+    }
+    this.sparseOdDemands.put(demandsTimePeriod, updatedOdDemands.build());
+    return deltaTripsPcuH;
+  }
+
   /** Constructor 
    * 
    * @param settings to use
@@ -204,10 +1030,14 @@ public class TntpDemandsReader extends BaseReaderImpl<Demands> implements Demand
   }
 
   /**
-   * {@inheritDoc}
-   */  
-  @Override
-  public Demands read() {
+   * Read the demands, retaining the OD demands in sparse representation (if so configured) when sparse OD demands are allowed
+   *
+   * @param retainSparseOdDemands when false the OD demands are always registered on the PLANit demands
+   * @return populated demands
+   */
+  private Demands readDemands(boolean retainSparseOdDemands) {
+    this.retainSparseOdDemands = retainSparseOdDemands;
+
     /* prep reference network and zoning to populate based on network reader if that is what we use */
     if(referenceZoningReader != null && referenceZoning == null){
       this.referenceZoning = referenceZoningReader.read();
@@ -225,73 +1055,81 @@ public class TntpDemandsReader extends BaseReaderImpl<Demands> implements Demand
     
     initialiseSourceIdTrackers();
     initialiseParentSourceIdTrackers(referenceNetwork, referenceZoning);
+    sparseOdDemands.clear();
+    userClassOdDemands.clear();
+    demandsMode = null;
+    demandsTimePeriod = null;
 
-    /* time period */
-    var timePeriod = creatAndRegistereDefaultTimePeriod();
-
-    /* traveller type */
-    var travellerType = creatAndRegisterDefaultTravellerType();
-    LOGGER.info("TNTP traveller type: "+ travellerType);
-    
-    /* user class */
-    var userClass = creatAndRegistereDefaultUserClass(travellerType);
-    LOGGER.info("TNTP traveller type: "+ userClass);
-    
     var mode = referenceNetwork.getTransportLayers().getFirst().getFirstSupportedMode();
+
+    /* time period, traveller type and user class per demand file */
+    final List<DemandFileJob> demandFileJobs = createDemandFileJobs(mode);
+    final Map<TimePeriod, List<DemandFileJob>> demandFileJobsByTimePeriod = new LinkedHashMap<>();
+    demandFileJobs.forEach( demandFileJob -> 
+        demandFileJobsByTimePeriod.computeIfAbsent(demandFileJob.timePeriod, timePeriod -> new ArrayList<>()).add(demandFileJob));
+    numberOfDemandFiles = demandFileJobs.size();
+    if (prefetchedTrips != null && numberOfDemandFiles > 1) {
+      LOGGER.warning("Prefetched TNTP trips ignored, only supported when reading a single demand file");
+      prefetchedTrips = null;
+    }
         
-    double totalTripsPcuH = 0;
-    try (Scanner scanner = new Scanner(new File(settings.getDemandFileLocation()).getCanonicalFile())) {
-      boolean readingMetadata = true;
-      Zone originZone = null;
-      Map<String, Double> demandToDestination = null;
-      final OdDemandMatrix odDemandMatrix = new OdDemandMatrix(referenceZoning.getOdZones());
-      while (scanner.hasNextLine()) {
-        final String line = scanner.nextLine().trim();
-        final char firstChar = (line.isEmpty()) ? 'x' : line.charAt(0);
-        final boolean atEndOfMetadata = line.equals(TntpHeaderConstants.END_OF_METADATA_INDICATOR);
-        if (atEndOfMetadata) {
-          readingMetadata = false;
+    totalTripsPcuH = 0;
+    droppedTripsPcuH = 0;
+    try {
+      /* demand files are parsed concurrently, each into its own OD demands, the zone indices are only read */
+      (demandFileJobs.size() == 1 ? demandFileJobs.stream() : demandFileJobs.parallelStream()).forEach( demandFileJob -> {
+        try {
+          parseDemandFile(demandFileJob, demandFileJobsByTimePeriod.get(demandFileJob.timePeriod).size() == 1);
+        } catch (final Exception e) {
+          throw new PlanItRunTimeException(String.format("Error parsing TNTP demand file %s", demandFileJob.demandFile), e);
         }
-        if (readingMetadata) {
-          if (line.startsWith(TntpHeaderConstants.NUMBER_OF_ZONES_INDICATOR)) {
-            final String subLine = line.substring(TntpHeaderConstants.NUMBER_OF_ZONES_INDICATOR.length()).trim();
-            if (referenceZoning.getOdZones().size() != Integer.parseInt(subLine)) {
-              throw new PlanItRunTimeException("Network file contained %d but demand file indicates %s zones",
-                  referenceZoning.getOdZones().size(), subLine);
-            }
-          }
-        } else if (!atEndOfMetadata) {
-          if ((!line.isEmpty()) && (firstChar != '~')) {
-            if (line.startsWith("Origin")) {
-              if (demandToDestination != null) {
-                totalTripsPcuH += updateOdDemandMatrix(demandToDestination, originZone, odDemandMatrix, mode, timePeriod);
-              }
-              final String[] cols = line.split("\\s+");
-              originZone = getBySourceId(Zone.class, cols[1]);
-              demandToDestination = new HashMap<>();
-            } else {
-              final String lineWithNoSpaces = line.replaceAll("\\s", "");
-              final String[] destDemand = lineWithNoSpaces.split("[:;]");
-              for (int i = 0; i < destDemand.length; i += 2) {
-                demandToDestination.put(destDemand[i], Double.parseDouble(destDemand[i + 1]));
-              }
-            }
-          }
-        }
-      }
-      scanner.close();
-      totalTripsPcuH += updateOdDemandMatrix(demandToDestination, originZone, odDemandMatrix, mode, timePeriod);
-      demandsToPopulate.registerOdDemandPcuHour(timePeriod, mode, odDemandMatrix);
+      });
+      demandFileJobsByTimePeriod.forEach( (timePeriod, timePeriodJobs) -> registerDemandFileJobs(timePeriodJobs, mode, timePeriod));
     } catch (final Exception e) {
       LOGGER.severe(e.getMessage());
       throw new PlanItRunTimeException("Error when populating demands in TNTP",e);
     }
-    LOGGER.info(String.format("TNTP total OD Demand: %.2f (Pcu/h), %.2f (veh/h), %.2f (veh)",
-        totalTripsPcuH, totalTripsPcuH/mode.getPcu(), (totalTripsPcuH*timePeriod.getDurationHours())/mode.getPcu()));
+    if (demandFileJobs.size() > 1) {
+      LOGGER.info(String.format("TNTP total OD Demand of %d demand files in %d time periods: %.2f (Pcu/h)", 
+          demandFileJobs.size(), demandFileJobsByTimePeriod.size(), totalTripsPcuH));
+    }
+    this.demandsMode = mode;
+    this.demandsTimePeriod = demandFileJobs.get(0).timePeriod;
+    this.demandsPcu = demandFileJobs.get(0).pcu;
     
     return demandsToPopulate;
   }
 
+  /**
+   * {@inheritDoc}
+   * 
+   * The OD demands are always registered on the PLANit demands, since these are consumed by, e.g., a demands converter or an assignment.
+   * Therefore {@link OdDemandRepresentation#AUTOMATIC} selects the dense representation, and {@link OdDemandRepresentation#SPARSE} is not 
+   * supported, use {@link #readSparseOdDemands()} instead
+   * 
+   * @throws PlanItRunTimeException thrown when the sparse OD demand representation is configured
+   */  
+  @Override
+  public Demands read() {
+    if (settings.getOdDemandRepresentation() == OdDemandRepresentation.SPARSE) {
+      throw new PlanItRunTimeException("TNTP OD demands in sparse representation are not registered on the PLANit demands, "
+          + "use readSparseOdDemands() to read them or choose the dense representation");
+    }
+    return readDemands(false);
+  }
+
+  /**
+   * Read the demands while retaining the OD demands in sparse representation when configured, see 
+   * {@link TntpDemandsReaderSettings#setOdDemandRepresentation(OdDemandRepresentation)}. The sparse OD demands are not registered on the 
+   * PLANit demands, so only use this to consume the OD demands from this reader, e.g., via {@link #getSparseOdDemands()}, and not when 
+   * the PLANit demands are consumed
+   *
+   * @return populated demands, holding the time periods and user classes, but no OD demands kept in sparse representation
+   */
+  public Demands readSparseOdDemands() {
+    return readDemands(true);
+  }
+
   public MacroscopicNetwork getReferenceNetwork(){
     return this.referenceNetwork;
   }
@@ -300,6 +1138,162 @@ public class TntpDemandsReader extends BaseReaderImpl<Demands> implements Demand
     return this.referenceZoning;
   }
 
+  /**
+   * Provide trips parsed ahead of reading the demands, e.g., on a background thread, which are then bound to the reference zones instead
+   * of parsing the demand file. The trips must originate from the (single) configured demand file, when the prefetch fails the demand
+   * file is parsed instead
+   *
+   * @param prefetchedTrips to use, null to parse the demand file
+   */
+  public void setPrefetchedTrips(final Future<TntpPrefetchedTrips> prefetchedTrips) {
+    this.prefetchedTrips = prefetchedTrips;
+  }
+
+  /**
+   * The parsed OD demands in pcu/h when kept in sparse representation, see {@link TntpDemandsReaderSettings#setOdDemandRepresentation(OdDemandRepresentation)}.
+   * Indexed by super zone id when the zones are aggregated, see {@link TntpZoningReader#getZoneAggregation()}
+   *
+   * @return sparse OD demands of the (first) time period, null when the dense representation is used
+   */
+  public TntpSparseOdDemands getSparseOdDemands(){
+    return getSparseOdDemands(demandsTimePeriod);
+  }
+
+  /**
+   * The parsed OD demands in pcu/h of a time period when kept in sparse representation, see {@link #getSparseOdDemands()}
+   *
+   * @param timePeriod to collect OD demands for
+   * @return sparse OD demands, null when the dense representation is used
+   */
+  public TntpSparseOdDemands getSparseOdDemands(final TimePeriod timePeriod){
+    return timePeriod == null ? null : this.sparseOdDemands.get(timePeriod);
+  }
+
+  /**
+   * The parsed OD demands in pcu/h of a user class when multiple demand files are read, see {@link TntpDemandsReaderSettings#addDemandFile(String, String)}.
+   * The PLANit demands (and {@link #getSparseOdDemands()}) hold the sum over all user classes, since PLANit demands are registered per mode
+   *
+   * @param userClass to collect OD demands for
+   * @return sparse OD demands of the user class in the (first) time period, null when not available
+   */
+  public TntpSparseOdDemands getSparseOdDemands(final UserClass userClass){
+    return getSparseOdDemands(userClass, demandsTimePeriod);
+  }
+
+  /**
+   * The parsed OD demands in pcu/h of a user class in a time period, see {@link #getSparseOdDemands(UserClass)}
+   *
+   * @param userClass to collect OD demands for
+   * @param timePeriod to collect OD demands for
+   * @return sparse OD demands of the user class, null when not available
+   */
+  public TntpSparseOdDemands getSparseOdDemands(final UserClass userClass, final TimePeriod timePeriod){
+    final Map<UserClass, TntpSparseOdDemands> timePeriodOdDemands = this.userClassOdDemands.get(timePeriod);
+    return timePeriodOdDemands == null ? null : timePeriodOdDemands.get(userClass);
+  }
+
+  /**
+   * Total trips of the populated demands in pcu/h, updated when a delta is applied
+   *
+   * @return total trips in pcu/h
+   */
+  public double getTotalTripsPcuH(){
+    return this.totalTripsPcuH;
+  }
+
+  /**
+   * Trips dropped by the OD demand reduction, see {@link TntpDemandsReaderSettings#setMinimumOdTrips(double)} and 
+   * {@link TntpDemandsReaderSettings#setOriginSamplingFraction(double)}, including trips that were redistributed
+   *
+   * @return dropped trips in pcu/h
+   */
+  public double getDroppedTripsPcuH(){
+    return this.droppedTripsPcuH;
+  }
+
+  /**
+   * Apply a delta trips file to the demands populated by {@link #read()} or {@link #readSparseOdDemands()}. The delta is a TNTP trips file (metadata optional) containing
+   * only the changed origin blocks. The rows of these origins are overwritten in place, i.e., destinations absent from an origin block
+   * of the delta become zero, all other origins remain untouched. Applies to the dense OD matrix registered on the demands, or to the
+   * sparse OD demands when kept in sparse representation. Trips are converted with the pcu of the demand file, origins outside the origin
+   * subset (if any) are ignored. Not supported when the demands are reduced, see {@link TntpDemandsReaderSettings#isOdDemandReductionEnabled()}.
+   * A demand cache is not updated.
+   *
+   * @param deltaSource the delta trips file
+   * @return updated total trips in pcu/h
+   * @throws PlanItException thrown if error
+   */
+  public double applyDemandsDelta(final TntpInputSource deltaSource) throws PlanItException {
+    if (demandsMode == null) {
+      throw new PlanItException("TNTP demands delta can only be applied after the demands have been read");
+    }
+    if (zoneAggregation != null) {
+      throw new PlanItException("TNTP demands delta cannot be applied to demands of aggregated zones");
+    }
+    if (numberOfDemandFiles > 1) {
+      throw new PlanItException("TNTP demands delta can only be applied to demands read from a single demand file");
+    }
+    if (settings.isOdDemandReductionEnabled()) {
+      throw new PlanItException("TNTP demands delta cannot be applied to demands reduced by a minimum number of trips or origin sampling");
+    }
+
+    final long startTime = System.currentTimeMillis();
+    final TntpByteTokenizer tokenizer;
+    try {
+      tokenizer = new TntpByteTokenizer(deltaSource.readFully());
+    } catch (final IOException e) {
+      throw new PlanItException(String.format("Unable to read TNTP demands delta %s", deltaSource), e);
+    }
+    while (tokenizer.hasRemaining() && !tokenizer.skipDelimiters()) {
+      tokenizer.skipLine();
+    }
+    if (tokenizer.peek() == '<') {
+      readMappedMetadata(tokenizer);
+    }
+    final int originBlocksStart = tokenizer.getPosition();
+    final TntpOriginIndex deltaOriginIndex = TntpOriginIndex.build(tokenizer, zonesByTntpId.getMaxId());
+    /* origins outside the origin subset were not read, so they are not replaced either */
+    final Set<Long> originSubset = settings.getOriginSubset();
+    final long[] deltaOrigins = IntStream.range(0, deltaOriginIndex.size()).mapToLong(deltaOriginIndex::getOriginId)
+        .filter(originTntpId -> originSubset == null || originSubset.contains(originTntpId)).toArray();
+
+    final TntpSparseOdDemands.Builder deltaOdDemandsBuilder = new TntpSparseOdDemands.Builder(zonesByTntpId.getMaxId());
+    tokenizer.setPosition(originBlocksStart);
+    parseMappedOriginBlocks(tokenizer, (originTntpId, destinationTntpId, value) -> {
+      if (originSubset == null || originSubset.contains(originTntpId)) {
+        deltaOdDemandsBuilder.add(originTntpId, destinationTntpId, value);
+      }
+    }, demandsPcu, demandsTimePeriod.getDurationHours());
+    final TntpSparseOdDemands deltaOdDemands = deltaOdDemandsBuilder.build();
+
+    double deltaTripsPcuH;
+    if (getSparseOdDemands() != null) {
+      deltaTripsPcuH = applyDeltaToSparseOdDemands(getSparseOdDemands(), deltaOdDemands, deltaOrigins);
+    } else {
+      final OdDemands odDemands = demandsToPopulate.get(demandsMode, demandsTimePeriod);
+      if (odDemands == null) {
+        throw new PlanItException("No TNTP OD demands registered to apply delta to");
+      }
+      deltaTripsPcuH = applyDeltaToOdDemands(odDemands, deltaOdDemands, deltaOrigins);
+    }
+    this.totalTripsPcuH += deltaTripsPcuH;
+
+    LOGGER.info(String.format("Applied TNTP demands delta %s for %d origins in %d ms, total OD Demand: %.2f (Pcu/h), change %.2f (Pcu/h)",
+        deltaSource, deltaOrigins.length, System.currentTimeMillis() - startTime, totalTripsPcuH, deltaTripsPcuH));
+    return totalTripsPcuH;
+  }
+
+  /**
+   * Apply a delta trips file to the demands populated by {@link #read()}, see {@link #applyDemandsDelta(TntpInputSource)}
+   *
+   * @param deltaFileLocation location of the delta trips file
+   * @return updated total trips in pcu/h
+   * @throws PlanItException thrown if error
+   */
+  public double applyDemandsDelta(final String deltaFileLocation) throws PlanItException {
+    return applyDemandsDelta(TntpInputSource.of(deltaFileLocation));
+  }
+
   /**
    * {@inheritDoc}
    */  
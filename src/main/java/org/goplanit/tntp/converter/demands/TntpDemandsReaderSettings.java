@@ -1,16 +1,26 @@
 package org.goplanit.tntp.converter.demands;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.goplanit.converter.ConverterReaderSettings;
+import org.goplanit.tntp.enums.OdDemandRepresentation;
+import org.goplanit.tntp.enums.ParsingMode;
 import org.goplanit.tntp.enums.TimeUnits;
+import org.goplanit.tntp.utils.TntpInputSource;
 import org.goplanit.utils.misc.Pair;
 
 /**
  * Settings for the TNTP demands reader
  * <ul>
- * <li>demand file location: mandatory, no default</li>
+ * <li>demand file location or demand source: mandatory unless demand files are added, no default</li>
+ * <li>demand files: optional, multiple trips files each registered for their own user class</li>
  * <li>timePeriodDuration: optional, default 1 hour</li>
+ * <li>parsingMode: optional, default {@link ParsingMode#SCANNER}</li>
+ * <li>odDemandRepresentation: optional, default {@link OdDemandRepresentation#DENSE}</li>
  * </ul>
  * 
  * @author markr
@@ -26,27 +36,107 @@ public class TntpDemandsReaderSettings implements ConverterReaderSettings {
    */
   private String demandFileLocation;
   
+  /**
+   * demand data source, takes precedence over the demand file location when set
+   */
+  private TntpInputSource demandSource;
+  
+  /**
+   * demand files, each for their own user class, take precedence over the demand file location and source when present
+   */
+  private final List<TntpDemandFile> demandFiles = new ArrayList<>();
+  
   /** set the duration of the time period */
   private Pair<Double, TimeUnits> timePeriodDuration = DEFAULT_TIME_PERIOD_DURATION;
   
   /** set the start time of the time period */
   private Pair<Double, TimeUnits>  startTimeSinceMidNight = DEFAULT_START_TIME_PERIOD_8AM;
   
+  /** parsing strategy for the origin-destination rows */
+  private ParsingMode parsingMode = DEFAULT_PARSING_MODE;
+  
+  /** representation of the populated OD demands */
+  private OdDemandRepresentation odDemandRepresentation = DEFAULT_OD_DEMAND_REPRESENTATION;
+  
+  /** density below which the automatic representation selects sparse OD demands */
+  private double sparseDensityThreshold = DEFAULT_SPARSE_DENSITY_THRESHOLD;
+  
+  /** directory of the binary demand cache, null when disabled */
+  private String demandCacheDirectory = null;
+  
+  /** when true the demand cache stores values in single precision */
+  private boolean demandCacheSinglePrecision = DEFAULT_DEMAND_CACHE_SINGLE_PRECISION;
+  
+  /** when true a sidecar index of the origin block offsets is used (and maintained) next to the demand file */
+  private boolean originIndexEnabled = false;
+  
+  /** TNTP ids of the origins to parse, null to parse all origins */
+  private Set<Long> originSubset = null;
+  
+  /** OD cells with fewer trips are dropped */
+  private double minimumOdTrips = DEFAULT_MINIMUM_OD_TRIPS;
+  
+  /** fraction of origins to retain */
+  private double originSamplingFraction = DEFAULT_ORIGIN_SAMPLING_FRACTION;
+  
+  /** seed of the origin sampling */
+  private long originSamplingSeed = DEFAULT_ORIGIN_SAMPLING_SEED;
+  
+  /** when true trips dropped by thresholding or sampling are redistributed */
+  private boolean redistributeDroppedTrips = DEFAULT_REDISTRIBUTE_DROPPED_TRIPS;
+  
+  /** name of the user class (and traveller type) of the demand file location or source */
+  public static final String DEFAULT_USER_CLASS_NAME = "TNTP - user class";
+  
   /** default time period duration is set to 1 hour */
   public static Pair<Double, TimeUnits> DEFAULT_TIME_PERIOD_DURATION = Pair.of(1.0, TimeUnits.HOURS);
   
   /** default start time of time period since midnight is set to 8:00 hours */
   public static Pair<Double, TimeUnits> DEFAULT_START_TIME_PERIOD_8AM = Pair.of(8.0, TimeUnits.HOURS);  
+  
+  /** default parsing mode is line based parsing via a Scanner */
+  public static final ParsingMode DEFAULT_PARSING_MODE = ParsingMode.SCANNER;
+  
+  /** default OD demand representation is a dense matrix */
+  public static final OdDemandRepresentation DEFAULT_OD_DEMAND_REPRESENTATION = OdDemandRepresentation.DENSE;
+  
+  /** default sparse density threshold, a sparse cell takes 12 bytes versus 8 per dense cell, so below a quarter sparse uses less than 40% */
+  public static final double DEFAULT_SPARSE_DENSITY_THRESHOLD = 0.25;
+  
+  /** default demand cache stores values in double precision */
+  public static final boolean DEFAULT_DEMAND_CACHE_SINGLE_PRECISION = false;
+  
+  /** default minimum number of trips per OD cell is zero, i.e., no cells are dropped */
+  public static final double DEFAULT_MINIMUM_OD_TRIPS = 0;
+  
+  /** default origin sampling fraction is one, i.e., all origins are retained */
+  public static final double DEFAULT_ORIGIN_SAMPLING_FRACTION = 1;
+  
+  /** default seed of the origin sampling */
+  public static final long DEFAULT_ORIGIN_SAMPLING_SEED = 1;
+  
+  /** default dropped trips are not redistributed */
+  public static final boolean DEFAULT_REDISTRIBUTE_DROPPED_TRIPS = false;
     
   /** Validate settings
    * 
    * @return true when valid, false otherwise
    */
   protected boolean validateSettings() {
-    if(getDemandFileLocation()==null) {
+    if(getDemandSource()==null && demandFiles.isEmpty()) {
       LOGGER.severe("TNTP demand file location is not provided, unable to create demands");
       return false;
     }
+    for(final TntpDemandFile demandFile : demandFiles) {
+      if(demandFile.getDemandSource()==null || demandFile.getUserClassName()==null) {
+        LOGGER.severe(String.format("TNTP demand file %s lacks source or user class, unable to create demands", demandFile));
+        return false;
+      }
+      if(getTimePeriodDurationHours(demandFile) <= 0) {
+        LOGGER.severe(String.format("TNTP demand file %s has no positive time period duration, unable to create demands", demandFile));
+        return false;
+      }
+    }
     if(timePeriodDuration==null) {
       LOGGER.severe("TNTP time period duration not set, unable to create demands");
       return false;
@@ -55,6 +145,14 @@ public class TntpDemandsReaderSettings implements ConverterReaderSettings {
       LOGGER.severe("TNTP start time of period not set, unable to create demands");
       return false;
     }        
+    if(minimumOdTrips < 0) {
+      LOGGER.severe(String.format("TNTP minimum OD trips %.4f is negative, unable to create demands", minimumOdTrips));
+      return false;
+    }
+    if(originSamplingFraction <= 0 || originSamplingFraction > 1) {
+      LOGGER.severe(String.format("TNTP origin sampling fraction %.4f not in (0,1], unable to create demands", originSamplingFraction));
+      return false;
+    }
     return true;
   }
 
@@ -90,9 +188,25 @@ public class TntpDemandsReaderSettings implements ConverterReaderSettings {
    * Log the current settings
    */
   public void logSettings() {
-    LOGGER.info("TNTP demand file: " + demandFileLocation);
+    getDemandFiles().forEach( demandFile -> LOGGER.info("TNTP demand file: " + demandFile));
     LOGGER.info(String.format("TNTP start time of period set to: %.2f (%s)",this.getStartTimeSinceMidNight(), this.getStartTimeSinceMidNightUnit().name()));
     LOGGER.info(String.format("TNTP duration of time period set to: %.2f (%s)",this.getTimePeriodDuration(), this.getTimePeriodDurationUnit().name()));
+    LOGGER.info(String.format("TNTP demand parsing mode set to: %s", getParsingMode()));
+    LOGGER.info(String.format("TNTP OD demand representation set to: %s", getOdDemandRepresentation()));
+    if (isOriginIndexEnabled()) {
+      LOGGER.info("TNTP origin index enabled");
+    }
+    if (getOriginSubset() != null) {
+      LOGGER.info(String.format("TNTP origin subset set to %d origins", getOriginSubset().size()));
+    }
+    if (isOdDemandReductionEnabled()) {
+      LOGGER.info(String.format("TNTP OD demand reduction set to: minimum %.4f trips per OD cell, %.2f%% of origins sampled (seed %d), dropped trips %sredistributed",
+          getMinimumOdTrips(), getOriginSamplingFraction() * 100, getOriginSamplingSeed(), isRedistributeDroppedTrips() ? "" : "not "));
+    }
+    if (getDemandCacheDirectory() != null) {
+      LOGGER.info(String.format("TNTP demand cache directory set to: %s (%s precision)", 
+          getDemandCacheDirectory(), isDemandCacheSinglePrecision() ? "single" : "double"));
+    }
   }
 
   /**
@@ -101,7 +215,20 @@ public class TntpDemandsReaderSettings implements ConverterReaderSettings {
   @Override
   public void reset() {
     demandFileLocation = null;
+    demandSource = null;
+    demandFiles.clear();
     timePeriodDuration = DEFAULT_TIME_PERIOD_DURATION;
+    parsingMode = DEFAULT_PARSING_MODE;
+    odDemandRepresentation = DEFAULT_OD_DEMAND_REPRESENTATION;
+    sparseDensityThreshold = DEFAULT_SPARSE_DENSITY_THRESHOLD;
+    demandCacheDirectory = null;
+    demandCacheSinglePrecision = DEFAULT_DEMAND_CACHE_SINGLE_PRECISION;
+    originIndexEnabled = false;
+    originSubset = null;
+    minimumOdTrips = DEFAULT_MINIMUM_OD_TRIPS;
+    originSamplingFraction = DEFAULT_ORIGIN_SAMPLING_FRACTION;
+    originSamplingSeed = DEFAULT_ORIGIN_SAMPLING_SEED;
+    redistributeDroppedTrips = DEFAULT_REDISTRIBUTE_DROPPED_TRIPS;
   }
   
   // GETTERS/SETTERS
@@ -114,6 +241,101 @@ public class TntpDemandsReaderSettings implements ConverterReaderSettings {
     this.demandFileLocation = demandFileLocation;
   }  
   
+  /**
+   * The source of the demand data, either the explicitly set source or otherwise the demand file location
+   *
+   * @return source, null when neither is set
+   */
+  public TntpInputSource getDemandSource() {
+    return demandSource != null ? demandSource : TntpInputSource.of(demandFileLocation);
+  }
+
+  /**
+   * Read the demands from the given source instead of the demand file location, e.g., a gzip/zip compressed file, stream or channel
+   *
+   * @param demandSource to use
+   */
+  public void setDemandSource(TntpInputSource demandSource) {
+    this.demandSource = demandSource;
+  }
+
+  /**
+   * Add a trips file whose OD demands are registered for the given user class (and traveller type of the same name). Multiple demand
+   * files are parsed concurrently. When demand files are added the demand file location and source are ignored
+   *
+   * @param userClassName name of the user class
+   * @param demandFileLocation location of the trips file
+   * @return added demand file, to configure further
+   */
+  public TntpDemandFile addDemandFile(String userClassName, String demandFileLocation) {
+    return addDemandSource(userClassName, TntpInputSource.of(demandFileLocation));
+  }
+
+  /**
+   * Add a trips source whose OD demands are registered for the given user class, see {@link #addDemandFile(String, String)}
+   *
+   * @param userClassName name of the user class
+   * @param demandSource source of the trips file
+   * @return added demand file, to configure further
+   */
+  public TntpDemandFile addDemandSource(String userClassName, TntpInputSource demandSource) {
+    final TntpDemandFile demandFile = new TntpDemandFile(demandSource, userClassName);
+    demandFiles.add(demandFile);
+    return demandFile;
+  }
+
+  /**
+   * Add a trips file for the default user class in its own time period, e.g., one file per hour of an hourly profile. The time periods
+   * are registered in order of the demand files and the files are parsed concurrently
+   *
+   * @param demandFileLocation location of the trips file
+   * @param startTime since midnight
+   * @param startTimeUnit of the start time
+   * @param duration of the time period
+   * @param durationUnit of the duration
+   * @return added demand file, to configure further
+   */
+  public TntpDemandFile addTimePeriodDemandFile(String demandFileLocation, final Number startTime, final TimeUnits startTimeUnit, 
+      final Number duration, final TimeUnits durationUnit) {
+    return addDemandFile(DEFAULT_USER_CLASS_NAME, demandFileLocation).setTimePeriod(startTime, startTimeUnit, duration, durationUnit);
+  }
+
+  /**
+   * Start time since midnight of the time period of a demand file, the start time of the demand file if set, otherwise of these settings
+   *
+   * @param demandFile to use
+   * @return start time in hours
+   */
+  public double getStartTimeSinceMidNightHours(final TntpDemandFile demandFile) {
+    final Pair<Double, TimeUnits> startTime = 
+        demandFile.getStartTimeSinceMidNight() != null ? demandFile.getStartTimeSinceMidNight() : startTimeSinceMidNight;
+    return startTime.first() * startTime.second().getMultiplier();
+  }
+
+  /**
+   * Duration of the time period of a demand file, the duration of the demand file if set, otherwise of these settings
+   *
+   * @param demandFile to use
+   * @return duration in hours
+   */
+  public double getTimePeriodDurationHours(final TntpDemandFile demandFile) {
+    final Pair<Double, TimeUnits> duration = 
+        demandFile.getTimePeriodDuration() != null ? demandFile.getTimePeriodDuration() : timePeriodDuration;
+    return duration.first() * duration.second().getMultiplier();
+  }
+
+  /**
+   * The demand files to read, either the added demand files or otherwise the demand file location or source for the default user class
+   *
+   * @return demand files, unmodifiable
+   */
+  public List<TntpDemandFile> getDemandFiles() {
+    if (!demandFiles.isEmpty()) {
+      return Collections.unmodifiableList(demandFiles);
+    }
+    return getDemandSource() == null ? List.of() : List.of(new TntpDemandFile(getDemandSource(), DEFAULT_USER_CLASS_NAME));
+  }
+  
   public void setTimePeriodDuration(final Number duration, final TimeUnits durationUnit) {
     this.timePeriodDuration = Pair.of(duration.doubleValue(), durationUnit);
   }
@@ -136,6 +358,176 @@ public class TntpDemandsReaderSettings implements ConverterReaderSettings {
   
   public TimeUnits getStartTimeSinceMidNightUnit() {
     return this.startTimeSinceMidNight.second();
-  }  
+  }
+
+  public ParsingMode getParsingMode() {
+    return parsingMode;
+  }
+
+  /**
+   * Choose how the origin-destination rows of the demand file are parsed. {@link ParsingMode#MEMORY_MAPPED} tokenizes the bytes of the
+   * file in place and writes each cell directly into the OD matrix, without creating Strings or maps per origin. {@link ParsingMode#PARALLEL}
+   * additionally parses the origin blocks concurrently, each into its own row of the non-zero cells, which are copied into the OD matrix
+   * afterwards on a single thread. All modes yield the same demands
+   *
+   * @param parsingMode to use
+   */
+  public void setParsingMode(ParsingMode parsingMode) {
+    this.parsingMode = parsingMode;
+  }
+
+  public OdDemandRepresentation getOdDemandRepresentation() {
+    return odDemandRepresentation;
+  }
+
+  /**
+   * Choose how the OD demands are represented. {@link OdDemandRepresentation#DENSE} registers a PLANit OD demand matrix on the demands.
+   * {@link OdDemandRepresentation#SPARSE} stores only the non-zero cells in a {@link TntpSparseOdDemands} that is made available via
+   * {@link TntpDemandsReader#getSparseOdDemands()} instead, the PLANit demands then hold no OD demands for the TNTP time period. Sparse
+   * OD demands are therefore only retained by {@link TntpDemandsReader#readSparseOdDemands()}, {@link TntpDemandsReader#read()} rejects
+   * the sparse representation since its PLANit demands are consumed, e.g., by a demands converter or the TNTP input builder.
+   * {@link OdDemandRepresentation#AUTOMATIC} selects sparse when the density of non-zero cells is below the sparse density threshold and
+   * the OD demands are read via {@link TntpDemandsReader#readSparseOdDemands()}, dense otherwise
+   *
+   * @param odDemandRepresentation to use
+   */
+  public void setOdDemandRepresentation(OdDemandRepresentation odDemandRepresentation) {
+    this.odDemandRepresentation = odDemandRepresentation;
+  }
+
+  public double getSparseDensityThreshold() {
+    return sparseDensityThreshold;
+  }
+
+  /**
+   * Density (fraction of non-zero cells) below which {@link OdDemandRepresentation#AUTOMATIC} selects the sparse representation
+   *
+   * @param sparseDensityThreshold to use, in [0,1]
+   */
+  public void setSparseDensityThreshold(double sparseDensityThreshold) {
+    this.sparseDensityThreshold = sparseDensityThreshold;
+  }
+
+  public String getDemandCacheDirectory() {
+    return demandCacheDirectory;
+  }
+
+  /**
+   * Enable the binary demand cache by providing a directory to store cache files in. The first read of a given demand file writes the
+   * parsed non-zero OD cells to a binary file, subsequent reads of a file with identical content (and time period settings) map that
+   * file instead of parsing the text file. Sparse OD demands remain backed by the mapping (off-heap). Set to null (default) to disable
+   *
+   * @param demandCacheDirectory to use
+   */
+  public void setDemandCacheDirectory(String demandCacheDirectory) {
+    this.demandCacheDirectory = demandCacheDirectory;
+  }
+
+  public boolean isDemandCacheSinglePrecision() {
+    return demandCacheSinglePrecision;
+  }
+
+  /**
+   * Store the values in the demand cache in single (float32) rather than double precision, halving the size of the values at the cost
+   * of precision (about 7 significant digits)
+   *
+   * @param demandCacheSinglePrecision when true use single precision
+   */
+  public void setDemandCacheSinglePrecision(boolean demandCacheSinglePrecision) {
+    this.demandCacheSinglePrecision = demandCacheSinglePrecision;
+  }
+
+  public boolean isOriginIndexEnabled() {
+    return originIndexEnabled;
+  }
+
+  /**
+   * Use a sidecar index with the byte offset of each origin block, stored next to the demand file ({@code <demand file>.originindex}).
+   * The index is built on first use and rebuilt automatically when the size or modification time of the demand file changes. Parsing
+   * then seeks to the origin blocks directly instead of scanning the file
+   *
+   * @param originIndexEnabled when true use the origin index
+   */
+  public void setOriginIndexEnabled(boolean originIndexEnabled) {
+    this.originIndexEnabled = originIndexEnabled;
+  }
+
+  public Set<Long> getOriginSubset() {
+    return originSubset;
+  }
+
+  /**
+   * Only parse the demand of the given origins, e.g., for sub area runs or debugging, demand of other origins remains zero
+   *
+   * @param originSubset TNTP ids of the origins to parse, null (default) to parse all origins
+   */
+  public void setOriginSubset(Set<Long> originSubset) {
+    this.originSubset = originSubset;
+  }
+
+  public double getMinimumOdTrips() {
+    return minimumOdTrips;
+  }
+
+  /**
+   * Drop OD cells with fewer trips (as stated in the demand file) than the given minimum, e.g., to remove tiny fractional cells for
+   * quick-look runs. Dropped volume is reported, see {@link #setRedistributeDroppedTrips(boolean)} to preserve it
+   *
+   * @param minimumOdTrips to use, zero (default) retains all cells
+   */
+  public void setMinimumOdTrips(double minimumOdTrips) {
+    this.minimumOdTrips = minimumOdTrips;
+  }
+
+  public double getOriginSamplingFraction() {
+    return originSamplingFraction;
+  }
+
+  /**
+   * Retain only a random sample of the origins, demand of the other origins is dropped. The sample is drawn per (non-empty) origin in
+   * order of the TNTP origin ids, so it is reproducible for a given seed
+   *
+   * @param originSamplingFraction fraction of origins to retain, in (0,1], one (default) retains all origins
+   */
+  public void setOriginSamplingFraction(double originSamplingFraction) {
+    this.originSamplingFraction = originSamplingFraction;
+  }
+
+  public long getOriginSamplingSeed() {
+    return originSamplingSeed;
+  }
+
+  /**
+   * Seed of the origin sampling
+   *
+   * @param originSamplingSeed to use
+   */
+  public void setOriginSamplingSeed(long originSamplingSeed) {
+    this.originSamplingSeed = originSamplingSeed;
+  }
+
+  public boolean isRedistributeDroppedTrips() {
+    return redistributeDroppedTrips;
+  }
+
+  /**
+   * Redistribute the trips dropped by thresholding or origin sampling. Trips of cells below the minimum are redistributed over the remaining
+   * cells of the same origin, proportional to their value, so the production of each origin is preserved. Trips of origins that are not
+   * sampled are redistributed over the sampled origins, so the total is preserved
+   *
+   * @param redistributeDroppedTrips when true redistribute dropped trips
+   */
+  public void setRedistributeDroppedTrips(boolean redistributeDroppedTrips) {
+    this.redistributeDroppedTrips = redistributeDroppedTrips;
+  }
+
+  /**
+   * Verify if OD demands are reduced by a minimum number of trips per OD cell or origin sampling
+   *
+   * @return true when reduction is enabled
+   */
+  public boolean isOdDemandReductionEnabled() {
+    return minimumOdTrips > 0 || originSamplingFraction < 1;
+  }
      
 }
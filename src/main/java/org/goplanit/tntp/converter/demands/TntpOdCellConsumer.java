@@ -0,0 +1,21 @@
+package org.goplanit.tntp.converter.demands;
+
+/**
+ * Receives origin-destination demand cells identified by their TNTP zone ids, without boxing the value
+ *
+ * @author markr
+ *
+ */
+@FunctionalInterface
+public interface TntpOdCellConsumer {
+
+  /**
+   * Accept a cell
+   *
+   * @param originTntpId TNTP id of the origin zone
+   * @param destinationTntpId TNTP id of the destination zone
+   * @param value of the cell
+   */
+  void accept(long originTntpId, long destinationTntpId, double value);
+
+}
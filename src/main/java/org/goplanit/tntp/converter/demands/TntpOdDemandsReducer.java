@@ -0,0 +1,171 @@
+package org.goplanit.tntp.converter.demands;
+
+import java.util.Random;
+
+/**
+ * Reduces parsed OD demands for quick-look runs by dropping cells below a minimum number of trips and/or sampling a fraction of the
+ * origins. Dropped volume is tracked and can optionally be redistributed: the remaining cells of an origin are scaled to preserve the
+ * production of the origin, and the sampled origins are scaled to preserve the total, since the production of origins that are not
+ * sampled cannot be preserved.
+ *
+ * @author markr
+ *
+ */
+class TntpOdDemandsReducer {
+
+  /** cells with fewer trips are dropped */
+  private final double minimumTrips;
+
+  /** fraction of origins to retain */
+  private final double originSamplingFraction;
+
+  /** seed of the origin sampling */
+  private final long originSamplingSeed;
+
+  /** when true dropped volume is redistributed */
+  private final boolean redistribute;
+
+  /** dropped trips in PcuH */
+  private double droppedTripsPcuH;
+
+  /** redistributed trips in PcuH */
+  private double redistributedTripsPcuH;
+
+  /** number of dropped cells */
+  private int numberOfDroppedCells;
+
+  /** number of dropped origins */
+  private int numberOfDroppedOrigins;
+
+  /**
+   * Constructor
+   *
+   * @param minimumTrips cells with fewer trips are dropped
+   * @param originSamplingFraction fraction of origins to retain, in (0,1]
+   * @param originSamplingSeed seed of the origin sampling
+   * @param redistribute when true dropped volume is redistributed
+   */
+  TntpOdDemandsReducer(double minimumTrips, double originSamplingFraction, long originSamplingSeed, boolean redistribute) {
+    this.minimumTrips = minimumTrips;
+    this.originSamplingFraction = originSamplingFraction;
+    this.originSamplingSeed = originSamplingSeed;
+    this.redistribute = redistribute;
+  }
+
+  /**
+   * Reduce the OD demands
+   *
+   * @param odDemands to reduce, in PcuH
+   * @param tripsPerPcuH conversion factor from a cell value in PcuH to trips in the demand file
+   * @return reduced OD demands
+   */
+  TntpSparseOdDemands reduce(final TntpSparseOdDemands odDemands, double tripsPerPcuH) {
+    droppedTripsPcuH = 0;
+    redistributedTripsPcuH = 0;
+    numberOfDroppedCells = 0;
+    numberOfDroppedOrigins = 0;
+
+    final double minimumPcuH = minimumTrips / tripsPerPcuH;
+    final Random random = new Random(originSamplingSeed);
+    final TntpSparseOdDemands.Builder reducedOdDemands = new TntpSparseOdDemands.Builder(odDemands.getMaxZoneId());
+    double sampledTripsPcuH = 0;
+    double totalTripsPcuH = 0;
+    for (int origin = 0; origin <= odDemands.getMaxZoneId(); ++origin) {
+      if (odDemands.getNumberOfNonZeros(origin) == 0) {
+        continue;
+      }
+
+      /* origin production, retained production and largest cell */
+      final double[] rowTrips = new double[2];
+      final long[] largestCell = {-1};
+      final double[] largestValue = {0};
+      odDemands.forEachNonZero(origin, (originTntpId, destinationTntpId, value) -> {
+        rowTrips[0] += value;
+        if (value >= minimumPcuH) {
+          rowTrips[1] += value;
+        }
+        if (value > largestValue[0]) {
+          largestCell[0] = destinationTntpId;
+          largestValue[0] = value;
+        }
+      });
+      totalTripsPcuH += rowTrips[0];
+
+      /* origin sampling, draw per non-empty origin in id order so the sample only depends on the seed */
+      if (originSamplingFraction < 1 && random.nextDouble() >= originSamplingFraction) {
+        droppedTripsPcuH += rowTrips[0];
+        numberOfDroppedCells += odDemands.getNumberOfNonZeros(origin);
+        ++numberOfDroppedOrigins;
+        continue;
+      }
+      sampledTripsPcuH += rowTrips[0];
+
+      /* thresholding, when all cells are below the threshold the largest carries the production if redistributed */
+      droppedTripsPcuH += rowTrips[0] - rowTrips[1];
+      if (redistribute && rowTrips[1] == 0) {
+        reducedOdDemands.add(origin, largestCell[0], rowTrips[0]);
+        numberOfDroppedCells += odDemands.getNumberOfNonZeros(origin) - 1;
+        redistributedTripsPcuH += rowTrips[0];
+        continue;
+      }
+      final double rowScale = redistribute ? rowTrips[0] / rowTrips[1] : 1;
+      redistributedTripsPcuH += redistribute ? rowTrips[0] - rowTrips[1] : 0;
+      odDemands.forEachNonZero(origin, (originTntpId, destinationTntpId, value) -> {
+        if (value >= minimumPcuH) {
+          reducedOdDemands.add(originTntpId, destinationTntpId, value * rowScale);
+        } else {
+          ++numberOfDroppedCells;
+        }
+      });
+    }
+
+    if (!redistribute || sampledTripsPcuH == 0 || sampledTripsPcuH == totalTripsPcuH) {
+      return reducedOdDemands.build();
+    }
+
+    /* scale sampled origins to preserve the total */
+    final double sampleScale = totalTripsPcuH / sampledTripsPcuH;
+    redistributedTripsPcuH += totalTripsPcuH - sampledTripsPcuH;
+    final TntpSparseOdDemands.Builder scaledOdDemands = new TntpSparseOdDemands.Builder(odDemands.getMaxZoneId());
+    reducedOdDemands.build().forEachNonZero(
+        (originTntpId, destinationTntpId, value) -> scaledOdDemands.add(originTntpId, destinationTntpId, value * sampleScale));
+    return scaledOdDemands.build();
+  }
+
+  /**
+   * Trips dropped by the last reduction
+   *
+   * @return dropped trips in PcuH
+   */
+  double getDroppedTripsPcuH() {
+    return droppedTripsPcuH;
+  }
+
+  /**
+   * Trips redistributed over the retained cells by the last reduction
+   *
+   * @return redistributed trips in PcuH
+   */
+  double getRedistributedTripsPcuH() {
+    return redistributedTripsPcuH;
+  }
+
+  /**
+   * Number of cells dropped by the last reduction
+   *
+   * @return number of dropped cells
+   */
+  int getNumberOfDroppedCells() {
+    return numberOfDroppedCells;
+  }
+
+  /**
+   * Number of origins dropped by the last reduction due to sampling
+   *
+   * @return number of dropped origins
+   */
+  int getNumberOfDroppedOrigins() {
+    return numberOfDroppedOrigins;
+  }
+
+}
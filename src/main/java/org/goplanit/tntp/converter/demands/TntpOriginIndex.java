@@ -0,0 +1,201 @@
+package org.goplanit.tntp.converter.demands;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.goplanit.tntp.utils.TntpBinaryFiles;
+import org.goplanit.tntp.utils.TntpByteTokenizer;
+
+/**
+ * Byte offsets of the {@code Origin} blocks of a TNTP trips file, in file order. Allows parsing a subset of origins, or splitting the
+ * work across threads, without scanning the file first. The index can be persisted as a sidecar file, which records the size and
+ * modification time of the trips file it was built for so it is rebuilt once the trips file changes.
+ *
+ * @author markr
+ *
+ */
+class TntpOriginIndex {
+
+  /** identifies an origin index file */
+  private static final int MAGIC = 0x544F4958; // "TOIX"
+
+  /** format version, bump when layout changes so stale index files are rebuilt */
+  private static final int VERSION = 1;
+
+  /** file extension of sidecar index files, appended to the trips file name */
+  static final String FILE_EXTENSION = ".originindex";
+
+  /** TNTP origin id per block */
+  private final long[] originIds;
+
+  /** start position per block followed by the end position of the last block */
+  private final int[] blockBoundaries;
+
+  /** true when an origin has more than one block */
+  private final boolean hasDuplicateOrigins;
+
+  /**
+   * Verify if any origin id occurs more than once
+   *
+   * @param originIds to verify
+   * @return true when duplicates are present
+   */
+  private static boolean containsDuplicates(final long[] originIds) {
+    final long[] sortedOriginIds = Arrays.copyOf(originIds, originIds.length);
+    Arrays.sort(sortedOriginIds);
+    for (int index = 1; index < sortedOriginIds.length; ++index) {
+      if (sortedOriginIds[index - 1] == sortedOriginIds[index]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Constructor
+   *
+   * @param originIds origin per block
+   * @param blockBoundaries start per block plus trailing end
+   */
+  private TntpOriginIndex(final long[] originIds, final int[] blockBoundaries) {
+    this.originIds = originIds;
+    this.blockBoundaries = blockBoundaries;
+    this.hasDuplicateOrigins = containsDuplicates(originIds);
+  }
+
+  /**
+   * Build the index by scanning the origin lines of the trips file
+   *
+   * @param tokenizer positioned after the metadata, consumed upon return
+   * @param expectedNumberOfOrigins used for presizing, e.g., the number of zones
+   * @return created index
+   */
+  static TntpOriginIndex build(final TntpByteTokenizer tokenizer, int expectedNumberOfOrigins) {
+    long[] originIds = new long[Math.max(1, expectedNumberOfOrigins)];
+    int[] blockBoundaries = new int[originIds.length + 1];
+    int numBlocks = 0;
+    while (tokenizer.hasRemaining()) {
+      final int lineStart = tokenizer.getPosition();
+      if (tokenizer.skipDelimiters() && tokenizer.startsWith(TntpDemandsReader.ORIGIN_PREFIX)) {
+        if (numBlocks == originIds.length) {
+          originIds = Arrays.copyOf(originIds, originIds.length * 2);
+          blockBoundaries = Arrays.copyOf(blockBoundaries, originIds.length + 1);
+        }
+        tokenizer.skipToken();
+        tokenizer.skipDelimiters();
+        originIds[numBlocks] = tokenizer.nextLong();
+        blockBoundaries[numBlocks++] = lineStart;
+      }
+      tokenizer.skipLine();
+    }
+    blockBoundaries[numBlocks] = tokenizer.getPosition();
+    return new TntpOriginIndex(Arrays.copyOf(originIds, numBlocks), Arrays.copyOf(blockBoundaries, numBlocks + 1));
+  }
+
+  /**
+   * Sidecar file of the index for the given trips file
+   *
+   * @param tripsFile to use
+   * @return sidecar file
+   */
+  static Path getSidecarFile(final Path tripsFile) {
+    return tripsFile.resolveSibling(tripsFile.getFileName().toString() + FILE_EXTENSION);
+  }
+
+  /**
+   * Write index to sidecar file, via a temporary file that is moved in place afterwards
+   *
+   * @param indexFile to write to
+   * @param tripsFileSize size of the indexed trips file
+   * @param tripsFileLastModified modification time of the indexed trips file in milliseconds
+   * @throws IOException thrown if error
+   */
+  void write(final Path indexFile, long tripsFileSize, long tripsFileLastModified) throws IOException {
+    TntpBinaryFiles.writeAtomically(indexFile, FILE_EXTENSION, MAGIC, VERSION, out -> {
+      out.writeLong(tripsFileSize);
+      out.writeLong(tripsFileLastModified);
+      out.writeInt(originIds.length);
+      for (int block = 0; block < originIds.length; ++block) {
+        out.writeLong(originIds[block]);
+        out.writeInt(blockBoundaries[block]);
+      }
+      out.writeInt(blockBoundaries[originIds.length]);
+    });
+  }
+
+  /**
+   * Read index from sidecar file
+   *
+   * @param indexFile to read
+   * @param tripsFileSize current size of the trips file
+   * @param tripsFileLastModified current modification time of the trips file in milliseconds
+   * @return index
+   * @throws IOException thrown when file cannot be read, is not a valid index of the current version, or is stale
+   */
+  static TntpOriginIndex read(final Path indexFile, long tripsFileSize, long tripsFileLastModified) throws IOException {
+    final ByteBuffer buffer = TntpBinaryFiles.map(indexFile, MAGIC, VERSION, "TNTP origin index");
+    if (buffer.getLong() != tripsFileSize || buffer.getLong() != tripsFileLastModified) {
+      throw new IOException(String.format("%s is stale, trips file has changed", indexFile));
+    }
+    final int numBlocks = buffer.getInt();
+    final long[] originIds = new long[numBlocks];
+    final int[] blockBoundaries = new int[numBlocks + 1];
+    for (int block = 0; block < numBlocks; ++block) {
+      originIds[block] = buffer.getLong();
+      blockBoundaries[block] = buffer.getInt();
+    }
+    blockBoundaries[numBlocks] = buffer.getInt();
+    return new TntpOriginIndex(originIds, blockBoundaries);
+  }
+
+  /**
+   * Number of origin blocks
+   *
+   * @return number of blocks
+   */
+  int size() {
+    return originIds.length;
+  }
+
+  /**
+   * Verify if an origin has more than one block, in which case the blocks of that origin populate the same row
+   *
+   * @return true when an origin occurs more than once
+   */
+  boolean hasDuplicateOrigins() {
+    return hasDuplicateOrigins;
+  }
+
+  /**
+   * TNTP origin id of a block
+   *
+   * @param block index of the block
+   * @return origin id
+   */
+  long getOriginId(int block) {
+    return originIds[block];
+  }
+
+  /**
+   * Start position of a block, i.e., the start of its origin line
+   *
+   * @param block index of the block, {@link #size()} yields the end of the last block
+   * @return position
+   */
+  int getBlockStart(int block) {
+    return blockBoundaries[block];
+  }
+
+  /**
+   * End position (exclusive) of a block
+   *
+   * @param block index of the block
+   * @return position
+   */
+  int getBlockEnd(int block) {
+    return blockBoundaries[block + 1];
+  }
+
+}
@@ -0,0 +1,114 @@
+package org.goplanit.tntp.converter.demands;
+
+import org.goplanit.tntp.TntpHeaderConstants;
+import org.goplanit.tntp.TntpMetadata;
+import org.goplanit.tntp.stream.TntpStreamHandler;
+import org.goplanit.tntp.stream.TntpStreamReader;
+import org.goplanit.tntp.utils.TntpInputSource;
+import org.goplanit.utils.exceptions.PlanItException;
+
+/**
+ * The trips of a TNTP trips file parsed ahead of the demands, e.g., on a background thread while the network is being read. Trips are
+ * retained as they appear in the file, i.e., without pcu or time period conversion and without resolving zones, since neither the demands
+ * reader settings nor the zoning need to be available yet. Handed to the demands reader via
+ * {@link TntpDemandsReader#setPrefetchedTrips(java.util.concurrent.Future)}, which binds them to the zoning instead of parsing the file.
+ *
+ * @author markr
+ *
+ */
+public class TntpPrefetchedTrips {
+
+  /** metadata of the trips file */
+  private final TntpMetadata metadata;
+
+  /** non-zero trips by TNTP origin and destination id */
+  private final TntpSparseOdDemands trips;
+
+  /** first zone id in the trips file beyond the number of zones in the metadata, -1 when none */
+  private final long outOfRangeZoneId;
+
+  /**
+   * Constructor
+   *
+   * @param metadata of the trips file
+   * @param trips non-zero trips
+   * @param outOfRangeZoneId first zone id beyond the number of zones, -1 when none
+   */
+  private TntpPrefetchedTrips(final TntpMetadata metadata, final TntpSparseOdDemands trips, long outOfRangeZoneId) {
+    this.metadata = metadata;
+    this.trips = trips;
+    this.outOfRangeZoneId = outOfRangeZoneId;
+  }
+
+  /**
+   * Parse the trips of a trips file. Zone ids are limited to the number of zones in the metadata, which is therefore required
+   *
+   * @param tripsSource to parse
+   * @return parsed trips
+   * @throws PlanItException thrown if error
+   */
+  public static TntpPrefetchedTrips parse(final TntpInputSource tripsSource) throws PlanItException {
+    final TntpMetadata.Builder metadataBuilder = new TntpMetadata.Builder();
+    final int[] numberOfZones = {0};
+    final TntpSparseOdDemands.Builder[] tripsBuilder = new TntpSparseOdDemands.Builder[1];
+    final long[] outOfRangeZoneId = {-1};
+    TntpStreamReader.streamTripsFile(tripsSource, new TntpStreamHandler() {
+      @Override
+      public void onMetadata(final String tag, final String value) {
+        metadataBuilder.addEntry(String.format("<%s> %s", tag, value));
+      }
+
+      @Override
+      public void onEndOfMetadata() {
+        metadataBuilder.addEntry(TntpHeaderConstants.END_OF_METADATA_INDICATOR);
+        numberOfZones[0] = metadataBuilder.build().getNumberOfZones();
+        tripsBuilder[0] = new TntpSparseOdDemands.Builder(numberOfZones[0]);
+      }
+
+      @Override
+      public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+        if (originZoneId < 1 || originZoneId > numberOfZones[0] || destinationZoneId < 1 || destinationZoneId > numberOfZones[0]) {
+          if (outOfRangeZoneId[0] < 0) {
+            outOfRangeZoneId[0] = originZoneId < 1 || originZoneId > numberOfZones[0] ? originZoneId : destinationZoneId;
+          }
+          return;
+        }
+        tripsBuilder[0].add(originZoneId, destinationZoneId, value);
+      }
+    });
+    final TntpMetadata metadata = metadataBuilder.build();
+    if (metadata.getNumberOfZones() < 1) {
+      throw new PlanItException(String.format("TNTP trips file %s does not state the number of zones, unable to prefetch trips", tripsSource));
+    }
+    TntpMetadata.cache(tripsSource, metadata);
+    return new TntpPrefetchedTrips(metadata, tripsBuilder[0].build(), outOfRangeZoneId[0]);
+  }
+
+  /**
+   * Metadata of the trips file
+   *
+   * @return metadata
+   */
+  public TntpMetadata getMetadata() {
+    return metadata;
+  }
+
+  /**
+   * The non-zero trips as they appear in the trips file
+   *
+   * @return trips by TNTP origin and destination id
+   */
+  public TntpSparseOdDemands getTrips() {
+    return trips;
+  }
+
+  /**
+   * First zone id in the trips file that exceeds the number of zones stated in its metadata, such trips are not retained
+   *
+   * @return zone id, -1 when none
+   */
+  public long getOutOfRangeZoneId() {
+    return outOfRangeZoneId;
+  }
+
+}
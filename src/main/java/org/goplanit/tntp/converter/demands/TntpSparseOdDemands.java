@@ -0,0 +1,442 @@
+package org.goplanit.tntp.converter.demands;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sparse origin-destination demands in compressed sparse row (CSR) layout, indexed by TNTP zone id. Only non-zero cells are stored, so
+ * memory use is proportional to the number of non-zero cells rather than the square of the number of zones. Within a row the cells are
+ * ordered by destination.
+ * <p>
+ * The cells are held in buffers, either wrapping heap arrays or views on a (memory mapped) binary image written by
+ * {@link #writeTo(DataOutputStream, boolean)}, in which case values may be stored in single precision.
+ * </p>
+ *
+ * @author markr
+ *
+ */
+public class TntpSparseOdDemands {
+
+  /** first cell per origin row (TNTP id), with one trailing entry marking the end of the last row */
+  private final IntBuffer rowOffsets;
+
+  /** destination TNTP id per cell */
+  private final IntBuffer destinationIds;
+
+  /** value per cell in double precision, null when stored in single precision */
+  private final DoubleBuffer values;
+
+  /** value per cell in single precision, null when stored in double precision */
+  private final FloatBuffer singlePrecisionValues;
+
+  /**
+   * Collects the non-zero cells per origin row. Rows may be populated concurrently as long as each row is populated by a single thread
+   */
+  static class Builder {
+
+    /** initial number of cells of a row, capped at the largest zone id */
+    private static final int INITIAL_ROW_CAPACITY = 16;
+
+    /** destination TNTP ids per origin row, null when row is empty */
+    private final int[][] rowDestinationIds;
+
+    /** values per origin row, null when row is empty */
+    private final double[][] rowValues;
+
+    /** number of cells per origin row */
+    private final int[] rowSizes;
+
+    /** true per origin row when its cells were not added in strictly increasing destination order, i.e., it requires normalisation */
+    private final boolean[] rowUnordered;
+
+    /** initial number of cells of a row */
+    private final int rowCapacity;
+
+    /**
+     * Constructor
+     *
+     * @param maxZoneId largest supported TNTP zone id
+     */
+    Builder(int maxZoneId) {
+      this.rowDestinationIds = new int[maxZoneId + 1][];
+      this.rowValues = new double[maxZoneId + 1][];
+      this.rowSizes = new int[maxZoneId + 1];
+      this.rowUnordered = new boolean[maxZoneId + 1];
+      this.rowCapacity = Math.max(1, Math.min(INITIAL_ROW_CAPACITY, maxZoneId));
+    }
+
+    /**
+     * Add a cell. When a cell is added more than once the last value is retained, also when it is zero. Zero cells are not stored, they
+     * are only recorded when they may replace an earlier cell and are removed upon building
+     *
+     * @param originTntpId origin
+     * @param destinationTntpId destination
+     * @param value of the cell
+     */
+    void add(long originTntpId, long destinationTntpId, double value) {
+      final int origin = (int) originTntpId;
+      final int size = rowSizes[origin];
+      final boolean increasing = size == 0 || rowDestinationIds[origin][size - 1] < destinationTntpId;
+      if (value == 0 && increasing && !rowUnordered[origin]) {
+        /* no earlier cell for this destination */
+        return;
+      }
+      if (!increasing) {
+        rowUnordered[origin] = true;
+      }
+      if (rowDestinationIds[origin] == null) {
+        rowDestinationIds[origin] = new int[rowCapacity];
+        rowValues[origin] = new double[rowCapacity];
+      } else if (size == rowDestinationIds[origin].length) {
+        /* a row holds at most one cell per zone unless cells are duplicated, so do not grow beyond the number of zones before that */
+        final int maxZoneId = rowSizes.length - 1;
+        final int newCapacity = size < maxZoneId ? Math.min(size * 2, maxZoneId) : size * 2;
+        rowDestinationIds[origin] = Arrays.copyOf(rowDestinationIds[origin], newCapacity);
+        rowValues[origin] = Arrays.copyOf(rowValues[origin], newCapacity);
+      }
+      rowDestinationIds[origin][size] = (int) destinationTntpId;
+      rowValues[origin][size] = value;
+      rowSizes[origin] = size + 1;
+    }
+
+    /**
+     * Order the cells of a row by destination (in place) and remove duplicate destinations, retaining the last added value, and remove
+     * zero cells afterwards
+     *
+     * @param origin row to normalise
+     */
+    private void normaliseRow(final int origin) {
+      if (!rowUnordered[origin]) {
+        return;
+      }
+      final int[] destinations = rowDestinationIds[origin];
+      final double[] rowCells = rowValues[origin];
+      final int size = rowSizes[origin];
+
+      /* sort by destination, then insertion order, so the last duplicate ends up last */
+      final long[] keys = new long[size];
+      for (int index = 0; index < size; ++index) {
+        keys[index] = ((long) destinations[index] << 32) | index;
+      }
+      Arrays.sort(keys);
+      final double[] unsortedValues = Arrays.copyOf(rowCells, size);
+      int numUnique = 0;
+      for (int index = 0; index < size; ++index) {
+        final int destination = (int) (keys[index] >>> 32);
+        if (numUnique > 0 && destinations[numUnique - 1] == destination) {
+          --numUnique;
+        }
+        destinations[numUnique] = destination;
+        rowCells[numUnique] = unsortedValues[(int) keys[index]];
+        ++numUnique;
+      }
+      int numNonZeros = 0;
+      for (int index = 0; index < numUnique; ++index) {
+        if (rowCells[index] != 0) {
+          destinations[numNonZeros] = destinations[index];
+          rowCells[numNonZeros] = rowCells[index];
+          ++numNonZeros;
+        }
+      }
+      rowSizes[origin] = numNonZeros;
+    }
+
+    /**
+     * Build the CSR representation
+     *
+     * @return sparse demands
+     */
+    TntpSparseOdDemands build() {
+      final int[] rowOffsets = new int[rowSizes.length + 1];
+      for (int origin = 0; origin < rowSizes.length; ++origin) {
+        if (rowSizes[origin] > 0) {
+          normaliseRow(origin);
+        }
+        rowOffsets[origin + 1] = rowOffsets[origin] + rowSizes[origin];
+      }
+      final int[] destinationIds = new int[rowOffsets[rowSizes.length]];
+      final double[] values = new double[destinationIds.length];
+      for (int origin = 0; origin < rowSizes.length; ++origin) {
+        if (rowSizes[origin] > 0) {
+          System.arraycopy(rowDestinationIds[origin], 0, destinationIds, rowOffsets[origin], rowSizes[origin]);
+          System.arraycopy(rowValues[origin], 0, values, rowOffsets[origin], rowSizes[origin]);
+        }
+      }
+      return new TntpSparseOdDemands(rowOffsets, destinationIds, values);
+    }
+  }
+
+  /**
+   * Value of the cell at the given index
+   *
+   * @param index of the cell
+   * @return value
+   */
+  private double valueAt(int index) {
+    return values != null ? values.get(index) : singlePrecisionValues.get(index);
+  }
+
+  /**
+   * Locate the cell of a destination within a row
+   *
+   * @param rowStart first cell of the row
+   * @param rowEnd end of the row (exclusive)
+   * @param destinationTntpId to find
+   * @return index of the cell, -1 when not present
+   */
+  private int findCell(int rowStart, int rowEnd, int destinationTntpId) {
+    int low = rowStart;
+    int high = rowEnd - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final int destination = destinationIds.get(middle);
+      if (destination < destinationTntpId) {
+        low = middle + 1;
+      } else if (destination > destinationTntpId) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Constructor
+   *
+   * @param rowOffsets first cell per origin row plus trailing end
+   * @param destinationIds destination per cell
+   * @param values value per cell in double precision, null when single precision
+   * @param singlePrecisionValues value per cell in single precision, null when double precision
+   */
+  private TntpSparseOdDemands(final IntBuffer rowOffsets, final IntBuffer destinationIds, final DoubleBuffer values, final FloatBuffer singlePrecisionValues) {
+    this.rowOffsets = rowOffsets;
+    this.destinationIds = destinationIds;
+    this.values = values;
+    this.singlePrecisionValues = singlePrecisionValues;
+  }
+
+  /**
+   * Constructor
+   *
+   * @param rowOffsets first cell per origin row plus trailing end
+   * @param destinationIds destination per cell
+   * @param values value per cell
+   */
+  TntpSparseOdDemands(final int[] rowOffsets, final int[] destinationIds, final double[] values) {
+    this(IntBuffer.wrap(rowOffsets), IntBuffer.wrap(destinationIds), DoubleBuffer.wrap(values), null);
+  }
+
+  /**
+   * Number of bytes of the binary CSR form of the cells, excluding its header
+   *
+   * @param numRowOffsets number of row offsets
+   * @param numCells number of cells
+   * @param singlePrecision when true values are stored as float, otherwise as double
+   * @return number of bytes
+   */
+  private static long imageBytes(long numRowOffsets, long numCells, boolean singlePrecision) {
+    return (numRowOffsets + numCells) * Integer.BYTES + numCells * (singlePrecision ? Float.BYTES : Double.BYTES);
+  }
+
+  /**
+   * Write the cells in binary CSR form, streamed section by section so no copy of the cells is created. Images that cannot be mapped as a
+   * single buffer are rejected since they cannot be read back
+   *
+   * @param out to write to
+   * @param singlePrecision when true values are written as float, otherwise as double
+   * @throws IOException thrown if error
+   */
+  void writeTo(final DataOutputStream out, boolean singlePrecision) throws IOException {
+    final long imageBytes = imageBytes(rowOffsets.limit(), destinationIds.limit(), singlePrecision);
+    if (imageBytes > Integer.MAX_VALUE) {
+      throw new IOException(String.format("Binary image of %d OD demand cells (%d bytes) exceeds maximum size of a single mapping (%d bytes)",
+          destinationIds.limit(), imageBytes, Integer.MAX_VALUE));
+    }
+    out.writeInt(rowOffsets.limit());
+    out.writeInt(destinationIds.limit());
+    out.writeBoolean(singlePrecision);
+    for (int index = 0; index < rowOffsets.limit(); ++index) {
+      out.writeInt(rowOffsets.get(index));
+    }
+    for (int index = 0; index < destinationIds.limit(); ++index) {
+      out.writeInt(destinationIds.get(index));
+    }
+    for (int index = 0; index < destinationIds.limit(); ++index) {
+      if (singlePrecision) {
+        out.writeFloat((float) valueAt(index));
+      } else {
+        out.writeDouble(valueAt(index));
+      }
+    }
+  }
+
+  /**
+   * Create sparse demands backed by the binary CSR form written by {@link #writeTo(DataOutputStream, boolean)} at the current position of
+   * the buffer, no cells are copied. Position is advanced
+   *
+   * @param buffer to read from
+   * @return sparse demands backed by the buffer
+   * @throws IOException thrown if the image is truncated or exceeds a single mapping
+   */
+  static TntpSparseOdDemands readFrom(final ByteBuffer buffer) throws IOException {
+    final int numRowOffsets = buffer.getInt();
+    final int numCells = buffer.getInt();
+    final boolean singlePrecision = buffer.get() != 0;
+    final long imageBytes = imageBytes(numRowOffsets, numCells, singlePrecision);
+    if (numRowOffsets < 0 || numCells < 0 || imageBytes > buffer.remaining()) {
+      throw new IOException(String.format(
+          "Binary image of %d OD demand cells (%d bytes) is truncated or exceeds maximum size of a single mapping (%d bytes available)",
+          numCells, imageBytes, buffer.remaining()));
+    }
+    final IntBuffer rowOffsets = buffer.slice().asIntBuffer();
+    rowOffsets.limit(numRowOffsets);
+    buffer.position(buffer.position() + numRowOffsets * Integer.BYTES);
+    final IntBuffer destinationIds = buffer.slice().asIntBuffer();
+    destinationIds.limit(numCells);
+    buffer.position(buffer.position() + numCells * Integer.BYTES);
+    if (singlePrecision) {
+      final FloatBuffer values = buffer.slice().asFloatBuffer();
+      values.limit(numCells);
+      buffer.position(buffer.position() + numCells * Float.BYTES);
+      return new TntpSparseOdDemands(rowOffsets, destinationIds, null, values);
+    }
+    final DoubleBuffer values = buffer.slice().asDoubleBuffer();
+    values.limit(numCells);
+    buffer.position(buffer.position() + numCells * Double.BYTES);
+    return new TntpSparseOdDemands(rowOffsets, destinationIds, values, null);
+  }
+
+  /**
+   * Sum sparse OD demands cell by cell
+   *
+   * @param odDemands to sum
+   * @return summed OD demands
+   */
+  static TntpSparseOdDemands sum(final List<TntpSparseOdDemands> odDemands) {
+    int maxZoneId = 0;
+    for (final TntpSparseOdDemands entry : odDemands) {
+      maxZoneId = Math.max(maxZoneId, entry.getMaxZoneId());
+    }
+    final Builder summedOdDemands = new Builder(maxZoneId);
+    final double[] row = new double[maxZoneId + 1];
+    final boolean[] touched = new boolean[maxZoneId + 1];
+    final int[] touchedDestinations = new int[maxZoneId + 1];
+    for (int origin = 0; origin <= maxZoneId; ++origin) {
+      final int[] numberOfTouched = new int[1];
+      for (final TntpSparseOdDemands entry : odDemands) {
+        entry.forEachNonZero(origin, (originTntpId, destinationTntpId, value) -> {
+          if (!touched[(int) destinationTntpId]) {
+            touched[(int) destinationTntpId] = true;
+            touchedDestinations[numberOfTouched[0]++] = (int) destinationTntpId;
+          }
+          row[(int) destinationTntpId] += value;
+        });
+      }
+      Arrays.sort(touchedDestinations, 0, numberOfTouched[0]);
+      for (int index = 0; index < numberOfTouched[0]; ++index) {
+        final int destination = touchedDestinations[index];
+        summedOdDemands.add(origin, destination, row[destination]);
+        row[destination] = 0;
+        touched[destination] = false;
+      }
+    }
+    return summedOdDemands.build();
+  }
+
+  /**
+   * Value of a cell
+   *
+   * @param originTntpId origin
+   * @param destinationTntpId destination
+   * @return value, zero when not present
+   */
+  public double getValue(long originTntpId, long destinationTntpId) {
+    if (originTntpId < 0 || originTntpId > getMaxZoneId()) {
+      return 0;
+    }
+    final int index = findCell(rowOffsets.get((int) originTntpId), rowOffsets.get((int) originTntpId + 1), (int) destinationTntpId);
+    return index >= 0 ? valueAt(index) : 0;
+  }
+
+  /**
+   * Iterate over the non-zero cells of an origin row in destination order
+   *
+   * @param originTntpId origin row
+   * @param consumer to invoke per non-zero cell
+   */
+  public void forEachNonZero(long originTntpId, final TntpOdCellConsumer consumer) {
+    if (originTntpId < 0 || originTntpId > getMaxZoneId()) {
+      return;
+    }
+    final int rowEnd = rowOffsets.get((int) originTntpId + 1);
+    for (int index = rowOffsets.get((int) originTntpId); index < rowEnd; ++index) {
+      consumer.accept(originTntpId, destinationIds.get(index), valueAt(index));
+    }
+  }
+
+  /**
+   * Iterate over all non-zero cells in origin, destination order
+   *
+   * @param consumer to invoke per non-zero cell
+   */
+  public void forEachNonZero(final TntpOdCellConsumer consumer) {
+    for (int origin = 0; origin <= getMaxZoneId(); ++origin) {
+      forEachNonZero(origin, consumer);
+    }
+  }
+
+  /**
+   * Number of non-zero cells in an origin row
+   *
+   * @param originTntpId origin row
+   * @return number of non-zero cells
+   */
+  public int getNumberOfNonZeros(long originTntpId) {
+    return originTntpId < 0 || originTntpId > getMaxZoneId() ? 0 : rowOffsets.get((int) originTntpId + 1) - rowOffsets.get((int) originTntpId);
+  }
+
+  /**
+   * Number of non-zero cells
+   *
+   * @return number of non-zero cells
+   */
+  public int getNumberOfNonZeros() {
+    return destinationIds.limit();
+  }
+
+  /**
+   * Largest supported TNTP zone id
+   *
+   * @return max zone id
+   */
+  public int getMaxZoneId() {
+    return rowOffsets.limit() - 2;
+  }
+
+  /**
+   * Verify if values are held in single precision
+   *
+   * @return true when single precision
+   */
+  public boolean isSinglePrecision() {
+    return singlePrecisionValues != null;
+  }
+
+  /**
+   * Fraction of the cells of a dense matrix over the given number of zones that is non-zero
+   *
+   * @param numberOfZones of the dense matrix
+   * @return density in [0,1]
+   */
+  public double getDensity(int numberOfZones) {
+    return numberOfZones == 0 ? 0 : getNumberOfNonZeros() / ((double) numberOfZones * numberOfZones);
+  }
+
+}
@@ -0,0 +1,141 @@
+package org.goplanit.tntp.converter.network;
+
+import java.util.Arrays;
+
+import org.goplanit.cost.physical.BprLinkTravelTimeCost;
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
+import org.goplanit.utils.mode.Mode;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLinkSegment;
+
+/**
+ * BPR parameters (alpha, beta) parsed from a TNTP network file, stored in primitive arrays indexed by link segment id. Avoids a map
+ * entry, pair and boxed values per link segment and allows the parameters to be transferred to a {@link BprLinkTravelTimeCost} in a
+ * single pass over the link segments.
+ *
+ * @author markr
+ *
+ */
+public class TntpBprParameters {
+
+  /** alpha per link segment id, NaN when not set */
+  private double[] alphas;
+
+  /** beta per link segment id, NaN when not set */
+  private double[] betas;
+
+  /** number of link segments with parameters */
+  private int size;
+
+  /**
+   * Ensure arrays can hold given link segment id
+   *
+   * @param linkSegmentId to hold
+   */
+  private void ensureCapacity(long linkSegmentId) {
+    if (linkSegmentId < alphas.length) {
+      return;
+    }
+    final int oldLength = alphas.length;
+    final int newLength = (int) Math.max(linkSegmentId + 1, Math.min(Integer.MAX_VALUE - 1L, 2L * oldLength));
+    alphas = Arrays.copyOf(alphas, newLength);
+    betas = Arrays.copyOf(betas, newLength);
+    Arrays.fill(alphas, oldLength, newLength, Double.NaN);
+    Arrays.fill(betas, oldLength, newLength, Double.NaN);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param expectedNumberOfLinkSegments used for presizing
+   */
+  public TntpBprParameters(int expectedNumberOfLinkSegments) {
+    this.alphas = new double[Math.max(1, expectedNumberOfLinkSegments)];
+    this.betas = new double[alphas.length];
+    Arrays.fill(alphas, Double.NaN);
+    Arrays.fill(betas, Double.NaN);
+    this.size = 0;
+  }
+
+  /**
+   * Set BPR parameters for a link segment, overwrites existing parameters
+   *
+   * @param linkSegmentId id of the link segment
+   * @param alpha to use
+   * @param beta to use
+   */
+  public void setParameters(long linkSegmentId, double alpha, double beta) {
+    if (linkSegmentId < 0 || linkSegmentId >= Integer.MAX_VALUE) {
+      throw new PlanItRunTimeException("Link segment id %d outside valid range of BPR parameter store", linkSegmentId);
+    }
+    ensureCapacity(linkSegmentId);
+    if (Double.isNaN(alphas[(int) linkSegmentId])) {
+      ++size;
+    }
+    alphas[(int) linkSegmentId] = alpha;
+    betas[(int) linkSegmentId] = beta;
+  }
+
+  /**
+   * Verify if parameters are available for link segment
+   *
+   * @param linkSegmentId to check
+   * @return true when available
+   */
+  public boolean hasParameters(long linkSegmentId) {
+    return linkSegmentId >= 0 && linkSegmentId < alphas.length && !Double.isNaN(alphas[(int) linkSegmentId]);
+  }
+
+  /**
+   * Collect alpha of link segment
+   *
+   * @param linkSegmentId to collect for
+   * @return alpha, NaN when not available
+   */
+  public double getAlpha(long linkSegmentId) {
+    return hasParameters(linkSegmentId) ? alphas[(int) linkSegmentId] : Double.NaN;
+  }
+
+  /**
+   * Collect beta of link segment
+   *
+   * @param linkSegmentId to collect for
+   * @return beta, NaN when not available
+   */
+  public double getBeta(long linkSegmentId) {
+    return hasParameters(linkSegmentId) ? betas[(int) linkSegmentId] : Double.NaN;
+  }
+
+  /**
+   * Number of link segments with parameters
+   *
+   * @return size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Transfer the parameters of all given link segments that have parameters available to the BPR cost in a single pass
+   *
+   * @param bprLinkTravelTimeCost to populate
+   * @param linkSegments to populate parameters for
+   * @param mode to populate parameters for
+   * @return number of link segments for which parameters were set
+   */
+  public int populate(final BprLinkTravelTimeCost bprLinkTravelTimeCost, final Iterable<? extends MacroscopicLinkSegment> linkSegments, final Mode mode) {
+    int numPopulated = 0;
+    for (final MacroscopicLinkSegment linkSegment : linkSegments) {
+      final long linkSegmentId = linkSegment.getId();
+      if (linkSegmentId >= alphas.length) {
+        continue;
+      }
+      final double alpha = alphas[(int) linkSegmentId];
+      if (!Double.isNaN(alpha)) {
+        bprLinkTravelTimeCost.setParameters(linkSegment, mode, alpha, betas[(int) linkSegmentId]);
+        ++numPopulated;
+      }
+    }
+    return numPopulated;
+  }
+
+}
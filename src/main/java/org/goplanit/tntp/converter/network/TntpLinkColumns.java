@@ -0,0 +1,227 @@
+package org.goplanit.tntp.converter.network;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.goplanit.tntp.enums.NetworkFileColumnType;
+
+/**
+ * Columnar, primitive storage of parsed TNTP link rows. Used to decouple parsing of link rows (which can be done in parallel) from
+ * registering the PLANit entities (which must be done sequentially to obtain deterministic ids).
+ *
+ * @author markr
+ *
+ */
+class TntpLinkColumns {
+
+  /** number of rows stored */
+  private int size;
+
+  private long[] upstreamNodeIds;
+
+  private long[] downstreamNodeIds;
+
+  private double[] capacities;
+
+  private double[] lengths;
+
+  private double[] freeFlowTravelTimes;
+
+  private double[] bs;
+
+  private double[] powers;
+
+  private double[] maximumSpeeds;
+
+  private int[] linkTypes;
+
+  /**
+   * Ensure there is room for at least one more row
+   */
+  private void ensureCapacity() {
+    if (size == linkTypes.length) {
+      ensureCapacity(Math.max(16, linkTypes.length * 2));
+    }
+  }
+
+  /**
+   * Ensure there is room for the given number of rows without growing, e.g., once the number of links in the header is known
+   *
+   * @param newCapacity minimum number of rows
+   */
+  void ensureCapacity(int newCapacity) {
+    if (newCapacity <= linkTypes.length) {
+      return;
+    }
+    upstreamNodeIds = Arrays.copyOf(upstreamNodeIds, newCapacity);
+    downstreamNodeIds = Arrays.copyOf(downstreamNodeIds, newCapacity);
+    capacities = Arrays.copyOf(capacities, newCapacity);
+    lengths = Arrays.copyOf(lengths, newCapacity);
+    freeFlowTravelTimes = Arrays.copyOf(freeFlowTravelTimes, newCapacity);
+    bs = Arrays.copyOf(bs, newCapacity);
+    powers = Arrays.copyOf(powers, newCapacity);
+    maximumSpeeds = Arrays.copyOf(maximumSpeeds, newCapacity);
+    linkTypes = Arrays.copyOf(linkTypes, newCapacity);
+  }
+
+  /**
+   * Write long values in bulk
+   *
+   * @param out to write to
+   * @param values to write
+   * @param size number of values to write
+   * @throws IOException thrown if error
+   */
+  private static void write(final DataOutputStream out, final long[] values, int size) throws IOException {
+    final ByteBuffer bytes = ByteBuffer.allocate(size * Long.BYTES);
+    bytes.asLongBuffer().put(values, 0, size);
+    out.write(bytes.array());
+  }
+
+  /**
+   * Write double values in bulk
+   *
+   * @param out to write to
+   * @param values to write
+   * @param size number of values to write
+   * @throws IOException thrown if error
+   */
+  private static void write(final DataOutputStream out, final double[] values, int size) throws IOException {
+    final ByteBuffer bytes = ByteBuffer.allocate(size * Double.BYTES);
+    bytes.asDoubleBuffer().put(values, 0, size);
+    out.write(bytes.array());
+  }
+
+  /**
+   * Read long values in bulk from the current position, position is advanced
+   *
+   * @param buffer to read from
+   * @param values to populate
+   */
+  private static void read(final ByteBuffer buffer, final long[] values) {
+    buffer.asLongBuffer().get(values);
+    buffer.position(buffer.position() + values.length * Long.BYTES);
+  }
+
+  /**
+   * Read double values in bulk from the current position, position is advanced
+   *
+   * @param buffer to read from
+   * @param values to populate
+   */
+  private static void read(final ByteBuffer buffer, final double[] values) {
+    buffer.asDoubleBuffer().get(values);
+    buffer.position(buffer.position() + values.length * Double.BYTES);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param initialCapacity expected number of rows
+   */
+  TntpLinkColumns(int initialCapacity) {
+    this.size = 0;
+    this.upstreamNodeIds = new long[initialCapacity];
+    this.downstreamNodeIds = new long[initialCapacity];
+    this.capacities = new double[initialCapacity];
+    this.lengths = new double[initialCapacity];
+    this.freeFlowTravelTimes = new double[initialCapacity];
+    this.bs = new double[initialCapacity];
+    this.powers = new double[initialCapacity];
+    this.maximumSpeeds = new double[initialCapacity];
+    this.linkTypes = new int[initialCapacity];
+  }
+
+  /**
+   * Append a parsed link row
+   *
+   * @param linkRow parsed values indexed by {@link NetworkFileColumnType#ordinal()}
+   */
+  void add(final double[] linkRow) {
+    ensureCapacity();
+    upstreamNodeIds[size] = (long) linkRow[NetworkFileColumnType.UPSTREAM_NODE_ID.ordinal()];
+    downstreamNodeIds[size] = (long) linkRow[NetworkFileColumnType.DOWNSTREAM_NODE_ID.ordinal()];
+    capacities[size] = linkRow[NetworkFileColumnType.CAPACITY_PER_LANE.ordinal()];
+    lengths[size] = linkRow[NetworkFileColumnType.LENGTH.ordinal()];
+    freeFlowTravelTimes[size] = linkRow[NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME.ordinal()];
+    bs[size] = linkRow[NetworkFileColumnType.B.ordinal()];
+    powers[size] = linkRow[NetworkFileColumnType.POWER.ordinal()];
+    maximumSpeeds[size] = linkRow[NetworkFileColumnType.MAXIMUM_SPEED.ordinal()];
+    linkTypes[size] = (int) linkRow[NetworkFileColumnType.LINK_TYPE.ordinal()];
+    ++size;
+  }
+
+  /**
+   * Copy a stored row back into the row representation used for registering link data
+   *
+   * @param rowIndex to copy
+   * @param linkRow to populate, indexed by {@link NetworkFileColumnType#ordinal()}
+   */
+  void copyRowTo(int rowIndex, final double[] linkRow) {
+    linkRow[NetworkFileColumnType.UPSTREAM_NODE_ID.ordinal()] = upstreamNodeIds[rowIndex];
+    linkRow[NetworkFileColumnType.DOWNSTREAM_NODE_ID.ordinal()] = downstreamNodeIds[rowIndex];
+    linkRow[NetworkFileColumnType.CAPACITY_PER_LANE.ordinal()] = capacities[rowIndex];
+    linkRow[NetworkFileColumnType.LENGTH.ordinal()] = lengths[rowIndex];
+    linkRow[NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME.ordinal()] = freeFlowTravelTimes[rowIndex];
+    linkRow[NetworkFileColumnType.B.ordinal()] = bs[rowIndex];
+    linkRow[NetworkFileColumnType.POWER.ordinal()] = powers[rowIndex];
+    linkRow[NetworkFileColumnType.MAXIMUM_SPEED.ordinal()] = maximumSpeeds[rowIndex];
+    linkRow[NetworkFileColumnType.LINK_TYPE.ordinal()] = linkTypes[rowIndex];
+  }
+
+  /**
+   * Number of stored rows
+   *
+   * @return size
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Write the rows in columnar binary form
+   *
+   * @param out to write to
+   * @throws IOException thrown if error
+   */
+  void writeTo(final DataOutputStream out) throws IOException {
+    out.writeInt(size);
+    write(out, upstreamNodeIds, size);
+    write(out, downstreamNodeIds, size);
+    write(out, capacities, size);
+    write(out, lengths, size);
+    write(out, freeFlowTravelTimes, size);
+    write(out, bs, size);
+    write(out, powers, size);
+    write(out, maximumSpeeds, size);
+    final ByteBuffer bytes = ByteBuffer.allocate(size * Integer.BYTES);
+    bytes.asIntBuffer().put(linkTypes, 0, size);
+    out.write(bytes.array());
+  }
+
+  /**
+   * Read rows in columnar binary form as written by {@link #writeTo(DataOutputStream)} from the current position of the buffer,
+   * position is advanced
+   *
+   * @param buffer to read from
+   * @return read rows
+   */
+  static TntpLinkColumns readFrom(final ByteBuffer buffer) {
+    final TntpLinkColumns linkColumns = new TntpLinkColumns(buffer.getInt());
+    read(buffer, linkColumns.upstreamNodeIds);
+    read(buffer, linkColumns.downstreamNodeIds);
+    read(buffer, linkColumns.capacities);
+    read(buffer, linkColumns.lengths);
+    read(buffer, linkColumns.freeFlowTravelTimes);
+    read(buffer, linkColumns.bs);
+    read(buffer, linkColumns.powers);
+    read(buffer, linkColumns.maximumSpeeds);
+    buffer.asIntBuffer().get(linkColumns.linkTypes);
+    buffer.position(buffer.position() + linkColumns.linkTypes.length * Integer.BYTES);
+    linkColumns.size = linkColumns.linkTypes.length;
+    return linkColumns;
+  }
+
+}
@@ -0,0 +1,263 @@
+package org.goplanit.tntp.converter.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLinkSegmentType;
+
+/**
+ * Hashed index of link segment types keyed on their quantised capacity per lane and quantised maximum speed. Used to find a compatible
+ * existing link segment type in constant time when a TNTP link type cannot be used as is, instead of scanning all registered types.
+ * <p>
+ * The index is an open addressing hash table with linear probing. Capacities are quantised in buckets of {@link #CAPACITY_QUANTUM} and speeds
+ * in buckets of {@link #SPEED_QUANTUM}; when a capacity (speed) lies within {@link #CAPACITY_TOLERANCE} ({@link #SPEED_TOLERANCE}) of a bucket
+ * boundary the adjacent bucket is probed as well, so candidates that are considered equal by the caller's (epsilon based) comparison are
+ * never missed. The number of probes and collisions is tracked for monitoring purposes.
+ * </p>
+ *
+ * @author markr
+ *
+ */
+public class TntpLinkSegmentTypeIndex {
+
+  /** bucket width for capacity per lane (pcu/h/lane) */
+  public static final double CAPACITY_QUANTUM = 1e-3;
+
+  /** capacities closer than this to a bucket boundary are also looked up in the adjacent bucket */
+  public static final double CAPACITY_TOLERANCE = 1e-6;
+
+  /** bucket width for maximum speed (km/h) */
+  public static final double SPEED_QUANTUM = 1;
+
+  /** speeds closer than this to a bucket boundary are also looked up in the adjacent bucket */
+  public static final double SPEED_TOLERANCE = 1e-6;
+
+  /** initial number of slots, must be a power of two */
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** quantised capacity key per slot */
+  private long[] capacityKeys;
+
+  /** speed key per slot */
+  private long[] speedKeys;
+
+  /** types per slot in registration order, null when slot is empty */
+  private List<MacroscopicLinkSegmentType>[] slots;
+
+  /** number of occupied slots */
+  private int numOccupiedSlots;
+
+  /** number of slots inspected across all lookups and insertions */
+  private long probes;
+
+  /** number of inspected slots that were occupied by a different key */
+  private long collisions;
+
+  /**
+   * Hash the key to a slot
+   *
+   * @param capacityKey to use
+   * @param speedKey to use
+   * @param mask slot mask
+   * @return start slot
+   */
+  private static int hash(long capacityKey, long speedKey, int mask) {
+    long hash = capacityKey * 0x9E3779B97F4A7C15L + speedKey;
+    hash ^= (hash >>> 32);
+    hash *= 0xBF58476D1CE4E5B9L;
+    hash ^= (hash >>> 29);
+    return (int) hash & mask;
+  }
+
+  /**
+   * Quantise a value
+   *
+   * @param value to quantise
+   * @param quantum bucket width
+   * @return key
+   */
+  private static long toKey(double value, double quantum) {
+    return (long) Math.floor(value / quantum);
+  }
+
+  /**
+   * Key of the bucket adjacent to the bucket of the value when the value lies within the tolerance of the boundary between the two
+   *
+   * @param value that was quantised
+   * @param key of the value
+   * @param quantum bucket width
+   * @param tolerance distance to the bucket boundary within which the adjacent bucket is relevant
+   * @return adjacent key, or the key itself when the value is not near a bucket boundary
+   */
+  private static long toAdjacentKey(double value, long key, double quantum, double tolerance) {
+    final double offsetInBucket = value / quantum - key;
+    if (offsetInBucket * quantum < tolerance) {
+      return key - 1;
+    } else if ((1 - offsetInBucket) * quantum < tolerance) {
+      return key + 1;
+    }
+    return key;
+  }
+
+  /**
+   * Find slot for key
+   *
+   * @param capacityKey to find
+   * @param speedKey to find
+   * @return slot index, either containing the key or the first empty slot
+   */
+  private int findSlot(long capacityKey, long speedKey) {
+    final int mask = slots.length - 1;
+    int slot = hash(capacityKey, speedKey, mask);
+    while (true) {
+      ++probes;
+      if (slots[slot] == null) {
+        return slot;
+      }
+      if (capacityKeys[slot] == capacityKey && speedKeys[slot] == speedKey) {
+        return slot;
+      }
+      ++collisions;
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Double the number of slots and rehash all entries
+   */
+  @SuppressWarnings("unchecked")
+  private void grow() {
+    final long[] oldCapacityKeys = capacityKeys;
+    final long[] oldSpeedKeys = speedKeys;
+    final List<MacroscopicLinkSegmentType>[] oldSlots = slots;
+    capacityKeys = new long[oldSlots.length * 2];
+    speedKeys = new long[oldSlots.length * 2];
+    slots = new List[oldSlots.length * 2];
+    for (int index = 0; index < oldSlots.length; ++index) {
+      if (oldSlots[index] != null) {
+        final int slot = findSlot(oldCapacityKeys[index], oldSpeedKeys[index]);
+        capacityKeys[slot] = oldCapacityKeys[index];
+        speedKeys[slot] = oldSpeedKeys[index];
+        slots[slot] = oldSlots[index];
+      }
+    }
+  }
+
+  /**
+   * Find first match within the slot of the given key
+   *
+   * @param capacityKey to look up
+   * @param speedKey to look up
+   * @param isCompatible predicate to verify candidates
+   * @return first match, null if none
+   */
+  private MacroscopicLinkSegmentType findFirstInSlot(long capacityKey, long speedKey, Predicate<MacroscopicLinkSegmentType> isCompatible) {
+    final int slot = findSlot(capacityKey, speedKey);
+    if (slots[slot] == null) {
+      return null;
+    }
+    return slots[slot].stream().filter(isCompatible).findFirst().orElse(null);
+  }
+
+  /**
+   * Key and its adjacent key, or only the key when both are the same
+   *
+   * @param key to include
+   * @param adjacentKey to include
+   * @return keys to probe
+   */
+  private static long[] distinctKeys(long key, long adjacentKey) {
+    return adjacentKey == key ? new long[] {key} : new long[] {key, adjacentKey};
+  }
+
+  /**
+   * Constructor
+   */
+  @SuppressWarnings("unchecked")
+  public TntpLinkSegmentTypeIndex() {
+    this.capacityKeys = new long[INITIAL_CAPACITY];
+    this.speedKeys = new long[INITIAL_CAPACITY];
+    this.slots = new List[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Register a link segment type
+   *
+   * @param linkSegmentType to register
+   * @param capacityPerLane capacity per lane of the type
+   * @param maximumSpeedKmH maximum speed of the type
+   */
+  public void register(final MacroscopicLinkSegmentType linkSegmentType, double capacityPerLane, double maximumSpeedKmH) {
+    if ((numOccupiedSlots + 1) * 2 > slots.length) {
+      grow();
+    }
+    final long capacityKey = toKey(capacityPerLane, CAPACITY_QUANTUM);
+    final long speedKey = toKey(maximumSpeedKmH, SPEED_QUANTUM);
+    final int slot = findSlot(capacityKey, speedKey);
+    if (slots[slot] == null) {
+      capacityKeys[slot] = capacityKey;
+      speedKeys[slot] = speedKey;
+      slots[slot] = new ArrayList<>(1);
+      ++numOccupiedSlots;
+    }
+    slots[slot].add(linkSegmentType);
+  }
+
+  /**
+   * Find the first registered (lowest id) link segment type with the given capacity and maximum speed that satisfies the predicate
+   *
+   * @param capacityPerLane to match
+   * @param maximumSpeedKmH to match
+   * @param isCompatible final verification of a candidate
+   * @return match, null if none
+   */
+  public MacroscopicLinkSegmentType findFirstCompatible(
+      double capacityPerLane, double maximumSpeedKmH, Predicate<MacroscopicLinkSegmentType> isCompatible) {
+    final long capacityKey = toKey(capacityPerLane, CAPACITY_QUANTUM);
+    final long speedKey = toKey(maximumSpeedKmH, SPEED_QUANTUM);
+
+    /* near a bucket boundary, equal capacities or speeds (within tolerance) may have been quantised into the adjacent bucket */
+    final long[] capacityKeysToProbe = distinctKeys(capacityKey, toAdjacentKey(capacityPerLane, capacityKey, CAPACITY_QUANTUM, CAPACITY_TOLERANCE));
+    final long[] speedKeysToProbe = distinctKeys(speedKey, toAdjacentKey(maximumSpeedKmH, speedKey, SPEED_QUANTUM, SPEED_TOLERANCE));
+
+    MacroscopicLinkSegmentType match = null;
+    for (final long capacityKeyToProbe : capacityKeysToProbe) {
+      for (final long speedKeyToProbe : speedKeysToProbe) {
+        final MacroscopicLinkSegmentType slotMatch = findFirstInSlot(capacityKeyToProbe, speedKeyToProbe, isCompatible);
+        if (slotMatch != null && (match == null || slotMatch.getId() < match.getId())) {
+          match = slotMatch;
+        }
+      }
+    }
+    return match;
+  }
+
+  /**
+   * Number of slots inspected across all lookups and registrations so far
+   *
+   * @return number of probes
+   */
+  public long getNumberOfProbes() {
+    return probes;
+  }
+
+  /**
+   * Number of inspected slots that were occupied by a different key across all lookups and registrations so far
+   *
+   * @return number of collisions
+   */
+  public long getNumberOfCollisions() {
+    return collisions;
+  }
+
+  /**
+   * Number of distinct capacity/speed keys in the index
+   *
+   * @return number of keys
+   */
+  public int getNumberOfKeys() {
+    return numOccupiedSlots;
+  }
+
+}
@@ -0,0 +1,312 @@
+package org.goplanit.tntp.converter.network;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.goplanit.tntp.enums.NetworkFileColumnType;
+import org.goplanit.tntp.utils.TntpByteTokenizer;
+import org.goplanit.utils.exceptions.PlanItException;
+
+/**
+ * Compiled layout of the link rows of a TNTP network file. Built once per file, either from the explicitly configured columns or by
+ * detecting them from the {@code ~ init_node term_node capacity ...} header line. The column positions are resolved to fixed offsets
+ * in the row representation (indexed by {@link NetworkFileColumnType#ordinal()}), so decoding a row requires no map access.
+ *
+ * @author markr
+ *
+ */
+public class TntpNetworkFileSchema {
+
+  /** logger to use */
+  private static final Logger LOGGER = Logger.getLogger(TntpNetworkFileSchema.class.getCanonicalName());
+
+  /** known header labels (normalised) per column type */
+  private static final Map<String, NetworkFileColumnType> HEADER_LABELS = Map.ofEntries(
+      Map.entry("init_node", NetworkFileColumnType.UPSTREAM_NODE_ID),
+      Map.entry("tail_node", NetworkFileColumnType.UPSTREAM_NODE_ID),
+      Map.entry("tail", NetworkFileColumnType.UPSTREAM_NODE_ID),
+      Map.entry("from_node", NetworkFileColumnType.UPSTREAM_NODE_ID),
+      Map.entry("from", NetworkFileColumnType.UPSTREAM_NODE_ID),
+      Map.entry("term_node", NetworkFileColumnType.DOWNSTREAM_NODE_ID),
+      Map.entry("head_node", NetworkFileColumnType.DOWNSTREAM_NODE_ID),
+      Map.entry("head", NetworkFileColumnType.DOWNSTREAM_NODE_ID),
+      Map.entry("to_node", NetworkFileColumnType.DOWNSTREAM_NODE_ID),
+      Map.entry("to", NetworkFileColumnType.DOWNSTREAM_NODE_ID),
+      Map.entry("capacity", NetworkFileColumnType.CAPACITY_PER_LANE),
+      Map.entry("length", NetworkFileColumnType.LENGTH),
+      Map.entry("free_flow_time", NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME),
+      Map.entry("freeflowtime", NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME),
+      Map.entry("ftime", NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME),
+      Map.entry("fftt", NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME),
+      Map.entry("b", NetworkFileColumnType.B),
+      Map.entry("power", NetworkFileColumnType.POWER),
+      Map.entry("speed", NetworkFileColumnType.MAXIMUM_SPEED),
+      Map.entry("speed_limit", NetworkFileColumnType.MAXIMUM_SPEED),
+      Map.entry("toll", NetworkFileColumnType.TOLL),
+      Map.entry("link_type", NetworkFileColumnType.LINK_TYPE),
+      Map.entry("type", NetworkFileColumnType.LINK_TYPE),
+      Map.entry("critical_speed", NetworkFileColumnType.CRITICAL_SPEED),
+      Map.entry("lanes", NetworkFileColumnType.NUMBER_OF_LANES),
+      Map.entry("number_of_lanes", NetworkFileColumnType.NUMBER_OF_LANES));
+
+  /** column types holding integers (ids and types), decoded as integers so non-integer values are rejected rather than truncated */
+  private static final Set<NetworkFileColumnType> INTEGER_COLUMN_TYPES = EnumSet.of(
+      NetworkFileColumnType.UPSTREAM_NODE_ID, NetworkFileColumnType.DOWNSTREAM_NODE_ID, NetworkFileColumnType.LINK_TYPE);
+
+  /** largest magnitude of an integer that is exactly representable in the (double based) row representation */
+  private static final long MAX_EXACT_INTEGER = 1L << 53;
+
+  /** offset in the row representation per column index of the file, -1 for columns that are not decoded */
+  private final int[] offsetByColumnIndex;
+
+  /** true per column index of the file that holds integers */
+  private final boolean[] integerByColumnIndex;
+
+  /** the column layout the schema was compiled from */
+  private final Map<NetworkFileColumnType, Integer> columns;
+
+  /** true when the B column is present */
+  private final boolean hasB;
+
+  /** true when the POWER column is present */
+  private final boolean hasPower;
+
+  /**
+   * Normalise a header label, e.g. "capacity (veh/h)" becomes "capacity" and "link type" becomes "link_type"
+   *
+   * @param label to normalise
+   * @return normalised label
+   */
+  private static String normaliseLabel(String label) {
+    return label.replaceAll("\\(.*?\\)", "").trim().toLowerCase().replaceAll("[\\s\\-]+", "_");
+  }
+
+  /**
+   * Convert a decoded integer to its row representation
+   *
+   * @param value to convert
+   * @param tntpLinkSegmentRowId row being decoded (for error reporting)
+   * @return value as double
+   * @throws PlanItException thrown when value is not exactly representable
+   */
+  private static double toRowValue(long value, long tntpLinkSegmentRowId) throws PlanItException {
+    if (Math.abs(value) > MAX_EXACT_INTEGER) {
+      throw new PlanItException(String.format("TNTP link row %d holds id %d, exceeding supported maximum of %d", 
+          tntpLinkSegmentRowId, value, MAX_EXACT_INTEGER));
+    }
+    return value;
+  }
+
+  /**
+   * Constructor
+   *
+   * @param columns column index per column type
+   * @param decodedColumnTypes column types to decode, others are skipped
+   */
+  private TntpNetworkFileSchema(final Map<NetworkFileColumnType, Integer> columns, final Set<NetworkFileColumnType> decodedColumnTypes) {
+    this.columns = new EnumMap<>(NetworkFileColumnType.class);
+    this.columns.putAll(columns);
+    final int maxColumnIndex = columns.entrySet().stream().filter(
+        entry -> decodedColumnTypes.contains(entry.getKey())).mapToInt(Map.Entry::getValue).max().orElse(-1);
+    this.offsetByColumnIndex = new int[maxColumnIndex + 1];
+    this.integerByColumnIndex = new boolean[maxColumnIndex + 1];
+    Arrays.fill(offsetByColumnIndex, -1);
+    for (var entry : columns.entrySet()) {
+      if (decodedColumnTypes.contains(entry.getKey())) {
+        offsetByColumnIndex[entry.getValue()] = entry.getKey().ordinal();
+        integerByColumnIndex[entry.getValue()] = INTEGER_COLUMN_TYPES.contains(entry.getKey());
+      }
+    }
+    this.hasB = columns.containsKey(NetworkFileColumnType.B);
+    this.hasPower = columns.containsKey(NetworkFileColumnType.POWER);
+  }
+
+  /**
+   * Column types of the given set that are absent from the column layout
+   *
+   * @param columns column index per column type
+   * @param requiredColumnTypes column types to verify
+   * @return absent column types, empty when all are present
+   */
+  private static Set<NetworkFileColumnType> collectMissingColumnTypes(
+      final Map<NetworkFileColumnType, Integer> columns, final Set<NetworkFileColumnType> requiredColumnTypes) {
+    final Set<NetworkFileColumnType> missingColumnTypes = EnumSet.noneOf(NetworkFileColumnType.class);
+    for (final NetworkFileColumnType columnType : requiredColumnTypes) {
+      if (!columns.containsKey(columnType)) {
+        missingColumnTypes.add(columnType);
+      }
+    }
+    return missingColumnTypes;
+  }
+
+  /**
+   * Detect the column layout from the header line preceding the link rows. Labels are separated by tabs when present, otherwise by
+   * whitespace. Unknown labels are ignored (but still occupy a column) when tab separated, when whitespace separated they are rejected
+   * since a multi-word label would shift all subsequent columns. Only the upstream and downstream node columns are required
+   *
+   * @param headerLine line starting with '~'
+   * @return detected column index per column type
+   * @throws PlanItException thrown when the upstream and downstream node columns cannot be identified, or a whitespace separated header
+   * holds an unknown label
+   */
+  public static Map<NetworkFileColumnType, Integer> detectColumns(final String headerLine) throws PlanItException {
+    return detectColumns(headerLine, EnumSet.of(NetworkFileColumnType.UPSTREAM_NODE_ID, NetworkFileColumnType.DOWNSTREAM_NODE_ID));
+  }
+
+  /**
+   * Detect the column layout from the header line preceding the link rows. Labels are separated by tabs when present, otherwise by
+   * whitespace. Unknown labels are ignored (but still occupy a column) when tab separated, when whitespace separated they are rejected
+   * since a multi-word label would shift all subsequent columns
+   *
+   * @param headerLine line starting with '~'
+   * @param requiredColumnTypes column types that must be identified
+   * @return detected column index per column type
+   * @throws PlanItException thrown when one or more of the required columns cannot be identified, listing all of them, or a whitespace
+   * separated header holds an unknown label
+   */
+  public static Map<NetworkFileColumnType, Integer> detectColumns(
+      final String headerLine, final Set<NetworkFileColumnType> requiredColumnTypes) throws PlanItException {
+    String labels = headerLine.trim();
+    if (labels.startsWith("~")) {
+      labels = labels.substring(1);
+    }
+    final boolean tabSeparated = labels.indexOf('\t') >= 0;
+    final String[] rawLabels = tabSeparated ? labels.split("\t") : labels.trim().split("\\s+");
+
+    final Map<NetworkFileColumnType, Integer> detectedColumns = new EnumMap<>(NetworkFileColumnType.class);
+    int columnIndex = 0;
+    for (final String rawLabel : rawLabels) {
+      final String label = normaliseLabel(rawLabel);
+      if (label.isEmpty() || label.equals(";")) {
+        continue;
+      }
+      final NetworkFileColumnType columnType = HEADER_LABELS.get(label);
+      if (columnType == null && !tabSeparated) {
+        throw new PlanItException(String.format(
+            "Unknown TNTP network file column '%s' in whitespace separated header '%s', column positions cannot be detected reliably, "
+            + "separate the header labels by tabs or configure the columns explicitly via the network reader settings", 
+            rawLabel.trim(), headerLine));
+      } else if (columnType == null) {
+        LOGGER.warning(String.format("Unknown TNTP network file column '%s' at position %d, ignored", rawLabel.trim(), columnIndex));
+      } else if (!detectedColumns.containsKey(columnType)) {
+        detectedColumns.put(columnType, columnIndex);
+      }
+      ++columnIndex;
+    }
+
+    final Set<NetworkFileColumnType> missingColumnTypes = collectMissingColumnTypes(detectedColumns, requiredColumnTypes);
+    if (!missingColumnTypes.isEmpty()) {
+      throw new PlanItException(String.format(
+          "Unable to detect TNTP network file columns %s from header '%s', configure them explicitly via the network reader settings", 
+          missingColumnTypes, headerLine));
+    }
+    return detectedColumns;
+  }
+
+  /**
+   * Verify an explicitly configured column layout contains all required column types
+   *
+   * @param columns column index per column type
+   * @param requiredColumnTypes column types that must be present
+   * @throws PlanItException thrown when one or more of the required columns are absent, listing all of them
+   */
+  public static void verifyColumns(
+      final Map<NetworkFileColumnType, Integer> columns, final Set<NetworkFileColumnType> requiredColumnTypes) throws PlanItException {
+    final Set<NetworkFileColumnType> missingColumnTypes = collectMissingColumnTypes(columns, requiredColumnTypes);
+    if (!missingColumnTypes.isEmpty()) {
+      throw new PlanItException(String.format("Configured TNTP network file columns lack required columns %s", missingColumnTypes));
+    }
+  }
+
+  /**
+   * Compile schema for the given column layout
+   *
+   * @param columns column index per column type
+   * @param decodedColumnTypes column types to decode, others are skipped
+   * @return compiled schema
+   */
+  public static TntpNetworkFileSchema compile(final Map<NetworkFileColumnType, Integer> columns, final Set<NetworkFileColumnType> decodedColumnTypes) {
+    return new TntpNetworkFileSchema(columns, decodedColumnTypes);
+  }
+
+  /**
+   * Decode a row that is split into columns already
+   *
+   * @param cols the columns of the row
+   * @param linkRow to populate, indexed by {@link NetworkFileColumnType#ordinal()}
+   * @param tntpLinkSegmentRowId row being decoded (for error reporting)
+   * @throws PlanItException thrown when an id exceeds the supported range
+   * @throws NumberFormatException thrown when a value is not a number, or an id or type is not an integer
+   */
+  public void decode(final String[] cols, final double[] linkRow, final long tntpLinkSegmentRowId) throws PlanItException {
+    for (int columnIndex = 0; columnIndex < offsetByColumnIndex.length; ++columnIndex) {
+      final int offset = offsetByColumnIndex[columnIndex];
+      if (offset >= 0) {
+        linkRow[offset] = integerByColumnIndex[columnIndex] ? 
+            toRowValue(Long.parseLong(cols[columnIndex]), tntpLinkSegmentRowId) : Double.parseDouble(cols[columnIndex]);
+      }
+    }
+  }
+
+  /**
+   * Decode the link row at the current position of the tokenizer in place and move to the next line
+   *
+   * @param tokenizer positioned at the start of a link row
+   * @param linkRow to populate, indexed by {@link NetworkFileColumnType#ordinal()}
+   * @param tntpLinkSegmentRowId row being decoded (for error reporting)
+   * @throws PlanItException thrown when row has fewer columns than the schema requires or an id exceeds the supported range
+   * @throws NumberFormatException thrown when a value is not a number, or an id or type is not an integer
+   */
+  public void decode(final TntpByteTokenizer tokenizer, final double[] linkRow, final long tntpLinkSegmentRowId) throws PlanItException {
+    int columnIndex = 0;
+    while (tokenizer.skipDelimiters()) {
+      final int offset = columnIndex < offsetByColumnIndex.length ? offsetByColumnIndex[columnIndex] : -1;
+      if (offset < 0) {
+        tokenizer.skipToken();
+      } else if (integerByColumnIndex[columnIndex]) {
+        linkRow[offset] = toRowValue(tokenizer.nextLong(), tntpLinkSegmentRowId);
+      } else {
+        linkRow[offset] = tokenizer.nextDouble();
+      }
+      ++columnIndex;
+    }
+    tokenizer.skipLine();
+    if (columnIndex < offsetByColumnIndex.length) {
+      throw new PlanItException(String.format(
+          "TNTP link row %d has %d columns, expected at least %d", tntpLinkSegmentRowId, columnIndex, offsetByColumnIndex.length));
+    }
+  }
+
+  /**
+   * Verify if the B (BPR alpha) column is present
+   *
+   * @return true when present
+   */
+  public boolean hasB() {
+    return hasB;
+  }
+
+  /**
+   * Verify if the POWER (BPR beta) column is present
+   *
+   * @return true when present
+   */
+  public boolean hasPower() {
+    return hasPower;
+  }
+
+  /**
+   * The column layout this schema was compiled from
+   *
+   * @return column index per column type
+   */
+  public Map<NetworkFileColumnType, Integer> getColumns() {
+    return Collections.unmodifiableMap(columns);
+  }
+
+}
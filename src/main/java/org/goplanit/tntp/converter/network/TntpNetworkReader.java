@@ -1,11 +1,19 @@
 package org.goplanit.tntp.converter.network;
 
-import java.io.File;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.goplanit.converter.BaseReaderImpl;
 import org.goplanit.converter.network.NetworkReader;
@@ -13,10 +21,16 @@ import org.goplanit.cost.physical.BprLinkTravelTimeCost;
 import org.goplanit.network.MacroscopicNetwork;
 import org.goplanit.network.LayeredNetwork;
 import org.goplanit.network.layer.macroscopic.AccessGroupPropertiesFactory;
-import org.goplanit.tntp.TntpHeaderConstants;
+import org.goplanit.tntp.TntpMetadata;
+import org.goplanit.tntp.enums.IdMode;
 import org.goplanit.tntp.enums.LengthUnits;
 import org.goplanit.tntp.enums.NetworkFileColumnType;
+import org.goplanit.tntp.enums.ParsingMode;
 import org.goplanit.tntp.enums.SpeedUnits;
+import org.goplanit.tntp.utils.TntpByteTokenizer;
+import org.goplanit.tntp.utils.TntpDenseIdIndex;
+import org.goplanit.tntp.utils.TntpIdStrings;
+import org.goplanit.tntp.utils.TntpInputSource;
 import org.goplanit.utils.exceptions.PlanItException;
 import org.goplanit.utils.exceptions.PlanItRunTimeException;
 import org.goplanit.utils.geo.PlanitCrsUtils;
@@ -26,7 +40,6 @@ import org.goplanit.utils.id.IdGroupingToken;
 import org.goplanit.utils.macroscopic.MacroscopicConstants;
 import org.goplanit.utils.math.Precision;
 import org.goplanit.utils.misc.LoggingUtils;
-import org.goplanit.utils.misc.Pair;
 import org.goplanit.utils.mode.Mode;
 import org.goplanit.utils.mode.PredefinedModeType;
 import org.goplanit.utils.network.layer.MacroscopicNetworkLayer;
@@ -50,6 +63,23 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
   /** logger to use */
   private static final Logger LOGGER = Logger.getLogger(TntpNetworkReader.class.getCanonicalName());
   
+  /** the network file column types that are parsed, other configured columns are ignored */
+  private static final Set<NetworkFileColumnType> PARSED_COLUMN_TYPES = EnumSet.of(
+      NetworkFileColumnType.UPSTREAM_NODE_ID, NetworkFileColumnType.DOWNSTREAM_NODE_ID, NetworkFileColumnType.CAPACITY_PER_LANE,
+      NetworkFileColumnType.LENGTH, NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME, NetworkFileColumnType.MAXIMUM_SPEED,
+      NetworkFileColumnType.LINK_TYPE, NetworkFileColumnType.B, NetworkFileColumnType.POWER);
+
+  /** column types that must be present to create the link data, the others are optional */
+  private static final Set<NetworkFileColumnType> REQUIRED_COLUMN_TYPES = EnumSet.of(
+      NetworkFileColumnType.UPSTREAM_NODE_ID, NetworkFileColumnType.DOWNSTREAM_NODE_ID, NetworkFileColumnType.CAPACITY_PER_LANE,
+      NetworkFileColumnType.LENGTH, NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME, NetworkFileColumnType.LINK_TYPE);
+  
+  /** minimum number of bytes per chunk when parsing link rows in parallel, avoids overhead on small files */
+  private static final int MIN_PARALLEL_CHUNK_BYTES = 1 << 16;
+
+  /** maximum number of chunks per thread when parsing link rows in parallel, more than one balances the load across threads */
+  private static final int MAX_PARALLEL_CHUNKS_PER_THREAD = 4;
+  
   /** the network to populate */
   private MacroscopicNetwork networkToPopulate;  
       
@@ -67,10 +97,60 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
   private int noLinks;
   
   /**
-   * Map containing the BPR parameters for each link segment, if these are specified in the
+   * BPR parameters for each link segment indexed by link segment id, if these are specified in the
    * network file (null if default values are being used)
    */
-  private Map<LinkSegment, Pair<Double, Double>> bprParametersForLinkSegmentAndMode;    
+  private TntpBprParameters bprParameters;    
+  
+  /** nodes indexed by their TNTP id, presized based on the number of nodes in the header */
+  private TntpDenseIdIndex<Node> nodesByTntpId;
+  
+  /** link segment types hashed by capacity per lane and maximum speed, used to find compatible alternative types */
+  private TntpLinkSegmentTypeIndex linkSegmentTypeIndex;
+  
+  /** pooled Strings of numeric ids, null when ids are created per entity, see {@link IdMode} */
+  private TntpIdStrings idStrings;
+  
+  /** node coordinates parsed ahead of the network, e.g., on a background thread, null when not prefetched */
+  private Future<TntpNodeCoordinates> prefetchedNodeCoordinates;
+  
+  /** metadata of the network file, parsed or restored from a snapshot, null before reading */
+  private TntpMetadata networkMetadata;
+  
+  /** compiled layout of the link rows of the network file being parsed */
+  private TntpNetworkFileSchema networkFileSchema;
+  
+  /** parsed link rows retained to create a snapshot, null when no snapshot is to be created */
+  private TntpLinkColumns snapshotLinkRows;
+  
+  /** parsed values of the current link row indexed by {@link NetworkFileColumnType#ordinal()}, reused across rows */
+  private final double[] linkRowValues = new double[NetworkFileColumnType.values().length];
+  
+  /**
+   * Consumer of parsed link rows
+   */
+  @FunctionalInterface
+  private interface LinkRowConsumer {
+
+    /**
+     * Accept a parsed link row
+     * 
+     * @param linkRow parsed values indexed by {@link NetworkFileColumnType#ordinal()}
+     * @param rowIndex index of the row
+     * @throws PlanItException thrown if error
+     */
+    void accept(final double[] linkRow, final long rowIndex) throws PlanItException;
+  }
+  
+  /** Collect parsed value of the current link row for the given column type
+   * 
+   * @param linkRow parsed values of the row
+   * @param columnType to collect
+   * @return value
+   */
+  private static double getLinkRowValue(final double[] linkRow, final NetworkFileColumnType columnType) {
+    return linkRow[columnType.ordinal()];
+  }
   
   /** Create an estimate for the number of lanes given a certain capacity using {@link #DEFAULT_LANE_CAPACITY_PCUH} and rounding upward 
    * 
@@ -84,17 +164,14 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
     return 1;
   }
   
-  /** Create mode access properties based on provided information
+  /** Determine the (rounded) free flow speed based on provided information
    * 
    * @param link to extract length from
-   * @param mode to use
    * @param maxSpeedKmH to use in case length is not present
    * @param freeFlowTravelTime known free flow travel time of link
-   * @return
+   * @return free flow speed in km/h
    */
-  private AccessGroupProperties createAccessGroupProperties(Link link, Mode mode, double maxSpeedKmH, double freeFlowTravelTime) {
-    
-    /* mode properties */
+  private static double getFreeFlowSpeedKmH(Link link, double maxSpeedKmH, double freeFlowTravelTime) {
     double freeflowSpeedKmH = maxSpeedKmH;
     if(Precision.positive(link.getLengthKm()) && Precision.positive(freeFlowTravelTime)){
       freeflowSpeedKmH = (link.getLengthKm() / freeFlowTravelTime);
@@ -103,8 +180,16 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
     //TODO: Make this configurable -> now we round to the nearest whole number regarding the free flow speed in order to minimise 
     //      the number of link segment types needed (due to inaccuracy in tntp files, we often get very close free flow speeds but still slightly different
     //      causing a large number of types to be created.
-    freeflowSpeedKmH = Math.round(freeflowSpeedKmH);
-    
+    return Math.round(freeflowSpeedKmH);
+  }
+  
+  /** Create mode access properties based on provided information
+   * 
+   * @param mode to use
+   * @param freeflowSpeedKmH free flow speed, also used as maximum speed
+   * @return created properties
+   */
+  private static AccessGroupProperties createAccessGroupProperties(Mode mode, double freeflowSpeedKmH) {
     final AccessGroupProperties modeAccessProperties = AccessGroupPropertiesFactory.create(freeflowSpeedKmH, freeflowSpeedKmH, mode);
     modeAccessProperties.setMaximumSpeedKmH(freeflowSpeedKmH);
     return modeAccessProperties;
@@ -115,22 +200,45 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
    * @param networkLayer to register on
    * @param capacityPerLane to use
    * @param modeAccessProperties to use
+   * @param freeflowSpeedKmH maximum speed of the mode access properties, used to index the type
    * @param externalId externalId to set
    * @return created link segment type
    */
   private MacroscopicLinkSegmentType createAndRegisterLinkSegmentType(final MacroscopicNetworkLayer networkLayer, double capacityPerLane,
-      final AccessGroupProperties modeAccessProperties, String externalId) {
+      final AccessGroupProperties modeAccessProperties, double freeflowSpeedKmH, String externalId) {
     MacroscopicLinkSegmentType linkSegmentType;
     linkSegmentType = networkLayer.getLinkSegmentTypes().getFactory().registerNew(externalId, capacityPerLane, MacroscopicConstants.DEFAULT_MAX_DENSITY_PCU_KM_LANE);
     linkSegmentType.setAccessGroupProperties(modeAccessProperties);
     
     /* XML id */
-    linkSegmentType.setXmlId(Long.toString(linkSegmentType.getId()));
+    linkSegmentType.setXmlId(toIdString(linkSegmentType.getId()));
     /* external id */
     linkSegmentType.setExternalId(externalId);
+    
+    linkSegmentTypeIndex.register(linkSegmentType, capacityPerLane, freeflowSpeedKmH);
     return linkSegmentType;
   }
 
+  /**
+   * String of a numeric id, pooled unless ids are created per entity
+   *
+   * @param id to collect String for
+   * @return String of the id
+   */
+  private String toIdString(long id) {
+    return idStrings == null ? String.valueOf(id) : idStrings.of(id);
+  }
+
+  /**
+   * String of a numeric id that is only used as a lookup key, it is not pooled nor accounted for as saved
+   *
+   * @param id to collect String for
+   * @return String of the id
+   */
+  private String toLookupIdString(long id) {
+    return idStrings == null ? String.valueOf(id) : idStrings.lookup(id);
+  }
+
   /**
    * initialise the source id trackers, so we can lay indices on the source id as well for quick lookups
    */
@@ -139,35 +247,31 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
     initialiseSourceIdMap(Link.class, Link::getExternalId);
     initialiseSourceIdMap(MacroscopicLinkSegment.class, MacroscopicLinkSegment::getExternalId);
     initialiseSourceIdMap(MacroscopicLinkSegmentType.class, MacroscopicLinkSegmentType::getExternalId);
-    initialiseSourceIdMap(Node.class, Node::getExternalId);
+    /* nodes are tracked by dense TNTP id index instead, see nodesByTntpId */
   }  
   
   /**
    * Create and register a new node if it does not already exist
    *
    * @param network the current physical network
-   * @param cols the columns in the network input file
-   * @param networkFileColumn the column in the network file which contains the node external Id
+   * @param tntpNodeId the TNTP node id (used as external Id)
    * @return the node corresponding to this external ID
    * @throws PlanItException thrown if there is an error registering the node
    */
-  private Node collectOrCreatePlanitNode(final MacroscopicNetworkLayer network, final String[] cols, final NetworkFileColumnType networkFileColumn)
-      throws PlanItException {
+  private Node collectOrCreatePlanitNode(final MacroscopicNetworkLayer network, final long tntpNodeId) throws PlanItException {
         
-    final String nodeSourceId = cols[getSettings().getNetworkFileColumns().get(networkFileColumn)];
-    if ( Long.parseLong(nodeSourceId) > noPhysicalNodes) {
-      throw new PlanItException("Number of nodes is specified as " + noPhysicalNodes + " but found a reference to node " + nodeSourceId);
+    if (tntpNodeId > noPhysicalNodes) {
+      throw new PlanItException("Number of nodes is specified as " + noPhysicalNodes + " but found a reference to node " + tntpNodeId);
     }
-    Node node = null;
-    if (getBySourceId(Node.class, nodeSourceId) == null) {      
+    Node node = nodesByTntpId.get(tntpNodeId);
+    if (node == null) {
+      final String nodeSourceId = toIdString(tntpNodeId);
       node = network.getNodes().getFactory().registerNew();
       /* XML id */
       node.setXmlId(nodeSourceId);    
       /* external id */
       node.setExternalId(nodeSourceId);
-      registerBySourceId(Node.class, node);      
-    } else {
-      node = getBySourceId(Node.class, nodeSourceId);
+      nodesByTntpId.register(tntpNodeId, node);
     }
     return node;
   }
@@ -182,57 +286,55 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
    * @param link the current link
    * @param directionAb direction to register link segment in
    * @param tntpLinkSegmentRowId the external Id of the type of this link segment (row index in file)
-   * @param cols with information to parse
+   * @param linkRow parsed values of the link row
    * @return the macroscopic link segment which has been created
    */
   private MacroscopicLinkSegment createAndRegisterLinkSegment(
-      final MacroscopicNetworkLayer networkLayer, final MacroscopicLink link, final long tntpLinkSegmentRowId, boolean directionAb, final String[] cols) {
+      final MacroscopicNetworkLayer networkLayer, final MacroscopicLink link, final long tntpLinkSegmentRowId, boolean directionAb, final double[] linkRow) {
     
-    Map<NetworkFileColumnType, Integer> supportedColumns = getSettings().getNetworkFileColumns();
     SpeedUnits speedUnits = getSettings().getSpeedUnits();
     Mode mode = networkLayer.getFirstSupportedMode();
        
     /* LINK SEGMENT*/
-    final int linkSegmentTypeSourceId = Integer.parseInt(cols[supportedColumns.get(NetworkFileColumnType.LINK_TYPE)]);         
+    final int linkSegmentTypeSourceId = (int) getLinkRowValue(linkRow, NetworkFileColumnType.LINK_TYPE);
     final MacroscopicLinkSegment linkSegment = networkLayer.getLinkSegments().getFactory().registerNew(link, directionAb, true);
     /* XML id */
     linkSegment.setXmlId(link.getExternalId() + "-" + (directionAb ? "AB" : "BA"));
     /* external id */    
-    linkSegment.setExternalId(String.valueOf(tntpLinkSegmentRowId));
-    if (linkSegment.getExternalId() != null) {
-      registerBySourceId(MacroscopicLinkSegment.class, linkSegment);      
-    }
+    linkSegment.setExternalId(toIdString(tntpLinkSegmentRowId));
+    registerBySourceId(MacroscopicLinkSegment.class, linkSegment);      
     
     /* LINK SEGMENT TYPE + number of lanes */
     {    
       /* max speed km/h */
       double defaultMaximumSpeed = getSettings().getDefaultMaximumSpeed();
       double maxSpeedKmH = defaultMaximumSpeed *  speedUnits.getMultiplier();
-      final double speedLimit = Double.parseDouble(cols[supportedColumns.get(NetworkFileColumnType.MAXIMUM_SPEED)]);
+      final double speedLimit = getLinkRowValue(linkRow, NetworkFileColumnType.MAXIMUM_SPEED);
       if (speedLimit > Precision.EPSILON_6 && speedLimit < Double.POSITIVE_INFINITY) {
         maxSpeedKmH = speedLimit * speedUnits.getMultiplier();
       }
       
       /* free flow travel time */
-      final double freeFlowTravelTimeH = Double.parseDouble(cols[supportedColumns.get(NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME)]) * settings.getFreeFlowTravelTimeUnits().getMultiplier();    
+      final double freeFlowTravelTimeH = getLinkRowValue(linkRow, NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME) * settings.getFreeFlowTravelTimeUnits().getMultiplier();    
       
       /* capacity pcu/h/lane */      
       double capacityPerHourMultiplier = getSettings().getCapacityPeriodUnits().getMultiplier()/getSettings().getCapacityPeriodDuration();      
-      double capacityPerLane = Double.parseDouble(cols[supportedColumns.get(NetworkFileColumnType.CAPACITY_PER_LANE)]) * capacityPerHourMultiplier;       
+      double capacityPerLane = getLinkRowValue(linkRow, NetworkFileColumnType.CAPACITY_PER_LANE) * capacityPerHourMultiplier;       
           
       int numLanes = -1;
-      final AccessGroupProperties modeAccessProperties = createAccessGroupProperties(link, mode, maxSpeedKmH, freeFlowTravelTimeH);    
+      final double freeflowSpeedKmH = getFreeFlowSpeedKmH(link, maxSpeedKmH, freeFlowTravelTimeH);
+      final AccessGroupProperties modeAccessProperties = createAccessGroupProperties(mode, freeflowSpeedKmH);    
       
       /** Link segment type **/
-      String linkSegmentTypeSourceIdString = String.valueOf(linkSegmentTypeSourceId);
-      MacroscopicLinkSegmentType linkSegmentType = getBySourceId(MacroscopicLinkSegmentType.class, linkSegmentTypeSourceIdString);
+      MacroscopicLinkSegmentType linkSegmentType = getBySourceId(MacroscopicLinkSegmentType.class, toLookupIdString(linkSegmentTypeSourceId));
       if (linkSegmentType == null) {
         
         /* create per lane capacity estimate */
         numLanes = getNumLaneEstimate(capacityPerLane);
         capacityPerLane = capacityPerLane/numLanes;
               
-        linkSegmentType = createAndRegisterLinkSegmentType(networkLayer, capacityPerLane, modeAccessProperties, linkSegmentTypeSourceIdString);
+        linkSegmentType = createAndRegisterLinkSegmentType(
+            networkLayer, capacityPerLane, modeAccessProperties, freeflowSpeedKmH, toIdString(linkSegmentTypeSourceId));
         registerBySourceId(MacroscopicLinkSegmentType.class, linkSegmentType);     
               
       }else {
@@ -244,9 +346,8 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
           double expectedCapacityPerLane = capacityPerLane / numLanes;
   
           /* find first match with equal capacity and mode properties */
-          MacroscopicLinkSegmentType match = networkLayer.getLinkSegmentTypes().toCollection().stream().filter(
-              ls -> Precision.equal(ls.getExplicitCapacityPerLane(), expectedCapacityPerLane)).filter(
-                  ls -> ls.getAccessProperties(mode).isEqualExceptForModes(modeAccessProperties)).findFirst().orElse(null);       
+          MacroscopicLinkSegmentType match = linkSegmentTypeIndex.findFirstCompatible(expectedCapacityPerLane, freeflowSpeedKmH,
+              ls -> Precision.equal(ls.getExplicitCapacityPerLane(), expectedCapacityPerLane) && ls.getAccessProperties(mode).isEqualExceptForModes(modeAccessProperties));
           if(match != null) {
             linkSegmentType = match;
             LOGGER.fine(String.format("TNTP Link %s (nodes %s,%s) with capacity %.2f assigned to alternative type (%s) " +
@@ -255,7 +356,8 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
                     match.getXmlId(), match.getExplicitCapacityPerLane(), match.getMaximumSpeedKmH(mode)));
           }else {
             /* no match exists, create new type */
-            linkSegmentType = createAndRegisterLinkSegmentType(networkLayer, expectedCapacityPerLane, modeAccessProperties, linkSegmentTypeSourceIdString);
+            linkSegmentType = createAndRegisterLinkSegmentType(
+                networkLayer, expectedCapacityPerLane, modeAccessProperties, freeflowSpeedKmH, toIdString(linkSegmentTypeSourceId));
             LOGGER.warning(String.format("TNTP Link %s (nodes %s,%s) with capacity %.2f remains unmatched, created new " +
                             "type %s [%.2f capacity per lane, %.2f speed limit (km/h)]",
                 link.getExternalId(), link.getVertexA().getExternalId(), link.getVertexB().getExternalId(), capacityPerLane,
@@ -278,10 +380,10 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
    * Update the node coordinates from the node coordinate file
    *
    * @param network the physical network object to be populated from the input data
-   * @param nodeCoordinateFile file used
+   * @param nodeCoordinateSource source used
    */
-  private void parseNodeCoordinatesFromFile(final MacroscopicNetworkLayer network, File nodeCoordinateFile) {
-    try (Scanner scanner = new Scanner(nodeCoordinateFile)) {
+  private void parseNodeCoordinatesFromFile(final MacroscopicNetworkLayer network, TntpInputSource nodeCoordinateSource) {
+    try (Scanner scanner = new Scanner(nodeCoordinateSource.openStream())) {
       while (scanner.hasNextLine()) {
         String line = scanner.nextLine().trim();
         line = line.replaceAll(";", "");
@@ -290,7 +392,7 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
           final String[] cols = line.split("\\s+");
           final String nodeSourceId = cols[0];
   
-          final Node node = getBySourceId(Node.class, nodeSourceId);
+          final Node node = nodesByTntpId.get(Long.parseLong(nodeSourceId));
           if(node == null) {
             LOGGER.severe(String.format("Referenced node %s in TNTP node file not available in PLANit memory model",nodeSourceId));
             continue;
@@ -304,19 +406,107 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
       throw new PlanItRunTimeException("Error when parsing node coordinates from file in TNTP",e);
     }
   }
+  
+  /**
+   * Assign the parsed node coordinates to the nodes
+   *
+   * @param nodeCoordinates to assign
+   * @return number of assigned coordinates
+   */
+  private int assignNodeCoordinates(final TntpNodeCoordinates nodeCoordinates) {
+    nodeCoordinates.getOutOfRangeNodeIds().forEach( nodeId -> 
+      LOGGER.severe(String.format("Referenced node %d in TNTP node file not available in PLANit memory model",nodeId)));
+    
+    int numCoordinates = 0;
+    for (long nodeId = 1; nodeId <= nodeCoordinates.getMaxNodeId(); ++nodeId) {
+      if (!nodeCoordinates.hasCoordinate(nodeId)) {
+        continue;
+      }
+      final Node node = nodesByTntpId.get(nodeId);
+      if(node == null) {
+        LOGGER.severe(String.format("Referenced node %d in TNTP node file not available in PLANit memory model",nodeId));
+        continue;
+      }
+      node.setPosition(PlanitJtsUtils.createPoint(nodeCoordinates.getX(nodeId), nodeCoordinates.getY(nodeId)));
+      ++numCoordinates;
+    }
+    return numCoordinates;
+  }
+  
+  /**
+   * Parse the node coordinates from the memory mapped file into primitive arrays indexed by TNTP node id (in parallel chunks
+   * if configured), followed by a single pass assigning the positions to the nodes
+   *
+   * @param network the physical network object to be populated from the input data
+   * @param nodeCoordinateSource the node coordinate source
+   * @param parallel when true parse in parallel
+   */
+  private void parseMappedNodeCoordinatesFromFile(final MacroscopicNetworkLayer network, TntpInputSource nodeCoordinateSource, boolean parallel) {
+    try {
+      final long startTime = System.currentTimeMillis();
+      final TntpNodeCoordinates nodeCoordinates = 
+          new TntpNodeCoordinates(nodeCoordinateSource, Math.max(noPhysicalNodes, nodesByTntpId.size()), parallel);
+      final long parseTime = System.currentTimeMillis() - startTime;
+      
+      final int numCoordinates = assignNodeCoordinates(nodeCoordinates);
+      
+      LOGGER.info(String.format("Parsed %d TNTP node coordinates (%.2f MB) in %d ms (%.0f nodes/s), assigned positions in %d ms",
+          numCoordinates, nodeCoordinates.getNumberOfBytes() / (1024.0 * 1024.0), parseTime, 
+          numCoordinates * 1000.0 / Math.max(1, parseTime), System.currentTimeMillis() - startTime - parseTime));
+    } catch (final Exception e) {
+      LOGGER.severe(e.getMessage());
+      throw new PlanItRunTimeException("Error when parsing node coordinates from file in TNTP",e);
+    }
+  }
+  
+  /**
+   * Assign the prefetched node coordinates to the nodes, waiting for the prefetch to complete if needed
+   *
+   * @return true when assigned, false when the prefetch failed or does not cover all nodes, in which case the node file is to be parsed
+   */
+  private boolean assignPrefetchedNodeCoordinates() {
+    final long startTime = System.currentTimeMillis();
+    final TntpNodeCoordinates nodeCoordinates;
+    try {
+      nodeCoordinates = prefetchedNodeCoordinates.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PlanItRunTimeException("Interrupted while waiting for prefetched TNTP node coordinates", e);
+    } catch (final ExecutionException e) {
+      LOGGER.warning(String.format("Prefetching TNTP node coordinates failed, parsing node file instead: %s", e.getCause().getMessage()));
+      return false;
+    }
+    if (nodeCoordinates.getMaxNodeId() < Math.max(noPhysicalNodes, nodesByTntpId.size())) {
+      LOGGER.info("Prefetched TNTP node coordinates do not cover all nodes, parsing node file instead");
+      return false;
+    }
+    
+    final long waitTime = System.currentTimeMillis() - startTime;
+    final int numCoordinates = assignNodeCoordinates(nodeCoordinates);
+    LOGGER.info(String.format("Assigned %d prefetched TNTP node coordinates (%.2f MB) after waiting %d ms, assigned positions in %d ms",
+        numCoordinates, nodeCoordinates.getNumberOfBytes() / (1024.0 * 1024.0), waitTime, System.currentTimeMillis() - startTime - waitTime));
+    return true;
+  }
 
   /**
-   * Read network metadata from the top of the network input file
+   * Apply the metadata of the network input file, i.e., the number of nodes and links. The metadata is cached so other readers of the
+   * network file, e.g., the zoning reader, do not have to read it again
    *
-   * @param line the current line in the network input file
-   * @throws Exception thrown if the contents of the header cannot be parsed into an integer
+   * @param metadata of the network input file
+   * @param networkSource the metadata belongs to
    */
-  private void readNetworkMetadata(final String line) throws Exception {
-   if (line.startsWith(TntpHeaderConstants.NUMBER_OF_NODES_INDICATOR)) {
-      noPhysicalNodes = TntpHeaderConstants.parseFromHeader(line, TntpHeaderConstants.NUMBER_OF_NODES_INDICATOR);
-    } else if (line.startsWith(TntpHeaderConstants.NUMBER_OF_LINKS_INDICATOR)) {
-      noLinks = TntpHeaderConstants.parseFromHeader(line, TntpHeaderConstants.NUMBER_OF_LINKS_INDICATOR);
+  private void applyNetworkMetadata(final TntpMetadata metadata, final TntpInputSource networkSource) {
+    networkMetadata = metadata;
+    noPhysicalNodes = metadata.getNumberOfNodes();
+    nodesByTntpId = new TntpDenseIdIndex<>(noPhysicalNodes);
+    noLinks = metadata.getNumberOfLinks();
+    if (snapshotLinkRows != null) {
+      snapshotLinkRows.ensureCapacity(noLinks);
+    }
+    if (idStrings != null) {
+      idStrings.ensureCapacity(Math.max(noPhysicalNodes, noLinks));
     }
+    TntpMetadata.cache(networkSource, metadata);
   }
 
   /**
@@ -330,14 +520,51 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
    */
   private void readLinkData(final MacroscopicNetworkLayer networkLayer, final String line, final long tntpLinkSegmentRowId)
       throws PlanItException {
-    final String[] cols = line.split("\\s+");
+    try {
+      networkFileSchema.decode(line.split("\\s+"), linkRowValues, tntpLinkSegmentRowId);
+    } catch (final NumberFormatException e) {
+      throw new PlanItException(String.format("Invalid value in TNTP link row %d", tntpLinkSegmentRowId), e);
+    }
+    registerLinkData(networkLayer, linkRowValues, tntpLinkSegmentRowId);
+  }
+
+  /**
+   * Compile the schema used to decode the link rows, based on the explicitly configured columns if present, otherwise detected
+   * from the header line preceding the link rows
+   * 
+   * @param headerLine the line starting with '~'
+   * @throws PlanItException thrown when configured or detected columns lack any of the columns required to create the link data
+   */
+  private void compileNetworkFileSchema(final String headerLine) throws PlanItException {
+    var columns = getSettings().getNetworkFileColumns();
+    if (columns == null) {
+      columns = TntpNetworkFileSchema.detectColumns(headerLine, REQUIRED_COLUMN_TYPES);
+      LOGGER.info(String.format("Detected TNTP network file columns: %s", columns));
+    } else {
+      TntpNetworkFileSchema.verifyColumns(columns, REQUIRED_COLUMN_TYPES);
+    }
+    networkFileSchema = TntpNetworkFileSchema.compile(columns, PARSED_COLUMN_TYPES);
+  }
+
+  /**
+   * Create and register the nodes, links and link segments from the parsed values of a single link row
+   *
+   * @param networkLayer the macroscopic networkLayer object to be populated from the input data
+   * @param linkRow parsed values of the link row, indexed by {@link NetworkFileColumnType#ordinal()}
+   * @param tntpLinkSegmentRowId the row Id for the current Tntp link segment (used as external id)
+   * @throws PlanItException thrown if there is an error
+   */
+  private void registerLinkData(final MacroscopicNetworkLayer networkLayer, final double[] linkRow, final long tntpLinkSegmentRowId)
+      throws PlanItException {
     
-    Map<NetworkFileColumnType, Integer> supportedColumns = getSettings().getNetworkFileColumns();
+    if (snapshotLinkRows != null) {
+      snapshotLinkRows.add(linkRow);
+    }
     LengthUnits lengthUnits = getSettings().getLengthUnits();
    
-    final Node upstreamNode = collectOrCreatePlanitNode(networkLayer, cols, NetworkFileColumnType.UPSTREAM_NODE_ID);
-    final Node downstreamNode = collectOrCreatePlanitNode(networkLayer, cols, NetworkFileColumnType.DOWNSTREAM_NODE_ID);    
-    final double length = Double.parseDouble(cols[supportedColumns.get(NetworkFileColumnType.LENGTH)]) * lengthUnits.getMultiplier();
+    final Node upstreamNode = collectOrCreatePlanitNode(networkLayer, (long) getLinkRowValue(linkRow, NetworkFileColumnType.UPSTREAM_NODE_ID));
+    final Node downstreamNode = collectOrCreatePlanitNode(networkLayer, (long) getLinkRowValue(linkRow, NetworkFileColumnType.DOWNSTREAM_NODE_ID));    
+    final double length = getLinkRowValue(linkRow, NetworkFileColumnType.LENGTH) * lengthUnits.getMultiplier();
     
     /** LINK **/
     MacroscopicLink link = null;
@@ -356,29 +583,29 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
     if(link==null) {
       link = networkLayer.getLinks().getFactory().registerNew(upstreamNode, downstreamNode, length, true /* register on node */);
       /* XML id */
-      link.setXmlId(link.getId());
+      link.setXmlId(toIdString(link.getId()));
       /* External id */
       link.setExternalId(link.getXmlId());
     }
     
     /** LINK SEGMENT + TYPE **/    
-    final MacroscopicLinkSegment linkSegment = createAndRegisterLinkSegment(networkLayer, link, tntpLinkSegmentRowId, directionAb, cols);
+    final MacroscopicLinkSegment linkSegment = createAndRegisterLinkSegment(networkLayer, link, tntpLinkSegmentRowId, directionAb, linkRow);
   
     /** MODE PARAMETERS **/
     double alpha = BprLinkTravelTimeCost.DEFAULT_ALPHA;
     double beta = BprLinkTravelTimeCost.DEFAULT_BETA;
     boolean settingAlpha = false;
-    if (supportedColumns.keySet().contains(NetworkFileColumnType.B)) {
-      alpha = Double.parseDouble(cols[supportedColumns.get(NetworkFileColumnType.B)]);
+    if (networkFileSchema.hasB()) {
+      alpha = getLinkRowValue(linkRow, NetworkFileColumnType.B);
       settingAlpha = true;
     }
     boolean settingBeta = false;
-    if (supportedColumns.keySet().contains(NetworkFileColumnType.POWER)) {
-      beta = Double.parseDouble(cols[supportedColumns.get(NetworkFileColumnType.POWER)]);
+    if (networkFileSchema.hasPower()) {
+      beta = getLinkRowValue(linkRow, NetworkFileColumnType.POWER);
       settingBeta = true;
     }
     if (settingAlpha || settingBeta) {
-      addBprParametersForLinkSegmentAndMode(linkSegment, alpha, beta);
+      addBprParametersForLinkSegment(linkSegment, alpha, beta);
     }
   }
   
@@ -389,15 +616,178 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
    * @param alpha the BPR alpha parameter
    * @param beta the BPR beta parameter
    */
-  private void addBprParametersForLinkSegmentAndMode(final LinkSegment linkSegment, final double alpha,
+  private void addBprParametersForLinkSegment(final LinkSegment linkSegment, final double alpha,
       final double beta) {
-    if (bprParametersForLinkSegmentAndMode == null) {
-      bprParametersForLinkSegmentAndMode = new HashMap<LinkSegment, Pair<Double, Double>>();
+    if (bprParameters == null) {
+      bprParameters = new TntpBprParameters(noLinks);
     }
-    final Pair<Double, Double> alphaBeta = Pair.of(alpha, beta);
-    bprParametersForLinkSegmentAndMode.put(linkSegment, alphaBeta);
+    bprParameters.setParameters(linkSegment.getId(), alpha, beta);
   }  
   
+  /**
+   * Parse the network file line by line using a Scanner, creating the network entities along the way
+   * 
+   * @param networkLayer to populate
+   * @param networkSource to parse
+   * @return number of parsed link rows
+   * @throws Exception thrown if error
+   */
+  private long parseNetworkFileWithScanner(final MacroscopicNetworkLayer networkLayer, final TntpInputSource networkSource) throws Exception {
+    long tntpLinkSegmentRowId = 0;
+    try (Scanner scanner = new Scanner(networkSource.openStream())) {
+      final TntpMetadata.Builder metadata = new TntpMetadata.Builder();
+      boolean readingMetadata = true;
+      boolean readingLinkData = false;
+
+      while (scanner.hasNextLine()) {
+        final String line = scanner.nextLine().trim();
+        final char firstChar = (line.isEmpty()) ? 'x' : line.charAt(0);
+        if (readingMetadata) {
+          readingMetadata = metadata.addEntry(line);
+          if (!readingMetadata) {
+            applyNetworkMetadata(metadata.build(), networkSource);
+          }
+        } else {
+          if (firstChar == '~') {
+            if (!readingLinkData) {
+              compileNetworkFileSchema(line);
+            }
+            readingLinkData = true;
+          } else if (readingLinkData) {
+            tntpLinkSegmentRowId++;
+            readLinkData(networkLayer, line, tntpLinkSegmentRowId);
+          }
+        }
+      }
+    }
+    return tntpLinkSegmentRowId;
+  }
+
+  /**
+   * Read the metadata of a memory mapped network file and position the tokenizer at the start of the link rows, i.e., the line
+   * after the first comment line following the metadata
+   * 
+   * @param tokenizer positioned at start of file
+   * @param networkSource of the tokenizer
+   * @throws Exception thrown if error
+   */
+  private void readMappedMetadataAndSkipToLinkRows(final TntpByteTokenizer tokenizer, final TntpInputSource networkSource) throws Exception {
+    applyNetworkMetadata(TntpMetadata.parse(tokenizer), networkSource);
+    while (tokenizer.hasRemaining()) {
+      if (!tokenizer.isAtEndOfLine() && tokenizer.peek() == '~') {
+        compileNetworkFileSchema(tokenizer.nextLine());
+        return;
+      }
+      tokenizer.skipLine();
+    }
+  }
+
+  /**
+   * Parse link rows in the given region of a memory mapped network file. Blank lines and comments are skipped
+   * 
+   * @param tokenizer positioned at the start of a line in the link rows section
+   * @param schema compiled layout of the link rows
+   * @param linkRow scratch row to parse into
+   * @param rowIdOffset number of link rows preceding the region, the first row of the region has row id rowIdOffset + 1
+   * @param linkRowConsumer invoked for each parsed row, with its row id
+   * @return number of parsed rows
+   * @throws PlanItException thrown if error, reporting the row id of the offending row
+   */
+  private static long parseMappedLinkRows(final TntpByteTokenizer tokenizer, final TntpNetworkFileSchema schema, final double[] linkRow, 
+      final long rowIdOffset, final LinkRowConsumer linkRowConsumer) throws PlanItException {
+    long rowIndex = 0;
+    while (tokenizer.hasRemaining()) {
+      if (tokenizer.isAtEndOfLine() || tokenizer.peek() == '~') {
+        tokenizer.skipLine();
+      } else {
+        ++rowIndex;
+        try {
+          schema.decode(tokenizer, linkRow, rowIdOffset + rowIndex);
+        } catch (final NumberFormatException e) {
+          throw new PlanItException(String.format("Invalid value in TNTP link row %d", rowIdOffset + rowIndex), e);
+        }
+        linkRowConsumer.accept(linkRow, rowIdOffset + rowIndex);
+      }
+    }
+    return rowIndex;
+  }
+
+  /**
+   * Parse the network file by memory mapping it and tokenizing the link rows in place, creating the network entities along the way.
+   * Yields the same result as {@link #parseNetworkFileWithScanner(MacroscopicNetworkLayer, TntpInputSource)} without creating Strings per row.
+   * Compressed and stream based sources are decompressed into memory instead of being mapped
+   * 
+   * @param networkLayer to populate
+   * @param networkSource to parse
+   * @return number of parsed link rows
+   * @throws Exception thrown if error
+   */
+  private long parseMemoryMappedNetworkFile(final MacroscopicNetworkLayer networkLayer, final TntpInputSource networkSource) throws Exception {
+    final TntpByteTokenizer tokenizer = new TntpByteTokenizer(networkSource.readFully());
+    readMappedMetadataAndSkipToLinkRows(tokenizer, networkSource);
+    return parseMappedLinkRows(tokenizer, networkFileSchema, linkRowValues, 0,
+        (linkRow, tntpLinkSegmentRowId) -> registerLinkData(networkLayer, linkRow, tntpLinkSegmentRowId));
+  }
+
+  /**
+   * Parse the network file in two phases. First the link rows section of the memory mapped file is split into chunks that are parsed
+   * in parallel on the common fork join pool into primitive columns. Second, the PLANit entities are registered sequentially in file order,
+   * so the result (including all ids) is identical to the sequential parsing modes. A chunk that fails to parse retains the rows parsed
+   * before the offending row, once its turn for registration comes the offending row is decoded again with its row id in the file, so errors
+   * are reported identically to the sequential parsing modes
+   * 
+   * @param networkLayer to populate
+   * @param networkSource to parse
+   * @return number of parsed link rows
+   * @throws Exception thrown if error
+   */
+  private long parseMemoryMappedNetworkFileInParallel(final MacroscopicNetworkLayer networkLayer, final TntpInputSource networkSource) throws Exception {
+    final ByteBuffer buffer = networkSource.readFully();
+    final TntpByteTokenizer tokenizer = new TntpByteTokenizer(buffer);
+    readMappedMetadataAndSkipToLinkRows(tokenizer, networkSource);
+    
+    /* phase one: parallel parsing into primitive columns */
+    final long startTime = System.currentTimeMillis();
+    final int linkRowsStart = tokenizer.getPosition();
+    final int numChunks = (int) Math.max(1, Math.min(MAX_PARALLEL_CHUNKS_PER_THREAD * ForkJoinPool.commonPool().getParallelism(), 
+        (buffer.limit() - linkRowsStart) / MIN_PARALLEL_CHUNK_BYTES));
+    final int[] chunkBoundaries = TntpByteTokenizer.splitAtLineBoundaries(buffer, linkRowsStart, buffer.limit(), numChunks);
+    final int numberOfChunks = chunkBoundaries.length - 1;
+    final int expectedRowsPerChunk = noLinks / numberOfChunks + 1;
+    /* failure per chunk, rows are numbered relative to the chunk */
+    final PlanItException[] chunkFailures = new PlanItException[numberOfChunks];
+    final List<TntpLinkColumns> chunks = IntStream.range(0, numberOfChunks).parallel().mapToObj( chunkIndex -> {
+      final TntpLinkColumns chunk = new TntpLinkColumns(expectedRowsPerChunk);
+      try {
+        parseMappedLinkRows(new TntpByteTokenizer(buffer, chunkBoundaries[chunkIndex], chunkBoundaries[chunkIndex + 1]),
+            networkFileSchema, new double[NetworkFileColumnType.values().length], 0, (linkRow, rowIndex) -> chunk.add(linkRow));
+      } catch (final PlanItException e) {
+        chunkFailures[chunkIndex] = e;
+      }
+      return chunk;
+    }).collect(Collectors.toList());
+    LOGGER.fine(String.format("Parsed TNTP link rows in %d chunks in %d ms", chunks.size(), System.currentTimeMillis() - startTime));
+    
+    /* phase two: sequential registration in file order */
+    long tntpLinkSegmentRowId = 0;
+    for (int chunkIndex = 0; chunkIndex < numberOfChunks; ++chunkIndex) {
+      final TntpLinkColumns chunk = chunks.get(chunkIndex);
+      final long chunkRowIdOffset = tntpLinkSegmentRowId;
+      for (int rowIndex = 0; rowIndex < chunk.size(); ++rowIndex) {
+        chunk.copyRowTo(rowIndex, linkRowValues);
+        registerLinkData(networkLayer, linkRowValues, ++tntpLinkSegmentRowId);
+      }
+      if (chunkFailures[chunkIndex] != null) {
+        /* decode the chunk again numbering its rows from the preceding chunks onwards, so the offending row throws with its row id in the file */
+        parseMappedLinkRows(new TntpByteTokenizer(buffer, chunkBoundaries[chunkIndex], chunkBoundaries[chunkIndex + 1]),
+            networkFileSchema, new double[NetworkFileColumnType.values().length], chunkRowIdOffset, (linkRow, rowId) -> {});
+        throw new PlanItException(String.format("Error parsing TNTP link row %d", chunkRowIdOffset + chunk.size() + 1), 
+            chunkFailures[chunkIndex]);
+      }
+    }
+    return tntpLinkSegmentRowId;
+  }
+  
   /**
    * Constructor
    * 
@@ -408,6 +798,116 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
     this(networkSettings, new MacroscopicNetwork(idToken));    
   }
 
+  /**
+   * Determine the snapshot file for the current inputs in the configured snapshot cache directory. Only file based inputs can be
+   * fingerprinted, stream based inputs disable the cache
+   * 
+   * @param networkSource to use
+   * @param nodeCoordinateSource to use, may be null
+   * @return snapshot file, null when it cannot be determined (logged)
+   */
+  private Path locateSnapshotFile(final TntpInputSource networkSource, final TntpInputSource nodeCoordinateSource) {
+    if (networkSource.getFile() == null || (nodeCoordinateSource != null && nodeCoordinateSource.getFile() == null)) {
+      LOGGER.warning("TNTP network snapshot cache requires file based inputs, parsing network files instead");
+      return null;
+    }
+    try {
+      final Path cacheDirectory = Files.createDirectories(Path.of(getSettings().getSnapshotCacheDirectory()));
+      final String key = TntpNetworkSnapshot.createKey(
+          networkSource.getFile(), nodeCoordinateSource == null ? null : nodeCoordinateSource.getFile(), getSettings().getNetworkFileColumns());
+      return cacheDirectory.resolve("tntp-network-" + key + TntpNetworkSnapshot.FILE_EXTENSION);
+    } catch (final Exception e) {
+      LOGGER.warning(String.format("Unable to use TNTP network snapshot cache, parsing network files instead: %s", e.getMessage()));
+      return null;
+    }
+  }
+  
+  /**
+   * Read snapshot if it exists
+   * 
+   * @param snapshotFile to read
+   * @return snapshot, null when not available or invalid (logged)
+   */
+  private static TntpNetworkSnapshot readSnapshot(final Path snapshotFile) {
+    if (snapshotFile == null || !Files.exists(snapshotFile)) {
+      return null;
+    }
+    try {
+      final long startTime = System.currentTimeMillis();
+      final TntpNetworkSnapshot snapshot = TntpNetworkSnapshot.read(snapshotFile);
+      LOGGER.info(String.format("Loaded TNTP network snapshot %s in %d ms", snapshotFile, System.currentTimeMillis() - startTime));
+      return snapshot;
+    } catch (final Exception e) {
+      LOGGER.warning(String.format("Ignoring invalid TNTP network snapshot %s: %s", snapshotFile, e.getMessage()));
+      return null;
+    }
+  }
+  
+  /**
+   * Populate the network layer by replaying the link rows of a snapshot, as if they were parsed from the network file
+   * 
+   * @param networkLayer to populate
+   * @param snapshot to replay
+   * @param networkSource the snapshot was created for, its metadata is restored from the snapshot
+   * @return number of replayed link rows
+   * @throws PlanItException thrown if error
+   */
+  private long replaySnapshot(final MacroscopicNetworkLayer networkLayer, final TntpNetworkSnapshot snapshot, final TntpInputSource networkSource)
+      throws PlanItException {
+    applyNetworkMetadata(snapshot.metadata, networkSource);
+    networkFileSchema = TntpNetworkFileSchema.compile(snapshot.columns, PARSED_COLUMN_TYPES);
+    
+    long tntpLinkSegmentRowId = 0;
+    for (int rowIndex = 0; rowIndex < snapshot.linkRows.size(); ++rowIndex) {
+      snapshot.linkRows.copyRowTo(rowIndex, linkRowValues);
+      registerLinkData(networkLayer, linkRowValues, ++tntpLinkSegmentRowId);
+    }
+    return tntpLinkSegmentRowId;
+  }
+  
+  /**
+   * Assign the node coordinates of a snapshot to the nodes
+   * 
+   * @param snapshot to use
+   */
+  private void assignSnapshotNodeCoordinates(final TntpNetworkSnapshot snapshot) {
+    for (int index = 0; index < snapshot.coordinateNodeIds.length; ++index) {
+      final Node node = nodesByTntpId.get(snapshot.coordinateNodeIds[index]);
+      if (node != null) {
+        node.setPosition(PlanitJtsUtils.createPoint(snapshot.xs[index], snapshot.ys[index]));
+      }
+    }
+  }
+  
+  /**
+   * Write snapshot of the parsed link rows and node coordinates, failure to do so is logged but otherwise ignored
+   * 
+   * @param snapshotFile to write to
+   */
+  private void writeSnapshot(final Path snapshotFile) {
+    final long[] coordinateNodeIds = new long[noPhysicalNodes];
+    final double[] xs = new double[noPhysicalNodes];
+    final double[] ys = new double[noPhysicalNodes];
+    int numCoordinates = 0;
+    for (long nodeId = 1; nodeId <= noPhysicalNodes; ++nodeId) {
+      final Node node = nodesByTntpId.get(nodeId);
+      if (node != null && node.getPosition() != null) {
+        coordinateNodeIds[numCoordinates] = nodeId;
+        xs[numCoordinates] = node.getPosition().getX();
+        ys[numCoordinates] = node.getPosition().getY();
+        ++numCoordinates;
+      }
+    }
+    
+    try {
+      new TntpNetworkSnapshot(networkMetadata, networkFileSchema.getColumns(), snapshotLinkRows, 
+          Arrays.copyOf(coordinateNodeIds, numCoordinates), Arrays.copyOf(xs, numCoordinates), Arrays.copyOf(ys, numCoordinates)).write(snapshotFile);
+      LOGGER.info(String.format("Written TNTP network snapshot %s", snapshotFile));
+    } catch (final Exception e) {
+      LOGGER.warning(String.format("Unable to write TNTP network snapshot %s: %s", snapshotFile, e.getMessage()));
+    }
+  }
+
   /**
    * Constructor
    * 
@@ -459,16 +959,15 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
     
     
     initialiseSourceIdTrackers();
+    nodesByTntpId = new TntpDenseIdIndex<>(0);
+    linkSegmentTypeIndex = new TntpLinkSegmentTypeIndex();
+    idStrings = getSettings().getIdMode() == IdMode.FULL ? null : new TntpIdStrings(0);
     
-    File networkFile = null;
-    File nodeCoordinateFile = null;
-    try {
-      networkFile = new File(settings.getNetworkFile()).getCanonicalFile();
-      nodeCoordinateFile = (settings.getNodeCoordinateFile() == null) ? null : new File(settings.getNodeCoordinateFile()).getCanonicalFile();            
-    } catch (final Exception e) {
-      LOGGER.severe(e.getMessage());
-      throw new PlanItRunTimeException("Error in constructing files from network and node file location settings of TNTP",e);
-    }    
+    final TntpInputSource networkSource = settings.getNetworkSource();
+    final TntpInputSource nodeCoordinateSource = settings.getNodeCoordinateSource();
+    if (networkSource == null) {
+      throw new PlanItRunTimeException("TNTP network file or source not set, unable to create network");
+    }
     
     /* TNTP only has one mode, define it here */
     Mode mode = networkToPopulate.getModes().getFactory().registerNew(PredefinedModeType.CAR);
@@ -478,28 +977,23 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
     final MacroscopicNetworkLayer networkLayer = networkToPopulate.getTransportLayers().getFactory().registerNew();
     networkLayer.registerSupportedMode(mode);
    
-    try (Scanner scanner = new Scanner(networkFile)) {
-      boolean readingMetadata = true;
-      boolean readingLinkData = false;
-      long tntpLinkSegmentRowId = 0;
-
-      while (scanner.hasNextLine()) {
-        final String line = scanner.nextLine().trim();
-        final char firstChar = (line.isEmpty()) ? 'x' : line.charAt(0);
-        final boolean atEndOfMetadata = line.equals(TntpHeaderConstants.END_OF_METADATA_INDICATOR);
-        if (atEndOfMetadata) {
-          readingMetadata = false;
-        }
-        if (readingMetadata) {
-          readNetworkMetadata(line);
-        } else if (!atEndOfMetadata) {
-          if (firstChar == '~') {
-            readingLinkData = true;
-          } else if (readingLinkData) {
-            tntpLinkSegmentRowId++;
-            readLinkData(networkLayer, line, tntpLinkSegmentRowId);
-          }
-        }
+    /* optional snapshot of previously parsed (identical) inputs */
+    final Path snapshotFile = getSettings().getSnapshotCacheDirectory() == null ? null : locateSnapshotFile(networkSource, nodeCoordinateSource);
+    final TntpNetworkSnapshot snapshot = readSnapshot(snapshotFile);
+    if (snapshot == null && snapshotFile != null) {
+      snapshotLinkRows = new TntpLinkColumns(0);
+    }
+   
+    try {
+      long tntpLinkSegmentRowId;
+      if (snapshot != null) {
+        tntpLinkSegmentRowId = replaySnapshot(networkLayer, snapshot, networkSource);
+      } else if (getSettings().getParsingMode() == ParsingMode.MEMORY_MAPPED) {
+        tntpLinkSegmentRowId = parseMemoryMappedNetworkFile(networkLayer, networkSource);
+      } else if (getSettings().getParsingMode() == ParsingMode.PARALLEL) {
+        tntpLinkSegmentRowId = parseMemoryMappedNetworkFileInParallel(networkLayer, networkSource);
+      } else {
+        tntpLinkSegmentRowId = parseNetworkFileWithScanner(networkLayer, networkSource);
       }
 
       if (tntpLinkSegmentRowId != noLinks) {
@@ -507,13 +1001,36 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
         LOGGER.severe(errorMessage);
         throw new PlanItRunTimeException(errorMessage);
       }
+      LOGGER.fine(String.format("Link segment type index: %d types under %d keys, %d probes, %d collisions", 
+          networkLayer.getLinkSegmentTypes().size(), linkSegmentTypeIndex.getNumberOfKeys(), 
+          linkSegmentTypeIndex.getNumberOfProbes(), linkSegmentTypeIndex.getNumberOfCollisions()));
     }catch (final Exception e) {
       LOGGER.severe(e.getMessage());
       throw new PlanItRunTimeException("Error when populating physical network in TNTP",e);
     }
 
-    if (nodeCoordinateFile != null) {
-      parseNodeCoordinatesFromFile(networkLayer, nodeCoordinateFile);
+    if (snapshot != null) {
+      assignSnapshotNodeCoordinates(snapshot);
+    } else if (prefetchedNodeCoordinates != null && assignPrefetchedNodeCoordinates()) {
+      prefetchedNodeCoordinates = null;
+    } else if (nodeCoordinateSource != null) {
+      if (getSettings().getParsingMode() == ParsingMode.SCANNER) {
+        parseNodeCoordinatesFromFile(networkLayer, nodeCoordinateSource);
+      } else {
+        parseMappedNodeCoordinatesFromFile(networkLayer, nodeCoordinateSource, getSettings().getParsingMode() == ParsingMode.PARALLEL);
+      }
+    }
+    
+    if (snapshotLinkRows != null) {
+      writeSnapshot(snapshotFile);
+      snapshotLinkRows = null;
+    }
+    
+    if (idStrings != null) {
+      final long numberOfEntities = networkLayer.getNodes().size() + networkLayer.getLinks().size() + networkLayer.getLinkSegments().size();
+      LOGGER.info(String.format("Id mode %s saved %d id Strings, ~%.1f KB, %.1f bytes per entity (%d nodes, links and link segments)", 
+          getSettings().getIdMode(), idStrings.getNumberOfSavedStrings(), idStrings.getSavedBytes() / 1024.0, 
+          idStrings.getSavedBytes() / (double) Math.max(1, numberOfEntities), numberOfEntities));
     }
     
     return networkToPopulate;
@@ -524,15 +1041,66 @@ public class TntpNetworkReader extends BaseReaderImpl<LayeredNetwork<?,?>> imple
    */  
   @Override
   public void reset() {
-    bprParametersForLinkSegmentAndMode = null;
+    bprParameters = null;
+    nodesByTntpId = null;
+    linkSegmentTypeIndex = null;
+    networkFileSchema = null;
+    snapshotLinkRows = null;
+    networkMetadata = null;
+    prefetchedNodeCoordinates = null;
+    idStrings = null;
+  }
+  
+  /** Provide node coordinates parsed ahead of reading the network, e.g., on a background thread, which are then assigned to the nodes
+   * instead of parsing the node coordinate file. The node coordinates must originate from the configured node coordinate source, when
+   * the prefetch fails or does not cover all nodes the node coordinate file is parsed instead
+   * 
+   * @param prefetchedNodeCoordinates to use, null to parse the node coordinate file
+   */
+  public void setPrefetchedNodeCoordinates(final Future<TntpNodeCoordinates> prefetchedNodeCoordinates) {
+    this.prefetchedNodeCoordinates = prefetchedNodeCoordinates;
+  }
+  
+  /** Provide access to parsed bpr parameters of link segments (only available after parsing)
+   * 
+   * @return parsed bpr parameters, null if none were parsed
+   */
+  public TntpBprParameters getParsedBprParameters() {
+    return this.bprParameters;
+  }
+  
+  /** Provide access to the nodes indexed by their TNTP id, e.g., to share them with the zoning reader (only available after parsing)
+   * 
+   * @return nodes by TNTP id
+   */
+  public TntpDenseIdIndex<Node> getNodesByTntpId() {
+    return this.nodesByTntpId;
+  }
+  
+  /** Provide access to the pooled Strings of numeric ids, e.g., so the zoning reader reuses the external ids of the nodes for its zones
+   * (only available after parsing)
+   * 
+   * @return pooled id Strings, null when ids are created per entity
+   */
+  public TntpIdStrings getIdStrings() {
+    return this.idStrings;
+  }
+  
+  /** Provide access to the metadata of the network file, e.g., to share it with other readers of the network file (only available
+   * after parsing the network file or replaying it from a snapshot)
+   * 
+   * @return metadata, null when not available, i.e., before reading the network
+   */
+  public TntpMetadata getNetworkMetadata() {
+    return this.networkMetadata;
   }
   
-  /** Provide read access to parsed bpr parameters of links (only available after parsing)
+  /** Provide access to the link segment type index, e.g., to monitor its number of probes and collisions (only available after parsing)
    * 
-   * @return parsed bpr parameters
+   * @return link segment type index
    */
-  public Map<LinkSegment, Pair<Double, Double>> getParsedBprParameters() {
-    return Collections.unmodifiableMap(this.bprParametersForLinkSegmentAndMode);
+  public TntpLinkSegmentTypeIndex getLinkSegmentTypeIndex() {
+    return this.linkSegmentTypeIndex;
   }
 
 }
@@ -6,8 +6,11 @@ import java.util.logging.Logger;
 import org.goplanit.converter.ConverterReaderSettings;
 import org.goplanit.tntp.enums.LengthUnits;
 import org.goplanit.tntp.enums.NetworkFileColumnType;
+import org.goplanit.tntp.enums.IdMode;
+import org.goplanit.tntp.enums.ParsingMode;
 import org.goplanit.tntp.enums.SpeedUnits;
 import org.goplanit.tntp.enums.TimeUnits;
+import org.goplanit.tntp.utils.TntpInputSource;
 import org.goplanit.utils.misc.Pair;
 
 /**
@@ -30,13 +33,23 @@ public class TntpNetworkReaderSettings implements ConverterReaderSettings {
    */
   private String nodeCoordinateFile;   
   
+  /**
+   * network data source, takes precedence over the network file when set
+   */
+  private TntpInputSource networkSource;
+  
+  /**
+   * node coordinate data source, takes precedence over the node coordinate file when set
+   */
+  private TntpInputSource nodeCoordinateSource;
+  
   /** 
    * coordinate reference system of the source node file
    */
   private String coordinateReferenceSystem;
     
   /**
-   * Map specifying which columns in the network file contain which values
+   * Map specifying which columns in the network file contain which values, when null columns are detected from the header of the link rows
    */
   private Map<NetworkFileColumnType, Integer> networkFileColumns;
 
@@ -65,8 +78,29 @@ public class TntpNetworkReaderSettings implements ConverterReaderSettings {
    */
   private double defaultMaximumSpeed;  
   
+  /**
+   * Parsing strategy for the network file rows
+   */
+  private ParsingMode parsingMode = DEFAULT_PARSING_MODE;
+  
+  /**
+   * Directory of the binary network snapshot cache, null when disabled
+   */
+  private String snapshotCacheDirectory = null;
+  
+  /**
+   * How the XML and external ids of the nodes, links and link segments are created
+   */
+  private IdMode idMode = DEFAULT_ID_MODE;
+  
   /** default time period duration is set to 1 hour */
   public static Pair<Double, TimeUnits> DEFAULT_TIME_PERIOD_DURATION = Pair.of(1.0, TimeUnits.HOURS);
+  
+  /** default parsing mode is line based parsing via a Scanner */
+  public static final ParsingMode DEFAULT_PARSING_MODE = ParsingMode.SCANNER;
+  
+  /** default id mode creates a String per id per entity */
+  public static final IdMode DEFAULT_ID_MODE = IdMode.FULL;
 
   /**
    * {@inheritDoc}
@@ -81,14 +115,19 @@ public class TntpNetworkReaderSettings implements ConverterReaderSettings {
    */
   @Override
   public void logSettings() {
-    LOGGER.info(String.format("Parsing TNTP network from: %s", getNetworkFile()));
-    LOGGER.info(String.format("Parsing TNTP network nodes from: %s", getNodeCoordinateFile()));
+    LOGGER.info(String.format("Parsing TNTP network from: %s", getNetworkSource()));
+    LOGGER.info(String.format("Parsing TNTP network nodes from: %s", getNodeCoordinateSource()));
     LOGGER.info(String.format("Speed units set to: %s", getSpeedUnits()));
     LOGGER.info(String.format("Length units set to: %s", getLengthUnits()));
     LOGGER.info(String.format("Free flow travel time units set to: %s", getFreeFlowTravelTimeUnits()));
     LOGGER.info(String.format("Capacity period units set to: %s", getCapacityPeriodUnits()));
     LOGGER.info(String.format("Capacity period duration set to: %s", getCapacityPeriodDuration()));
     LOGGER.info(String.format("Default max speed set to: %s", getDefaultMaximumSpeed()));
+    LOGGER.info(String.format("Parsing mode set to: %s", getParsingMode()));
+    LOGGER.info(String.format("Id mode set to: %s", getIdMode()));
+    if (getSnapshotCacheDirectory() != null) {
+      LOGGER.info(String.format("Network snapshot cache directory set to: %s", getSnapshotCacheDirectory()));
+    }
   }
 
 
@@ -98,6 +137,12 @@ public class TntpNetworkReaderSettings implements ConverterReaderSettings {
     return networkFileColumns;
   }
 
+  /**
+   * Explicitly configure which columns in the network file contain which values. When not set (null), the columns are detected from
+   * the header line preceding the link rows, e.g., {@code ~ init_node term_node capacity length free_flow_time b power speed toll link_type ;}
+   *
+   * @param networkFileColumns column index per column type
+   */
   public void setNetworkFileColumns(final Map<NetworkFileColumnType, Integer> networkFileColumns) {
     this.networkFileColumns = networkFileColumns;
   }
@@ -161,6 +206,42 @@ public class TntpNetworkReaderSettings implements ConverterReaderSettings {
     this.nodeCoordinateFile = nodeCoordinateFile;
   }
 
+  /**
+   * The source of the network data, either the explicitly set source or otherwise the network file
+   *
+   * @return source, null when neither is set
+   */
+  public TntpInputSource getNetworkSource() {
+    return networkSource != null ? networkSource : TntpInputSource.of(networkFile);
+  }
+
+  /**
+   * Read the network data from the given source instead of the network file, e.g., a gzip/zip compressed file, stream or channel
+   *
+   * @param networkSource to use
+   */
+  public void setNetworkSource(TntpInputSource networkSource) {
+    this.networkSource = networkSource;
+  }
+
+  /**
+   * The source of the node coordinates, either the explicitly set source or otherwise the node coordinate file
+   *
+   * @return source, null when neither is set
+   */
+  public TntpInputSource getNodeCoordinateSource() {
+    return nodeCoordinateSource != null ? nodeCoordinateSource : TntpInputSource.of(nodeCoordinateFile);
+  }
+
+  /**
+   * Read the node coordinates from the given source instead of the node coordinate file, e.g., a gzip/zip compressed file, stream or channel
+   *
+   * @param nodeCoordinateSource to use
+   */
+  public void setNodeCoordinateSource(TntpInputSource nodeCoordinateSource) {
+    this.nodeCoordinateSource = nodeCoordinateSource;
+  }
+
   public String getCoordinateReferenceSystem() {
     return coordinateReferenceSystem;
   }
@@ -182,4 +263,49 @@ public class TntpNetworkReaderSettings implements ConverterReaderSettings {
     this.freeFlowTravelTimeUnits = freeFlowTravelTimeUnits;
   }
 
+  public ParsingMode getParsingMode() {
+    return parsingMode;
+  }
+
+  /**
+   * Choose how the link rows of the network file are parsed. {@link ParsingMode#MEMORY_MAPPED} maps the file in memory and tokenizes
+   * it without creating intermediate Strings, which is considerably faster on large files. {@link ParsingMode#PARALLEL} additionally
+   * parses the link rows on multiple threads before registering them. All modes yield the same network.
+   *
+   * @param parsingMode to use
+   */
+  public void setParsingMode(ParsingMode parsingMode) {
+    this.parsingMode = parsingMode;
+  }
+
+  public String getSnapshotCacheDirectory() {
+    return snapshotCacheDirectory;
+  }
+
+  /**
+   * Enable the binary network snapshot cache by providing a directory to store snapshots in. The first read of a given network (and node)
+   * file writes a binary image of the parsed link rows and node coordinates, subsequent reads of files with identical content (and column
+   * configuration) load that image instead of parsing the text files. Set to null (default) to disable
+   *
+   * @param snapshotCacheDirectory to use
+   */
+  public void setSnapshotCacheDirectory(String snapshotCacheDirectory) {
+    this.snapshotCacheDirectory = snapshotCacheDirectory;
+  }
+
+  public IdMode getIdMode() {
+    return idMode;
+  }
+
+  /**
+   * Choose how the XML and external ids of the nodes, links and link segments are created. {@link IdMode#INTERNED} shares a single String
+   * per numeric id value, also with the zoning reader when it uses the same mode, {@link IdMode#LEAN} currently pools the same ids. The ids
+   * themselves are identical in all modes, the heap saved is logged after reading
+   *
+   * @param idMode to use
+   */
+  public void setIdMode(IdMode idMode) {
+    this.idMode = idMode;
+  }
+
 }
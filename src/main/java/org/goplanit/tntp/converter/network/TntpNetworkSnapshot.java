@@ -0,0 +1,171 @@
+package org.goplanit.tntp.converter.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.goplanit.tntp.TntpHeaderConstants;
+import org.goplanit.tntp.TntpMetadata;
+import org.goplanit.tntp.enums.NetworkFileColumnType;
+import org.goplanit.tntp.utils.TntpBinaryFiles;
+
+/**
+ * Binary image of a parsed TNTP network (and node) file: header metadata, column layout, the primitive link rows and node coordinates.
+ * Replaying the image through the network reader yields the same network as parsing the text files, without the cost of tokenizing
+ * them. Images are identified by a key derived from the content of the input files and the settings that affect the image.
+ *
+ * @author markr
+ *
+ */
+class TntpNetworkSnapshot {
+
+  /** identifies a snapshot file */
+  private static final int MAGIC = 0x544E5350; // "TNSP"
+
+  /** format version, bump when layout changes so stale snapshots are ignored */
+  private static final int VERSION = 2;
+
+  /** file extension of snapshots */
+  static final String FILE_EXTENSION = ".tntpsnap";
+
+  /** metadata of the network file */
+  final TntpMetadata metadata;
+
+  /** column layout used to parse the link rows */
+  final Map<NetworkFileColumnType, Integer> columns;
+
+  /** parsed link rows in file order */
+  final TntpLinkColumns linkRows;
+
+  /** TNTP node ids with a coordinate */
+  final long[] coordinateNodeIds;
+
+  /** x coordinate per entry of coordinateNodeIds */
+  final double[] xs;
+
+  /** y coordinate per entry of coordinateNodeIds */
+  final double[] ys;
+
+  /**
+   * Read a String written by {@link java.io.DataOutputStream#writeUTF(String)}, metadata is plain ASCII so the modified UTF-8 encoding
+   * coincides with UTF-8
+   *
+   * @param buffer to read from, position is advanced
+   * @return read String
+   */
+  private static String readUtf(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.getShort() & 0xffff];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param metadata of the network file
+   * @param columns layout of link rows
+   * @param linkRows parsed rows
+   * @param coordinateNodeIds node ids with coordinate
+   * @param xs x coordinates
+   * @param ys y coordinates
+   */
+  TntpNetworkSnapshot(final TntpMetadata metadata, final Map<NetworkFileColumnType, Integer> columns, final TntpLinkColumns linkRows,
+      final long[] coordinateNodeIds, final double[] xs, final double[] ys) {
+    this.metadata = metadata;
+    this.columns = columns;
+    this.linkRows = linkRows;
+    this.coordinateNodeIds = coordinateNodeIds;
+    this.xs = xs;
+    this.ys = ys;
+  }
+
+  /**
+   * Create the key identifying the snapshot of the given inputs, a SHA-256 hash over the content of the files and the configured
+   * column layout (the only setting affecting the image, unit conversions are applied when replaying)
+   *
+   * @param networkFile to use
+   * @param nodeCoordinateFile to use, may be null
+   * @param networkFileColumns configured column layout, null when detected from the file
+   * @return key as hexadecimal string
+   * @throws IOException thrown if files cannot be read
+   */
+  static String createKey(final Path networkFile, final Path nodeCoordinateFile, final Map<NetworkFileColumnType, Integer> networkFileColumns)
+      throws IOException {
+    final MessageDigest digest = TntpBinaryFiles.createDigest();
+    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(VERSION).array());
+    TntpBinaryFiles.update(digest, networkFile);
+    TntpBinaryFiles.update(digest, nodeCoordinateFile);
+    final String columnLayout = networkFileColumns == null ? "detected" : new TreeMap<>(networkFileColumns).toString();
+    digest.update(columnLayout.getBytes(StandardCharsets.UTF_8));
+    return TntpBinaryFiles.toKey(digest);
+  }
+
+  /**
+   * Write snapshot to file. Written to a temporary file first which is moved in place afterwards, so concurrent readers never observe
+   * a partial snapshot
+   *
+   * @param snapshotFile to write to
+   * @throws IOException thrown if error
+   */
+  void write(final Path snapshotFile) throws IOException {
+    TntpBinaryFiles.writeAtomically(snapshotFile, FILE_EXTENSION, MAGIC, VERSION, out -> {
+      out.writeInt(metadata.getEntries().size());
+      for (var entry : metadata.getEntries().entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeUTF(entry.getValue());
+      }
+      out.writeInt(columns.size());
+      for (var entry : columns.entrySet()) {
+        out.writeInt(entry.getKey().ordinal());
+        out.writeInt(entry.getValue());
+      }
+      linkRows.writeTo(out);
+      out.writeInt(coordinateNodeIds.length);
+      for (int index = 0; index < coordinateNodeIds.length; ++index) {
+        out.writeLong(coordinateNodeIds[index]);
+        out.writeDouble(xs[index]);
+        out.writeDouble(ys[index]);
+      }
+    });
+  }
+
+  /**
+   * Read a snapshot by memory mapping the file
+   *
+   * @param snapshotFile to read
+   * @return snapshot
+   * @throws IOException thrown when file cannot be read or is not a valid snapshot of the current version
+   */
+  static TntpNetworkSnapshot read(final Path snapshotFile) throws IOException {
+    final ByteBuffer buffer = TntpBinaryFiles.map(snapshotFile, MAGIC, VERSION, "TNTP network snapshot");
+    final TntpMetadata.Builder metadata = new TntpMetadata.Builder();
+    final int numMetadataEntries = buffer.getInt();
+    for (int index = 0; index < numMetadataEntries; ++index) {
+      metadata.addEntry((readUtf(buffer) + " " + readUtf(buffer)).trim());
+    }
+    metadata.addEntry(TntpHeaderConstants.END_OF_METADATA_INDICATOR);
+    final int numColumns = buffer.getInt();
+    final Map<NetworkFileColumnType, Integer> columns = new EnumMap<>(NetworkFileColumnType.class);
+    for (int index = 0; index < numColumns; ++index) {
+      final NetworkFileColumnType columnType = NetworkFileColumnType.values()[buffer.getInt()];
+      columns.put(columnType, buffer.getInt());
+    }
+    final TntpLinkColumns linkRows = TntpLinkColumns.readFrom(buffer);
+    final int numCoordinates = buffer.getInt();
+    final long[] coordinateNodeIds = new long[numCoordinates];
+    final double[] xs = new double[numCoordinates];
+    final double[] ys = new double[numCoordinates];
+    for (int index = 0; index < numCoordinates; ++index) {
+      coordinateNodeIds[index] = buffer.getLong();
+      xs[index] = buffer.getDouble();
+      ys[index] = buffer.getDouble();
+    }
+    return new TntpNetworkSnapshot(metadata.build(), columns, linkRows, coordinateNodeIds, xs, ys);
+  }
+
+}
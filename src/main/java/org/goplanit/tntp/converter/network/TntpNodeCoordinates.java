@@ -0,0 +1,234 @@
+package org.goplanit.tntp.converter.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.goplanit.tntp.utils.TntpByteTokenizer;
+import org.goplanit.tntp.utils.TntpInputSource;
+import org.goplanit.utils.exceptions.PlanItException;
+
+/**
+ * Node coordinates parsed from a TNTP node file, stored in primitive x/y arrays indexed by TNTP node id. The file is memory mapped and
+ * split into chunks at line boundaries which can be parsed in parallel, each chunk into its own rows, which are then written into the
+ * arrays in file order.
+ * <p>
+ * Rows are recognised by a leading digit (after whitespace and ';'), consistent with the Scanner based parser, other rows (header) are
+ * ignored. When a node id occurs more than once in the file, the last occurrence is retained, also when parsing in parallel.
+ * </p>
+ * <p>
+ * Node coordinates can be parsed ahead of the network, e.g., on a background thread, and handed to the network reader via
+ * {@link TntpNetworkReader#setPrefetchedNodeCoordinates(java.util.concurrent.Future)}.
+ * </p>
+ *
+ * @author markr
+ *
+ */
+public class TntpNodeCoordinates {
+
+  /** minimum number of bytes per chunk when parsing in parallel, avoids overhead on small files */
+  private static final int MIN_PARALLEL_CHUNK_BYTES = 1 << 16;
+
+  /** maximum number of chunks per thread when parsing in parallel, more than one balances the load across threads */
+  private static final int MAX_PARALLEL_CHUNKS_PER_THREAD = 4;
+
+  /** Coordinate rows of a chunk in file order */
+  private static class ChunkRows {
+
+    /** node id per row */
+    private long[] nodeIds = new long[16];
+
+    /** x coordinate per row */
+    private double[] xs = new double[16];
+
+    /** y coordinate per row */
+    private double[] ys = new double[16];
+
+    /** number of rows */
+    private int size = 0;
+
+    /**
+     * Append a row
+     *
+     * @param nodeId of the row
+     * @param x of the row
+     * @param y of the row
+     */
+    private void add(long nodeId, double x, double y) {
+      if (size == nodeIds.length) {
+        nodeIds = Arrays.copyOf(nodeIds, 2 * size);
+        xs = Arrays.copyOf(xs, 2 * size);
+        ys = Arrays.copyOf(ys, 2 * size);
+      }
+      nodeIds[size] = nodeId;
+      xs[size] = x;
+      ys[size] = y;
+      ++size;
+    }
+  }
+
+  /** x coordinate per TNTP node id, NaN when absent */
+  private final double[] xs;
+
+  /** y coordinate per TNTP node id, NaN when absent */
+  private final double[] ys;
+
+  /** node ids referenced in the file beyond the maximum node id */
+  private final List<Long> outOfRangeNodeIds;
+
+  /** size of the parsed file in bytes */
+  private final long numBytes;
+
+  /**
+   * Parse the coordinate rows of a single chunk
+   *
+   * @param tokenizer covering the chunk
+   * @return rows of the chunk in file order
+   */
+  private static ChunkRows parseChunk(final TntpByteTokenizer tokenizer) {
+    final ChunkRows rows = new ChunkRows();
+    while (tokenizer.hasRemaining()) {
+      if (tokenizer.skipDelimiters()) {
+        final byte firstByte = tokenizer.peek();
+        if (firstByte >= '0' && firstByte <= '9') {
+          final long nodeId = tokenizer.nextLong();
+          tokenizer.skipDelimiters();
+          final double x = tokenizer.nextDouble();
+          tokenizer.skipDelimiters();
+          final double y = tokenizer.nextDouble();
+          rows.add(nodeId, x, y);
+        }
+      }
+      tokenizer.skipLine();
+    }
+    return rows;
+  }
+
+  /**
+   * Store the rows of a chunk, later rows overwrite earlier rows of the same node id
+   *
+   * @param rows to store
+   */
+  private void store(final ChunkRows rows) {
+    for (int row = 0; row < rows.size; ++row) {
+      final long nodeId = rows.nodeIds[row];
+      if (nodeId > 0 && nodeId < xs.length) {
+        xs[(int) nodeId] = rows.xs[row];
+        ys[(int) nodeId] = rows.ys[row];
+      } else {
+        outOfRangeNodeIds.add(nodeId);
+      }
+    }
+  }
+
+  /**
+   * Constructor, parses the file
+   *
+   * @param nodeCoordinateSource to parse, mapped when it is a plain file
+   * @param maxNodeId largest supported TNTP node id
+   * @param parallel when true parse chunks of the file in parallel, otherwise parse in a single pass
+   * @throws IOException thrown when source cannot be read
+   */
+  TntpNodeCoordinates(final TntpInputSource nodeCoordinateSource, int maxNodeId, boolean parallel) throws IOException {
+    this.xs = new double[maxNodeId + 1];
+    this.ys = new double[maxNodeId + 1];
+    Arrays.fill(xs, Double.NaN);
+    Arrays.fill(ys, Double.NaN);
+
+    final ByteBuffer buffer = nodeCoordinateSource.readFully();
+    this.numBytes = buffer.limit();
+    final int numChunks = !parallel ? 1 : (int) Math.max(1, Math.min(
+        MAX_PARALLEL_CHUNKS_PER_THREAD * ForkJoinPool.commonPool().getParallelism(), buffer.limit() / MIN_PARALLEL_CHUNK_BYTES));
+    final int[] chunkBoundaries = TntpByteTokenizer.splitAtLineBoundaries(buffer, 0, buffer.limit(), numChunks);
+
+    /* parse chunks (in parallel) into their own rows, then store them in file order so the last occurrence of a node id is retained */
+    IntStream chunkIndices = IntStream.range(0, chunkBoundaries.length - 1);
+    if (parallel) {
+      chunkIndices = chunkIndices.parallel();
+    }
+    final List<ChunkRows> chunks = chunkIndices.mapToObj(
+        chunkIndex -> parseChunk(new TntpByteTokenizer(buffer, chunkBoundaries[chunkIndex], chunkBoundaries[chunkIndex + 1])))
+        .collect(Collectors.toList());
+    this.outOfRangeNodeIds = new ArrayList<>();
+    chunks.forEach(this::store);
+  }
+
+  /**
+   * Parse the node coordinates of a source in a single pass, e.g., ahead of the network on a background thread
+   *
+   * @param nodeCoordinateSource to parse
+   * @param maxNodeId largest supported TNTP node id, e.g., the number of nodes in the metadata of the network file
+   * @return parsed node coordinates
+   * @throws PlanItException thrown when source cannot be read
+   */
+  public static TntpNodeCoordinates parse(final TntpInputSource nodeCoordinateSource, int maxNodeId) throws PlanItException {
+    try {
+      return new TntpNodeCoordinates(nodeCoordinateSource, maxNodeId, false);
+    } catch (final IOException e) {
+      throw new PlanItException(String.format("Unable to parse TNTP node coordinates %s", nodeCoordinateSource), e);
+    }
+  }
+
+  /**
+   * Largest node id that can be stored
+   *
+   * @return max node id
+   */
+  int getMaxNodeId() {
+    return xs.length - 1;
+  }
+
+  /**
+   * Verify if coordinates are available for node id
+   *
+   * @param nodeId to check
+   * @return true when available
+   */
+  boolean hasCoordinate(long nodeId) {
+    return nodeId > 0 && nodeId < xs.length && !Double.isNaN(xs[(int) nodeId]);
+  }
+
+  /**
+   * Collect x coordinate
+   *
+   * @param nodeId to collect for
+   * @return x coordinate, NaN when absent
+   */
+  double getX(long nodeId) {
+    return hasCoordinate(nodeId) ? xs[(int) nodeId] : Double.NaN;
+  }
+
+  /**
+   * Collect y coordinate
+   *
+   * @param nodeId to collect for
+   * @return y coordinate, NaN when absent
+   */
+  double getY(long nodeId) {
+    return hasCoordinate(nodeId) ? ys[(int) nodeId] : Double.NaN;
+  }
+
+  /**
+   * Node ids referenced in the file that exceed the maximum node id
+   *
+   * @return out of range node ids
+   */
+  List<Long> getOutOfRangeNodeIds() {
+    return outOfRangeNodeIds;
+  }
+
+  /**
+   * Size of the parsed file
+   *
+   * @return number of bytes
+   */
+  long getNumberOfBytes() {
+    return numBytes;
+  }
+
+}
@@ -0,0 +1,242 @@
+package org.goplanit.tntp.converter.zoning;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.logging.Logger;
+
+import org.goplanit.tntp.utils.TntpInputSource;
+import org.goplanit.utils.exceptions.PlanItException;
+
+/**
+ * Mapping of TNTP zones onto fewer (super) zones, used to coarsen the zoning and sum the OD demands accordingly for fast approximate
+ * assignment. Either read from a mapping file or derived by clustering the zones by the position of their centroid (k-means). Super zone
+ * ids are 1 to the number of super zones, TNTP zone ids are 1 to the number of zones. The (positive) ids used in a mapping file are
+ * retained as external ids of the super zones, numbered in ascending order of their external id.
+ *
+ * @author markr
+ *
+ */
+public class TntpZoneAggregation {
+
+  /** logger to use */
+  private static final Logger LOGGER = Logger.getLogger(TntpZoneAggregation.class.getCanonicalName());
+
+  /** maximum number of k-means iterations */
+  private static final int MAX_CLUSTERING_ITERATIONS = 100;
+
+  /** super zone id per TNTP zone id, position 0 is unused */
+  private final int[] superZoneIds;
+
+  /** member TNTP zone ids per super zone id, position 0 is unused */
+  private final int[][] memberZoneIds;
+
+  /** external id per super zone id, position 0 is unused */
+  private final int[] superZoneExternalIds;
+
+  /**
+   * Constructor
+   *
+   * @param superZoneExternalIds external super zone id per TNTP zone id, all positive, position 0 is unused
+   */
+  private TntpZoneAggregation(final int[] superZoneExternalIds) {
+    /* number the distinct external ids densely in ascending order */
+    final int[] sortedExternalIds = Arrays.stream(superZoneExternalIds, 1, superZoneExternalIds.length).sorted().distinct().toArray();
+    this.superZoneExternalIds = new int[sortedExternalIds.length + 1];
+    System.arraycopy(sortedExternalIds, 0, this.superZoneExternalIds, 1, sortedExternalIds.length);
+    this.superZoneIds = new int[superZoneExternalIds.length];
+    for (int zoneId = 1; zoneId < superZoneExternalIds.length; ++zoneId) {
+      superZoneIds[zoneId] = Arrays.binarySearch(sortedExternalIds, superZoneExternalIds[zoneId]) + 1;
+    }
+
+    final int[] numberOfMembers = new int[sortedExternalIds.length + 1];
+    for (int zoneId = 1; zoneId < superZoneIds.length; ++zoneId) {
+      ++numberOfMembers[superZoneIds[zoneId]];
+    }
+    this.memberZoneIds = new int[sortedExternalIds.length + 1][];
+    for (int superZoneId = 0; superZoneId < memberZoneIds.length; ++superZoneId) {
+      memberZoneIds[superZoneId] = new int[numberOfMembers[superZoneId]];
+      numberOfMembers[superZoneId] = 0;
+    }
+    for (int zoneId = 1; zoneId < superZoneIds.length; ++zoneId) {
+      memberZoneIds[superZoneIds[zoneId]][numberOfMembers[superZoneIds[zoneId]]++] = zoneId;
+    }
+  }
+
+  /**
+   * Read the aggregation from a mapping file with one {@code <TNTP zone id> <super zone id>} pair per line, separated by whitespace, comma
+   * or semicolon. Empty lines, lines starting with {@code ~} (comments) and non-numeric (header) lines are skipped. Every TNTP zone must be
+   * mapped. Super zone ids in the file need not be contiguous, they are numbered 1 to the number of super zones in ascending order and
+   * retained as external id, see {@link #getSuperZoneExternalId(int)}
+   *
+   * @param mappingSource to read
+   * @param numberOfZones number of TNTP zones
+   * @return aggregation
+   * @throws PlanItException thrown if error
+   */
+  public static TntpZoneAggregation fromMappingFile(final TntpInputSource mappingSource, int numberOfZones) throws PlanItException {
+    final int[] superZoneIds = new int[numberOfZones + 1];
+    try (Scanner scanner = new Scanner(mappingSource.openStream())) {
+      while (scanner.hasNextLine()) {
+        final String line = scanner.nextLine().trim();
+        if (line.isEmpty() || line.charAt(0) == '~' || !Character.isDigit(line.charAt(0))) {
+          continue;
+        }
+        final String[] cols = line.split("[\\s,;]+");
+        final int zoneId = Integer.parseInt(cols[0]);
+        final int superZoneId = Integer.parseInt(cols[1]);
+        if (zoneId < 1 || zoneId > numberOfZones || superZoneId < 1) {
+          throw new PlanItException(String.format("Invalid TNTP zone aggregation entry '%s' in %s", line, mappingSource));
+        }
+        superZoneIds[zoneId] = superZoneId;
+      }
+    } catch (final PlanItException e) {
+      throw e;
+    } catch (final Exception e) {
+      throw new PlanItException(String.format("Unable to read TNTP zone aggregation from %s", mappingSource), e);
+    }
+
+    for (int zoneId = 1; zoneId <= numberOfZones; ++zoneId) {
+      if (superZoneIds[zoneId] == 0) {
+        throw new PlanItException(String.format("TNTP zone %d not mapped to a super zone in %s", zoneId, mappingSource));
+      }
+    }
+    return new TntpZoneAggregation(superZoneIds);
+  }
+
+  /**
+   * Derive the aggregation by clustering the zones on the position of their centroid (k-means with k-means++ seeding). Super zone ids
+   * are assigned in order of the lowest TNTP zone id of their members, so they are 1 to the number of (non-empty) clusters
+   *
+   * @param xs x coordinate per TNTP zone id, position 0 is unused
+   * @param ys y coordinate per TNTP zone id, position 0 is unused
+   * @param numberOfSuperZones requested number of super zones
+   * @param seed of the random seeding
+   * @return aggregation
+   */
+  public static TntpZoneAggregation byCentroidClustering(final double[] xs, final double[] ys, int numberOfSuperZones, long seed) {
+    final int numberOfZones = xs.length - 1;
+    final int k = Math.max(1, Math.min(numberOfSuperZones, numberOfZones));
+    final Random random = new Random(seed);
+
+    /* k-means++ seeding */
+    final double[] centreXs = new double[k];
+    final double[] centreYs = new double[k];
+    final double[] distances = new double[numberOfZones + 1];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    int centreZoneId = 1 + random.nextInt(numberOfZones);
+    for (int cluster = 0; cluster < k; ++cluster) {
+      centreXs[cluster] = xs[centreZoneId];
+      centreYs[cluster] = ys[centreZoneId];
+      double totalDistance = 0;
+      for (int zoneId = 1; zoneId <= numberOfZones; ++zoneId) {
+        final double dx = xs[zoneId] - centreXs[cluster];
+        final double dy = ys[zoneId] - centreYs[cluster];
+        distances[zoneId] = Math.min(distances[zoneId], dx * dx + dy * dy);
+        totalDistance += distances[zoneId];
+      }
+      double draw = random.nextDouble() * totalDistance;
+      for (centreZoneId = 1; centreZoneId < numberOfZones && draw >= distances[centreZoneId]; ++centreZoneId) {
+        draw -= distances[centreZoneId];
+      }
+    }
+
+    /* Lloyd iterations */
+    final int[] clusters = new int[numberOfZones + 1];
+    boolean changed = true;
+    int iteration = 0;
+    for (; iteration < MAX_CLUSTERING_ITERATIONS && changed; ++iteration) {
+      changed = false;
+      for (int zoneId = 1; zoneId <= numberOfZones; ++zoneId) {
+        int nearest = 0;
+        double nearestDistance = Double.POSITIVE_INFINITY;
+        for (int cluster = 0; cluster < k; ++cluster) {
+          final double dx = xs[zoneId] - centreXs[cluster];
+          final double dy = ys[zoneId] - centreYs[cluster];
+          if (dx * dx + dy * dy < nearestDistance) {
+            nearest = cluster;
+            nearestDistance = dx * dx + dy * dy;
+          }
+        }
+        changed |= iteration == 0 || clusters[zoneId] != nearest;
+        clusters[zoneId] = nearest;
+      }
+      final int[] sizes = new int[k];
+      Arrays.fill(centreXs, 0);
+      Arrays.fill(centreYs, 0);
+      for (int zoneId = 1; zoneId <= numberOfZones; ++zoneId) {
+        centreXs[clusters[zoneId]] += xs[zoneId];
+        centreYs[clusters[zoneId]] += ys[zoneId];
+        ++sizes[clusters[zoneId]];
+      }
+      for (int cluster = 0; cluster < k; ++cluster) {
+        if (sizes[cluster] > 0) {
+          centreXs[cluster] /= sizes[cluster];
+          centreYs[cluster] /= sizes[cluster];
+        }
+      }
+    }
+    LOGGER.fine(String.format("Clustered %d TNTP zones into %d clusters in %d iterations", numberOfZones, k, iteration));
+
+    /* number (non-empty) clusters by their lowest member */
+    final int[] superZoneIdByCluster = new int[k];
+    final int[] superZoneIds = new int[numberOfZones + 1];
+    int numberOfClusters = 0;
+    for (int zoneId = 1; zoneId <= numberOfZones; ++zoneId) {
+      if (superZoneIdByCluster[clusters[zoneId]] == 0) {
+        superZoneIdByCluster[clusters[zoneId]] = ++numberOfClusters;
+      }
+      superZoneIds[zoneId] = superZoneIdByCluster[clusters[zoneId]];
+    }
+    return new TntpZoneAggregation(superZoneIds);
+  }
+
+  /**
+   * Super zone of a TNTP zone
+   *
+   * @param tntpZoneId TNTP id of the zone
+   * @return super zone id, 0 when the TNTP zone is unknown
+   */
+  public int getSuperZoneId(long tntpZoneId) {
+    return tntpZoneId < 1 || tntpZoneId >= superZoneIds.length ? 0 : superZoneIds[(int) tntpZoneId];
+  }
+
+  /**
+   * TNTP zones aggregated into a super zone
+   *
+   * @param superZoneId of the super zone
+   * @return TNTP ids of the member zones in ascending order, empty when the super zone id is not used
+   */
+  public int[] getMemberZoneIds(int superZoneId) {
+    return superZoneId < 1 || superZoneId >= memberZoneIds.length ? new int[0] : memberZoneIds[superZoneId];
+  }
+
+  /**
+   * External id of a super zone, i.e., its id in the mapping file, or its (cluster) id when derived by clustering
+   *
+   * @param superZoneId of the super zone
+   * @return external id, 0 when the super zone id is not used
+   */
+  public int getSuperZoneExternalId(int superZoneId) {
+    return superZoneId < 1 || superZoneId >= superZoneExternalIds.length ? 0 : superZoneExternalIds[superZoneId];
+  }
+
+  /**
+   * Number of (original) TNTP zones
+   *
+   * @return number of zones
+   */
+  public int getNumberOfZones() {
+    return superZoneIds.length - 1;
+  }
+
+  /**
+   * Number of super zones, super zone ids are 1 to the number of super zones
+   *
+   * @return number of super zones
+   */
+  public int getNumberOfSuperZones() {
+    return superZoneExternalIds.length - 1;
+  }
+
+}
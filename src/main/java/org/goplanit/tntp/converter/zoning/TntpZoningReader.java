@@ -1,24 +1,31 @@
 package org.goplanit.tntp.converter.zoning;
 
-import java.io.File;
-import java.util.Scanner;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.logging.Logger;
 
 import org.goplanit.converter.BaseReaderImpl;
 import org.goplanit.converter.network.NetworkReader;
 import org.goplanit.converter.zoning.ZoningReader;
 import org.goplanit.network.MacroscopicNetwork;
-import org.goplanit.tntp.TntpHeaderConstants;
+import org.goplanit.tntp.TntpMetadata;
+import org.goplanit.tntp.converter.network.TntpNetworkReader;
+import org.goplanit.tntp.enums.IdMode;
+import org.goplanit.tntp.utils.TntpDenseIdIndex;
+import org.goplanit.tntp.utils.TntpIdStrings;
+import org.goplanit.tntp.utils.TntpInputSource;
 import org.goplanit.utils.exceptions.PlanItException;
 import org.goplanit.utils.exceptions.PlanItRunTimeException;
+import org.goplanit.utils.geo.PlanitJtsUtils;
 import org.goplanit.utils.id.IdGenerator;
 import org.goplanit.utils.misc.LoggingUtils;
-import org.goplanit.utils.network.layer.macroscopic.MacroscopicLinkSegment;
+import org.goplanit.utils.network.layer.MacroscopicNetworkLayer;
 import org.goplanit.utils.network.layer.physical.Node;
 import org.goplanit.utils.zoning.Connectoid;
 import org.goplanit.utils.zoning.OdZone;
 import org.goplanit.utils.zoning.Zone;
 import org.goplanit.zoning.Zoning;
+import org.locationtech.jts.geom.Point;
 
 /**
  * Zoning reader component for TNTP data format. Note that zones are implicitly defined with a single connector in this format, meaning
@@ -50,6 +57,24 @@ public class TntpZoningReader extends BaseReaderImpl<Zoning> implements ZoningRe
   
   /** the zoning to populate */
   private Zoning zoningToPopulate;  
+  
+  /** reference network nodes indexed by their TNTP id, either shared by the reference network reader or lazily populated for the zones only */
+  private TntpDenseIdIndex<Node> nodesByTntpId;
+  
+  /** layers of the reference network whose nodes are yet to be indexed, null when not lazily populated */
+  private Iterator<MacroscopicNetworkLayer> unindexedLayers;
+  
+  /** nodes of the current layer that are yet to be indexed, null when not lazily populated */
+  private Iterator<Node> unindexedNodes;
+  
+  /** zones indexed by their TNTP id */
+  private TntpDenseIdIndex<Zone> zonesByTntpId;
+  
+  /** aggregation of the TNTP zones into super zones, null when zones are not aggregated */
+  private TntpZoneAggregation zoneAggregation;
+  
+  /** pooled Strings of numeric ids, shared with the reference network reader when available, null when ids are created per entity */
+  private TntpIdStrings idStrings;
     
   /** Constructor
    * @param zoningSettings to use
@@ -82,8 +107,8 @@ public class TntpZoningReader extends BaseReaderImpl<Zoning> implements ZoningRe
    * @return true when ok, false otherwise
    */
   private boolean validateSettings() {
-    if(settings.getNetworkFileLocation()==null) {
-      LOGGER.severe("TNTP network file location is not provided, unable to create zoning");
+    if(settings.getNetworkSource()==null) {
+      LOGGER.severe("TNTP network file location or source is not provided, unable to create zoning");
       return false;
     }
     if(referenceNetwork==null || referenceNetwork.getTransportLayers().isEmpty()) {
@@ -107,54 +132,187 @@ public class TntpZoningReader extends BaseReaderImpl<Zoning> implements ZoningRe
   }
 
   /**
-   * initialise the source id trackers and populate them for the network references, 
-   * so we can lay indices on the source id as well for quick lookups
+   * initialise the lookup of the reference network nodes of the zones by their TNTP id. The nodes indexed by the reference network reader 
+   * are used when available, otherwise the nodes are indexed lazily, i.e., only until the requested node is found and only for the TNTP ids
+   * of zones, so the cost is proportional to the number of zones rather than the size of the network
+   */
+  private void initialiseParentNetworkNodeLookup() {
+    if (referenceNetworkReader instanceof TntpNetworkReader && ((TntpNetworkReader) referenceNetworkReader).getNodesByTntpId() != null) {
+      nodesByTntpId = ((TntpNetworkReader) referenceNetworkReader).getNodesByTntpId();
+      unindexedLayers = null;
+      unindexedNodes = null;
+    } else {
+      nodesByTntpId = new TntpDenseIdIndex<>(numZones);
+      unindexedLayers = referenceNetwork.getTransportLayers().iterator();
+      unindexedNodes = Collections.emptyIterator();
+    }
+  }
+  
+  /**
+   * Collect the reference network node of a TNTP zone, indexing the not yet indexed nodes of the zones until it is found when lazily populated
    * 
+   * @param tntpNodeId TNTP id of the node, i.e., of the zone
+   * @return node
+   * @throws PlanItRunTimeException thrown when the reference network has no node with the TNTP id
    */
-  private void initialiseParentNetworkSourceIdTrackers() {    
-    initialiseSourceIdMap(Node.class, Node::getExternalId);
-    referenceNetwork.getTransportLayers().forEach( layer -> getSourceIdContainer(Node.class).addAll(layer.getNodes()));    
-    initialiseSourceIdMap(MacroscopicLinkSegment.class, MacroscopicLinkSegment::getExternalId);
-    referenceNetwork.getTransportLayers().forEach( layer -> getSourceIdContainer(MacroscopicLinkSegment.class).addAll(layer.getLinkSegments()));
-  }  
+  private Node getNodeByTntpId(final long tntpNodeId) {
+    Node node = nodesByTntpId.get(tntpNodeId);
+    while (node == null && unindexedNodes != null) {
+      while (!unindexedNodes.hasNext() && unindexedLayers.hasNext()) {
+        unindexedNodes = unindexedLayers.next().getNodes().iterator();
+      }
+      if (!unindexedNodes.hasNext()) {
+        unindexedLayers = null;
+        unindexedNodes = null;
+        break;
+      }
+      final Node candidate = unindexedNodes.next();
+      final long candidateTntpId = TntpDenseIdIndex.parseTntpId(candidate.getExternalId());
+      if (candidateTntpId > 0 && candidateTntpId <= numZones && nodesByTntpId.get(candidateTntpId) == null) {
+        nodesByTntpId.register(candidateTntpId, candidate);
+        node = candidateTntpId == tntpNodeId ? candidate : null;
+      }
+    }
+    if (node == null) {
+      throw new PlanItRunTimeException("TNTP zone %d has no node in the reference network", tntpNodeId);
+    }
+    return node;
+  }
   
   /**
    * initialise the source id trackers for the to be populated zoning entities, so we can lay indices on the XML id as well for quick lookups
    */
   private void initialiseSourceIdTrackers() {
-    initialiseSourceIdMap(Zone.class, Zone::getExternalId);
     initialiseSourceIdMap(Connectoid.class, Connectoid::getExternalId);
   }   
   
+  /** Obtain the metadata of the network file in order to know how many zones are to be expected. The metadata parsed by the reference
+   * network reader is used when available, otherwise it is taken from the metadata cache, only reading the header of the network file when
+   * it has not been read before
+   * 
+   * @return metadata of the network file
+   */
+  private TntpMetadata obtainNetworkMetadata() {
+    if (referenceNetworkReader instanceof TntpNetworkReader) {
+      final TntpMetadata networkMetadata = ((TntpNetworkReader) referenceNetworkReader).getNetworkMetadata();
+      if (networkMetadata != null && networkMetadata.isComplete()) {
+        return networkMetadata;
+      }
+    }
+    try {
+      return TntpMetadata.of(settings.getNetworkSource());
+    } catch (final Exception e) {
+      LOGGER.severe(e.getMessage());
+      throw new PlanItRunTimeException("Error when populating physical network in TNTP",e);
+    }
+  }
+
   /**
-   * Read network metadata from the top of the network input file
+   * Create connectoid for a TNTP zone. Connectoid length set to zero as connectors are parsed as physical links in network due to limit
+   * flexibility in TNTP format itself, Zone/centroid is placed on top of connectoid which in turn is placed on top of the node in the network
    *
-   * @param line the current line in the network input file
-   * @throws Exception thrown if the contents of the header cannot be parsed into an integer
+   * @param node of the TNTP zone
+   * @param zone to connect, either the zone of the TNTP zone or its super zone
+   * @param zoneSourceId TNTP id of the zone
    */
-  private void readMetadataEntry(final String line) throws Exception {
-    if (line.startsWith(TntpHeaderConstants.NUMBER_OF_ZONES_INDICATOR)) {
-      numZones = TntpHeaderConstants.parseFromHeader(line, TntpHeaderConstants.NUMBER_OF_ZONES_INDICATOR);
-    } 
-  }  
+  private void registerNewConnectoid(final Node node, final Zone zone, long zoneSourceId) {
+    final double connectoidLength = 0.0;
+    Connectoid connectoid = zoningToPopulate.getOdConnectoids().getFactory().registerNew(node, zone, connectoidLength);
+    
+    /* XML id */
+    connectoid.setXmlId(toIdString(connectoid.getId()));
+    /* external id */
+    connectoid.setExternalId(toIdString(zoneSourceId));
+    registerBySourceId(Connectoid.class, connectoid);
+  }
+
+  /**
+   * String of a numeric id, pooled unless ids are created per entity
+   *
+   * @param id to collect String for
+   * @return String of the id
+   */
+  private String toIdString(long id) {
+    return idStrings == null ? String.valueOf(id) : idStrings.of(id);
+  }
+
+  /**
+   * initialise the pooled id Strings, shared with the reference network reader when it pools its ids as well, so the external ids of
+   * zones and connectoids reuse those of the nodes
+   */
+  private void initialiseIdStrings() {
+    if (settings.getIdMode() == IdMode.FULL) {
+      idStrings = null;
+    } else if (referenceNetworkReader instanceof TntpNetworkReader && ((TntpNetworkReader) referenceNetworkReader).getIdStrings() != null) {
+      idStrings = ((TntpNetworkReader) referenceNetworkReader).getIdStrings();
+    } else {
+      idStrings = new TntpIdStrings(numZones);
+    }
+  }
 
-  /** Read meta data in order to now how many zones are to be expected
+  /**
+   * Create the zone aggregation based on the settings, either from the mapping file or by clustering the zones on the position of their node
+   *
+   * @return zone aggregation, null when zones are not aggregated
    */
-  private void readMetaData() {
-    try (Scanner scanner = new Scanner(new File(settings.getNetworkFileLocation()).getCanonicalFile())) {
-      while (scanner.hasNextLine()) {
-        final String line = scanner.nextLine().trim();
-        final boolean atEndOfMetadata = line.equals(TntpHeaderConstants.END_OF_METADATA_INDICATOR);
-        if (atEndOfMetadata) {
-          break;
-        }else {
-          readMetadataEntry(line);
+  private TntpZoneAggregation createZoneAggregation() {
+    try {
+      if (settings.getZoneAggregationFileLocation() != null) {
+        return TntpZoneAggregation.fromMappingFile(TntpInputSource.of(settings.getZoneAggregationFileLocation()), numZones);
+      }
+      if (settings.getNumberOfAggregatedZones() <= 0) {
+        return null;
+      }
+      final double[] xs = new double[numZones + 1];
+      final double[] ys = new double[numZones + 1];
+      for (int zoneSourceId = 1; zoneSourceId <= numZones; ++zoneSourceId) {
+        final Point position = getNodeByTntpId(zoneSourceId).getPosition();
+        if (position == null) {
+          throw new PlanItException(String.format("TNTP zone clustering requires node coordinates, node %d has no position", zoneSourceId));
         }
-      }      
-    } catch (final Exception e) {
+        xs[zoneSourceId] = position.getX();
+        ys[zoneSourceId] = position.getY();
+      }
+      return TntpZoneAggregation.byCentroidClustering(xs, ys, settings.getNumberOfAggregatedZones(), settings.getZoneClusteringSeed());
+    } catch (final PlanItException e) {
       LOGGER.severe(e.getMessage());
-      throw new PlanItRunTimeException("Error when populating physical network in TNTP",e);
+      throw new PlanItRunTimeException("Error when aggregating TNTP zones", e);
+    }
+  }
+
+  /**
+   * Populate the zoning with one zone per super zone of the zone aggregation. Each member TNTP zone is connected to its super zone via a
+   * connectoid on its node, the centroid is placed at the mean position of the member nodes. TNTP zone ids are indexed to their super zone
+   */
+  private void populateAggregatedZoning() {
+    for (int superZoneId = 1; superZoneId <= zoneAggregation.getNumberOfSuperZones(); ++superZoneId) {
+      final int[] memberZoneIds = zoneAggregation.getMemberZoneIds(superZoneId);
+      
+      /* ZONE */
+      final OdZone zone = zoningToPopulate.getOdZones().getFactory().registerNew();
+      /* XML id */
+      zone.setXmlId(toIdString(zone.getId()));      
+      /* external id */
+      zone.setExternalId(toIdString(zoneAggregation.getSuperZoneExternalId(superZoneId)));
+      
+      /* CONNECTOID per member */
+      double x = 0;
+      double y = 0;
+      boolean positioned = true;
+      for (final int zoneSourceId : memberZoneIds) {
+        zonesByTntpId.register(zoneSourceId, zone);
+        final Node node = getNodeByTntpId(zoneSourceId);
+        registerNewConnectoid(node, zone, zoneSourceId);
+        positioned &= node.getPosition() != null;
+        if (positioned) {
+          x += node.getPosition().getX();
+          y += node.getPosition().getY();
+        }
+      }
+      zone.getCentroid().setPosition(positioned ? 
+          PlanitJtsUtils.createPoint(x / memberZoneIds.length, y / memberZoneIds.length) : getNodeByTntpId(memberZoneIds[0]).getPosition());
     }
+    LOGGER.info(String.format("Aggregated %d TNTP zones into %d zones", numZones, zoneAggregation.getNumberOfSuperZones()));
   }
 
   /**
@@ -191,39 +349,43 @@ public class TntpZoningReader extends BaseReaderImpl<Zoning> implements ZoningRe
     }
     
     initialiseSourceIdTrackers();
-    initialiseParentNetworkSourceIdTrackers();
     
-    /** read meta data to obtain number of zones in network */
-    readMetaData();
+    /** obtain meta data for number of zones in network */
+    numZones = obtainNetworkMetadata().getNumberOfZones();
+    initialiseParentNetworkNodeLookup();
+    zonesByTntpId = new TntpDenseIdIndex<>(numZones);
+    initialiseIdStrings();
+    final long savedStringsAtStart = idStrings == null ? 0 : idStrings.getNumberOfSavedStrings();
+    final long savedBytesAtStart = idStrings == null ? 0 : idStrings.getSavedBytes();
     
     LOGGER.fine(LoggingUtils.getClassNameWithBrackets(this)+"populating zoning");
-    for (long zoneSourceId = 1; zoneSourceId <= numZones; zoneSourceId++) {
-      /* ZONE */
-      final OdZone zone = zoningToPopulate.getOdZones().getFactory().registerNew();
-      /* XML id */
-      zone.setXmlId(Long.toString(zone.getId()));      
-      /* external id */
-      zone.setExternalId(String.valueOf(zoneSourceId));
-      registerBySourceId(Zone.class, zone);
-      
-      /* CONNECTOID */
-      final Node node = getBySourceId(Node.class, zone.getExternalId());      
-      
-      /*
-       *  connectoid length set to zero as connectors are parsed as physical links in network due to limit flexibility in TNTP format itself,
-       *  Zone/centroid is placed on top of connectoid which in turn is placed on top of the node in the network
-       */
-      final double connectoidLength = 0.0;
-      Connectoid connectoid = zoningToPopulate.getOdConnectoids().getFactory().registerNew(node, zone, connectoidLength);
-      zone.getCentroid().setPosition(node.getPosition());
-      
-      /* XML id */
-      connectoid.setXmlId(Long.toString(connectoid.getId()));
-      /* external id */
-      connectoid.setExternalId(zone.getExternalId());
-      registerBySourceId(Connectoid.class, connectoid);
+    zoneAggregation = createZoneAggregation();
+    if (zoneAggregation != null) {
+      populateAggregatedZoning();
+    } else {
+      for (long zoneSourceId = 1; zoneSourceId <= numZones; zoneSourceId++) {
+        /* ZONE */
+        final OdZone zone = zoningToPopulate.getOdZones().getFactory().registerNew();
+        /* XML id */
+        zone.setXmlId(toIdString(zone.getId()));      
+        /* external id */
+        zone.setExternalId(toIdString(zoneSourceId));
+        zonesByTntpId.register(zoneSourceId, zone);
+        
+        /* CONNECTOID */
+        final Node node = getNodeByTntpId(zoneSourceId);      
+        registerNewConnectoid(node, zone, zoneSourceId);
+        zone.getCentroid().setPosition(node.getPosition());
+      }
     }
     
+    if (idStrings != null) {
+      final long savedBytes = idStrings.getSavedBytes() - savedBytesAtStart;
+      final long numberOfEntities = zoningToPopulate.getOdZones().size() + zoningToPopulate.getOdConnectoids().size();
+      LOGGER.info(String.format("Id mode %s saved %d id Strings, ~%.1f KB, %.1f bytes per entity (%d zones and connectoids)", 
+          settings.getIdMode(), idStrings.getNumberOfSavedStrings() - savedStringsAtStart, savedBytes / 1024.0, 
+          savedBytes / (double) Math.max(1, numberOfEntities), numberOfEntities));
+    }
     return zoningToPopulate;
   }
 
@@ -231,6 +393,23 @@ public class TntpZoningReader extends BaseReaderImpl<Zoning> implements ZoningRe
     return referenceNetwork;
   }
 
+  /** Provide access to the zones indexed by their TNTP id (only available after parsing)
+   * 
+   * @return zones by TNTP id
+   */
+  public TntpDenseIdIndex<Zone> getZonesByTntpId(){
+    return zonesByTntpId;
+  }
+
+  /** Provide access to the aggregation of the TNTP zones into super zones (only available after parsing). When available the zones
+   * by TNTP id map each TNTP zone onto its super zone, whose external id is {@link TntpZoneAggregation#getSuperZoneExternalId(int)}
+   * 
+   * @return zone aggregation, null when zones are not aggregated
+   */
+  public TntpZoneAggregation getZoneAggregation(){
+    return zoneAggregation;
+  }
+
   /**
    * {@inheritDoc}
    */  
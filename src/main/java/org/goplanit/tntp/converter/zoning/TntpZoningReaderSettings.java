@@ -2,6 +2,8 @@ package org.goplanit.tntp.converter.zoning;
 
 import org.goplanit.converter.ConverterReaderSettings;
 import org.goplanit.network.MacroscopicNetwork;
+import org.goplanit.tntp.enums.IdMode;
+import org.goplanit.tntp.utils.TntpInputSource;
 
 import java.util.logging.Logger;
 
@@ -23,6 +25,37 @@ public class TntpZoningReaderSettings implements ConverterReaderSettings {
    */
   private String networkFileLocation;
   
+  /**
+   * network data source to extract zones from, takes precedence over the network file location when set
+   */
+  private TntpInputSource networkSource;
+  
+  /**
+   * zone aggregation mapping file, null when not used
+   */
+  private String zoneAggregationFileLocation;
+  
+  /**
+   * number of super zones to cluster the zones into by centroid position, zero when not used
+   */
+  private int numberOfAggregatedZones;
+  
+  /**
+   * seed of the centroid clustering
+   */
+  private long zoneClusteringSeed = DEFAULT_ZONE_CLUSTERING_SEED;
+  
+  /**
+   * how the XML and external ids of the zones and connectoids are created
+   */
+  private IdMode idMode = DEFAULT_ID_MODE;
+  
+  /** default seed of the centroid clustering */
+  public static final long DEFAULT_ZONE_CLUSTERING_SEED = 1;
+  
+  /** default id mode creates a String per id per entity */
+  public static final IdMode DEFAULT_ID_MODE = IdMode.FULL;
+  
   /**
    * Default constructor
    */
@@ -45,6 +78,11 @@ public class TntpZoningReaderSettings implements ConverterReaderSettings {
   @Override
   public void reset() { 
     networkFileLocation = null;
+    networkSource = null;
+    zoneAggregationFileLocation = null;
+    numberOfAggregatedZones = 0;
+    zoneClusteringSeed = DEFAULT_ZONE_CLUSTERING_SEED;
+    idMode = DEFAULT_ID_MODE;
   }
 
   /**
@@ -52,7 +90,13 @@ public class TntpZoningReaderSettings implements ConverterReaderSettings {
    */
   @Override
   public void logSettings() {
-    LOGGER.info(String.format("Parsing TNTP zoning from: %s", networkFileLocation));
+    LOGGER.info(String.format("Parsing TNTP zoning from: %s", getNetworkSource()));
+    if (getZoneAggregationFileLocation() != null) {
+      LOGGER.info(String.format("TNTP zones aggregated based on mapping file: %s", getZoneAggregationFileLocation()));
+    } else if (getNumberOfAggregatedZones() > 0) {
+      LOGGER.info(String.format("TNTP zones aggregated into %d zones by centroid clustering (seed %d)", getNumberOfAggregatedZones(), getZoneClusteringSeed()));
+    }
+    LOGGER.info(String.format("TNTP zoning id mode set to: %s", getIdMode()));
   }
 
   public String getNetworkFileLocation() {
@@ -62,6 +106,81 @@ public class TntpZoningReaderSettings implements ConverterReaderSettings {
   public void setNetworkFileLocation(String networkFileLocation) {
     this.networkFileLocation = networkFileLocation;
   }
+
+  /**
+   * The source of the network data, either the explicitly set source or otherwise the network file location
+   *
+   * @return source, null when neither is set
+   */
+  public TntpInputSource getNetworkSource() {
+    return networkSource != null ? networkSource : TntpInputSource.of(networkFileLocation);
+  }
+
+  /**
+   * Extract the zones from the given source instead of the network file location, e.g., a gzip/zip compressed file, stream or channel
+   *
+   * @param networkSource to use
+   */
+  public void setNetworkSource(TntpInputSource networkSource) {
+    this.networkSource = networkSource;
+  }
+  
+  public String getZoneAggregationFileLocation() {
+    return zoneAggregationFileLocation;
+  }
+
+  /**
+   * Aggregate the TNTP zones into super zones based on a mapping file with one {@code <TNTP zone id> <super zone id>} pair per line, see
+   * {@link TntpZoneAggregation#fromMappingFile(TntpInputSource, int)}. Takes precedence over centroid clustering
+   *
+   * @param zoneAggregationFileLocation to use, null (default) when not used
+   */
+  public void setZoneAggregationFileLocation(String zoneAggregationFileLocation) {
+    this.zoneAggregationFileLocation = zoneAggregationFileLocation;
+  }
+
+  public int getNumberOfAggregatedZones() {
+    return numberOfAggregatedZones;
+  }
+
+  /**
+   * Aggregate the TNTP zones into the given number of super zones by clustering them on the position of their centroid, requires node
+   * coordinates. Demands read via a demands reader on top of this zoning reader are summed accordingly
+   *
+   * @param numberOfAggregatedZones to use, zero (default) when not used
+   */
+  public void setNumberOfAggregatedZones(int numberOfAggregatedZones) {
+    this.numberOfAggregatedZones = numberOfAggregatedZones;
+  }
+
+  public long getZoneClusteringSeed() {
+    return zoneClusteringSeed;
+  }
+
+  /**
+   * Seed of the centroid clustering
+   *
+   * @param zoneClusteringSeed to use
+   */
+  public void setZoneClusteringSeed(long zoneClusteringSeed) {
+    this.zoneClusteringSeed = zoneClusteringSeed;
+  }
+  
+  public IdMode getIdMode() {
+    return idMode;
+  }
+
+  /**
+   * Choose how the XML and external ids of the zones and connectoids are created. {@link IdMode#INTERNED} shares a single String per
+   * numeric id value, including the external ids of the network nodes when the network reader uses a pooled mode as well, so a connectoid
+   * shares the external id of its node. {@link IdMode#LEAN} currently pools the same ids. The ids are identical in all modes, the heap saved is logged
+   * after reading
+   *
+   * @param idMode to use
+   */
+  public void setIdMode(IdMode idMode) {
+    this.idMode = idMode;
+  }
   
   // GETTERS/SETTERS    
    
@@ -0,0 +1,24 @@
+package org.goplanit.tntp.enums;
+
+/**
+ * How the TNTP readers create the XML and external ids of the PLANit entities they populate. Most ids are numeric (TNTP ids, row ids or
+ * PLANit ids), creating a distinct String per id per entity is a significant share of the retained heap of large networks
+ *
+ * @author markr
+ *
+ */
+public enum IdMode {
+
+  /** a distinct String per id of every entity (default) */
+  FULL,
+
+  /** numeric ids share a single String per value across entities and readers, e.g., the external ids of a node, zone and connectoid */
+  INTERNED,
+
+  /**
+   * most memory-lean mode, currently equal to {@link #INTERNED}. PLANit entities store their ids as plain fields, so the remaining ids,
+   * e.g., the link segment XML id of link id plus direction, cannot be derived on access or omitted without changing the ids
+   */
+  LEAN;
+
+}
@@ -0,0 +1,20 @@
+package org.goplanit.tntp.enums;
+
+/**
+ * Representation of the origin-destination demands populated by the TNTP demands reader
+ *
+ * @author markr
+ *
+ */
+public enum OdDemandRepresentation {
+
+  /** dense PLANit OD demand matrix registered on the demands (default) */
+  DENSE,
+
+  /** sparse (CSR) OD demands, only non-zero cells are stored, made available via the demands reader, not registered on the PLANit demands */
+  SPARSE,
+
+  /** sparse when the density of the parsed non-zero cells is below the configured threshold and the PLANit demands are not populated, dense otherwise */
+  AUTOMATIC;
+
+}
@@ -0,0 +1,20 @@
+package org.goplanit.tntp.enums;
+
+/**
+ * Strategy used by the TNTP readers to parse the rows of an input file
+ * 
+ * @author markr
+ *
+ */
+public enum ParsingMode {
+
+  /** line by line parsing through a {@link java.util.Scanner} with String splitting (default) */
+  SCANNER,
+
+  /** memory map the file and tokenize its bytes in place, without creating intermediate Strings per row */
+  MEMORY_MAPPED,
+
+  /** memory map the file, parse its rows in parallel into primitive buffers and register the PLANit entities sequentially afterwards */
+  PARALLEL;
+
+}
@@ -1,7 +1,11 @@
 package org.goplanit.tntp.input;
 
-import java.util.Map;
-import java.util.Map.Entry;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import org.goplanit.component.event.PlanitComponentEvent;
@@ -14,21 +18,26 @@ import org.goplanit.cost.physical.BprLinkTravelTimeCost;
 import org.goplanit.demands.Demands;
 import org.goplanit.input.InputBuilderListener;
 import org.goplanit.network.MacroscopicNetwork;
+import org.goplanit.tntp.TntpMetadata;
+import org.goplanit.tntp.converter.demands.TntpDemandFile;
 import org.goplanit.tntp.converter.demands.TntpDemandsReader;
 import org.goplanit.tntp.converter.demands.TntpDemandsReaderFactory;
 import org.goplanit.tntp.converter.demands.TntpDemandsReaderSettings;
+import org.goplanit.tntp.converter.demands.TntpPrefetchedTrips;
+import org.goplanit.tntp.converter.network.TntpBprParameters;
 import org.goplanit.tntp.converter.network.TntpNetworkReader;
 import org.goplanit.tntp.converter.network.TntpNetworkReaderFactory;
 import org.goplanit.tntp.converter.network.TntpNetworkReaderSettings;
+import org.goplanit.tntp.converter.network.TntpNodeCoordinates;
 import org.goplanit.tntp.converter.zoning.TntpZoningReader;
 import org.goplanit.tntp.converter.zoning.TntpZoningReaderFactory;
 import org.goplanit.tntp.converter.zoning.TntpZoningReaderSettings;
+import org.goplanit.tntp.enums.OdDemandRepresentation;
+import org.goplanit.tntp.utils.TntpInputSource;
 import org.goplanit.utils.exceptions.PlanItException;
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
 import org.goplanit.utils.misc.LoggingUtils;
-import org.goplanit.utils.misc.Pair;
 import org.goplanit.utils.mode.Mode;
-import org.goplanit.utils.network.layer.macroscopic.MacroscopicLinkSegment;
-import org.goplanit.utils.network.layer.physical.LinkSegment;
 import org.goplanit.zoning.Zoning;
 
 /**
@@ -49,7 +58,63 @@ public class TntpInputBuilder extends InputBuilderListener {
   private final TntpZoningReaderSettings zoningReaderSettings;
   
   /** track parsed BPR parameters from network parsing and make available to cost initialisation */
-  private Map<LinkSegment, Pair<Double, Double>> bprParametersPerLinkSegment;
+  private TntpBprParameters bprParametersPerLinkSegment;
+  
+  /** node coordinate file being prefetched, null when not prefetched */
+  private Path prefetchedNodeCoordinateFile;
+  
+  /** node coordinates being prefetched, null when not prefetched or handed to the network reader */
+  private Future<TntpNodeCoordinates> prefetchedNodeCoordinates;
+  
+  /** demand file being prefetched, null when not prefetched */
+  private Path prefetchedDemandFile;
+  
+  /** trips being prefetched, null when not prefetched or handed to the demands reader */
+  private Future<TntpPrefetchedTrips> prefetchedTrips;
+  
+  /**
+   * Start tokenising the node coordinate and demand files into primitive buffers on background (daemon) threads, so this overlaps with 
+   * reading the network. The number of nodes is taken from the metadata of the network file, which is cached for the readers as a 
+   * by-product
+   *
+   * @param networkFileLocation network file location
+   * @param nodeCoordinateFileLocation node coordinate file location, not prefetched when null
+   * @param demandFileLocation demand file location, not prefetched when null
+   */
+  private void startPrefetch(final String networkFileLocation, final String nodeCoordinateFileLocation, final String demandFileLocation) {
+    final ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+      final Thread thread = new Thread(runnable, "tntp-prefetch");
+      thread.setDaemon(true);
+      return thread;
+    });
+    
+    if (nodeCoordinateFileLocation != null && networkFileLocation != null) {
+      final TntpInputSource nodeCoordinateSource = TntpInputSource.of(nodeCoordinateFileLocation);
+      prefetchedNodeCoordinateFile = nodeCoordinateSource.getFile();
+      prefetchedNodeCoordinates = CompletableFuture.supplyAsync( () -> {
+        try {
+          return TntpNodeCoordinates.parse(nodeCoordinateSource, TntpMetadata.of(TntpInputSource.of(networkFileLocation)).getNumberOfNodes());
+        } catch (final PlanItException e) {
+          throw new PlanItRunTimeException("Error prefetching TNTP node coordinates", e);
+        }
+      }, executor);
+    }
+    
+    if (demandFileLocation != null) {
+      final TntpInputSource demandSource = TntpInputSource.of(demandFileLocation);
+      prefetchedDemandFile = demandSource.getFile();
+      prefetchedTrips = CompletableFuture.supplyAsync( () -> {
+        try {
+          return TntpPrefetchedTrips.parse(demandSource);
+        } catch (final PlanItException e) {
+          throw new PlanItRunTimeException("Error prefetching TNTP trips", e);
+        }
+      }, executor);
+    }
+    
+    /* threads terminate once the prefetch completes */
+    executor.shutdown();
+  }
 
   
   /**
@@ -61,6 +126,11 @@ public class TntpInputBuilder extends InputBuilderListener {
   protected void populateMacroscopicNetwork( final MacroscopicNetwork macroscopicNetwork) throws PlanItException {
        
     TntpNetworkReader networkReader = TntpNetworkReaderFactory.create(networkSettings, macroscopicNetwork);
+    final TntpInputSource nodeCoordinateSource = networkSettings.getNodeCoordinateSource();
+    if (prefetchedNodeCoordinates != null && nodeCoordinateSource != null && prefetchedNodeCoordinateFile.equals(nodeCoordinateSource.getFile())) {
+      networkReader.setPrefetchedNodeCoordinates(prefetchedNodeCoordinates);
+    }
+    prefetchedNodeCoordinates = null;
 
     /* parse */
     networkReader.read();
@@ -78,8 +148,16 @@ public class TntpInputBuilder extends InputBuilderListener {
    * @throws PlanItException thrown if there is an error reading the input file
    */
   protected void populateDemands( final Demands demands, final Zoning zoning, final MacroscopicNetwork network) throws PlanItException {
+    if (demandsReaderSettings.getOdDemandRepresentation() == OdDemandRepresentation.SPARSE) {
+      throw new PlanItException("TNTP input builder populates PLANit demands, sparse OD demand representation is not supported");
+    }
     
     TntpDemandsReader demandsReader = TntpDemandsReaderFactory.create(demandsReaderSettings, network, zoning, demands);
+    final List<TntpDemandFile> demandFiles = demandsReaderSettings.getDemandFiles();
+    if (prefetchedTrips != null && demandFiles.size() == 1 && prefetchedDemandFile.equals(demandFiles.get(0).getDemandSource().getFile())) {
+      demandsReader.setPrefetchedTrips(prefetchedTrips);
+    }
+    prefetchedTrips = null;
             
     /* parse */
     demandsReader.read();
@@ -130,11 +208,8 @@ public class TntpInputBuilder extends InputBuilderListener {
     }
     
     final BprLinkTravelTimeCost bprLinkTravelTimeCost = (BprLinkTravelTimeCost) costComponent;
-    for (final Entry<LinkSegment, Pair<Double, Double>> entry : bprParametersPerLinkSegment.entrySet()) {
-      final Pair<Double, Double> alphaBeta = entry.getValue();
-      final MacroscopicLinkSegment macroscopicLinkSegment = (MacroscopicLinkSegment) entry.getKey();
-      bprLinkTravelTimeCost.setParameters(macroscopicLinkSegment, mode, alphaBeta.first(), alphaBeta.second());
-    }
+    parentNetwork.getTransportLayers().forEach(
+        layer -> bprParametersPerLinkSegment.populate(bprLinkTravelTimeCost, layer.getLinkSegments(), mode));
   }
   
   /**
@@ -160,6 +235,25 @@ public class TntpInputBuilder extends InputBuilderListener {
     this.demandsReaderSettings.setDemandFileLocation(demandFileLocation);
   }  
 
+  /**
+   * Constructor. Optionally prefetches the node coordinate and demand files, i.e., starts tokenising them on background threads upon 
+   * construction, so the populate events only bind the pre-parsed data to the PLANit entities. Prefetched data is discarded when the 
+   * settings are changed to use other files before the network or demands are populated.
+   *
+   * @param networkFileLocation network file location
+   * @param nodeCoordinateFileLocation optional provision of node coordinates (may be null)
+   * @param demandFileLocation demand file location optional provision of demand file location (may be null)
+   * @param prefetch when true, prefetch the node coordinate and demand files in the background
+   * @throws PlanItException thrown if there is an error during running
+   */
+  public TntpInputBuilder(final String networkFileLocation, final String nodeCoordinateFileLocation, final String demandFileLocation, 
+      boolean prefetch) throws PlanItException {
+    this(networkFileLocation, nodeCoordinateFileLocation, demandFileLocation);
+    if (prefetch) {
+      startPrefetch(networkFileLocation, nodeCoordinateFileLocation, demandFileLocation);
+    }
+  }
+
   /**
    * Whenever a project component is created this method will be invoked
    *
@@ -0,0 +1,95 @@
+package org.goplanit.tntp.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.goplanit.tntp.utils.TntpByteTokenizer;
+
+/**
+ * Reads a (decompressed) TNTP input stream in chunks of complete lines, so a file of any size is tokenized in a bounded buffer. The
+ * buffer is reused for each chunk and only grows when a single line exceeds it. The incomplete last line of a chunk is retained and
+ * becomes the start of the next chunk.
+ *
+ * @author markr
+ *
+ */
+class TntpChunkedInput implements Closeable {
+
+  /** default size of the buffer in bytes */
+  static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+  /** stream to read from */
+  private final InputStream stream;
+
+  /** the buffer holding the current chunk followed by the incomplete line (if any) */
+  private byte[] chunk;
+
+  /** number of bytes held by the buffer */
+  private int numBytes;
+
+  /** number of bytes covered by the most recent chunk */
+  private int numConsumed;
+
+  /** true when the stream has been read entirely */
+  private boolean endOfStream;
+
+  /**
+   * Constructor
+   *
+   * @param stream to read from, closed upon closing this input
+   * @param chunkSize initial size of the buffer in bytes
+   */
+  TntpChunkedInput(final InputStream stream, int chunkSize) {
+    this.stream = stream;
+    this.chunk = new byte[Math.max(1, chunkSize)];
+  }
+
+  /**
+   * Read the next chunk of complete lines (the last line of the stream may lack a newline). The tokenizer of a previous chunk is no
+   * longer valid once the next chunk is read
+   *
+   * @return tokenizer covering the chunk, null when the stream is exhausted
+   * @throws IOException thrown if error
+   */
+  TntpByteTokenizer nextChunk() throws IOException {
+    /* retain the incomplete line */
+    numBytes -= numConsumed;
+    System.arraycopy(chunk, numConsumed, chunk, 0, numBytes);
+    numConsumed = 0;
+
+    while (true) {
+      if (!endOfStream) {
+        numBytes += stream.readNBytes(chunk, numBytes, chunk.length - numBytes);
+        endOfStream = numBytes < chunk.length;
+      }
+      int end = numBytes;
+      if (!endOfStream) {
+        while (end > 0 && chunk[end - 1] != '\n') {
+          --end;
+        }
+        if (end == 0) {
+          /* single line exceeds the buffer */
+          chunk = Arrays.copyOf(chunk, chunk.length * 2);
+          continue;
+        }
+      }
+      if (end == 0) {
+        return null;
+      }
+      numConsumed = end;
+      return new TntpByteTokenizer(ByteBuffer.wrap(chunk), 0, end);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    stream.close();
+  }
+
+}
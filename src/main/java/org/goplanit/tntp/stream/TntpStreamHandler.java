@@ -0,0 +1,67 @@
+package org.goplanit.tntp.stream;
+
+/**
+ * Callbacks invoked while streaming a TNTP file via {@link TntpStreamReader}. All callbacks have an empty default implementation so
+ * a handler only needs to implement the callbacks it is interested in. Values are passed as primitives exactly as they appear in the
+ * file, no unit conversion is applied.
+ *
+ * @author markr
+ *
+ */
+public interface TntpStreamHandler {
+
+  /**
+   * Invoked for each metadata entry in the header of a network or trips file, e.g., tag "NUMBER OF ZONES" with value "24"
+   *
+   * @param tag of the entry without the enclosing brackets
+   * @param value of the entry, trimmed
+   */
+  default void onMetadata(final String tag, final String value) {
+  }
+
+  /**
+   * Invoked once the end of the metadata has been reached in a network or trips file
+   */
+  default void onEndOfMetadata() {
+  }
+
+  /**
+   * Invoked for each link row of a network file. Columns not present in the file are passed as NaN
+   *
+   * @param rowId row of the link, starting at 1
+   * @param upstreamNodeId TNTP id of the upstream (init) node
+   * @param downstreamNodeId TNTP id of the downstream (term) node
+   * @param capacity capacity
+   * @param length length
+   * @param freeFlowTravelTime free flow travel time
+   * @param b BPR alpha
+   * @param power BPR beta
+   * @param maximumSpeed speed limit
+   * @param toll toll
+   * @param linkType link type, -1 when absent
+   */
+  default void onLink(long rowId, long upstreamNodeId, long downstreamNodeId, double capacity, double length, double freeFlowTravelTime,
+      double b, double power, double maximumSpeed, double toll, int linkType) {
+  }
+
+  /**
+   * Invoked for each row of a node coordinate file
+   *
+   * @param nodeId TNTP id of the node
+   * @param x coordinate
+   * @param y coordinate
+   */
+  default void onNodeCoordinate(long nodeId, double x, double y) {
+  }
+
+  /**
+   * Invoked for each origin-destination entry of a trips file
+   *
+   * @param originZoneId TNTP id of the origin zone
+   * @param destinationZoneId TNTP id of the destination zone
+   * @param value demand
+   */
+  default void onOdCell(long originZoneId, long destinationZoneId, double value) {
+  }
+
+}
@@ -0,0 +1,268 @@
+package org.goplanit.tntp.stream;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.goplanit.tntp.TntpHeaderConstants;
+import org.goplanit.tntp.converter.network.TntpNetworkFileSchema;
+import org.goplanit.tntp.enums.NetworkFileColumnType;
+import org.goplanit.tntp.utils.TntpByteTokenizer;
+import org.goplanit.tntp.utils.TntpInputSource;
+import org.goplanit.utils.exceptions.PlanItException;
+
+/**
+ * Streams the contents of TNTP network, node and trips files to a {@link TntpStreamHandler} without creating any PLANit entities.
+ * Sources ({@link TntpInputSource}), compressed or not, are read as a stream in chunks of complete lines that are tokenized in place in
+ * a bounded buffer, so memory use does not depend on the size of the file and files beyond the size of a single memory mapping are
+ * supported. Useful for tools that only require statistics, filtering or conversion of (very large) TNTP files.
+ *
+ * @author markr
+ *
+ */
+public class TntpStreamReader {
+
+  /** prefix of the line preceding the link rows in a network file */
+  private static final byte LINK_ROWS_HEADER_PREFIX = '~';
+
+  /** prefix of an origin line in the trips file */
+  private static final String ORIGIN_PREFIX = "Origin";
+
+  /**
+   * Stream the metadata lines of a chunk of a network or trips file, tokenizer is positioned after the end of metadata line upon return
+   * when found, otherwise the chunk is consumed
+   *
+   * @param tokenizer positioned at start of a line of the metadata
+   * @param handler to invoke
+   * @return true when the end of the metadata has been reached, false otherwise
+   */
+  private static boolean streamMetadata(final TntpByteTokenizer tokenizer, final TntpStreamHandler handler) {
+    while (tokenizer.hasRemaining()) {
+      final String line = tokenizer.nextLine();
+      if (line.equals(TntpHeaderConstants.END_OF_METADATA_INDICATOR)) {
+        handler.onEndOfMetadata();
+        return true;
+      }
+      if (line.startsWith("<") && line.indexOf('>') > 0) {
+        handler.onMetadata(line.substring(1, line.indexOf('>')).trim(), line.substring(line.indexOf('>') + 1).trim());
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Open source for reading in chunks of complete lines
+   *
+   * @param source to read
+   * @return chunked input
+   * @throws PlanItException thrown when source cannot be opened
+   */
+  private static TntpChunkedInput openChunkedInput(final TntpInputSource source) throws PlanItException {
+    try {
+      return new TntpChunkedInput(source.openStream(), TntpChunkedInput.DEFAULT_CHUNK_SIZE);
+    } catch (final IOException e) {
+      throw new PlanItException(String.format("Unable to open TNTP file %s for streaming", source), e);
+    }
+  }
+
+  /**
+   * Stream a TNTP network file
+   *
+   * @param networkFile to stream
+   * @param networkFileColumns explicit column layout, when null the columns are detected from the header preceding the link rows
+   * @param handler to invoke for the metadata and each link row
+   * @return number of link rows streamed
+   * @throws PlanItException thrown if error
+   */
+  public static long streamNetworkFile(final Path networkFile, final Map<NetworkFileColumnType, Integer> networkFileColumns,
+      final TntpStreamHandler handler) throws PlanItException {
+    return streamNetworkFile(TntpInputSource.of(networkFile), networkFileColumns, handler);
+  }
+
+  /**
+   * Stream a TNTP network file from a (possibly compressed) source
+   *
+   * @param networkFile to stream
+   * @param networkFileColumns explicit column layout, when null the columns are detected from the header preceding the link rows
+   * @param handler to invoke for the metadata and each link row
+   * @return number of link rows streamed
+   * @throws PlanItException thrown if error
+   */
+  public static long streamNetworkFile(final TntpInputSource networkFile, final Map<NetworkFileColumnType, Integer> networkFileColumns,
+      final TntpStreamHandler handler) throws PlanItException {
+    /* columns that are absent remain NaN */
+    final double[] linkRow = new double[NetworkFileColumnType.values().length];
+    Arrays.fill(linkRow, Double.NaN);
+    boolean readingMetadata = true;
+    TntpNetworkFileSchema schema = null;
+    long rowId = 0;
+    try (TntpChunkedInput input = openChunkedInput(networkFile)) {
+      TntpByteTokenizer tokenizer;
+      while ((tokenizer = input.nextChunk()) != null) {
+        if (readingMetadata) {
+          readingMetadata = !streamMetadata(tokenizer, handler);
+        }
+        while (tokenizer.hasRemaining()) {
+          if (schema == null) {
+            /* locate header of link rows */
+            if (!tokenizer.isAtEndOfLine() && tokenizer.peek() == LINK_ROWS_HEADER_PREFIX) {
+              final String headerLine = tokenizer.nextLine();
+              schema = TntpNetworkFileSchema.compile(
+                  networkFileColumns != null ? networkFileColumns : TntpNetworkFileSchema.detectColumns(headerLine),
+                  EnumSet.allOf(NetworkFileColumnType.class));
+            } else {
+              tokenizer.skipLine();
+            }
+            continue;
+          }
+          if (tokenizer.isAtEndOfLine() || tokenizer.peek() == LINK_ROWS_HEADER_PREFIX) {
+            tokenizer.skipLine();
+            continue;
+          }
+          ++rowId;
+          try {
+            schema.decode(tokenizer, linkRow, rowId);
+          } catch (final NumberFormatException e) {
+            throw new PlanItException(String.format("Invalid value in TNTP link row %d of %s", rowId, networkFile), e);
+          }
+          final double linkType = linkRow[NetworkFileColumnType.LINK_TYPE.ordinal()];
+          handler.onLink(rowId,
+              (long) linkRow[NetworkFileColumnType.UPSTREAM_NODE_ID.ordinal()],
+              (long) linkRow[NetworkFileColumnType.DOWNSTREAM_NODE_ID.ordinal()],
+              linkRow[NetworkFileColumnType.CAPACITY_PER_LANE.ordinal()],
+              linkRow[NetworkFileColumnType.LENGTH.ordinal()],
+              linkRow[NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME.ordinal()],
+              linkRow[NetworkFileColumnType.B.ordinal()],
+              linkRow[NetworkFileColumnType.POWER.ordinal()],
+              linkRow[NetworkFileColumnType.MAXIMUM_SPEED.ordinal()],
+              linkRow[NetworkFileColumnType.TOLL.ordinal()],
+              Double.isNaN(linkType) ? -1 : (int) linkType);
+        }
+      }
+    } catch (final IOException e) {
+      throw new PlanItException(String.format("Unable to read TNTP file %s for streaming", networkFile), e);
+    }
+    if (readingMetadata) {
+      handler.onEndOfMetadata();
+    }
+    if (schema == null) {
+      throw new PlanItException(String.format("No link rows found in TNTP network file %s", networkFile));
+    }
+    return rowId;
+  }
+
+  /**
+   * Stream a TNTP node coordinate file. Rows are recognised by a leading node id, other rows (header) are ignored
+   *
+   * @param nodeCoordinateFile to stream
+   * @param handler to invoke for each node
+   * @return number of nodes streamed
+   * @throws PlanItException thrown if error
+   */
+  public static long streamNodeFile(final Path nodeCoordinateFile, final TntpStreamHandler handler) throws PlanItException {
+    return streamNodeFile(TntpInputSource.of(nodeCoordinateFile), handler);
+  }
+
+  /**
+   * Stream a TNTP node coordinate file from a (possibly compressed) source
+   *
+   * @param nodeCoordinateFile to stream
+   * @param handler to invoke for each node
+   * @return number of nodes streamed
+   * @throws PlanItException thrown if error
+   */
+  public static long streamNodeFile(final TntpInputSource nodeCoordinateFile, final TntpStreamHandler handler) throws PlanItException {
+    long numNodes = 0;
+    try (TntpChunkedInput input = openChunkedInput(nodeCoordinateFile)) {
+      TntpByteTokenizer tokenizer;
+      while ((tokenizer = input.nextChunk()) != null) {
+        while (tokenizer.hasRemaining()) {
+          if (tokenizer.skipDelimiters() && tokenizer.peek() >= '0' && tokenizer.peek() <= '9') {
+            final long nodeId = tokenizer.nextLong();
+            tokenizer.skipDelimiters();
+            final double x = tokenizer.nextDouble();
+            tokenizer.skipDelimiters();
+            final double y = tokenizer.nextDouble();
+            handler.onNodeCoordinate(nodeId, x, y);
+            ++numNodes;
+          }
+          tokenizer.skipLine();
+        }
+      }
+    } catch (final NumberFormatException e) {
+      throw new PlanItException(String.format("Invalid value in TNTP node file %s after %d nodes", nodeCoordinateFile, numNodes), e);
+    } catch (final IOException e) {
+      throw new PlanItException(String.format("Unable to read TNTP file %s for streaming", nodeCoordinateFile), e);
+    }
+    return numNodes;
+  }
+
+  /**
+   * Stream a TNTP trips file
+   *
+   * @param tripsFile to stream
+   * @param handler to invoke for the metadata and each origin-destination entry
+   * @return number of origin-destination entries streamed
+   * @throws PlanItException thrown if error
+   */
+  public static long streamTripsFile(final Path tripsFile, final TntpStreamHandler handler) throws PlanItException {
+    return streamTripsFile(TntpInputSource.of(tripsFile), handler);
+  }
+
+  /**
+   * Stream a TNTP trips file from a (possibly compressed) source
+   *
+   * @param tripsFile to stream
+   * @param handler to invoke for the metadata and each origin-destination entry
+   * @return number of origin-destination entries streamed
+   * @throws PlanItException thrown if error
+   */
+  public static long streamTripsFile(final TntpInputSource tripsFile, final TntpStreamHandler handler) throws PlanItException {
+    boolean readingMetadata = true;
+    long numOdCells = 0;
+    long originZoneId = -1;
+    try (TntpChunkedInput input = openChunkedInput(tripsFile)) {
+      TntpByteTokenizer tokenizer;
+      while ((tokenizer = input.nextChunk()) != null) {
+        if (readingMetadata) {
+          readingMetadata = !streamMetadata(tokenizer, handler);
+        }
+        while (tokenizer.hasRemaining()) {
+          if (!tokenizer.skipDelimiters() || tokenizer.peek() == LINK_ROWS_HEADER_PREFIX) {
+            tokenizer.skipLine();
+            continue;
+          }
+          if (tokenizer.startsWith(ORIGIN_PREFIX)) {
+            tokenizer.skipToken();
+            tokenizer.skipDelimiters();
+            originZoneId = tokenizer.nextLong();
+            tokenizer.skipLine();
+            continue;
+          }
+          if (originZoneId < 0) {
+            throw new PlanItException(String.format("Destination demand found before first origin in TNTP trips file %s", tripsFile));
+          }
+          /* destination : value ; pairs */
+          do {
+            final long destinationZoneId = tokenizer.nextLong();
+            tokenizer.skipDelimiters();
+            handler.onOdCell(originZoneId, destinationZoneId, tokenizer.nextDouble());
+            ++numOdCells;
+          } while (tokenizer.skipDelimiters());
+          tokenizer.skipLine();
+        }
+      }
+    } catch (final NumberFormatException e) {
+      throw new PlanItException(String.format("Invalid value in TNTP trips file %s for origin %d", tripsFile, originZoneId), e);
+    } catch (final IOException e) {
+      throw new PlanItException(String.format("Unable to read TNTP file %s for streaming", tripsFile), e);
+    }
+    if (readingMetadata) {
+      handler.onEndOfMetadata();
+    }
+    return numOdCells;
+  }
+
+}
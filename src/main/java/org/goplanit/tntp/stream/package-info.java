@@ -0,0 +1,4 @@
+/**
+ * Push style (event driven) streaming of TNTP files without building PLANit memory model entities
+ */
+package org.goplanit.tntp.stream;
@@ -0,0 +1,141 @@
+package org.goplanit.tntp.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Shared support for the binary images the TNTP readers persist next to (or for) their input files, e.g., network snapshots, demand
+ * caches and origin indices. Images start with a magic number and format version, are identified by a SHA-256 key over the content of
+ * their input files and are written via a temporary file that is moved in place afterwards, so concurrent readers never observe a
+ * partial image.
+ *
+ * @author markr
+ *
+ */
+public class TntpBinaryFiles {
+
+  /** size of the output buffer used when writing images */
+  private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Writes the body of an image, i.e., everything after the magic number and version
+   */
+  @FunctionalInterface
+  public interface BodyWriter {
+
+    /**
+     * Write body
+     *
+     * @param out to write to
+     * @throws IOException thrown if error
+     */
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  /** no instances */
+  private TntpBinaryFiles() {
+  }
+
+  /**
+   * Create a SHA-256 digest to derive an image key from
+   *
+   * @return digest
+   * @throws IOException thrown when SHA-256 is not available
+   */
+  public static MessageDigest createDigest() throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IOException("SHA-256 not available to fingerprint TNTP files", e);
+    }
+  }
+
+  /**
+   * Add the size and content of a file to a digest
+   *
+   * @param digest to update
+   * @param file to add, may be null
+   * @throws IOException thrown if error
+   */
+  public static void update(final MessageDigest digest, final Path file) throws IOException {
+    if (file == null) {
+      digest.update((byte) 0);
+      return;
+    }
+    final ByteBuffer content = TntpByteTokenizer.map(file);
+    digest.update(ByteBuffer.allocate(Long.BYTES).putLong(content.limit()).array());
+    digest.update(content);
+  }
+
+  /**
+   * Complete a digest and represent it as a key
+   *
+   * @param digest to complete
+   * @return key as hexadecimal string
+   */
+  public static String toKey(final MessageDigest digest) {
+    final StringBuilder key = new StringBuilder();
+    for (final byte b : digest.digest()) {
+      key.append(String.format("%02x", b));
+    }
+    return key.toString();
+  }
+
+  /**
+   * Write an image to file. Written to a temporary file in the same directory first which is moved in place afterwards, atomically when
+   * the file system supports it, otherwise by replacing the existing file
+   *
+   * @param file to write to
+   * @param fileExtension of the temporary file
+   * @param magic identifying the image type
+   * @param version of the image format
+   * @param bodyWriter writing the body of the image
+   * @throws IOException thrown if error
+   */
+  public static void writeAtomically(final Path file, final String fileExtension, int magic, int version, final BodyWriter bodyWriter)
+      throws IOException {
+    final Path tempFile = Files.createTempFile(file.toAbsolutePath().getParent(), "tntp", fileExtension);
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), WRITE_BUFFER_SIZE))) {
+        out.writeInt(magic);
+        out.writeInt(version);
+        bodyWriter.write(out);
+      }
+      try {
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (final AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (final IOException e) {
+      Files.deleteIfExists(tempFile);
+      throw e;
+    }
+  }
+
+  /**
+   * Map an image and validate its magic number and version
+   *
+   * @param file to map
+   * @param magic expected magic number
+   * @param version expected format version
+   * @param description of the image type used in the error message, e.g., "TNTP network snapshot"
+   * @return buffer positioned after the magic number and version
+   * @throws IOException thrown when file cannot be read or is not an image of the given type and version
+   */
+  public static ByteBuffer map(final Path file, int magic, int version, final String description) throws IOException {
+    final ByteBuffer buffer = TntpByteTokenizer.map(file);
+    if (buffer.limit() < 2 * Integer.BYTES || buffer.getInt() != magic || buffer.getInt() != version) {
+      throw new IOException(String.format("%s is not a %s of version %d", file, description, version));
+    }
+    return buffer;
+  }
+
+}
@@ -0,0 +1,428 @@
+package org.goplanit.tntp.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Byte level tokenizer for TNTP files. Operates directly on a (memory mapped) byte buffer and parses numbers in place, so no
+ * intermediate Strings are created for regular rows. Tokens are separated by whitespace, ';' or ':' which covers the network,
+ * node and trips file layouts of TNTP. Only header lines are materialised as Strings (see {@link #nextLine()}).
+ * <p>
+ * Decimal numbers are converted using the exact fast path (mantissa below 2^53 and a power of ten that is exactly representable),
+ * which yields the same correctly rounded result as {@link Double#parseDouble(String)}. Any other token falls back to the JDK parser,
+ * so results are always identical to the String based parsing of the Scanner based readers.
+ * </p>
+ *
+ * @author markr
+ *
+ */
+public class TntpByteTokenizer {
+
+  /** exactly representable powers of ten as doubles */
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+  /** largest mantissa for which the fast path conversion is exact */
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  /** the buffer to tokenize */
+  private final ByteBuffer buffer;
+
+  /** exclusive end of the region to tokenize */
+  private final int end;
+
+  /** current (absolute) position in the buffer */
+  private int position;
+
+  /**
+   * Verify if byte represents whitespace within a line
+   *
+   * @param b to check
+   * @return true when space, tab or carriage return
+   */
+  private static boolean isInlineWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+
+  /**
+   * Verify if byte terminates a token
+   *
+   * @param b to check
+   * @return true when whitespace, newline, ';' or ':'
+   */
+  private static boolean isTokenTerminator(byte b) {
+    return isInlineWhitespace(b) || b == '\n' || b == ';' || b == ':';
+  }
+
+  /**
+   * Verify if byte is a decimal digit
+   *
+   * @param b to check
+   * @return true when digit
+   */
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  /**
+   * Create String for region of the buffer (fallback and header use only)
+   *
+   * @param from inclusive
+   * @param to exclusive
+   * @return created String
+   */
+  private String toString(int from, int to) {
+    final byte[] bytes = new byte[to - from];
+    for (int index = from; index < to; ++index) {
+      bytes[index - from] = buffer.get(index);
+    }
+    return new String(bytes, StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Move position to the end of the current token
+   *
+   * @return end of token (exclusive)
+   */
+  private int findTokenEnd() {
+    int index = position;
+    while (index < end && !isTokenTerminator(buffer.get(index))) {
+      ++index;
+    }
+    return index;
+  }
+
+  /**
+   * Memory map the given file in read only mode. The channel is closed upon return, the mapping remains valid until the buffer is
+   * garbage collected
+   *
+   * @param file to map
+   * @return mapped buffer
+   * @throws IOException thrown when file cannot be mapped, or when it exceeds the maximum size of a single mapping
+   */
+  public static MappedByteBuffer map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException(String.format("File %s exceeds maximum size of memory mapped TNTP file (%d bytes)", file, Integer.MAX_VALUE));
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+  }
+
+  /**
+   * Split a region of the buffer into (roughly) equally sized consecutive ranges that start at the beginning of a line, so each
+   * range can be tokenized independently
+   *
+   * @param buffer to split
+   * @param start absolute start position (inclusive), expected to be at the start of a line
+   * @param end absolute end position (exclusive)
+   * @param numRanges desired number of ranges, fewer may be returned for small regions
+   * @return boundaries of the ranges, range i covers [boundaries[i], boundaries[i+1])
+   */
+  public static int[] splitAtLineBoundaries(ByteBuffer buffer, int start, int end, int numRanges) {
+    final int[] boundaries = new int[Math.max(1, numRanges) + 1];
+    final long rangeSize = (end - start) / Math.max(1, numRanges);
+    boundaries[0] = start;
+    int numBoundaries = 1;
+    for (int rangeIndex = 1; rangeIndex < numRanges; ++rangeIndex) {
+      int boundary = (int) (start + rangeIndex * rangeSize);
+      if (boundary <= boundaries[numBoundaries - 1]) {
+        continue;
+      }
+      while (boundary < end && buffer.get(boundary - 1) != '\n') {
+        ++boundary;
+      }
+      if (boundary < end) {
+        boundaries[numBoundaries++] = boundary;
+      }
+    }
+    boundaries[numBoundaries++] = end;
+    return Arrays.copyOf(boundaries, numBoundaries);
+  }
+
+  /**
+   * Constructor covering the entire remaining buffer
+   *
+   * @param buffer to tokenize
+   */
+  public TntpByteTokenizer(ByteBuffer buffer) {
+    this(buffer, buffer.position(), buffer.limit());
+  }
+
+  /**
+   * Constructor covering a region of the buffer
+   *
+   * @param buffer to tokenize
+   * @param start absolute start position (inclusive)
+   * @param end absolute end position (exclusive)
+   */
+  public TntpByteTokenizer(ByteBuffer buffer, int start, int end) {
+    this.buffer = buffer;
+    this.position = start;
+    this.end = end;
+  }
+
+  /**
+   * Verify if there are bytes left to process
+   *
+   * @return true when not at end
+   */
+  public boolean hasRemaining() {
+    return position < end;
+  }
+
+  /**
+   * Current absolute position in the buffer
+   *
+   * @return position
+   */
+  public int getPosition() {
+    return position;
+  }
+
+  /**
+   * Set the current absolute position in the buffer
+   *
+   * @param position to use
+   */
+  public void setPosition(int position) {
+    this.position = position;
+  }
+
+  /**
+   * Skip spaces, tabs and carriage returns on the current line
+   */
+  public void skipWhitespace() {
+    while (position < end && isInlineWhitespace(buffer.get(position))) {
+      ++position;
+    }
+  }
+
+  /**
+   * Skip whitespace and row delimiters (';' and ':') on the current line
+   *
+   * @return true when a token follows on the current line, false when at end of line or end of buffer
+   */
+  public boolean skipDelimiters() {
+    while (position < end) {
+      final byte b = buffer.get(position);
+      if (b == '\n') {
+        return false;
+      }
+      if (!isTokenTerminator(b)) {
+        return true;
+      }
+      ++position;
+    }
+    return false;
+  }
+
+  /**
+   * Peek at the byte at the current position, position remains unchanged
+   *
+   * @return byte at current position, 0 when at end
+   */
+  public byte peek() {
+    return position < end ? buffer.get(position) : 0;
+  }
+
+  /**
+   * Verify if the remainder of the current line is blank
+   *
+   * @return true when only whitespace remains on the line
+   */
+  public boolean isAtEndOfLine() {
+    skipWhitespace();
+    return position >= end || buffer.get(position) == '\n';
+  }
+
+  /**
+   * Verify if the token at the current position starts with the given ASCII prefix, position remains unchanged
+   *
+   * @param prefix to check
+   * @return true when matched
+   */
+  public boolean startsWith(String prefix) {
+    if (position + prefix.length() > end) {
+      return false;
+    }
+    for (int index = 0; index < prefix.length(); ++index) {
+      if (buffer.get(position + index) != prefix.charAt(index)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Move to the start of the next line
+   */
+  public void skipLine() {
+    while (position < end && buffer.get(position++) != '\n') {
+      // continue
+    }
+  }
+
+  /**
+   * Skip the token at the current position without parsing it
+   */
+  public void skipToken() {
+    position = findTokenEnd();
+  }
+
+  /**
+   * Collect the remainder of the current line as a trimmed String and move to the next line. Meant for header lines only
+   *
+   * @return line
+   */
+  public String nextLine() {
+    final int start = position;
+    while (position < end && buffer.get(position) != '\n') {
+      ++position;
+    }
+    final String line = toString(start, position);
+    if (position < end) {
+      ++position;
+    }
+    return line.trim();
+  }
+
+  /**
+   * Collect the token at the current position as a String. Meant for non-numeric tokens only
+   *
+   * @return token
+   */
+  public String nextToken() {
+    final int start = position;
+    position = findTokenEnd();
+    return toString(start, position);
+  }
+
+  /**
+   * Parse the token at the current position as a long
+   *
+   * @return parsed value
+   * @throws NumberFormatException when token is not a valid long
+   */
+  public long nextLong() {
+    final int start = position;
+    int index = position;
+    boolean negative = false;
+    if (index < end && (buffer.get(index) == '-' || buffer.get(index) == '+')) {
+      negative = buffer.get(index) == '-';
+      ++index;
+    }
+    long value = 0;
+    int numDigits = 0;
+    byte b;
+    while (index < end && isDigit(b = buffer.get(index)) && numDigits < 18) {
+      value = value * 10 + (b - '0');
+      ++numDigits;
+      ++index;
+    }
+    if (numDigits > 0 && (index >= end || isTokenTerminator(buffer.get(index)))) {
+      position = index;
+      return negative ? -value : value;
+    }
+
+    /* unusual token, rely on JDK for parsing and error reporting */
+    position = findTokenEnd();
+    return Long.parseLong(toString(start, position));
+  }
+
+  /**
+   * Parse the token at the current position as an int
+   *
+   * @return parsed value
+   * @throws NumberFormatException when token is not a valid int
+   */
+  public int nextInt() {
+    return Math.toIntExact(nextLong());
+  }
+
+  /**
+   * Parse the token at the current position as a double
+   *
+   * @return parsed value
+   * @throws NumberFormatException when token is not a valid double
+   */
+  public double nextDouble() {
+    final int start = position;
+    int index = position;
+    boolean negative = false;
+    if (index < end && (buffer.get(index) == '-' || buffer.get(index) == '+')) {
+      negative = buffer.get(index) == '-';
+      ++index;
+    }
+
+    long mantissa = 0;
+    int exponent = 0;
+    int numDigits = 0;
+    boolean overflow = false;
+    byte b = 0;
+    /* integral part */
+    while (index < end && isDigit(b = buffer.get(index))) {
+      if (mantissa < MAX_EXACT_MANTISSA) {
+        mantissa = mantissa * 10 + (b - '0');
+      } else {
+        overflow = true;
+      }
+      ++numDigits;
+      ++index;
+    }
+    /* fraction */
+    if (index < end && buffer.get(index) == '.') {
+      ++index;
+      while (index < end && isDigit(b = buffer.get(index))) {
+        if (mantissa < MAX_EXACT_MANTISSA) {
+          mantissa = mantissa * 10 + (b - '0');
+          --exponent;
+        } else {
+          overflow = true;
+        }
+        ++numDigits;
+        ++index;
+      }
+    }
+    /* exponent */
+    if (numDigits > 0 && index < end && (buffer.get(index) == 'e' || buffer.get(index) == 'E')) {
+      ++index;
+      boolean negativeExponent = false;
+      if (index < end && (buffer.get(index) == '-' || buffer.get(index) == '+')) {
+        negativeExponent = buffer.get(index) == '-';
+        ++index;
+      }
+      int explicitExponent = 0;
+      int numExponentDigits = 0;
+      while (index < end && isDigit(b = buffer.get(index))) {
+        explicitExponent = Math.min(explicitExponent * 10 + (b - '0'), 10000);
+        ++numExponentDigits;
+        ++index;
+      }
+      if (numExponentDigits == 0) {
+        overflow = true;
+      }
+      exponent += negativeExponent ? -explicitExponent : explicitExponent;
+    }
+
+    final boolean terminated = index >= end || isTokenTerminator(buffer.get(index));
+    if (terminated && numDigits > 0 && !overflow && mantissa <= MAX_EXACT_MANTISSA && Math.abs(exponent) < POWERS_OF_TEN.length) {
+      position = index;
+      /* both operands are exact, so the single rounding of the operation yields the correctly rounded result */
+      final double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+      return negative ? -value : value;
+    }
+
+    /* slow path, rely on JDK for correct rounding and error reporting */
+    position = findTokenEnd();
+    return Double.parseDouble(toString(start, position));
+  }
+
+}
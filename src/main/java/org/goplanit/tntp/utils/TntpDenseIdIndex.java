@@ -0,0 +1,142 @@
+package org.goplanit.tntp.utils;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
+
+/**
+ * Array backed index of PLANit entities by their TNTP id. TNTP node and zone ids are contiguous positive integers (1 to the number of
+ * nodes/zones as stated in the header), so a plain array indexed by the TNTP id replaces a String keyed source id map, avoiding hashing
+ * and boxing on every lookup. The index is presized based on the expected maximum id and grows when needed.
+ *
+ * @author markr
+ *
+ * @param <T> type of entity indexed
+ */
+public class TntpDenseIdIndex<T> {
+
+  /** entries indexed by TNTP id, position 0 is unused */
+  private Object[] entries;
+
+  /** number of registered entries */
+  private int size;
+
+  /** largest registered TNTP id, 0 when empty */
+  private int maxId;
+
+  /**
+   * Parse a TNTP id from a source id String
+   *
+   * @param sourceId to parse
+   * @return parsed id, -1 when not a positive integer
+   */
+  public static long parseTntpId(String sourceId) {
+    if (sourceId == null || sourceId.isEmpty()) {
+      return -1;
+    }
+    long tntpId = 0;
+    for (int index = 0; index < sourceId.length(); ++index) {
+      final char c = sourceId.charAt(index);
+      if (c < '0' || c > '9' || tntpId > Integer.MAX_VALUE) {
+        return -1;
+      }
+      tntpId = tntpId * 10 + (c - '0');
+    }
+    return tntpId > 0 && tntpId < Integer.MAX_VALUE ? tntpId : -1;
+  }
+
+  /**
+   * Create index for existing entities based on their TNTP source id. Entities without a valid TNTP id are not indexed
+   *
+   * @param <T> type of entity
+   * @param entities to index
+   * @param sourceIdFunction to extract the TNTP (source) id
+   * @param expectedMaxId expected largest TNTP id, used for presizing
+   * @return created index
+   */
+  public static <T> TntpDenseIdIndex<T> create(final Iterable<? extends T> entities, final Function<T, String> sourceIdFunction, int expectedMaxId) {
+    final TntpDenseIdIndex<T> index = new TntpDenseIdIndex<>(expectedMaxId);
+    index.registerAll(entities, sourceIdFunction);
+    return index;
+  }
+
+  /**
+   * Constructor
+   *
+   * @param expectedMaxId expected largest TNTP id, used for presizing
+   */
+  public TntpDenseIdIndex(int expectedMaxId) {
+    this.entries = new Object[Math.max(0, expectedMaxId) + 1];
+    this.size = 0;
+    this.maxId = 0;
+  }
+
+  /**
+   * Register entity under given TNTP id, overwrites any existing entry
+   *
+   * @param tntpId to use, must be positive
+   * @param entity to register
+   */
+  public void register(long tntpId, final T entity) {
+    if (tntpId < 1 || tntpId >= Integer.MAX_VALUE) {
+      throw new PlanItRunTimeException("TNTP id %d outside valid range of dense id index", tntpId);
+    }
+    if (tntpId >= entries.length) {
+      entries = Arrays.copyOf(entries, (int) Math.max(tntpId + 1, Math.min(Integer.MAX_VALUE - 1L, 2L * entries.length)));
+    }
+    if (entries[(int) tntpId] == null) {
+      ++size;
+    }
+    entries[(int) tntpId] = entity;
+    maxId = Math.max(maxId, (int) tntpId);
+  }
+
+  /**
+   * Register existing entities based on their TNTP source id. Entities without a valid TNTP id are not indexed
+   *
+   * @param entities to index
+   * @param sourceIdFunction to extract the TNTP (source) id
+   */
+  public void registerAll(final Iterable<? extends T> entities, final Function<T, String> sourceIdFunction) {
+    for (final T entity : entities) {
+      final long tntpId = parseTntpId(sourceIdFunction.apply(entity));
+      if (tntpId > 0) {
+        register(tntpId, entity);
+      }
+    }
+  }
+
+  /**
+   * Collect entity by TNTP id
+   *
+   * @param tntpId to collect
+   * @return entity, null if not present
+   */
+  @SuppressWarnings("unchecked")
+  public T get(long tntpId) {
+    if (tntpId < 1 || tntpId >= entries.length) {
+      return null;
+    }
+    return (T) entries[(int) tntpId];
+  }
+
+  /**
+   * Number of registered entities
+   *
+   * @return size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Largest registered TNTP id
+   *
+   * @return largest id, 0 when empty
+   */
+  public int getMaxId() {
+    return maxId;
+  }
+
+}
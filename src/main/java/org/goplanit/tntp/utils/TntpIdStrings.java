@@ -0,0 +1,118 @@
+package org.goplanit.tntp.utils;
+
+import java.util.Arrays;
+
+/**
+ * Array backed pool of the Strings of numeric ids, so entities with the same numeric id, e.g., the XML and external id of a node or the
+ * external ids of a node, its zone and connectoid, share a single String instance rather than each holding their own. Ids of the
+ * populated entities are contiguous from zero or one, so a plain array indexed by the id is used. Tracks the (estimated) heap that is
+ * saved by reusing id Strings.
+ * <p>
+ * Not thread safe, entities are registered sequentially by the readers
+ * </p>
+ *
+ * @author markr
+ *
+ */
+public class TntpIdStrings {
+
+  /** estimated bytes of a String excluding its byte array: header plus hash and coder fields, with compressed references */
+  private static final int STRING_BYTES = 24;
+
+  /** estimated bytes of an (empty) byte array: header plus length */
+  private static final int BYTE_ARRAY_BYTES = 16;
+
+  /** pooled Strings indexed by id */
+  private String[] ids;
+
+  /** number of times an existing String was reused */
+  private long numberOfSavedStrings;
+
+  /** estimated number of bytes saved by reusing id Strings */
+  private long savedBytes;
+
+  /**
+   * Estimate the retained heap of a (Latin-1) String
+   *
+   * @param numberOfCharacters of the String
+   * @return estimated bytes
+   */
+  public static long estimateBytes(int numberOfCharacters) {
+    return STRING_BYTES + ((BYTE_ARRAY_BYTES + numberOfCharacters + 7) & ~7);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param expectedMaxId expected largest id, used for presizing
+   */
+  public TntpIdStrings(int expectedMaxId) {
+    this.ids = new String[Math.max(0, expectedMaxId) + 1];
+  }
+
+  /**
+   * Ensure the pool can hold ids up to the given id without growing, e.g., once the number of entities in the header is known
+   *
+   * @param expectedMaxId expected largest id
+   */
+  public void ensureCapacity(int expectedMaxId) {
+    if (expectedMaxId >= ids.length) {
+      ids = Arrays.copyOf(ids, expectedMaxId + 1);
+    }
+  }
+
+  /**
+   * Collect the String of an id, reusing the pooled String when available. Negative ids and ids beyond the integer range are not pooled
+   *
+   * @param id to collect String for
+   * @return String of the id
+   */
+  public String of(long id) {
+    if (id < 0 || id >= Integer.MAX_VALUE) {
+      return String.valueOf(id);
+    }
+    if (id >= ids.length) {
+      ids = Arrays.copyOf(ids, (int) Math.max(id + 1, Math.min(Integer.MAX_VALUE - 1L, 2L * ids.length)));
+    }
+    String idString = ids[(int) id];
+    if (idString == null) {
+      idString = String.valueOf(id);
+      ids[(int) id] = idString;
+    } else {
+      ++numberOfSavedStrings;
+      savedBytes += estimateBytes(idString.length());
+    }
+    return idString;
+  }
+
+  /**
+   * Collect the String of an id without pooling it or accounting for it as saved, for Strings that are only used as a (temporary) lookup
+   * key rather than retained by an entity
+   *
+   * @param id to collect String for
+   * @return pooled String of the id when available, otherwise a new String
+   */
+  public String lookup(long id) {
+    final String idString = id >= 0 && id < ids.length ? ids[(int) id] : null;
+    return idString == null ? String.valueOf(id) : idString;
+  }
+
+  /**
+   * Number of id Strings that were reused instead of created
+   *
+   * @return number of saved Strings
+   */
+  public long getNumberOfSavedStrings() {
+    return numberOfSavedStrings;
+  }
+
+  /**
+   * Estimated heap saved by reusing id Strings
+   *
+   * @return saved bytes
+   */
+  public long getSavedBytes() {
+    return savedBytes;
+  }
+
+}
@@ -0,0 +1,223 @@
+package org.goplanit.tntp.utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Source of a TNTP input file. Either a file on disk, or an arbitrary {@link InputStream} or {@link ReadableByteChannel}. Gzip and zip
+ * compressed content is detected based on its leading (magic) bytes and decompressed while streaming, for zip archives the first file
+ * entry is used. Plain files can be memory mapped, other sources are streamed (and buffered in memory when random access is required).
+ * <p>
+ * Stream and channel based sources can only be consumed once.
+ * </p>
+ *
+ * @author markr
+ *
+ */
+public class TntpInputSource {
+
+  /** leading bytes of gzip content */
+  private static final int GZIP_MAGIC = 0x1f8b;
+
+  /** leading bytes of zip content */
+  private static final int ZIP_MAGIC = 0x504b0304;
+
+  /** number of leading bytes inspected to detect compressed content */
+  private static final int MAGIC_LENGTH = 4;
+
+  /** buffer size used for streaming */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /** compression of content as detected from its leading bytes */
+  private enum Compression {
+    NONE, GZIP, ZIP
+  }
+
+  /** file of this source, null when stream based */
+  private final Path file;
+
+  /** stream of this source, null when file based or consumed */
+  private InputStream stream;
+
+  /** description for logging */
+  private final String description;
+
+  /**
+   * Detect the compression of content from its leading bytes
+   *
+   * @param magic leading bytes of the content
+   * @param numRead number of leading bytes available, may be less than {@link #MAGIC_LENGTH} for short content
+   * @return detected compression
+   */
+  private static Compression detectCompression(final byte[] magic, int numRead) {
+    final int leadingBytes = numRead < 2 ? 0 : ((magic[0] & 0xff) << 8) | (magic[1] & 0xff);
+    if (leadingBytes == GZIP_MAGIC) {
+      return Compression.GZIP;
+    }
+    if (numRead == MAGIC_LENGTH && ((leadingBytes << 16) | ((magic[2] & 0xff) << 8) | (magic[3] & 0xff)) == ZIP_MAGIC) {
+      return Compression.ZIP;
+    }
+    return Compression.NONE;
+  }
+
+  /**
+   * Wrap stream to decompress its content if compressed
+   *
+   * @param rawStream to wrap
+   * @return stream providing decompressed content
+   * @throws IOException thrown if error
+   */
+  private static InputStream decompressIfNeeded(final InputStream rawStream) throws IOException {
+    final BufferedInputStream bufferedStream = new BufferedInputStream(rawStream, BUFFER_SIZE);
+    bufferedStream.mark(MAGIC_LENGTH);
+    final byte[] magic = new byte[MAGIC_LENGTH];
+    final int numRead = bufferedStream.readNBytes(magic, 0, magic.length);
+    bufferedStream.reset();
+
+    switch (detectCompression(magic, numRead)) {
+    case GZIP:
+      return new BufferedInputStream(new GZIPInputStream(bufferedStream, BUFFER_SIZE), BUFFER_SIZE);
+    case ZIP:
+      final ZipInputStream zipStream = new ZipInputStream(bufferedStream);
+      ZipEntry entry;
+      while ((entry = zipStream.getNextEntry()) != null) {
+        if (!entry.isDirectory()) {
+          return new BufferedInputStream(zipStream, BUFFER_SIZE);
+        }
+      }
+      zipStream.close();
+      throw new IOException("Zip archive does not contain any file");
+    default:
+      return bufferedStream;
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param file to use, null when stream based
+   * @param stream to use, null when file based
+   * @param description for logging
+   */
+  private TntpInputSource(final Path file, final InputStream stream, final String description) {
+    this.file = file;
+    this.stream = stream;
+    this.description = description;
+  }
+
+  /**
+   * Create file based source
+   *
+   * @param fileLocation of the (possibly compressed) file
+   * @return source, null when file location is null
+   */
+  public static TntpInputSource of(final String fileLocation) {
+    return fileLocation == null ? null : of(Path.of(fileLocation));
+  }
+
+  /**
+   * Create file based source
+   *
+   * @param file the (possibly compressed) file
+   * @return source
+   */
+  public static TntpInputSource of(final Path file) {
+    return new TntpInputSource(file.toAbsolutePath().normalize(), null, file.toString());
+  }
+
+  /**
+   * Create stream based source, the stream is closed once consumed
+   *
+   * @param stream providing the (possibly compressed) content
+   * @param description used for logging
+   * @return source
+   */
+  public static TntpInputSource of(final InputStream stream, final String description) {
+    return new TntpInputSource(null, stream, description);
+  }
+
+  /**
+   * Create channel based source, the channel is closed once consumed
+   *
+   * @param channel providing the (possibly compressed) content
+   * @param description used for logging
+   * @return source
+   */
+  public static TntpInputSource of(final ReadableByteChannel channel, final String description) {
+    return of(Channels.newInputStream(channel), description);
+  }
+
+  /**
+   * The file of this source
+   *
+   * @return file, null when stream based
+   */
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * Open the (decompressed) content of this source for streaming. Caller is responsible for closing the stream
+   *
+   * @return stream
+   * @throws IOException thrown when source cannot be opened or, for stream based sources, it has already been consumed
+   */
+  public InputStream openStream() throws IOException {
+    if (file != null) {
+      return decompressIfNeeded(Files.newInputStream(file));
+    }
+    if (stream == null) {
+      throw new IOException(String.format("TNTP input %s has already been consumed", description));
+    }
+    final InputStream rawStream = stream;
+    stream = null;
+    return decompressIfNeeded(rawStream);
+  }
+
+  /**
+   * Provide the entire (decompressed) content as a buffer. Plain files are memory mapped, other sources are read into memory
+   *
+   * @return buffer with content, positioned at the start
+   * @throws IOException thrown if error
+   */
+  public ByteBuffer readFully() throws IOException {
+    if (file != null && !isCompressed(file)) {
+      return TntpByteTokenizer.map(file);
+    }
+    try (InputStream content = openStream()) {
+      return ByteBuffer.wrap(content.readAllBytes());
+    }
+  }
+
+  /**
+   * Verify if file holds compressed content
+   *
+   * @param file to check
+   * @return true when gzip or zip compressed
+   * @throws IOException thrown if error
+   */
+  private static boolean isCompressed(final Path file) throws IOException {
+    try (InputStream rawStream = Files.newInputStream(file)) {
+      final byte[] magic = rawStream.readNBytes(MAGIC_LENGTH);
+      return detectCompression(magic, magic.length) != Compression.NONE;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return description;
+  }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Low level parsing utilities shared by the TNTP readers
+ */
+package org.goplanit.tntp.utils;
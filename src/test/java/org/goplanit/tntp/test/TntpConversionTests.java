@@ -6,6 +6,7 @@ import org.goplanit.converter.network.NetworkConverter;
 import org.goplanit.converter.network.NetworkConverterFactory;
 import org.goplanit.converter.zoning.ZoningConverter;
 import org.goplanit.converter.zoning.ZoningConverterFactory;
+import org.goplanit.cost.physical.BprLinkTravelTimeCost;
 import org.goplanit.io.converter.demands.PlanitDemandsWriter;
 import org.goplanit.io.converter.demands.PlanitDemandsWriterFactory;
 import org.goplanit.io.converter.network.PlanitNetworkWriter;
@@ -15,29 +16,75 @@ import org.goplanit.io.converter.zoning.PlanitZoningWriterFactory;
 import org.goplanit.io.test.PlanitAssertionUtils;
 import org.goplanit.logging.Logging;
 import org.goplanit.network.MacroscopicNetwork;
+import org.goplanit.tntp.TntpMetadata;
 import org.goplanit.tntp.converter.demands.TntpDemandsReader;
 import org.goplanit.tntp.converter.demands.TntpDemandsReaderFactory;
+import org.goplanit.tntp.converter.demands.TntpPrefetchedTrips;
+import org.goplanit.tntp.converter.demands.TntpSparseOdDemands;
+import org.goplanit.tntp.converter.network.TntpBprParameters;
 import org.goplanit.tntp.converter.network.TntpNetworkReader;
+import org.goplanit.tntp.converter.network.TntpNetworkFileSchema;
+import org.goplanit.tntp.converter.network.TntpLinkSegmentTypeIndex;
 import org.goplanit.tntp.converter.network.TntpNetworkReaderFactory;
+import org.goplanit.tntp.converter.network.TntpNodeCoordinates;
 import org.goplanit.tntp.converter.zoning.TntpZoningReader;
 import org.goplanit.tntp.converter.zoning.TntpZoningReaderFactory;
+import org.goplanit.tntp.enums.IdMode;
 import org.goplanit.tntp.enums.LengthUnits;
 import org.goplanit.tntp.enums.NetworkFileColumnType;
+import org.goplanit.tntp.enums.OdDemandRepresentation;
+import org.goplanit.tntp.enums.ParsingMode;
 import org.goplanit.tntp.enums.SpeedUnits;
 import org.goplanit.tntp.enums.TimeUnits;
+import org.goplanit.tntp.stream.TntpStreamHandler;
+import org.goplanit.tntp.stream.TntpStreamReader;
+import org.goplanit.tntp.utils.TntpInputSource;
+import org.goplanit.utils.exceptions.PlanItException;
+import org.goplanit.utils.exceptions.PlanItRunTimeException;
 import org.goplanit.utils.id.IdGenerator;
 import org.goplanit.utils.id.IdGroupingToken;
 import org.goplanit.utils.locale.CountryNames;
+import org.goplanit.utils.macroscopic.MacroscopicConstants;
+import org.goplanit.utils.math.Precision;
+import org.goplanit.utils.mode.Mode;
+import org.goplanit.utils.network.layer.physical.Node;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongPredicate;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 /**
@@ -60,6 +107,9 @@ public class TntpConversionTests {
   private static final Path SIOUXFALLS_NETWORK_FILE = Path.of(RESOURCE_PATH.toString(),"SiouxFalls","SiouxFalls_net.tntp");
   private static final Path SIOUXFALLS_NODE_FILE = Path.of(RESOURCE_PATH.toString(),"SiouxFalls","SiouxFalls_node.tntp");
   private static final Path SIOUXFALLS_DEMAND_FILE = Path.of(RESOURCE_PATH.toString(),"SiouxFalls","SiouxFalls_trips.tntp");
+
+  private static final Path PHILADELPHIA_NETWORK_FILE = Path.of(RESOURCE_PATH.toString(),"Philadelphia","Philadelphia_net.tntp");
+  private static final Path PHILADELPHIA_NODE_FILE = Path.of(RESOURCE_PATH.toString(),"Philadelphia","Philadelphia_node.tntp");
   
   public static final double DEFAULT_MAXIMUM_SPEED = 25.0;
  
@@ -86,6 +136,34 @@ public class TntpConversionTests {
     Logging.closeLogger(LOGGER);
   }
 
+  /**
+   * Delete a directory used by a test, including its content, so files of earlier runs do not affect the test
+   *
+   * @param directory to delete
+   * @throws IOException thrown if error
+   */
+  private static void deleteDirectory(Path directory) throws IOException {
+    if (Files.exists(directory)) {
+      try (var paths = Files.walk(directory)) {
+        paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+      }
+    }
+  }
+
+  /**
+   * Verify a directory contains a file with the given extension
+   *
+   * @param directory to verify
+   * @param fileExtension to look for
+   * @return true when present
+   * @throws IOException thrown if error
+   */
+  private static boolean containsFile(Path directory, String fileExtension) throws IOException {
+    try (var paths = Files.list(directory)) {
+      return paths.anyMatch(path -> path.getFileName().toString().endsWith(fileExtension));
+    }
+  }
+
   private static TntpNetworkReader createChicagoTntpNetworkReader(
       Path networkFileLocation, Path nodeFileLocation, double defaultMaxSpeedMpH, IdGroupingToken idToken) {
     return createChicagoTntpNetworkReader(
@@ -165,6 +243,75 @@ public class TntpConversionTests {
                   
     return tntpReader;
   }  
+
+  /** Create TNTP zoning reader suitable for Chicago, on top of a Chicago network reader
+   * 
+   * @param idToken to use
+   * @return pre-configured zoning reader
+   */
+  private static TntpZoningReader createChicagoTntpZoningReader(IdGroupingToken idToken) {
+    TntpNetworkReader tntpNetworkReader = createChicagoTntpNetworkReader(CHICAGO_NETWORK_FILE, CHICAGO_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
+    
+    TntpZoningReader tntpZoningReader = TntpZoningReaderFactory.create(tntpNetworkReader);
+    tntpZoningReader.getSettings().setNetworkFileLocation(CHICAGO_NETWORK_FILE.toAbsolutePath().toString());
+    return tntpZoningReader;
+  }
+
+  /** Create TNTP demands reader suitable for Chicago, reading a single demand file of one hour
+   * 
+   * @param tntpZoningReader to use as reference
+   * @param demandFileLocation to use
+   * @return pre-configured demands reader
+   */
+  private static TntpDemandsReader createChicagoTntpDemandsReader(TntpZoningReader tntpZoningReader, Path demandFileLocation) {
+    TntpDemandsReader tntpDemandsReader = TntpDemandsReaderFactory.create(tntpZoningReader);
+    tntpDemandsReader.getSettings().setDemandFileLocation(demandFileLocation.toAbsolutePath().toString());
+    tntpDemandsReader.getSettings().setTimePeriodDuration(1, TimeUnits.HOURS);
+    return tntpDemandsReader;
+  }
+
+  /** Create TNTP demands reader suitable for Chicago, reading a single demand file of one hour on top of a Chicago network and zoning
+   * reader
+   * 
+   * @param demandFileLocation to use
+   * @param idToken to use
+   * @return pre-configured demands reader
+   */
+  private static TntpDemandsReader createChicagoTntpDemandsReader(Path demandFileLocation, IdGroupingToken idToken) {
+    return createChicagoTntpDemandsReader(createChicagoTntpZoningReader(idToken), demandFileLocation);
+  }
+
+  /**
+   * Verify the sparse OD demands hold the cells of a TNTP trips file multiplied by a factor. When a cell is repeated in the trips file its
+   * last value is expected, as for the demands readers. Cells of origins rejected by the filter are not verified
+   *
+   * @param tripsFile to verify against
+   * @param sparseOdDemands to verify
+   * @param originFilter origins to verify
+   * @param factor to apply to the trips of the file, e.g., a pcu
+   * @return number of non-zero cells of the verified origins
+   * @throws PlanItException thrown if error
+   */
+  private static long assertSparseOdDemandsMatchTripsFile(
+      Path tripsFile, TntpSparseOdDemands sparseOdDemands, LongPredicate originFilter, double factor) throws PlanItException {
+    final Map<Long, Map<Long, Double>> expectedOdDemands = new HashMap<>();
+    TntpStreamReader.streamTripsFile(tripsFile, new TntpStreamHandler() {
+      @Override
+      public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+        if (originFilter.test(originZoneId)) {
+          expectedOdDemands.computeIfAbsent(originZoneId, origin -> new HashMap<>()).put(destinationZoneId, value * factor);
+        }
+      }
+    });
+    long numNonZeros = 0;
+    for (final var origin : expectedOdDemands.entrySet()) {
+      for (final var destination : origin.getValue().entrySet()) {
+        assertEquals(destination.getValue(), sparseOdDemands.getValue(origin.getKey(), destination.getKey()), 1e-9);
+        numNonZeros += destination.getValue() != 0 ? 1 : 0;
+      }
+    }
+    return numNonZeros;
+  }
     
   /**
    * Test case which parses the TNTP Chicago network, zoning and trips files, loads it into PLANit memory model and persists it as a PLANit network
@@ -197,6 +344,384 @@ public class TntpConversionTests {
     }    
   }
    
+  /**
+   * Test case which parses the TNTP Chicago network without explicitly configured columns, these should be detected from the header of the
+   * link rows, result should be identical to the explicitly configured columns
+   */
+  @Test
+  public void testTntp2PlanitNetworkChicagoDetectedColumns() {
+
+    final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","chicago");
+    final Path PLANIT_REF_DIR = Path.of(RESOURCE_PATH.toString(),"planit","chicago");
+    try {
+      for(var parsingMode : List.of(ParsingMode.SCANNER, ParsingMode.MEMORY_MAPPED)) {
+        IdGenerator.reset();
+
+        /* TNTP reader */
+        var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitNetworkChicagoDetectedColumns");
+        TntpNetworkReader tntpReader = createChicagoTntpNetworkReader(CHICAGO_NETWORK_FILE, CHICAGO_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken );
+        tntpReader.getSettings().setNetworkFileColumns(null);
+        tntpReader.getSettings().setParsingMode(parsingMode);
+
+        /* PLANit writer */
+        PlanitNetworkWriter planitWriter = PlanitNetworkWriterFactory.create(
+            PLANIT_OUTPUT_DIR.toAbsolutePath().toString(), CountryNames.UNITED_STATES_OF_AMERICA);
+
+        /* convert */
+        NetworkConverter theConverter = NetworkConverterFactory.create(tntpReader, planitWriter);
+        theConverter.convert();
+
+        PlanitAssertionUtils.assertNetworkFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which looks up link segment types whose capacity or speed lies on either side of a bucket boundary of the link segment type
+   * index, these should be found via the adjacent bucket
+   */
+  @Test
+  public void testTntpLinkSegmentTypeIndexBucketBoundaries() {
+    try {
+      final var network = new MacroscopicNetwork(IdGenerator.createIdGroupingToken("testTntpLinkSegmentTypeIndexBucketBoundaries"));
+      final var linkSegmentTypes = network.getTransportLayers().getFactory().registerNew().getLinkSegmentTypes();
+      final var typeIndex = new TntpLinkSegmentTypeIndex();
+
+      /* speeds just below and just above a speed bucket boundary, capacities just below and just above a capacity bucket boundary */
+      final var belowSpeedBoundary = linkSegmentTypes.getFactory().registerNew("1", 1800.0005, MacroscopicConstants.DEFAULT_MAX_DENSITY_PCU_KM_LANE);
+      typeIndex.register(belowSpeedBoundary, 1800.0005, 49.9999999);
+      final var aboveSpeedBoundary = linkSegmentTypes.getFactory().registerNew("2", 2000.0005, MacroscopicConstants.DEFAULT_MAX_DENSITY_PCU_KM_LANE);
+      typeIndex.register(aboveSpeedBoundary, 2000.0005, 60.0000001);
+      final var belowCapacityBoundary = linkSegmentTypes.getFactory().registerNew("3", 1500.0009999999, MacroscopicConstants.DEFAULT_MAX_DENSITY_PCU_KM_LANE);
+      typeIndex.register(belowCapacityBoundary, 1500.0009999999, 30.5);
+      final var aboveCapacityBoundary = linkSegmentTypes.getFactory().registerNew("4", 1700.0010000001, MacroscopicConstants.DEFAULT_MAX_DENSITY_PCU_KM_LANE);
+      typeIndex.register(aboveCapacityBoundary, 1700.0010000001, 30.5);
+      assertEquals(4, typeIndex.getNumberOfKeys());
+      assertEquals(4, typeIndex.getNumberOfProbes());
+      assertEquals(0, typeIndex.getNumberOfCollisions());
+
+      /* each lookup lies in the bucket adjacent to the registered type, so both buckets are probed */
+      assertSame(belowSpeedBoundary, typeIndex.findFirstCompatible(1800.0005, 50.0000001,
+          type -> Precision.equal(type.getExplicitCapacityPerLane(), 1800.0005)));
+      assertSame(aboveSpeedBoundary, typeIndex.findFirstCompatible(2000.0005, 59.9999999,
+          type -> Precision.equal(type.getExplicitCapacityPerLane(), 2000.0005)));
+      assertSame(belowCapacityBoundary, typeIndex.findFirstCompatible(1500.0010000001, 30.5,
+          type -> Precision.equal(type.getExplicitCapacityPerLane(), 1500.0010000001)));
+      assertSame(aboveCapacityBoundary, typeIndex.findFirstCompatible(1700.0009999999, 30.5,
+          type -> Precision.equal(type.getExplicitCapacityPerLane(), 1700.0009999999)));
+      assertEquals(4 + 4 * 2, typeIndex.getNumberOfProbes());
+      assertEquals(0, typeIndex.getNumberOfCollisions());
+
+      /* away from any boundary only a single bucket is probed, an incompatible candidate is not returned */
+      assertNull(typeIndex.findFirstCompatible(1800.0005, 49.5, type -> false));
+      assertEquals(4 + 4 * 2 + 1, typeIndex.getNumberOfProbes());
+      assertEquals(4, linkSegmentTypes.size());
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which detects the link row columns from the canonical TNTP header variants
+   */
+  @Test
+  public void testTntpNetworkFileColumnDetection() {
+    try {
+      var columns = TntpNetworkFileSchema.detectColumns(
+          "~ \tinit_node\tterm_node\tcapacity\tlength\tfree_flow_time\tb\tpower\tspeed\ttoll\tlink_type\t;");
+      assertEquals(0, columns.get(NetworkFileColumnType.UPSTREAM_NODE_ID));
+      assertEquals(1, columns.get(NetworkFileColumnType.DOWNSTREAM_NODE_ID));
+      assertEquals(2, columns.get(NetworkFileColumnType.CAPACITY_PER_LANE));
+      assertEquals(3, columns.get(NetworkFileColumnType.LENGTH));
+      assertEquals(4, columns.get(NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME));
+      assertEquals(5, columns.get(NetworkFileColumnType.B));
+      assertEquals(6, columns.get(NetworkFileColumnType.POWER));
+      assertEquals(7, columns.get(NetworkFileColumnType.MAXIMUM_SPEED));
+      assertEquals(8, columns.get(NetworkFileColumnType.TOLL));
+      assertEquals(9, columns.get(NetworkFileColumnType.LINK_TYPE));
+
+      columns = TntpNetworkFileSchema.detectColumns("~ Tail Head Capacity (veh/h) Length (ft) FreeFlowTime (min) B Power Speed (ft/min) Toll Type ;");
+      assertEquals(0, columns.get(NetworkFileColumnType.UPSTREAM_NODE_ID));
+      assertEquals(1, columns.get(NetworkFileColumnType.DOWNSTREAM_NODE_ID));
+      assertEquals(4, columns.get(NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME));
+      assertEquals(9, columns.get(NetworkFileColumnType.LINK_TYPE));
+
+      columns = TntpNetworkFileSchema.detectColumns("~\tfrom\tto\tcapacity\tlength\tftime\tB\tpower\t;");
+      assertEquals(0, columns.get(NetworkFileColumnType.UPSTREAM_NODE_ID));
+      assertEquals(1, columns.get(NetworkFileColumnType.DOWNSTREAM_NODE_ID));
+      assertEquals(4, columns.get(NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME));
+      assertEquals(6, columns.get(NetworkFileColumnType.POWER));
+
+      columns = TntpNetworkFileSchema.detectColumns("~ tail_node head_node capacity length fftt b power");
+      assertEquals(0, columns.get(NetworkFileColumnType.UPSTREAM_NODE_ID));
+      assertEquals(1, columns.get(NetworkFileColumnType.DOWNSTREAM_NODE_ID));
+
+      columns = TntpNetworkFileSchema.detectColumns("~\tfrom_node\tto_node\tcapacity\tlength\tfree flow time\tb\tpower");
+      assertEquals(4, columns.get(NetworkFileColumnType.FREE_FLOW_TRAVEL_TIME));
+      assertEquals(6, columns.get(NetworkFileColumnType.POWER));
+
+      /* multi-word label in whitespace separated header would shift all subsequent columns, so it is rejected */
+      try {
+        TntpNetworkFileSchema.detectColumns("~ from to capacity length free flow time b power");
+        fail("Column detection should fail on an unknown label in a whitespace separated header");
+      } catch (final PlanItException e) {
+        assertTrue(e.getMessage().contains("'free'"));
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which detects the link row columns from a header with non-standard labels for the capacity and link type columns, these
+   * are required to create the link data so detection should fail, listing both of them
+   */
+  @Test
+  public void testTntpNetworkFileColumnDetectionNonStandardLabels() {
+    final Path NON_STANDARD_HEADER_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","nonstandardheader");
+    try {
+      final String headerLine = "~\tinit_node\tterm_node\tcap\tlength\tfree_flow_time\tb\tpower\tspeed\ttoll\tclass\t;";
+      try {
+        TntpNetworkFileSchema.detectColumns(headerLine, EnumSet.of(NetworkFileColumnType.UPSTREAM_NODE_ID,
+            NetworkFileColumnType.DOWNSTREAM_NODE_ID, NetworkFileColumnType.CAPACITY_PER_LANE, NetworkFileColumnType.LINK_TYPE));
+        fail("Column detection should fail when required columns carry non-standard labels");
+      } catch (final PlanItException e) {
+        assertTrue(e.getMessage().contains(NetworkFileColumnType.CAPACITY_PER_LANE.toString()));
+        assertTrue(e.getMessage().contains(NetworkFileColumnType.LINK_TYPE.toString()));
+      }
+
+      /* network reader rejects the same header rather than reading the absent columns as zero */
+      final Path networkFile = Files.createDirectories(NON_STANDARD_HEADER_DIR).resolve("ChicagoSketch_net_non_standard_header.tntp");
+      Files.writeString(networkFile, Files.readString(CHICAGO_NETWORK_FILE).replace("capacity (veh/h)", "cap (veh/h)"));
+
+      var idToken = IdGenerator.createIdGroupingToken("testTntpNetworkFileColumnDetectionNonStandardLabels");
+      TntpNetworkReader tntpReader = createChicagoTntpNetworkReader(networkFile, CHICAGO_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
+      tntpReader.getSettings().setNetworkFileColumns(null);
+      try {
+        tntpReader.read();
+        fail("Reading a network file lacking a required column should fail");
+      } catch (final PlanItRunTimeException e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && !(cause instanceof PlanItException)) {
+          cause = cause.getCause();
+        }
+        assertTrue(cause.getMessage().contains(NetworkFileColumnType.CAPACITY_PER_LANE.toString()));
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which parses the TNTP Chicago network twice with the snapshot cache enabled, the first run writes the snapshot, the second
+   * run loads it, both should yield the same result
+   */
+  @Test
+  public void testTntp2PlanitNetworkChicagoSnapshotCache() {
+
+    final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","chicago");
+    final Path PLANIT_REF_DIR = Path.of(RESOURCE_PATH.toString(),"planit","chicago");
+    final Path SNAPSHOT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","snapshot");
+    try {
+      deleteDirectory(SNAPSHOT_DIR);
+      for(int run = 0; run < 2; ++run) {
+        IdGenerator.reset();
+
+        /* TNTP reader */
+        var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitNetworkChicagoSnapshotCache");
+        TntpNetworkReader tntpReader = createChicagoTntpNetworkReader(CHICAGO_NETWORK_FILE, CHICAGO_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken );
+        tntpReader.getSettings().setSnapshotCacheDirectory(SNAPSHOT_DIR.toAbsolutePath().toString());
+
+        /* PLANit writer */
+        PlanitNetworkWriter planitWriter = PlanitNetworkWriterFactory.create(
+            PLANIT_OUTPUT_DIR.toAbsolutePath().toString(), CountryNames.UNITED_STATES_OF_AMERICA);
+
+        /* convert */
+        NetworkConverter theConverter = NetworkConverterFactory.create(tntpReader, planitWriter);
+        theConverter.convert();
+        if (run == 0) {
+          assertTrue(containsFile(SNAPSHOT_DIR, ".tntpsnap"));
+        }
+
+        PlanitAssertionUtils.assertNetworkFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+      }
+
+      /* a snapshot hit restores the metadata of the network file, identical to the metadata of a parse */
+      IdGenerator.reset();
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitNetworkChicagoSnapshotCache");
+      TntpNetworkReader parsingReader = createChicagoTntpNetworkReader(CHICAGO_NETWORK_FILE, CHICAGO_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken );
+      parsingReader.read();
+      final TntpMetadata parsedMetadata = parsingReader.getNetworkMetadata();
+
+      IdGenerator.reset();
+      idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitNetworkChicagoSnapshotCache");
+      TntpNetworkReader tntpReader = createChicagoTntpNetworkReader(CHICAGO_NETWORK_FILE, CHICAGO_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken );
+      tntpReader.getSettings().setSnapshotCacheDirectory(SNAPSHOT_DIR.toAbsolutePath().toString());
+      tntpReader.read();
+      final TntpMetadata replayedMetadata = tntpReader.getNetworkMetadata();
+      assertTrue(replayedMetadata.isComplete());
+      assertEquals(parsedMetadata.isComplete(), replayedMetadata.isComplete());
+      assertEquals(parsedMetadata.getEntries(), replayedMetadata.getEntries());
+      assertEquals(parsedMetadata.getNumberOfNodes(), replayedMetadata.getNumberOfNodes());
+      assertEquals(parsedMetadata.getNumberOfLinks(), replayedMetadata.getNumberOfLinks());
+      assertEquals(TntpMetadata.read(TntpInputSource.of(CHICAGO_NETWORK_FILE)).getEntries(), replayedMetadata.getEntries());
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which parses the TNTP Chicago network using the memory mapped and parallel parsing modes, result should be identical to the
+   * Scanner based parsing
+   */
+  @Test
+  public void testTntp2PlanitNetworkChicagoParsingModes() {
+    
+    final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","chicago");
+    final Path PLANIT_REF_DIR = Path.of(RESOURCE_PATH.toString(),"planit","chicago");
+    try {
+      for(var parsingMode : List.of(ParsingMode.MEMORY_MAPPED, ParsingMode.PARALLEL)) {
+        IdGenerator.reset();
+            
+        /* TNTP reader */
+        var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitNetworkChicagoParsingModes");
+        TntpNetworkReader tntpReader = createChicagoTntpNetworkReader(CHICAGO_NETWORK_FILE, CHICAGO_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken );
+        tntpReader.getSettings().setParsingMode(parsingMode);
+        
+        /* PLANit writer */
+        PlanitNetworkWriter planitWriter = PlanitNetworkWriterFactory.create(
+            PLANIT_OUTPUT_DIR.toAbsolutePath().toString(), CountryNames.UNITED_STATES_OF_AMERICA);
+        
+        /* convert */
+        NetworkConverter theConverter = NetworkConverterFactory.create(tntpReader, planitWriter);
+        theConverter.convert();
+  
+        PlanitAssertionUtils.assertNetworkFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }    
+  }
+   
+  /**
+   * Test case which parses the TNTP Philadelphia network in parallel, its link rows (2 MB) are split into several chunks so the chunks are
+   * merged in file order, result should be identical to the Scanner based parsing. A row with an invalid value near the end of the file
+   * should be reported with the same (absolute) row number in all parsing modes
+   */
+  @Test
+  public void testTntp2PlanitNetworkPhiladelphiaParsingModes() {
+    
+    final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","philadelphia");
+    final Path INVALID_ROW_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","invalidrow");
+    try {
+      for(var parsingMode : List.of(ParsingMode.SCANNER, ParsingMode.PARALLEL)) {
+        IdGenerator.reset();
+            
+        var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitNetworkPhiladelphiaParsingModes");
+        TntpNetworkReader tntpReader = createChicagoTntpNetworkReader(
+            PHILADELPHIA_NETWORK_FILE, PHILADELPHIA_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
+        tntpReader.getSettings().setParsingMode(parsingMode);
+        
+        final Path outputDir = Files.createDirectories(PLANIT_OUTPUT_DIR.resolve(parsingMode.toString().toLowerCase()));
+        PlanitNetworkWriter planitWriter = PlanitNetworkWriterFactory.create(
+            outputDir.toAbsolutePath().toString(), CountryNames.UNITED_STATES_OF_AMERICA);
+        NetworkConverterFactory.create(tntpReader, planitWriter).convert();
+      }
+      PlanitAssertionUtils.assertNetworkFilesSimilar(PLANIT_OUTPUT_DIR.resolve("parallel"), PLANIT_OUTPUT_DIR.resolve("scanner"));
+
+      /* invalid capacity in link row 39000 of 40003, i.e., in the last chunk */
+      final List<String> lines = Files.readAllLines(PHILADELPHIA_NETWORK_FILE);
+      int headerIndex = 0;
+      while (!lines.get(headerIndex).startsWith("~")) {
+        ++headerIndex;
+      }
+      lines.set(headerIndex + 39000, "\t1\t2\tx\t0.1\t0.1\t0.15\t4\t0\t0\t1\t;");
+      final Path networkFile = Files.createDirectories(INVALID_ROW_DIR).resolve("Philadelphia_net_invalid_row.tntp");
+      Files.write(networkFile, lines);
+
+      for(var parsingMode : List.of(ParsingMode.SCANNER, ParsingMode.MEMORY_MAPPED, ParsingMode.PARALLEL)) {
+        var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitNetworkPhiladelphiaParsingModesInvalidRow");
+        TntpNetworkReader tntpReader = createChicagoTntpNetworkReader(networkFile, PHILADELPHIA_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
+        tntpReader.getSettings().setParsingMode(parsingMode);
+        try {
+          tntpReader.read();
+          fail("Reading a network file with an invalid value should fail");
+        } catch (final PlanItRunTimeException e) {
+          Throwable cause = e;
+          while (cause.getCause() != null && !(cause instanceof PlanItException)) {
+            cause = cause.getCause();
+          }
+          assertEquals("Invalid value in TNTP link row 39000", cause.getMessage(), parsingMode.toString());
+        }
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }    
+  }
+
+  /**
+   * Test case which parses the TNTP Philadelphia node file (230 KB) in parallel chunks, with a second occurrence of node 1 appended to the
+   * file, i.e., in another chunk than its first occurrence. Like the Scanner based parsing the last occurrence should be retained, and all
+   * other node positions should be identical
+   */
+  @Test
+  public void testTntpNodeCoordinatesPhiladelphiaParsingModes() {
+    final Path DUPLICATE_NODE_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","duplicatenode");
+    try {
+      final Path nodeFile = Files.createDirectories(DUPLICATE_NODE_DIR).resolve("Philadelphia_node_duplicate_node.tntp");
+      Files.copy(PHILADELPHIA_NODE_FILE, nodeFile, StandardCopyOption.REPLACE_EXISTING);
+      Files.writeString(nodeFile, String.join("\n", "", "1\t12345\t67890\t;", ""), StandardOpenOption.APPEND);
+
+      final Map<ParsingMode, TntpNetworkReader> tntpReaders = new HashMap<>();
+      for(var parsingMode : List.of(ParsingMode.SCANNER, ParsingMode.PARALLEL)) {
+        var idToken = IdGenerator.createIdGroupingToken("testTntpNodeCoordinatesPhiladelphiaParsingModes");
+        TntpNetworkReader tntpReader = createChicagoTntpNetworkReader(PHILADELPHIA_NETWORK_FILE, nodeFile, DEFAULT_MAXIMUM_SPEED, idToken);
+        tntpReader.getSettings().setParsingMode(parsingMode);
+        tntpReader.read();
+        tntpReaders.put(parsingMode, tntpReader);
+      }
+
+      final var scannerNodes = tntpReaders.get(ParsingMode.SCANNER).getNodesByTntpId();
+      final var parallelNodes = tntpReaders.get(ParsingMode.PARALLEL).getNodesByTntpId();
+      assertEquals(scannerNodes.size(), parallelNodes.size());
+      assertEquals(12345, parallelNodes.get(1).getPosition().getX(), Precision.EPSILON_6);
+      assertEquals(67890, parallelNodes.get(1).getPosition().getY(), Precision.EPSILON_6);
+      for (long nodeId = 1; nodeId <= scannerNodes.getMaxId(); ++nodeId) {
+        if (scannerNodes.get(nodeId) != null) {
+          assertTrue(scannerNodes.get(nodeId).getPosition().equalsExact(parallelNodes.get(nodeId).getPosition()));
+        }
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
   /**
    * Test case which parses the TNTP Chicago network, zoning and trips files, loads it into PLANit memory model and persists it as a PLANit network
    */
@@ -235,105 +760,1128 @@ public class TntpConversionTests {
   }  
   
   /**
-   * Test case which parses the TNTP Chicago network, zoning and trips files, loads it into PLANit memory model and persists it as a PLANit network
+   * Test case which verifies the metadata parsed by the network reader is shared with the zoning reader, and equals the metadata read
+   * from the header only
    */
   @Test
-  public void testTntp2PlanitDemandsChicago() {
+  public void testTntpMetadataChicago() {
+    try {
+      var idToken = IdGenerator.createIdGroupingToken("testTntpMetadataChicago");
+      TntpNetworkReader tntpNetworkReader = createChicagoTntpNetworkReader(CHICAGO_NETWORK_FILE, CHICAGO_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
+      TntpZoningReader tntpZoningReader = TntpZoningReaderFactory.create(tntpNetworkReader);
+      tntpZoningReader.getSettings().setNetworkFileLocation(CHICAGO_NETWORK_FILE.toAbsolutePath().toString());
+      var zoning = tntpZoningReader.read();
+
+      final TntpMetadata networkMetadata = tntpNetworkReader.getNetworkMetadata();
+      assertTrue(networkMetadata.isComplete());
+      assertEquals(387, networkMetadata.getNumberOfZones());
+      assertEquals(933, networkMetadata.getNumberOfNodes());
+      assertEquals(1, networkMetadata.getFirstThruNode());
+      assertEquals(2950, networkMetadata.getNumberOfLinks());
+      assertEquals(networkMetadata.getNumberOfZones(), zoning.getOdZones().size());
+      assertSame(networkMetadata, TntpMetadata.of(TntpInputSource.of(CHICAGO_NETWORK_FILE)));
+      assertEquals(networkMetadata.getEntries(), TntpMetadata.read(TntpInputSource.of(CHICAGO_NETWORK_FILE)).getEntries());
+
+      final TntpMetadata demandsMetadata = TntpMetadata.of(TntpInputSource.of(CHICAGO_DEMAND_FILE));
+      assertEquals(387, demandsMetadata.getNumberOfZones());
+      assertEquals(1260907.44, demandsMetadata.getTotalOdFlow(), 1e-2);
+
+      /* cache is bounded, the least recently used file is evicted once more files are cached */
+      final Path metadataDir = Files.createDirectories(Path.of(RESOURCE_PATH.toString(),"testcases","metadatacache"));
+      for (int fileIndex = 0; fileIndex < TntpMetadata.MAX_CACHED_FILES; ++fileIndex) {
+        final Path file = Files.writeString(metadataDir.resolve("metadata_" + fileIndex + ".tntp"), 
+            String.format("<NUMBER OF ZONES> %d%n<END OF METADATA>%n", fileIndex + 1));
+        assertEquals(fileIndex + 1, TntpMetadata.of(TntpInputSource.of(file)).getNumberOfZones());
+      }
+      assertNotSame(networkMetadata, TntpMetadata.of(TntpInputSource.of(CHICAGO_NETWORK_FILE)));
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which reads the TNTP Chicago network and zoning with lean ids, nodes, zones and connectoids share their numeric id Strings
+   * while the persisted network, zoning and demands are unaffected
+   */
+  @Test
+  public void testTntpIdModesChicago() {
 
     final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","chicago");
     final Path PLANIT_REF_DIR = Path.of(RESOURCE_PATH.toString(),"planit","chicago");
 
     try {
-      
-      /* TNTP network.zoning reader */
-      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicago");
-      TntpNetworkReader tntpNetworkReader = createChicagoTntpNetworkReader(
-          CHICAGO_NETWORK_FILE, CHICAGO_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
-      
+      var idToken = IdGenerator.createIdGroupingToken("testTntpIdModesChicago");
+      TntpNetworkReader tntpNetworkReader = createChicagoTntpNetworkReader(CHICAGO_NETWORK_FILE, CHICAGO_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
+      tntpNetworkReader.getSettings().setIdMode(IdMode.LEAN);
+
       TntpZoningReader tntpZoningReader = TntpZoningReaderFactory.create(tntpNetworkReader);
       tntpZoningReader.getSettings().setNetworkFileLocation(CHICAGO_NETWORK_FILE.toAbsolutePath().toString());
+      tntpZoningReader.getSettings().setIdMode(IdMode.LEAN);
 
-      /* TNTP DEMAND reader */
       TntpDemandsReader tntpDemandsReader = TntpDemandsReaderFactory.create(tntpZoningReader);
       tntpDemandsReader.getSettings().setDemandFileLocation(CHICAGO_DEMAND_FILE.toAbsolutePath().toString());
       tntpDemandsReader.getSettings().setStartTimeSinceMidnight(8, TimeUnits.HOURS);
-      tntpDemandsReader.getSettings().setTimePeriodDuration(1, TimeUnits.HOURS);     
-      
-      /* PLANit DEMAND writer */
+      tntpDemandsReader.getSettings().setTimePeriodDuration(1, TimeUnits.HOURS);
+
       PlanitDemandsWriter planitWriter = PlanitDemandsWriterFactory.create();
       planitWriter.getSettings().setOutputDirectory(PLANIT_OUTPUT_DIR.toAbsolutePath().toString());
-      
-      /* convert */
-      DemandsConverter theConverter = DemandsConverterFactory.create(tntpDemandsReader, planitWriter);
-      theConverter.convert();
+      DemandsConverterFactory.create(tntpDemandsReader, planitWriter).convert();
 
       PlanitAssertionUtils.assertDemandsFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
 
-      PlanitNetworkWriter networkWriter =
-          PlanitNetworkWriterFactory.create(PLANIT_OUTPUT_DIR.toAbsolutePath().toString());
+      /* ids are unaffected by the id mode, so the persisted network and zoning are too */
+      PlanitNetworkWriter networkWriter = PlanitNetworkWriterFactory.create(PLANIT_OUTPUT_DIR.toAbsolutePath().toString());
       networkWriter.write(tntpDemandsReader.getReferenceNetwork());
       PlanitAssertionUtils.assertNetworkFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
-      PlanitZoningWriter zoningWriter =
-          PlanitZoningWriterFactory.create(
-              PLANIT_OUTPUT_DIR.toAbsolutePath().toString(),
-              CountryNames.UNITED_STATES_OF_AMERICA);
+      PlanitZoningWriter zoningWriter = PlanitZoningWriterFactory.create(
+          PLANIT_OUTPUT_DIR.toAbsolutePath().toString(), CountryNames.UNITED_STATES_OF_AMERICA);
       zoningWriter.write(tntpDemandsReader.getReferenceZoning());
       PlanitAssertionUtils.assertZoningFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
 
+      for (long zoneTntpId = 1; zoneTntpId <= 387; ++zoneTntpId) {
+        assertSame(tntpNetworkReader.getNodesByTntpId().get(zoneTntpId).getExternalId(), 
+            tntpZoningReader.getZonesByTntpId().get(zoneTntpId).getExternalId());
+      }
+      tntpDemandsReader.getReferenceZoning().getOdConnectoids().forEach( 
+          connectoid -> assertSame(tntpZoningReader.getZonesByTntpId().get(Long.parseLong(connectoid.getExternalId())).getExternalId(), 
+              connectoid.getExternalId()));
+      tntpDemandsReader.getReferenceNetwork().getTransportLayers().forEach( layer -> layer.getLinkSegments().forEach( 
+          linkSegment -> assertEquals(linkSegment.getParentLink().getExternalId() + (linkSegment.isDirectionAb() ? "-AB" : "-BA"), 
+              linkSegment.getXmlId())));
+      assertTrue(tntpNetworkReader.getIdStrings().getSavedBytes() > 0);
+
     } catch (final Exception e) {
       e.printStackTrace();
       LOGGER.severe( e.getMessage());
       fail(e.getMessage());
-    }    
-  }  
+    }
+  }
   
   /**
-   * Test case which parses the TNTP SiouxFalls network, zoning and trips files, loads it into PLANit memory model and persists it as a PLANit network, demand, and zoning
+   * Test case which parses the TNTP Chicago network, zoning and trips files, loads it into PLANit memory model and persists it as a PLANit network
    */
   @Test
-  public void testTntp2PlanitSiouxFalls() {
+  public void testTntp2PlanitDemandsChicago() {
 
-    final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","siouxfalls");
-    final Path PLANIT_REF_DIR = Path.of(RESOURCE_PATH.toString(),"planit","siouxfalls");
-    try {      
-      /* TNTP network reader */
-      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsSiouxFalls");
-      var tntpNetworkReader =
-          createSiouxFallsTntpNetworkReader(SIOUXFALLS_NETWORK_FILE, SIOUXFALLS_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
-      tntpNetworkReader.getSettings().setCapacityPeriod(8 /* about 8 hours */, TimeUnits.HOURS);
-      var planitNetwork = (MacroscopicNetwork) tntpNetworkReader.read();
-      /* PLANit network writer */
-      var planitNetworkWriter = PlanitNetworkWriterFactory.create(PLANIT_OUTPUT_DIR.toAbsolutePath().toString(), CountryNames.UNITED_STATES_OF_AMERICA);
-      planitNetworkWriter.write(planitNetwork);      
-      
-      /* TNTP zoning reader */
-      var tntpZoningReader = TntpZoningReaderFactory.create(SIOUXFALLS_NETWORK_FILE.toAbsolutePath().toString(), planitNetwork, idToken);
-      var zoning = tntpZoningReader.read();
-      /* PLANit ZONING writer */
-      var planitZoningWriter = PlanitZoningWriterFactory.create(
-          PLANIT_OUTPUT_DIR.toAbsolutePath().toString(), CountryNames.UNITED_STATES_OF_AMERICA);
-      planitZoningWriter.write(zoning);      
+    final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","chicago");
+    final Path PLANIT_REF_DIR = Path.of(RESOURCE_PATH.toString(),"planit","chicago");
+
+    try {
       
-      /* TNTP DEMAND reader */
-      var tntpDemandsReader = TntpDemandsReaderFactory.create(SIOUXFALLS_DEMAND_FILE.toAbsolutePath().toString(), planitNetwork, zoning, idToken);
+      /* TNTP network, zoning and DEMAND reader */
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicago");
+      TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(CHICAGO_DEMAND_FILE, idToken);
       tntpDemandsReader.getSettings().setStartTimeSinceMidnight(8, TimeUnits.HOURS);
-      tntpDemandsReader.getSettings().setTimePeriodDuration(12*0.1 /* 10% of daily flow/capacity as per github readme*/, TimeUnits.HOURS);           
+      
       /* PLANit DEMAND writer */
-      var planitWriter = PlanitDemandsWriterFactory.create(PLANIT_OUTPUT_DIR.toAbsolutePath().toString(), zoning);
+      PlanitDemandsWriter planitWriter = PlanitDemandsWriterFactory.create();
+      planitWriter.getSettings().setOutputDirectory(PLANIT_OUTPUT_DIR.toAbsolutePath().toString());
       
       /* convert */
-      var theConverter = DemandsConverterFactory.create(tntpDemandsReader, planitWriter);
+      DemandsConverter theConverter = DemandsConverterFactory.create(tntpDemandsReader, planitWriter);
       theConverter.convert();
 
+      PlanitAssertionUtils.assertDemandsFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+
+      PlanitNetworkWriter networkWriter =
+          PlanitNetworkWriterFactory.create(PLANIT_OUTPUT_DIR.toAbsolutePath().toString());
+      networkWriter.write(tntpDemandsReader.getReferenceNetwork());
       PlanitAssertionUtils.assertNetworkFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+      PlanitZoningWriter zoningWriter =
+          PlanitZoningWriterFactory.create(
+              PLANIT_OUTPUT_DIR.toAbsolutePath().toString(),
+              CountryNames.UNITED_STATES_OF_AMERICA);
+      zoningWriter.write(tntpDemandsReader.getReferenceZoning());
       PlanitAssertionUtils.assertZoningFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
-      PlanitAssertionUtils.assertDemandsFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
 
     } catch (final Exception e) {
       e.printStackTrace();
       LOGGER.severe( e.getMessage());
       fail(e.getMessage());
     }    
-  }    
+  }  
   
-}
\ No newline at end of file
+  /**
+   * Test case which parses the TNTP Chicago trips file using the memory mapped and parallel parsing modes, result should be identical to
+   * the Scanner based parsing
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoParsingModes() {
+
+    final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","chicago");
+    final Path PLANIT_REF_DIR = Path.of(RESOURCE_PATH.toString(),"planit","chicago");
+
+    try {
+      for(var parsingMode : List.of(ParsingMode.MEMORY_MAPPED, ParsingMode.PARALLEL)) {
+        IdGenerator.reset();
+
+        var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoParsingModes");
+        TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(CHICAGO_DEMAND_FILE, idToken);
+        tntpDemandsReader.getSettings().setStartTimeSinceMidnight(8, TimeUnits.HOURS);
+        tntpDemandsReader.getSettings().setParsingMode(parsingMode);
+
+        PlanitDemandsWriter planitWriter = PlanitDemandsWriterFactory.create();
+        planitWriter.getSettings().setOutputDirectory(PLANIT_OUTPUT_DIR.toAbsolutePath().toString());
+
+        DemandsConverter theConverter = DemandsConverterFactory.create(tntpDemandsReader, planitWriter);
+        theConverter.convert();
+
+        PlanitAssertionUtils.assertDemandsFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which prefetches the TNTP Chicago node and trips files in the background before reading the network and demands, the result
+   * should be identical to parsing them while reading
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoPrefetch() {
+
+    final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","chicago");
+    final Path PLANIT_REF_DIR = Path.of(RESOURCE_PATH.toString(),"planit","chicago");
+
+    try {
+      final var prefetchedNodeCoordinates = CompletableFuture.supplyAsync( () -> {
+        try {
+          return TntpNodeCoordinates.parse(TntpInputSource.of(CHICAGO_NODE_FILE), 933);
+        } catch (final Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+      final var prefetchedTrips = CompletableFuture.supplyAsync( () -> {
+        try {
+          return TntpPrefetchedTrips.parse(TntpInputSource.of(CHICAGO_DEMAND_FILE));
+        } catch (final Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+
+      /* network with prefetched node coordinates */
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoPrefetch");
+      TntpNetworkReader tntpNetworkReader = createChicagoTntpNetworkReader(
+          CHICAGO_NETWORK_FILE, CHICAGO_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
+      tntpNetworkReader.setPrefetchedNodeCoordinates(prefetchedNodeCoordinates);
+
+      PlanitNetworkWriter planitNetworkWriter = PlanitNetworkWriterFactory.create(
+          PLANIT_OUTPUT_DIR.toAbsolutePath().toString(), CountryNames.UNITED_STATES_OF_AMERICA);
+      NetworkConverterFactory.create(tntpNetworkReader, planitNetworkWriter).convert();
+
+      PlanitAssertionUtils.assertNetworkFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+
+      /* demands with prefetched trips */
+      IdGenerator.reset();
+      idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoPrefetch");
+      TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(CHICAGO_DEMAND_FILE, idToken);
+      tntpDemandsReader.getSettings().setStartTimeSinceMidnight(8, TimeUnits.HOURS);
+      tntpDemandsReader.setPrefetchedTrips(prefetchedTrips);
+
+      PlanitDemandsWriter planitWriter = PlanitDemandsWriterFactory.create();
+      planitWriter.getSettings().setOutputDirectory(PLANIT_OUTPUT_DIR.toAbsolutePath().toString());
+
+      DemandsConverter theConverter = DemandsConverterFactory.create(tntpDemandsReader, planitWriter);
+      theConverter.convert();
+
+      PlanitAssertionUtils.assertDemandsFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which parses the TNTP Chicago trips file twice with the demand cache enabled, the first run writes the cache, the second
+   * run loads it, both should yield the same result
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoDemandCache() {
+
+    final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","chicago");
+    final Path PLANIT_REF_DIR = Path.of(RESOURCE_PATH.toString(),"planit","chicago");
+    final Path DEMAND_CACHE_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","demandcache");
+
+    try {
+      deleteDirectory(DEMAND_CACHE_DIR);
+      for(int run = 0; run < 2; ++run) {
+        IdGenerator.reset();
+
+        var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoDemandCache");
+        TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(CHICAGO_DEMAND_FILE, idToken);
+        tntpDemandsReader.getSettings().setStartTimeSinceMidnight(8, TimeUnits.HOURS);
+        tntpDemandsReader.getSettings().setDemandCacheDirectory(DEMAND_CACHE_DIR.toAbsolutePath().toString());
+
+        PlanitDemandsWriter planitWriter = PlanitDemandsWriterFactory.create();
+        planitWriter.getSettings().setOutputDirectory(PLANIT_OUTPUT_DIR.toAbsolutePath().toString());
+
+        DemandsConverter theConverter = DemandsConverterFactory.create(tntpDemandsReader, planitWriter);
+        theConverter.convert();
+        if (run == 0) {
+          assertTrue(containsFile(DEMAND_CACHE_DIR, ".tntpdemands"));
+        }
+
+        PlanitAssertionUtils.assertDemandsFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which parses the TNTP Chicago trips file into the sparse OD demand representation and verifies each non-zero cell
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoSparse() {
+    try {
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoSparse");
+      TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(CHICAGO_DEMAND_FILE, idToken);
+      tntpDemandsReader.getSettings().setParsingMode(ParsingMode.PARALLEL);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+      tntpDemandsReader.readSparseOdDemands();
+
+      final TntpSparseOdDemands sparseOdDemands = tntpDemandsReader.getSparseOdDemands();
+      final long numNonZeros = assertSparseOdDemandsMatchTripsFile(CHICAGO_DEMAND_FILE, sparseOdDemands, origin -> true, 1.0);
+      assertEquals(numNonZeros, sparseOdDemands.getNumberOfNonZeros());
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which converts the TNTP Chicago trips file with the sparse and automatic OD demand representations. The converter consumes
+   * the PLANit demands, so sparse is rejected rather than writing demands without OD demands, while automatic registers the dense OD
+   * matrix even though the density is below the sparse density threshold
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoSparseConverter() {
+
+    final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","chicago");
+    final Path PLANIT_REF_DIR = Path.of(RESOURCE_PATH.toString(),"planit","chicago");
+
+    try {
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoSparseConverter");
+      TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(CHICAGO_DEMAND_FILE, idToken);
+      tntpDemandsReader.getSettings().setStartTimeSinceMidnight(8, TimeUnits.HOURS);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+
+      PlanitDemandsWriter planitWriter = PlanitDemandsWriterFactory.create();
+      planitWriter.getSettings().setOutputDirectory(PLANIT_OUTPUT_DIR.toAbsolutePath().toString());
+      try {
+        DemandsConverterFactory.create(tntpDemandsReader, planitWriter).convert();
+        fail("Converting demands in sparse OD demand representation should fail");
+      } catch (final PlanItRunTimeException e) {
+        assertTrue(e.getMessage().contains("sparse"));
+      }
+
+      IdGenerator.reset();
+      idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoSparseConverter");
+      tntpDemandsReader = createChicagoTntpDemandsReader(CHICAGO_DEMAND_FILE, idToken);
+      tntpDemandsReader.getSettings().setStartTimeSinceMidnight(8, TimeUnits.HOURS);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.AUTOMATIC);
+      tntpDemandsReader.getSettings().setSparseDensityThreshold(1.0);
+
+      planitWriter = PlanitDemandsWriterFactory.create();
+      planitWriter.getSettings().setOutputDirectory(PLANIT_OUTPUT_DIR.toAbsolutePath().toString());
+      DemandsConverterFactory.create(tntpDemandsReader, planitWriter).convert();
+      assertNull(tntpDemandsReader.getSparseOdDemands());
+
+      PlanitAssertionUtils.assertDemandsFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which parses a TNTP Chicago trips file with a second block for origin 1 in parallel, the blocks of that origin populate
+   * the same row so they are parsed sequentially, retaining the last value of a cell
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoDuplicateOrigin() {
+    final Path DUPLICATE_ORIGIN_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","duplicateorigin");
+    try {
+      final Path tripsFile = Files.createDirectories(DUPLICATE_ORIGIN_DIR).resolve("ChicagoSketch_trips_duplicate_origin.tntp");
+      Files.copy(CHICAGO_DEMAND_FILE, tripsFile, StandardCopyOption.REPLACE_EXISTING);
+      Files.writeString(tripsFile, String.join("\n", "", "Origin 1", "    2 :   10.0;", ""), StandardOpenOption.APPEND);
+
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoDuplicateOrigin");
+      TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(tripsFile, idToken);
+      tntpDemandsReader.getSettings().setParsingMode(ParsingMode.PARALLEL);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+      tntpDemandsReader.readSparseOdDemands();
+
+      final TntpSparseOdDemands sparseOdDemands = tntpDemandsReader.getSparseOdDemands();
+      assertSparseOdDemandsMatchTripsFile(tripsFile, sparseOdDemands, origin -> true, 1.0);
+      assertEquals(10.0, sparseOdDemands.getValue(1, 2), 1e-9);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which parses a TNTP Chicago trips file in which a non-zero cell is repeated with a zero value, the last value is retained so
+   * the sparse OD demands equal the dense OD demands
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoDuplicateZeroCell() {
+    final Path DUPLICATE_ORIGIN_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","duplicateorigin");
+    try {
+      final Path tripsFile = Files.createDirectories(DUPLICATE_ORIGIN_DIR).resolve("ChicagoSketch_trips_duplicate_zero_cell.tntp");
+      Files.copy(CHICAGO_DEMAND_FILE, tripsFile, StandardCopyOption.REPLACE_EXISTING);
+      Files.writeString(tripsFile, String.join("\n", "", "Origin 1", "    2 :    0.0;", ""), StandardOpenOption.APPEND);
+
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoDuplicateZeroCell");
+      TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(tripsFile, idToken);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+      tntpDemandsReader.readSparseOdDemands();
+
+      final TntpSparseOdDemands sparseOdDemands = tntpDemandsReader.getSparseOdDemands();
+      final long numNonZeros = assertSparseOdDemandsMatchTripsFile(tripsFile, sparseOdDemands, origin -> true, 1.0);
+      assertEquals(0.0, sparseOdDemands.getValue(1, 2), 1e-9);
+      assertEquals(numNonZeros, sparseOdDemands.getNumberOfNonZeros());
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which applies a delta trips file, replacing two origin rows, to the sparse TNTP Chicago OD demands
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoDelta() {
+    final Path DEMAND_DELTA_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","demanddelta");
+    try {
+      final Path deltaFile = Files.createDirectories(DEMAND_DELTA_DIR).resolve("ChicagoSketch_trips_delta.tntp");
+      Files.writeString(deltaFile, String.join("\n",
+          "Origin 1", "    2 :   10.0;    3 :    5.0;",
+          "", "Origin 3", "    1 :    0.0;", ""));
+
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoDelta");
+      TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(CHICAGO_DEMAND_FILE, idToken);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+      tntpDemandsReader.readSparseOdDemands();
+      final double totalTripsPcuH = tntpDemandsReader.getTotalTripsPcuH();
+      final double updatedTotalTripsPcuH = tntpDemandsReader.applyDemandsDelta(deltaFile.toString());
+
+      final TntpSparseOdDemands sparseOdDemands = tntpDemandsReader.getSparseOdDemands();
+      final double[] replacedTripsPcuH = new double[1];
+      TntpStreamReader.streamTripsFile(CHICAGO_DEMAND_FILE, new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          replacedTripsPcuH[0] += originZoneId == 1 || originZoneId == 3 ? value : 0;
+        }
+      });
+      assertSparseOdDemandsMatchTripsFile(CHICAGO_DEMAND_FILE, sparseOdDemands, origin -> origin != 1 && origin != 3, 1.0);
+      assertEquals(10.0, sparseOdDemands.getValue(1, 2), 1e-9);
+      assertEquals(5.0, sparseOdDemands.getValue(1, 3), 1e-9);
+      assertEquals(2, sparseOdDemands.getNumberOfNonZeros(1));
+      assertEquals(0, sparseOdDemands.getNumberOfNonZeros(3));
+      assertEquals(totalTripsPcuH - replacedTripsPcuH[0] + 15.0, updatedTotalTripsPcuH, 1e-6);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which applies a delta trips file to the sparse TNTP Chicago OD demands of a demand file with a non-default pcu, the delta
+   * is converted with the same pcu
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoDeltaPcu() {
+    final Path DEMAND_DELTA_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","demanddelta");
+    final double pcu = 2.0;
+    try {
+      final Path deltaFile = Files.createDirectories(DEMAND_DELTA_DIR).resolve("ChicagoSketch_trips_delta_pcu.tntp");
+      Files.writeString(deltaFile, String.join("\n",
+          "Origin 1", "    2 :   10.0;    3 :    5.0;", ""));
+
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoDeltaPcu");
+      TntpDemandsReader tntpDemandsReader = TntpDemandsReaderFactory.create(createChicagoTntpZoningReader(idToken));
+      tntpDemandsReader.getSettings().addDemandFile("truck", CHICAGO_DEMAND_FILE.toAbsolutePath().toString()).setPcu(pcu);
+      tntpDemandsReader.getSettings().setTimePeriodDuration(1, TimeUnits.HOURS);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+      tntpDemandsReader.readSparseOdDemands();
+      final double totalTripsPcuH = tntpDemandsReader.getTotalTripsPcuH();
+      final double updatedTotalTripsPcuH = tntpDemandsReader.applyDemandsDelta(deltaFile.toString());
+
+      final TntpSparseOdDemands sparseOdDemands = tntpDemandsReader.getSparseOdDemands();
+      final double[] replacedTripsPcuH = new double[1];
+      TntpStreamReader.streamTripsFile(CHICAGO_DEMAND_FILE, new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          replacedTripsPcuH[0] += originZoneId == 1 ? value * pcu : 0;
+        }
+      });
+      assertSparseOdDemandsMatchTripsFile(CHICAGO_DEMAND_FILE, sparseOdDemands, origin -> origin != 1, pcu);
+      assertEquals(10.0 * pcu, sparseOdDemands.getValue(1, 2), 1e-9);
+      assertEquals(5.0 * pcu, sparseOdDemands.getValue(1, 3), 1e-9);
+      assertEquals(2, sparseOdDemands.getNumberOfNonZeros(1));
+      assertEquals(totalTripsPcuH - replacedTripsPcuH[0] + 15.0 * pcu, updatedTotalTripsPcuH, 1e-6);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which drops OD cells below a minimum number of trips from the TNTP Chicago trips file and redistributes them, so the
+   * production of each origin is preserved
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoMinimumOdTrips() {
+    try {
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoMinimumOdTrips");
+      TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(CHICAGO_DEMAND_FILE, idToken);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+      tntpDemandsReader.getSettings().setMinimumOdTrips(1);
+      tntpDemandsReader.getSettings().setRedistributeDroppedTrips(true);
+      tntpDemandsReader.readSparseOdDemands();
+
+      final TntpSparseOdDemands sparseOdDemands = tntpDemandsReader.getSparseOdDemands();
+      final Map<Long, Double> originTrips = new HashMap<>();
+      final long[] numNonZeros = new long[1];
+      TntpStreamReader.streamTripsFile(CHICAGO_DEMAND_FILE, new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          originTrips.merge(originZoneId, value, Double::sum);
+          numNonZeros[0] += value != 0 ? 1 : 0;
+        }
+      });
+      assertTrue(tntpDemandsReader.getDroppedTripsPcuH() > 0);
+      assertTrue(sparseOdDemands.getNumberOfNonZeros() < numNonZeros[0]);
+      double totalTrips = 0;
+      for (final var entry : originTrips.entrySet()) {
+        final double[] reducedOriginTrips = new double[1];
+        sparseOdDemands.forEachNonZero(entry.getKey(), (origin, destination, value) -> reducedOriginTrips[0] += value);
+        assertEquals(entry.getValue(), reducedOriginTrips[0], 1e-6);
+        totalTrips += entry.getValue();
+      }
+      assertEquals(totalTrips, tntpDemandsReader.getTotalTripsPcuH(), 1e-3);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which aggregates the TNTP Chicago zones into fewer zones by centroid clustering and sums the OD demands accordingly
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoZoneAggregation() {
+    final int numberOfAggregatedZones = 100;
+    try {
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoZoneAggregation");
+      TntpZoningReader tntpZoningReader = createChicagoTntpZoningReader(idToken);
+      tntpZoningReader.getSettings().setNumberOfAggregatedZones(numberOfAggregatedZones);
+      TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(tntpZoningReader, CHICAGO_DEMAND_FILE);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+      tntpDemandsReader.readSparseOdDemands();
+
+      final var zoneAggregation = tntpZoningReader.getZoneAggregation();
+      assertEquals(numberOfAggregatedZones, zoneAggregation.getNumberOfSuperZones());
+      assertEquals(numberOfAggregatedZones, tntpDemandsReader.getReferenceZoning().getOdZones().size());
+
+      final TntpSparseOdDemands sparseOdDemands = tntpDemandsReader.getSparseOdDemands();
+      final double[][] expectedOdDemands = new double[numberOfAggregatedZones + 1][numberOfAggregatedZones + 1];
+      TntpStreamReader.streamTripsFile(CHICAGO_DEMAND_FILE, new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          expectedOdDemands[zoneAggregation.getSuperZoneId(originZoneId)][zoneAggregation.getSuperZoneId(destinationZoneId)] += value;
+        }
+      });
+      for (int origin = 1; origin <= numberOfAggregatedZones; ++origin) {
+        for (int destination = 1; destination <= numberOfAggregatedZones; ++destination) {
+          assertEquals(expectedOdDemands[origin][destination], sparseOdDemands.getValue(origin, destination), 1e-6);
+        }
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which aggregates the TNTP Chicago zones into fewer zones based on a mapping file with non-contiguous super zone ids, these
+   * are numbered densely and retained as external id of the aggregated zones
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoZoneAggregationMappingFile() {
+    final Path ZONE_AGGREGATION_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","zoneaggregation");
+    final int numberOfZones = 387;
+    final int zonesPerSuperZone = 10;
+    final int numberOfAggregatedZones = (numberOfZones + zonesPerSuperZone - 1) / zonesPerSuperZone;
+    try {
+      /* super zone ids far beyond the number of zones */
+      final Path mappingFile = Files.createDirectories(ZONE_AGGREGATION_DIR).resolve("ChicagoSketch_zone_aggregation.txt");
+      final StringBuilder mapping = new StringBuilder("~ Chicago zones aggregated per ten consecutive zones\nzone,super_zone\n");
+      for (int zoneId = 1; zoneId <= numberOfZones; ++zoneId) {
+        mapping.append(zoneId).append(',').append(1000001 + (zoneId - 1) / zonesPerSuperZone).append('\n');
+      }
+      Files.writeString(mappingFile, mapping);
+
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoZoneAggregationMappingFile");
+      TntpZoningReader tntpZoningReader = createChicagoTntpZoningReader(idToken);
+      tntpZoningReader.getSettings().setZoneAggregationFileLocation(mappingFile.toAbsolutePath().toString());
+      TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(tntpZoningReader, CHICAGO_DEMAND_FILE);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+      tntpDemandsReader.readSparseOdDemands();
+
+      final var zoneAggregation = tntpZoningReader.getZoneAggregation();
+      assertEquals(numberOfZones, zoneAggregation.getNumberOfZones());
+      assertEquals(numberOfAggregatedZones, zoneAggregation.getNumberOfSuperZones());
+      assertEquals(1, zoneAggregation.getSuperZoneId(1));
+      assertEquals(numberOfAggregatedZones, zoneAggregation.getSuperZoneId(numberOfZones));
+      assertEquals(1000001, zoneAggregation.getSuperZoneExternalId(1));
+      assertEquals(1000000 + numberOfAggregatedZones, zoneAggregation.getSuperZoneExternalId(numberOfAggregatedZones));
+      assertEquals(zonesPerSuperZone, zoneAggregation.getMemberZoneIds(1).length);
+      assertEquals(0, zoneAggregation.getMemberZoneIds(numberOfAggregatedZones + 1).length);
+
+      final var odZones = tntpDemandsReader.getReferenceZoning().getOdZones();
+      assertEquals(numberOfAggregatedZones, odZones.size());
+      assertEquals("1000001", tntpZoningReader.getZonesByTntpId().get(1).getExternalId());
+      assertSame(tntpZoningReader.getZonesByTntpId().get(1), tntpZoningReader.getZonesByTntpId().get(zonesPerSuperZone));
+
+      final TntpSparseOdDemands sparseOdDemands = tntpDemandsReader.getSparseOdDemands();
+      assertEquals(numberOfAggregatedZones, sparseOdDemands.getMaxZoneId());
+      final double[][] expectedOdDemands = new double[numberOfAggregatedZones + 1][numberOfAggregatedZones + 1];
+      TntpStreamReader.streamTripsFile(CHICAGO_DEMAND_FILE, new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          expectedOdDemands[zoneAggregation.getSuperZoneId(originZoneId)][zoneAggregation.getSuperZoneId(destinationZoneId)] += value;
+        }
+      });
+      for (int origin = 1; origin <= numberOfAggregatedZones; ++origin) {
+        for (int destination = 1; destination <= numberOfAggregatedZones; ++destination) {
+          assertEquals(expectedOdDemands[origin][destination], sparseOdDemands.getValue(origin, destination), 1e-6);
+        }
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which reads two TNTP Chicago trips files concurrently into separate user classes, the second with a pcu of two
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoUserClasses() {
+    try {
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoUserClasses");
+      TntpDemandsReader tntpDemandsReader = TntpDemandsReaderFactory.create(createChicagoTntpZoningReader(idToken));
+      tntpDemandsReader.getSettings().addDemandFile("car", CHICAGO_DEMAND_FILE.toAbsolutePath().toString());
+      tntpDemandsReader.getSettings().addDemandFile("truck", CHICAGO_DEMAND_FILE.toAbsolutePath().toString()).setPcu(2.0);
+      tntpDemandsReader.getSettings().setTimePeriodDuration(1, TimeUnits.HOURS);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+      var demands = tntpDemandsReader.readSparseOdDemands();
+
+      assertEquals(2, demands.userClasses.size());
+      assertEquals(2, demands.travelerTypes.size());
+      final Map<String, TntpSparseOdDemands> userClassOdDemands = new HashMap<>();
+      for (var userClass : demands.userClasses) {
+        userClassOdDemands.put(userClass.getName(), tntpDemandsReader.getSparseOdDemands(userClass));
+      }
+
+      assertSparseOdDemandsMatchTripsFile(CHICAGO_DEMAND_FILE, userClassOdDemands.get("car"), origin -> true, 1.0);
+      assertSparseOdDemandsMatchTripsFile(CHICAGO_DEMAND_FILE, userClassOdDemands.get("truck"), origin -> true, 2.0);
+      assertSparseOdDemandsMatchTripsFile(CHICAGO_DEMAND_FILE, tntpDemandsReader.getSparseOdDemands(), origin -> true, 3.0);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which reads the TNTP Chicago trips file as two consecutive time periods of one and two hours
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoTimePeriods() {
+    try {
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoTimePeriods");
+      TntpDemandsReader tntpDemandsReader = TntpDemandsReaderFactory.create(createChicagoTntpZoningReader(idToken));
+      tntpDemandsReader.getSettings().addTimePeriodDemandFile(
+          CHICAGO_DEMAND_FILE.toAbsolutePath().toString(), 7, TimeUnits.HOURS, 1, TimeUnits.HOURS);
+      tntpDemandsReader.getSettings().addTimePeriodDemandFile(
+          CHICAGO_DEMAND_FILE.toAbsolutePath().toString(), 8, TimeUnits.HOURS, 2, TimeUnits.HOURS);
+      tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+      var demands = tntpDemandsReader.readSparseOdDemands();
+
+      assertEquals(2, demands.timePeriods.size());
+      assertEquals(1, demands.userClasses.size());
+      final var firstTimePeriod = demands.timePeriods.firstMatch(tp -> tp.getExternalId().equals("1"));
+      final var secondTimePeriod = demands.timePeriods.firstMatch(tp -> tp.getExternalId().equals("2"));
+      assertEquals(7 * 3600, firstTimePeriod.getStartTimeSeconds());
+      assertEquals(2 * 3600, secondTimePeriod.getDurationSeconds());
+
+      assertSparseOdDemandsMatchTripsFile(CHICAGO_DEMAND_FILE, tntpDemandsReader.getSparseOdDemands(firstTimePeriod), origin -> true, 1.0);
+      assertSparseOdDemandsMatchTripsFile(CHICAGO_DEMAND_FILE, tntpDemandsReader.getSparseOdDemands(secondTimePeriod), origin -> true, 0.5);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which parses a subset of the origins of the TNTP Chicago trips file via the sidecar origin index, twice so the second run
+   * uses the persisted index
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoOriginSubset() {
+    final Path ORIGIN_INDEX_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","originindex");
+    try {
+      deleteDirectory(ORIGIN_INDEX_DIR);
+      final Path demandFile = Files.createDirectories(ORIGIN_INDEX_DIR).resolve(CHICAGO_DEMAND_FILE.getFileName());
+      Files.copy(CHICAGO_DEMAND_FILE, demandFile, StandardCopyOption.REPLACE_EXISTING);
+      final Set<Long> originSubset = Set.of(1L, 100L, 387L);
+
+      for(int run = 0; run < 2; ++run) {
+        IdGenerator.reset();
+        var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoOriginSubset");
+        TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(demandFile, idToken);
+        tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+        tntpDemandsReader.getSettings().setOriginIndexEnabled(true);
+        tntpDemandsReader.getSettings().setOriginSubset(originSubset);
+        tntpDemandsReader.readSparseOdDemands();
+        if (run == 0) {
+          assertTrue(containsFile(ORIGIN_INDEX_DIR, ".originindex"));
+        }
+
+        /* origins outside the subset hold no demand */
+        final TntpSparseOdDemands sparseOdDemands = tntpDemandsReader.getSparseOdDemands();
+        final long numNonZeros = assertSparseOdDemandsMatchTripsFile(CHICAGO_DEMAND_FILE, sparseOdDemands, originSubset::contains, 1.0);
+        assertEquals(numNonZeros, sparseOdDemands.getNumberOfNonZeros());
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which parses an origin subset of the TNTP Chicago trips file followed by all origins with the demand cache enabled on the same
+   * cache directory, the cached subset must not be used for the full run
+   */
+  @Test
+  public void testTntp2PlanitDemandsChicagoOriginSubsetDemandCache() {
+    final Path DEMAND_CACHE_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","demandcachesubset");
+    try {
+      deleteDirectory(DEMAND_CACHE_DIR);
+      final Set<Long> originSubset = Set.of(1L, 100L, 387L);
+      for(final Set<Long> origins : List.of(originSubset, Set.<Long>of())) {
+        IdGenerator.reset();
+        var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsChicagoOriginSubsetDemandCache");
+        TntpDemandsReader tntpDemandsReader = createChicagoTntpDemandsReader(CHICAGO_DEMAND_FILE, idToken);
+        tntpDemandsReader.getSettings().setOdDemandRepresentation(OdDemandRepresentation.SPARSE);
+        tntpDemandsReader.getSettings().setDemandCacheDirectory(DEMAND_CACHE_DIR.toAbsolutePath().toString());
+        tntpDemandsReader.getSettings().setOriginSubset(origins.isEmpty() ? null : origins);
+        tntpDemandsReader.readSparseOdDemands();
+
+        /* origins outside the subset hold no demand */
+        final TntpSparseOdDemands sparseOdDemands = tntpDemandsReader.getSparseOdDemands();
+        final long numNonZeros = assertSparseOdDemandsMatchTripsFile(
+            CHICAGO_DEMAND_FILE, sparseOdDemands, origin -> origins.isEmpty() || origins.contains(origin), 1.0);
+        assertEquals(numNonZeros, sparseOdDemands.getNumberOfNonZeros());
+      }
+      try (var cacheFiles = Files.list(DEMAND_CACHE_DIR)) {
+        assertEquals(2, cacheFiles.filter(path -> path.getFileName().toString().endsWith(".tntpdemands")).count());
+      }
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test that the BPR parameters parsed from the SiouxFalls network file are stored per link segment and are transferred in full to a
+   * BPR cost, and that the parameter store grows beyond its presized capacity when needed
+   */
+  @Test
+  public void testTntpBprParametersSiouxFalls() {
+    try {
+      var idToken = IdGenerator.createIdGroupingToken("testTntpBprParametersSiouxFalls");
+      var tntpNetworkReader =
+          createSiouxFallsTntpNetworkReader(SIOUXFALLS_NETWORK_FILE, SIOUXFALLS_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
+      var planitNetwork = (MacroscopicNetwork) tntpNetworkReader.read();
+      final var linkSegments = planitNetwork.getTransportLayers().getFirst().getLinkSegments();
+      final Mode mode = planitNetwork.getModes().getFirst();
+
+      /* all 76 SiouxFalls links carry b=0.15 and power=4 */
+      final TntpBprParameters bprParameters = tntpNetworkReader.getParsedBprParameters();
+      assertNotNull(bprParameters);
+      assertEquals(76, linkSegments.size());
+      assertEquals(linkSegments.size(), bprParameters.size());
+      for (var linkSegment : linkSegments) {
+        assertTrue(bprParameters.hasParameters(linkSegment.getId()));
+        assertEquals(0.15, bprParameters.getAlpha(linkSegment.getId()), Precision.EPSILON_6);
+        assertEquals(4, bprParameters.getBeta(linkSegment.getId()), Precision.EPSILON_6);
+      }
+
+      /* single pass population sets parameters for every link segment */
+      final var bprCost = new BprLinkTravelTimeCost(idToken);
+      assertEquals(linkSegments.size(), bprParameters.populate(bprCost, linkSegments, mode));
+
+      /* unknown ids have no parameters, ids beyond the presized capacity are stored by growing */
+      final TntpBprParameters smallBprParameters = new TntpBprParameters(2);
+      assertFalse(smallBprParameters.hasParameters(10));
+      assertTrue(Double.isNaN(smallBprParameters.getAlpha(10)));
+      smallBprParameters.setParameters(10, 0.5, 2);
+      smallBprParameters.setParameters(10, 0.25, 3);
+      assertTrue(smallBprParameters.hasParameters(10));
+      assertFalse(smallBprParameters.hasParameters(9));
+      assertEquals(1, smallBprParameters.size());
+      assertEquals(0.25, smallBprParameters.getAlpha(10), Precision.EPSILON_6);
+      assertEquals(3, smallBprParameters.getBeta(10), Precision.EPSILON_6);
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test that the zoning reader, when created without a TNTP network reader, lazily finds the node of each zone in the PLANit network and
+   * raises a descriptive error when a zone has no node in the network
+   */
+  @Test
+  public void testTntpZoningLazyNodeLookupSiouxFalls() {
+    try {
+      var idToken = IdGenerator.createIdGroupingToken("testTntpZoningLazyNodeLookupSiouxFalls");
+      var tntpNetworkReader =
+          createSiouxFallsTntpNetworkReader(SIOUXFALLS_NETWORK_FILE, SIOUXFALLS_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
+      var planitNetwork = (MacroscopicNetwork) tntpNetworkReader.read();
+      final Map<String, Node> nodesByExternalId = new HashMap<>();
+      planitNetwork.getTransportLayers().getFirst().getNodes().forEach(node -> nodesByExternalId.put(node.getExternalId(), node));
+
+      /* no TNTP network reader available, so nodes are looked up lazily in the network */
+      var tntpZoningReader = TntpZoningReaderFactory.create(SIOUXFALLS_NETWORK_FILE.toAbsolutePath().toString(), planitNetwork, idToken);
+      var zoning = tntpZoningReader.read();
+      assertEquals(24, zoning.getOdZones().size());
+      assertEquals(24, zoning.getOdConnectoids().size());
+      for (long tntpZoneId = 1; tntpZoneId <= 24; ++tntpZoneId) {
+        final var zone = tntpZoningReader.getZonesByTntpId().get(tntpZoneId);
+        final Node node = nodesByExternalId.get(String.valueOf(tntpZoneId));
+        assertEquals(String.valueOf(tntpZoneId), zone.getExternalId());
+        assertTrue(node.getPosition().equalsExact(zone.getCentroid().getPosition()));
+      }
+
+      /* a zone without a node in the network is reported rather than silently skipped */
+      nodesByExternalId.get("1").setExternalId("not a TNTP id");
+      var failingTntpZoningReader = TntpZoningReaderFactory.create(
+          SIOUXFALLS_NETWORK_FILE.toAbsolutePath().toString(), planitNetwork, IdGenerator.createIdGroupingToken("failingZoningReader"));
+      assertThrows(PlanItRunTimeException.class, () -> failingTntpZoningReader.read());
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which parses the TNTP SiouxFalls network, zoning and trips files, loads it into PLANit memory model and persists it as a PLANit network, demand, and zoning
+   */
+  @Test
+  public void testTntp2PlanitSiouxFalls() {
+
+    final Path PLANIT_OUTPUT_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","planit","siouxfalls");
+    final Path PLANIT_REF_DIR = Path.of(RESOURCE_PATH.toString(),"planit","siouxfalls");
+    try {      
+      /* TNTP network reader */
+      var idToken = IdGenerator.createIdGroupingToken("testTntp2PlanitDemandsSiouxFalls");
+      var tntpNetworkReader =
+          createSiouxFallsTntpNetworkReader(SIOUXFALLS_NETWORK_FILE, SIOUXFALLS_NODE_FILE, DEFAULT_MAXIMUM_SPEED, idToken);
+      tntpNetworkReader.getSettings().setCapacityPeriod(8 /* about 8 hours */, TimeUnits.HOURS);
+      var planitNetwork = (MacroscopicNetwork) tntpNetworkReader.read();
+      /* PLANit network writer */
+      var planitNetworkWriter = PlanitNetworkWriterFactory.create(PLANIT_OUTPUT_DIR.toAbsolutePath().toString(), CountryNames.UNITED_STATES_OF_AMERICA);
+      planitNetworkWriter.write(planitNetwork);      
+      
+      /* TNTP zoning reader */
+      var tntpZoningReader = TntpZoningReaderFactory.create(SIOUXFALLS_NETWORK_FILE.toAbsolutePath().toString(), planitNetwork, idToken);
+      var zoning = tntpZoningReader.read();
+      /* PLANit ZONING writer */
+      var planitZoningWriter = PlanitZoningWriterFactory.create(
+          PLANIT_OUTPUT_DIR.toAbsolutePath().toString(), CountryNames.UNITED_STATES_OF_AMERICA);
+      planitZoningWriter.write(zoning);      
+      
+      /* TNTP DEMAND reader */
+      var tntpDemandsReader = TntpDemandsReaderFactory.create(SIOUXFALLS_DEMAND_FILE.toAbsolutePath().toString(), planitNetwork, zoning, idToken);
+      tntpDemandsReader.getSettings().setStartTimeSinceMidnight(8, TimeUnits.HOURS);
+      tntpDemandsReader.getSettings().setTimePeriodDuration(12*0.1 /* 10% of daily flow/capacity as per github readme*/, TimeUnits.HOURS);           
+      /* PLANit DEMAND writer */
+      var planitWriter = PlanitDemandsWriterFactory.create(PLANIT_OUTPUT_DIR.toAbsolutePath().toString(), zoning);
+      
+      /* convert */
+      var theConverter = DemandsConverterFactory.create(tntpDemandsReader, planitWriter);
+      theConverter.convert();
+
+      PlanitAssertionUtils.assertNetworkFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+      PlanitAssertionUtils.assertZoningFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+      PlanitAssertionUtils.assertDemandsFilesSimilar(PLANIT_OUTPUT_DIR, PLANIT_REF_DIR);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }    
+  }    
+  
+  /**
+   * Test case which streams the TNTP SiouxFalls network, node and trips files, the streamed entries should be consistent with the metadata
+   */
+  @Test
+  public void testTntpStreamSiouxFalls() {
+    try {
+      final Map<String, String> metadata = new HashMap<>();
+      final double[] totalOdFlow = new double[1];
+      final TntpStreamHandler handler = new TntpStreamHandler() {
+        @Override
+        public void onMetadata(String tag, String value) {
+          metadata.put(tag, value);
+        }
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          totalOdFlow[0] += value;
+        }
+      };
+
+      long numLinks = TntpStreamReader.streamNetworkFile(SIOUXFALLS_NETWORK_FILE, null, handler);
+      assertEquals(Long.parseLong(metadata.get("NUMBER OF LINKS")), numLinks);
+
+      long numNodes = TntpStreamReader.streamNodeFile(SIOUXFALLS_NODE_FILE, handler);
+      assertEquals(Long.parseLong(metadata.get("NUMBER OF NODES")), numNodes);
+
+      long numOdCells = TntpStreamReader.streamTripsFile(SIOUXFALLS_DEMAND_FILE, handler);
+      long numZones = Long.parseLong(metadata.get("NUMBER OF ZONES"));
+      assertEquals(numZones * numZones, numOdCells);
+      assertEquals(Double.parseDouble(metadata.get("TOTAL OD FLOW")), totalOdFlow[0], 1e-6);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Stream the SiouxFalls trips file from a gzip compressed in-memory stream and verify it matches the plain file
+   */
+  @Test
+  public void testTntpGzipSourceSiouxFalls() {
+    try {
+      final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+        gzipStream.write(Files.readAllBytes(SIOUXFALLS_DEMAND_FILE));
+      }
+
+      final double[] totalOdFlow = new double[2];
+      long numPlainOdCells = TntpStreamReader.streamTripsFile(SIOUXFALLS_DEMAND_FILE, new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          totalOdFlow[0] += value;
+        }
+      });
+      long numGzipOdCells = TntpStreamReader.streamTripsFile(
+          TntpInputSource.of(new ByteArrayInputStream(compressed.toByteArray()), "SiouxFalls_trips.tntp.gz"), new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          totalOdFlow[1] += value;
+        }
+      });
+      assertEquals(numPlainOdCells, numGzipOdCells);
+      assertEquals(totalOdFlow[0], totalOdFlow[1], 1e-6);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Stream the SiouxFalls trips file from a zip archive on disk and verify it matches the plain file. A plain file that merely starts
+   * with the first two bytes of the zip magic is not taken for a zip archive and is still memory mapped
+   */
+  @Test
+  public void testTntpZipSourceSiouxFalls() {
+    final Path ZIP_SOURCE_DIR = Path.of(RESOURCE_PATH.toString(),"testcases","zipsource");
+    try {
+      final Path zipFile = Files.createDirectories(ZIP_SOURCE_DIR).resolve("SiouxFalls_trips.zip");
+      try (ZipOutputStream zipStream = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+        zipStream.putNextEntry(new ZipEntry("SiouxFalls_trips.tntp"));
+        zipStream.write(Files.readAllBytes(SIOUXFALLS_DEMAND_FILE));
+        zipStream.closeEntry();
+      }
+
+      final double[] totalOdFlow = new double[2];
+      long numPlainOdCells = TntpStreamReader.streamTripsFile(SIOUXFALLS_DEMAND_FILE, new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          totalOdFlow[0] += value;
+        }
+      });
+      long numZipOdCells = TntpStreamReader.streamTripsFile(TntpInputSource.of(zipFile), new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          totalOdFlow[1] += value;
+        }
+      });
+      assertEquals(numPlainOdCells, numZipOdCells);
+      assertEquals(totalOdFlow[0], totalOdFlow[1], 1e-6);
+
+      /* compressed file is decompressed in memory */
+      final ByteBuffer zipContent = TntpInputSource.of(zipFile).readFully();
+      assertFalse(zipContent.isDirect());
+      assertEquals(ByteBuffer.wrap(Files.readAllBytes(SIOUXFALLS_DEMAND_FILE)), zipContent);
+
+      /* plain file starting with "PK" is mapped as is */
+      final Path pkFile = ZIP_SOURCE_DIR.resolve("pk_prefixed.txt");
+      Files.writeString(pkFile, "PK is not a zip archive\n");
+      final ByteBuffer pkContent = TntpInputSource.of(pkFile).readFully();
+      assertTrue(pkContent.isDirect());
+      assertEquals(ByteBuffer.wrap(Files.readAllBytes(pkFile)), pkContent);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Stream the SiouxFalls trips file from a channel, both plain and gzip compressed, and verify it matches the plain file
+   */
+  @Test
+  public void testTntpChannelSourceSiouxFalls() {
+    try {
+      final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+        gzipStream.write(Files.readAllBytes(SIOUXFALLS_DEMAND_FILE));
+      }
+
+      final double[] totalOdFlow = new double[3];
+      long numPlainOdCells = TntpStreamReader.streamTripsFile(SIOUXFALLS_DEMAND_FILE, new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          totalOdFlow[0] += value;
+        }
+      });
+      long numChannelOdCells = TntpStreamReader.streamTripsFile(
+          TntpInputSource.of(FileChannel.open(SIOUXFALLS_DEMAND_FILE, StandardOpenOption.READ), "SiouxFalls_trips.tntp"), new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          totalOdFlow[1] += value;
+        }
+      });
+      long numGzipChannelOdCells = TntpStreamReader.streamTripsFile(
+          TntpInputSource.of(Channels.newChannel(new ByteArrayInputStream(compressed.toByteArray())), "SiouxFalls_trips.tntp.gz"), 
+          new TntpStreamHandler() {
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          totalOdFlow[2] += value;
+        }
+      });
+      assertEquals(numPlainOdCells, numChannelOdCells);
+      assertEquals(numPlainOdCells, numGzipChannelOdCells);
+      assertEquals(totalOdFlow[0], totalOdFlow[1], 1e-6);
+      assertEquals(totalOdFlow[0], totalOdFlow[2], 1e-6);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Test case which streams the TNTP Chicago trips file, which exceeds the chunk size of the stream reader, both plain and gzip
+   * compressed, results should be identical
+   */
+  @Test
+  public void testTntpGzipSourceChicago() {
+    try {
+      final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+        gzipStream.write(Files.readAllBytes(CHICAGO_DEMAND_FILE));
+      }
+      assertTrue(Files.size(CHICAGO_DEMAND_FILE) > 1 << 20);
+
+      final double[] totalOdFlow = new double[2];
+      final long[] numMetadataEntries = new long[2];
+      long numPlainOdCells = TntpStreamReader.streamTripsFile(CHICAGO_DEMAND_FILE, new TntpStreamHandler() {
+        @Override
+        public void onMetadata(final String tag, final String value) {
+          ++numMetadataEntries[0];
+        }
+
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          totalOdFlow[0] += value;
+        }
+      });
+      long numGzipOdCells = TntpStreamReader.streamTripsFile(
+          TntpInputSource.of(new ByteArrayInputStream(compressed.toByteArray()), "ChicagoSketch_trips.tntp.gz"), new TntpStreamHandler() {
+        @Override
+        public void onMetadata(final String tag, final String value) {
+          ++numMetadataEntries[1];
+        }
+
+        @Override
+        public void onOdCell(long originZoneId, long destinationZoneId, double value) {
+          totalOdFlow[1] += value;
+        }
+      });
+      assertEquals(numPlainOdCells, numGzipOdCells);
+      assertEquals(numMetadataEntries[0], numMetadataEntries[1]);
+      assertEquals(totalOdFlow[0], totalOdFlow[1], 1e-6);
+      assertEquals(1260907.44, totalOdFlow[1], 1e-2);
+
+    } catch (final Exception e) {
+      e.printStackTrace();
+      LOGGER.severe( e.getMessage());
+      fail(e.getMessage());
+    }
+  }
+
+}